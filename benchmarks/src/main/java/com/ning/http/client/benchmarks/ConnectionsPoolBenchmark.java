@@ -0,0 +1,142 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.benchmarks;
+
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.providers.netty.NettyAsyncHttpProvider;
+import com.ning.http.client.providers.netty.NettyConnectionsPool;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.local.DefaultLocalClientChannelFactory;
+import org.jboss.netty.channel.local.DefaultLocalServerChannelFactory;
+import org.jboss.netty.channel.local.LocalAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Every thread returns its connection to the {@link NettyConnectionsPool} and takes one back, as done when a
+ * keep-alive response completes and the next request starts. The connections are in-memory channels, so only the
+ * pool itself is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ConnectionsPoolBenchmark {
+
+    /**
+     * The number of hosts the threads are spread over: 1 means every thread contends on the same host.
+     */
+    @Param({"1", "8"})
+    public int hosts;
+
+    private final AtomicInteger nextHost = new AtomicInteger();
+    private final ChannelGroup channels = new DefaultChannelGroup("connections-pool-benchmark");
+    private NettyAsyncHttpProvider provider;
+    private NettyConnectionsPool pool;
+    private ServerBootstrap serverBootstrap;
+    private ClientBootstrap clientBootstrap;
+    private LocalAddress address;
+
+    @Setup
+    public void setUp() {
+        AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder().build();
+        provider = new NettyAsyncHttpProvider(config);
+        pool = new NettyConnectionsPool(config);
+
+        address = new LocalAddress("connections-pool-benchmark");
+        serverBootstrap = new ServerBootstrap(new DefaultLocalServerChannelFactory());
+        serverBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline();
+            }
+        });
+        channels.add(serverBootstrap.bind(address));
+
+        // The pool stores its state in the provider's context, so the provider must be in the pipeline.
+        clientBootstrap = new ClientBootstrap(new DefaultLocalClientChannelFactory());
+        clientBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(provider);
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.destroy();
+        channels.close().awaitUninterruptibly();
+        serverBootstrap.releaseExternalResources();
+        clientBootstrap.releaseExternalResources();
+        provider.close();
+    }
+
+    Channel connect() {
+        Channel channel = clientBootstrap.connect(address).awaitUninterruptibly().getChannel();
+        channels.add(channel);
+        return channel;
+    }
+
+    String nextHost() {
+        return "http://127.0.0.1:" + (8000 + nextHost.getAndIncrement() % hosts);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        Channel channel;
+        String host;
+
+        @Setup
+        public void setUp(ConnectionsPoolBenchmark benchmark) {
+            channel = benchmark.connect();
+            host = benchmark.nextHost();
+        }
+    }
+
+    @Benchmark
+    public Channel offerAndPoll(ThreadState state) {
+        pool.offer(state.host, state.channel);
+        // Another thread may take the channel we offered, but then it left its own one in the pool.
+        Channel channel = pool.poll(state.host);
+        if (channel != null) {
+            state.channel = channel;
+        }
+        return channel;
+    }
+}
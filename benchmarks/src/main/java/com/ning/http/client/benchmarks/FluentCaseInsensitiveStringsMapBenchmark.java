@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.benchmarks;
+
+import com.ning.http.client.FluentCaseInsensitiveStringsMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operations the providers perform on every request and response headers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class FluentCaseInsensitiveStringsMapBenchmark {
+
+    private final static String[] NAMES = {"Host", "User-Agent", "Accept", "Accept-Encoding", "Connection",
+            "Content-Type", "Content-Length", "Cache-Control", "ETag", "Date"};
+
+    private FluentCaseInsensitiveStringsMap headers;
+
+    @Setup
+    public void setUp() {
+        headers = fill();
+    }
+
+    private static FluentCaseInsensitiveStringsMap fill() {
+        FluentCaseInsensitiveStringsMap map = new FluentCaseInsensitiveStringsMap();
+        for (String name : NAMES) {
+            map.add(name, "value-of-" + name);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public FluentCaseInsensitiveStringsMap add() {
+        return fill();
+    }
+
+    @Benchmark
+    public String getFirstValue() {
+        return headers.getFirstValue("content-length");
+    }
+
+    @Benchmark
+    public List<String> getMissing() {
+        return headers.get("x-missing");
+    }
+
+    @Benchmark
+    public FluentCaseInsensitiveStringsMap copy() {
+        return new FluentCaseInsensitiveStringsMap(headers);
+    }
+
+    @Benchmark
+    public FluentCaseInsensitiveStringsMap addAndDelete() {
+        headers.add("X-Request-Id", "1234");
+        return headers.delete("x-request-id");
+    }
+}
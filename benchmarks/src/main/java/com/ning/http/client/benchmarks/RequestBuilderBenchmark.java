@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.benchmarks;
+
+import com.ning.http.client.Request;
+import com.ning.http.client.RequestBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a {@link Request} and its final url, as done by {@link com.ning.http.client.RequestBuilderBase}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class RequestBuilderBenchmark {
+
+    @Benchmark
+    public String simpleUrl() {
+        return new RequestBuilder("GET").setUrl("http://127.0.0.1:8080/foo/bar").build().getUrl();
+    }
+
+    @Benchmark
+    public String urlWithQuery() {
+        return new RequestBuilder("GET").setUrl("http://127.0.0.1:8080/search?q=async+http&lang=en").build().getUrl();
+    }
+
+    @Benchmark
+    public String queryParameters() {
+        return new RequestBuilder("GET")
+                .setUrl("http://127.0.0.1:8080/search")
+                .addQueryParameter("q", "async http client")
+                .addQueryParameter("page", "2")
+                .addQueryParameter("sort", "date desc")
+                .build().getUrl();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.benchmarks;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.AsyncHttpProvider;
+import com.ning.http.client.providers.apache.ApacheAsyncHttpProvider;
+import com.ning.http.client.providers.jdk.JDKAsyncHttpProvider;
+import com.ning.http.client.providers.netty.NettyAsyncHttpProvider;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of short-lived clients: creating and closing a client which sends no request, and creating a client,
+ * sending a single request to an in-process Jetty server and closing it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    @Param({"netty", "jdk", "apache"})
+    public String provider;
+
+    private Server server;
+    private String url;
+
+    @Setup
+    public void setUp() throws Exception {
+        SelectChannelConnector connector = new SelectChannelConnector();
+        connector.setHost("127.0.0.1");
+        connector.setPort(0);
+        server = new Server();
+        server.addConnector(connector);
+        server.setHandler(new EmptyHandler());
+        server.start();
+        url = "http://127.0.0.1:" + connector.getLocalPort() + "/";
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    private AsyncHttpClient newClient() {
+        AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder().build();
+        return new AsyncHttpClient(createProvider(provider, config), config);
+    }
+
+    private static AsyncHttpProvider<?> createProvider(String name, AsyncHttpClientConfig config) {
+        if ("netty".equals(name)) {
+            return new NettyAsyncHttpProvider(config);
+        } else if ("jdk".equals(name)) {
+            return new JDKAsyncHttpProvider(config);
+        } else if ("apache".equals(name)) {
+            return new ApacheAsyncHttpProvider(config);
+        }
+        throw new IllegalArgumentException("Unknown provider " + name);
+    }
+
+    @Benchmark
+    public void idleClient() {
+        newClient().close();
+    }
+
+    @Benchmark
+    public int singleRequestClient() throws Exception {
+        AsyncHttpClient client = newClient();
+        try {
+            int status = client.prepareGet(url).execute().get().getStatusCode();
+            if (status != 200) {
+                throw new IllegalStateException("Unexpected response " + status);
+            }
+            return status;
+        } finally {
+            client.close();
+        }
+    }
+
+    private static final class EmptyHandler extends AbstractHandler {
+        public void handle(String target,
+                           Request baseRequest,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+            response.setStatus(200);
+            response.setContentLength(0);
+            baseRequest.setHandled(true);
+        }
+    }
+}
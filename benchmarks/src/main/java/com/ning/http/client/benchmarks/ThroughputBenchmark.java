@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.benchmarks;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.AsyncHttpProvider;
+import com.ning.http.client.Response;
+import com.ning.http.client.providers.apache.ApacheAsyncHttpProvider;
+import com.ning.http.client.providers.jdk.JDKAsyncHttpProvider;
+import com.ning.http.client.providers.netty.NettyAsyncHttpProvider;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end round trips against an in-process Jetty server bound to the loopback interface. Every thread waits for
+ * its response before sending the next request, so the score is the throughput of a closed loop.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(2)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ThroughputBenchmark {
+
+    @Param({"netty", "jdk", "apache"})
+    public String provider;
+
+    @Param({"1024", "65536"})
+    public int size;
+
+    private Server server;
+    private AsyncHttpClient client;
+    private String url;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws Exception {
+        body = new byte[size];
+        Arrays.fill(body, (byte) 'x');
+
+        SelectChannelConnector connector = new SelectChannelConnector();
+        connector.setHost("127.0.0.1");
+        connector.setPort(0);
+        server = new Server();
+        server.addConnector(connector);
+        server.setHandler(new BenchmarkHandler());
+        server.start();
+        url = "http://127.0.0.1:" + connector.getLocalPort() + "/";
+
+        AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder()
+                .setMaximumConnectionsPerHost(-1)
+                .setMaximumConnectionsTotal(-1)
+                .build();
+        client = new AsyncHttpClient(createProvider(provider, config), config);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    private static AsyncHttpProvider<?> createProvider(String name, AsyncHttpClientConfig config) {
+        if ("netty".equals(name)) {
+            return new NettyAsyncHttpProvider(config);
+        } else if ("jdk".equals(name)) {
+            return new JDKAsyncHttpProvider(config);
+        } else if ("apache".equals(name)) {
+            return new ApacheAsyncHttpProvider(config);
+        }
+        throw new IllegalArgumentException("Unknown provider " + name);
+    }
+
+    @Benchmark
+    public Response get() throws Exception {
+        return check(client.prepareGet(url).execute().get());
+    }
+
+    @Benchmark
+    public Response post() throws Exception {
+        return check(client.preparePost(url).setBody(body).execute().get());
+    }
+
+    private Response check(Response response) throws IOException {
+        if (response.getStatusCode() != 200 || response.getResponseBody().length() != size) {
+            throw new IllegalStateException("Unexpected response " + response.getStatusCode());
+        }
+        return response;
+    }
+
+    /**
+     * Respond to a GET with {@link #size} bytes, and echo the body of a POST.
+     */
+    private final class BenchmarkHandler extends AbstractHandler {
+        public void handle(String target,
+                           Request baseRequest,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+
+            response.setStatus(200);
+            response.setContentType("application/octet-stream");
+            OutputStream out = response.getOutputStream();
+            if ("POST".equals(request.getMethod())) {
+                response.setContentLength(request.getContentLength());
+                InputStream in = request.getInputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } else {
+                response.setContentLength(body.length);
+                out.write(body);
+            }
+            out.close();
+            baseRequest.setHandled(true);
+        }
+    }
+}
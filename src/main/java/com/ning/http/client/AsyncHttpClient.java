@@ -17,19 +17,32 @@
 package com.ning.http.client;
 
 import com.ning.http.client.Request.EntityWriter;
+import com.ning.http.client.cache.ResponseCache;
+import com.ning.http.client.coalescing.RequestCoalescer;
 import com.ning.http.client.filter.FilterContext;
 import com.ning.http.client.filter.FilterException;
 import com.ning.http.client.filter.RequestFilter;
+import com.ning.http.client.hedging.HedgingStats;
+import com.ning.http.client.hedging.RequestHedger;
+import com.ning.http.client.metrics.ClientMetrics;
+import com.ning.http.client.metrics.MetricsSnapshot;
 import com.ning.http.client.resumable.ResumableAsyncHandler;
+import com.ning.http.client.websocket.WebSocketUpgradeHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.ning.http.client.providers.jdk.JDKAsyncHttpProvider;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -146,6 +159,24 @@ public class AsyncHttpClient {
     private final AsyncHttpClientConfig config;
     private final static Logger logger = LoggerFactory.getLogger(AsyncHttpClient.class);
     private final AtomicBoolean isClosed = new AtomicBoolean(false);
+    private final RequestHedger requestHedger;
+    private final RequestCoalescer requestCoalescer;
+    private final AsyncHttpProvider<?> hedgingProvider = new ForwardingProvider() {
+        public <T> Future<T> execute(Request request, AsyncHandler<T> handler) throws IOException {
+            if (requestHedger != null && requestHedger.getPolicy().isHedgeable(request)) {
+                return requestHedger.execute(httpProvider, request, handler);
+            }
+            return httpProvider.execute(request, handler);
+        }
+    };
+    private final AsyncHttpProvider<?> coalescingProvider = new ForwardingProvider() {
+        public <T> Future<T> execute(Request request, AsyncHandler<T> handler) throws IOException {
+            if (requestCoalescer != null && requestCoalescer.getPolicy().isCoalesceable(request)) {
+                return requestCoalescer.execute(hedgingProvider, request, handler);
+            }
+            return hedgingProvider.execute(request, handler);
+        }
+    };
 
     /**
      * Default signature calculator to use for all requests constructed by this client instance.
@@ -189,6 +220,8 @@ public class AsyncHttpClient {
     public AsyncHttpClient(AsyncHttpProvider<?> httpProvider, AsyncHttpClientConfig config) {
         this.config = config;
         this.httpProvider = httpProvider;
+        this.requestHedger = createRequestHedger(config);
+        this.requestCoalescer = createRequestCoalescer(config);
     }
 
     /**
@@ -200,6 +233,8 @@ public class AsyncHttpClient {
     public AsyncHttpClient(String providerClass, AsyncHttpClientConfig config) {
         this.config = new AsyncHttpClientConfig.Builder().build();
         this.httpProvider = loadDefaultProvider(providerClass,config);
+        this.requestHedger = createRequestHedger(this.config);
+        this.requestCoalescer = createRequestCoalescer(this.config);
     }
 
     public class BoundRequestBuilder extends RequestBuilderBase<BoundRequestBuilder> {
@@ -354,10 +389,19 @@ public class AsyncHttpClient {
     }
 
     /**
-     * Close the underlying connections.
+     * Close the underlying connections, and the request filters which are {@link Closeable}.
      */
     public void close() {
         httpProvider.close();
+        for (RequestFilter filter : config.getRequestFilters()) {
+            if (filter instanceof Closeable) {
+                try {
+                    ((Closeable) filter).close();
+                } catch (IOException ex) {
+                    logger.warn("Unable to close " + filter, ex);
+                }
+            }
+        }
         isClosed.set(true);
     }
 
@@ -380,6 +424,33 @@ public class AsyncHttpClient {
         return config;
     }
 
+    /**
+     * Return the {@link HedgingStats} of the hedged requests, or null if no {@link com.ning.http.client.hedging.HedgingPolicy}
+     * has been configured.
+     * @return {@link HedgingStats}, or null if hedging is disabled.
+     */
+    public HedgingStats getHedgingStats() {
+        return requestHedger != null ? requestHedger.getStats() : null;
+    }
+
+    /**
+     * Return the number of requests which shared the response of an identical in-flight request instead of making
+     * a network call, or -1 if no {@link com.ning.http.client.coalescing.CoalescingPolicy} has been configured.
+     * @return the number of coalesced requests, or -1 if coalescing is disabled.
+     */
+    public long getCoalescedRequestCount() {
+        return requestCoalescer != null ? requestCoalescer.getCoalescedCount() : -1;
+    }
+
+    /**
+     * Return a copy of the {@link ClientMetrics}, or null if no {@link ClientMetrics} has been configured.
+     * @return a {@link MetricsSnapshot}, or null if metrics are disabled.
+     */
+    public MetricsSnapshot getMetricsSnapshot() {
+        ClientMetrics metrics = config.getClientMetrics();
+        return metrics != null ? metrics.snapshot() : null;
+    }
+
     /**
      * Set default signature calculator to use for requests build by this client instance
      */
@@ -451,6 +522,23 @@ public class AsyncHttpClient {
         return requestBuilder("DELETE", url);
     }
 
+    /**
+     * Prepare a WebSocket upgrade request, to be executed with a
+     * {@link com.ning.http.client.websocket.WebSocketUpgradeHandler}. The ws and wss schemes are mapped to http and
+     * https, so the client's SSL, proxy, {@link Realm} and filters apply to the handshake.
+     * Only supported by the {@link com.ning.http.client.providers.netty.NettyAsyncHttpProvider}.
+     * @param url A well formed ws, wss, http or https URL.
+     * @return {@link RequestBuilder}
+     */
+    public BoundRequestBuilder prepareWebSocket(String url) {
+        if (url.regionMatches(true, 0, "ws:", 0, 3)) {
+            url = "http:" + url.substring(3);
+        } else if (url.regionMatches(true, 0, "wss:", 0, 4)) {
+            url = "https:" + url.substring(4);
+        }
+        return requestBuilder("GET", url).setHeader("Upgrade", "websocket").setHeader("Connection", "Upgrade");
+    }
+
     /**
      * Construct a {@link RequestBuilder} using a {@link Request}
      * @param request a {@link Request}
@@ -473,7 +561,16 @@ public class AsyncHttpClient {
         FilterContext fc = new FilterContext.FilterContextBuilder().asyncHandler(handler).request(request).build();
         fc  = preProcessRequest(fc);
 
-        return httpProvider.execute(fc.getRequest(), fc.getAsyncHandler());
+        if (handler instanceof WebSocketUpgradeHandler) {
+            // A handshake can't be cached, shared or sent twice, and the provider only completes the upgrade when it
+            // is given the handler itself. A WebSocket isn't a request in flight once opened, so a handler wrapped by
+            // a filter is released right away.
+            if (fc.getAsyncHandler() instanceof ReleasableAsyncHandler) {
+                ((ReleasableAsyncHandler<?>) fc.getAsyncHandler()).release();
+            }
+            return httpProvider.execute(fc.getRequest(), handler);
+        }
+        return execute(fc.getRequest(), fc.getAsyncHandler());
     }
 
      /**
@@ -485,9 +582,102 @@ public class AsyncHttpClient {
     public Future<Response> executeRequest(Request request) throws IOException {
         FilterContext fc = new FilterContext.FilterContextBuilder().asyncHandler(new AsyncCompletionHandlerBase()).request(request).build();
         fc  = preProcessRequest(fc);
-        return httpProvider.execute(fc.getRequest(), fc.getAsyncHandler());
+        return execute(fc.getRequest(), fc.getAsyncHandler());
      }
 
+    private <T> Future<T> execute(Request request, AsyncHandler<T> handler) throws IOException {
+        boolean executed = false;
+        try {
+            Future<T> future;
+            ResponseCache responseCache = config.getResponseCache();
+            if (acceptsEventStream(request)) {
+                // An event stream doesn't end: it can't be cached, shared or hedged.
+                future = httpProvider.execute(request, handler);
+            } else if (responseCache != null) {
+                future = responseCache.execute(coalescingProvider, request, handler);
+            } else {
+                future = coalescingProvider.execute(request, handler);
+            }
+            executed = true;
+            if (handler instanceof ReleasableAsyncHandler) {
+                // No callback of the handler may follow a cancellation.
+                return new ReleasingFuture<T>((ReleasableAsyncHandler<T>) handler, future);
+            }
+            return future;
+        } finally {
+            if (!executed && handler instanceof ReleasableAsyncHandler) {
+                ((ReleasableAsyncHandler<T>) handler).release();
+            }
+        }
+    }
+
+    private static boolean acceptsEventStream(Request request) {
+        List<String> accept = request.getHeaders().get("Accept");
+        if (accept != null) {
+            for (String value : accept) {
+                if (value.toLowerCase().contains("text/event-stream")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Base class of the layers a request goes through before reaching the {@link AsyncHttpProvider}: the
+     * {@link ResponseCache}, then the {@link RequestCoalescer} and finally the {@link RequestHedger}.
+     */
+    private abstract class ForwardingProvider implements AsyncHttpProvider<Object> {
+
+        public void close() {
+            httpProvider.close();
+        }
+
+        public Response prepareResponse(HttpResponseStatus status,
+                                        HttpResponseHeaders headers,
+                                        Collection<HttpResponseBodyPart> bodyParts) {
+            return httpProvider.prepareResponse(status, headers, bodyParts);
+        }
+    }
+
+    /**
+     * A {@link Future} which releases the {@link ReleasableAsyncHandler} of its request when cancelled.
+     */
+    private static class ReleasingFuture<T> implements Future<T> {
+
+        private final ReleasableAsyncHandler<T> handler;
+        private final Future<T> future;
+
+        ReleasingFuture(ReleasableAsyncHandler<T> handler, Future<T> future) {
+            this.handler = handler;
+            this.future = future;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            try {
+                return future.cancel(mayInterruptIfRunning);
+            } finally {
+                handler.release();
+            }
+        }
+
+        public boolean isCancelled() {
+            return future.isCancelled();
+        }
+
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        public T get() throws InterruptedException, ExecutionException {
+            return future.get();
+        }
+
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return future.get(timeout, unit);
+        }
+    }
+
     /**
      * Configure and execute the associated @link RequestFilter}. This class may decorate the {@link Request} and {@link AsyncHandler}
      *
@@ -530,6 +720,7 @@ public class AsyncHttpClient {
             return providerClass.getDeclaredConstructor(
                     new Class[]{AsyncHttpClientConfig.class}).newInstance(new Object[]{config});
         } catch (Throwable t){
+            rethrowConfigurationError(t);
 
             // Let's try with another classloader
             try {
@@ -538,6 +729,7 @@ public class AsyncHttpClient {
                 return providerClass.getDeclaredConstructor(
                         new Class[]{AsyncHttpClientConfig.class}).newInstance(new Object[]{config});
             } catch (Throwable t2) {
+                rethrowConfigurationError(t2);
             }
 
             if (logger.isDebugEnabled()) {
@@ -548,6 +740,30 @@ public class AsyncHttpClient {
         }
     }
 
+    /**
+     * The provider was found but its constructor rejected the {@link AsyncHttpClientConfig}: falling back to another
+     * provider would silently ignore the configuration.
+     */
+    private static void rethrowConfigurationError(Throwable t) {
+        if (t instanceof InvocationTargetException && t.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) t.getCause();
+        }
+    }
+
+    private static RequestHedger createRequestHedger(AsyncHttpClientConfig config) {
+        if (config.getHedgingPolicy() == null) {
+            return null;
+        }
+        return new RequestHedger(config.getHedgingPolicy(), config.reaper());
+    }
+
+    private static RequestCoalescer createRequestCoalescer(AsyncHttpClientConfig config) {
+        if (config.getCoalescingPolicy() == null) {
+            return null;
+        }
+        return new RequestCoalescer(config.getCoalescingPolicy());
+    }
+
     protected BoundRequestBuilder requestBuilder(String reqType, String url) {
         return new BoundRequestBuilder(reqType).setUrl(url).setSignatureCalculator(signatureCalculator);
     }
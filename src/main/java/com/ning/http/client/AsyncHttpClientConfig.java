@@ -15,9 +15,15 @@
  */
 package com.ning.http.client;
 
+import com.ning.http.client.cache.ResponseCache;
+import com.ning.http.client.coalescing.CoalescingPolicy;
 import com.ning.http.client.filter.IOExceptionFilter;
 import com.ning.http.client.filter.RequestFilter;
 import com.ning.http.client.filter.ResponseFilter;
+import com.ning.http.client.hedging.HedgingPolicy;
+import com.ning.http.client.listener.RequestEventListener;
+import com.ning.http.client.metrics.ClientMetrics;
+import com.ning.http.client.tracing.RequestTracer;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
@@ -60,8 +66,8 @@ public class AsyncHttpClientConfig {
     private final boolean compressionEnabled;
     private final String userAgent;
     private final boolean allowPoolingConnection;
-    private final ScheduledExecutorService reaper;
-    private final ExecutorService applicationThreadPool;
+    private volatile ScheduledExecutorService reaper;
+    private volatile ExecutorService applicationThreadPool;
     private final ProxyServer proxyServer;
     private final SSLContext sslContext;
     private final SSLEngineFactory sslEngineFactory;
@@ -72,6 +78,12 @@ public class AsyncHttpClientConfig {
     private final List<ResponseFilter> responseFilters;
     private final List<IOExceptionFilter> ioExceptionFilters;
     private final int requestCompressionLevel;
+    private final HedgingPolicy hedgingPolicy;
+    private final CoalescingPolicy coalescingPolicy;
+    private final ResponseCache responseCache;
+    private final RequestEventListener requestEventListener;
+    private final ClientMetrics clientMetrics;
+    private final RequestTracer<?> requestTracer;
 
     private AsyncHttpClientConfig(int maxTotalConnections,
                                   int maxConnectionPerHost,
@@ -93,7 +105,13 @@ public class AsyncHttpClientConfig {
                                   List<RequestFilter> requestFilters,
                                   List<ResponseFilter> responseFilters,
                                   List<IOExceptionFilter> ioExceptionFilters,
-                                  int requestCompressionLevel) {
+                                  int requestCompressionLevel,
+                                  HedgingPolicy hedgingPolicy,
+                                  CoalescingPolicy coalescingPolicy,
+                                  ResponseCache responseCache,
+                                  RequestEventListener requestEventListener,
+                                  ClientMetrics clientMetrics,
+                                  RequestTracer<?> requestTracer) {
 
         this.maxTotalConnections = maxTotalConnections;
         this.maxConnectionPerHost = maxConnectionPerHost;
@@ -114,22 +132,16 @@ public class AsyncHttpClientConfig {
         this.responseFilters = responseFilters;
         this.ioExceptionFilters = ioExceptionFilters;
         this.requestCompressionLevel = requestCompressionLevel;
-
-        if (reaper == null) {
-            this.reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
-                public Thread newThread(Runnable r) {
-                    return new Thread(r,"AsyncHttpClient-Reaper");
-                }
-            });
-        } else {
-            this.reaper = reaper;
-        }
-
-        if (applicationThreadPool == null) {
-            this.applicationThreadPool = Executors.newCachedThreadPool();
-        } else {
-            this.applicationThreadPool = applicationThreadPool;
-        }
+        this.hedgingPolicy = hedgingPolicy;
+        this.coalescingPolicy = coalescingPolicy;
+        this.responseCache = responseCache;
+        this.requestEventListener = requestEventListener;
+        this.clientMetrics = clientMetrics;
+        this.requestTracer = requestTracer;
+
+        // The default executors are created on first use: short-lived clients may never need them.
+        this.reaper = reaper;
+        this.applicationThreadPool = applicationThreadPool;
         this.proxyServer = proxyServer;
     }
 
@@ -139,7 +151,21 @@ public class AsyncHttpClientConfig {
      * @return {@link ScheduledExecutorService}
      */
     public ScheduledExecutorService reaper() {
-        return reaper;
+        ScheduledExecutorService scheduler = reaper;
+        if (scheduler == null) {
+            synchronized (this) {
+                if (reaper == null) {
+                    reaper = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(),
+                            new ThreadFactory() {
+                                public Thread newThread(Runnable r) {
+                                    return new Thread(r, "AsyncHttpClient-Reaper");
+                                }
+                            });
+                }
+                scheduler = reaper;
+            }
+        }
+        return scheduler;
     }
 
     /**
@@ -262,7 +288,29 @@ public class AsyncHttpClientConfig {
      *         asynchronous response.
      */
     public ExecutorService executorService() {
-        return applicationThreadPool;
+        ExecutorService e = applicationThreadPool;
+        if (e == null) {
+            synchronized (this) {
+                if (applicationThreadPool == null) {
+                    applicationThreadPool = Executors.newCachedThreadPool();
+                }
+                e = applicationThreadPool;
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Shut down the {@link #reaper()} and the {@link #executorService()}, if they have been created or configured.
+     * Invoked by the {@link AsyncHttpProvider} when it is closed, so closing an idle client doesn't create them.
+     */
+    public synchronized void shutdownExecutors() {
+        if (reaper != null) {
+            reaper.shutdown();
+        }
+        if (applicationThreadPool != null) {
+            applicationThreadPool.shutdown();
+        }
     }
 
     /**
@@ -361,6 +409,54 @@ public class AsyncHttpClientConfig {
         return requestCompressionLevel;
     }
 
+    /**
+     * Return the {@link HedgingPolicy}, or null if idempotent requests are never hedged.
+     * @return the {@link HedgingPolicy}, or null if idempotent requests are never hedged.
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * Return the {@link CoalescingPolicy}, or null if identical requests are never coalesced.
+     * @return the {@link CoalescingPolicy}, or null if identical requests are never coalesced.
+     */
+    public CoalescingPolicy getCoalescingPolicy() {
+        return coalescingPolicy;
+    }
+
+    /**
+     * Return the {@link ResponseCache}, or null if responses are never cached.
+     * @return the {@link ResponseCache}, or null if responses are never cached.
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Return the {@link RequestEventListener}, or null if request lifecycle events are not reported.
+     * @return the {@link RequestEventListener}, or null if request lifecycle events are not reported.
+     */
+    public RequestEventListener getRequestEventListener() {
+        return requestEventListener;
+    }
+
+    /**
+     * Return the {@link ClientMetrics}, or null if metrics are not recorded.
+     * @return the {@link ClientMetrics}, or null if metrics are not recorded.
+     */
+    public ClientMetrics getClientMetrics() {
+        return clientMetrics;
+    }
+
+    /**
+     * Return the {@link RequestTracer}, or null if requests are not traced.
+     * @return the {@link RequestTracer}, or null if requests are not traced.
+     */
+    public RequestTracer<?> getRequestTracer() {
+        return requestTracer;
+    }
+
     /**
      * Builder for an {@link AsyncHttpClient}
      */
@@ -375,13 +471,8 @@ public class AsyncHttpClientConfig {
         private boolean compressionEnabled = Boolean.getBoolean(ASYNC_CLIENT + "compressionEnabled");
         private String userAgent = System.getProperty(ASYNC_CLIENT + "userAgent", "NING/1.0");
         private boolean allowPoolingConnection = true;
-        private ScheduledExecutorService reaper = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(),
-                new ThreadFactory() {
-                    public Thread newThread(Runnable r) {
-                        return new Thread(r, "AsyncHttpClient-Reaper");
-                    }
-                });
-        private ExecutorService applicationThreadPool = Executors.newCachedThreadPool();
+        private ScheduledExecutorService reaper;
+        private ExecutorService applicationThreadPool;
         private ProxyServer proxyServer = null;
         private SSLContext sslContext;
         private SSLEngineFactory sslEngineFactory;
@@ -389,6 +480,12 @@ public class AsyncHttpClientConfig {
         private ConnectionsPool<?, ?> connectionsPool;
         private Realm realm;
         private int requestCompressionLevel = -1;
+        private HedgingPolicy hedgingPolicy;
+        private CoalescingPolicy coalescingPolicy;
+        private ResponseCache responseCache;
+        private RequestEventListener requestEventListener;
+        private ClientMetrics clientMetrics;
+        private RequestTracer<?> requestTracer;
 
         private final List<RequestFilter> requestFilters = new LinkedList<RequestFilter>();
         private final List<ResponseFilter> responseFilters = new LinkedList<ResponseFilter>();
@@ -542,7 +639,6 @@ public class AsyncHttpClientConfig {
          * @return a {@link Builder}
          */
         public Builder setScheduledExecutorService(ScheduledExecutorService reaper) {
-            if (this.reaper != null) this.reaper.shutdown();
             this.reaper = reaper;
             return this;
         }
@@ -556,7 +652,6 @@ public class AsyncHttpClientConfig {
          * @return a {@link Builder}
          */
         public Builder setExecutorService(ExecutorService applicationThreadPool) {
-            if (this.applicationThreadPool != null) this.applicationThreadPool.shutdown();
             this.applicationThreadPool = applicationThreadPool;
             return this;
         }
@@ -721,6 +816,72 @@ public class AsyncHttpClientConfig {
             return this;
         }
 
+        /**
+         * Set the {@link HedgingPolicy} used to hedge idempotent requests. Default is null, e.g. no hedging.
+         *
+         * @param hedgingPolicy the {@link HedgingPolicy}
+         * @return this
+         */
+        public Builder setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = hedgingPolicy;
+            return this;
+        }
+
+        /**
+         * Set the {@link CoalescingPolicy} used to coalesce identical in-flight requests. Default is null, e.g. no coalescing.
+         *
+         * @param coalescingPolicy the {@link CoalescingPolicy}
+         * @return this
+         */
+        public Builder setCoalescingPolicy(CoalescingPolicy coalescingPolicy) {
+            this.coalescingPolicy = coalescingPolicy;
+            return this;
+        }
+
+        /**
+         * Set the {@link ResponseCache} used to store and serve responses. Default is null, e.g. no caching.
+         *
+         * @param responseCache the {@link ResponseCache}
+         * @return this
+         */
+        public Builder setResponseCache(ResponseCache responseCache) {
+            this.responseCache = responseCache;
+            return this;
+        }
+
+        /**
+         * Set the {@link RequestEventListener} notified of every phase of the request lifecycle. Default is null.
+         *
+         * @param requestEventListener the {@link RequestEventListener}
+         * @return this
+         */
+        public Builder setRequestEventListener(RequestEventListener requestEventListener) {
+            this.requestEventListener = requestEventListener;
+            return this;
+        }
+
+        /**
+         * Set the {@link ClientMetrics} the requests are recorded in. Default is null, e.g. no metrics.
+         *
+         * @param clientMetrics the {@link ClientMetrics}
+         * @return this
+         */
+        public Builder setClientMetrics(ClientMetrics clientMetrics) {
+            this.clientMetrics = clientMetrics;
+            return this;
+        }
+
+        /**
+         * Set the {@link RequestTracer} invoked for every request, and every attempt of those requests, e.g. redirects.
+         *
+         * @param requestTracer a {@link RequestTracer}, or null
+         * @return this
+         */
+        public Builder setRequestTracer(RequestTracer<?> requestTracer) {
+            this.requestTracer = requestTracer;
+            return this;
+        }
+
         /**
          * Create a config builder with values taken from the given prototype configuration.
          * 
@@ -743,6 +904,12 @@ public class AsyncHttpClientConfig {
             sslContext = prototype.getSSLContext();
             sslEngineFactory = prototype.getSSLEngineFactory();
             userAgent = prototype.getUserAgent();
+            hedgingPolicy = prototype.getHedgingPolicy();
+            coalescingPolicy = prototype.getCoalescingPolicy();
+            responseCache = prototype.getResponseCache();
+            requestEventListener = prototype.getRequestEventListener();
+            clientMetrics = prototype.getClientMetrics();
+            requestTracer = prototype.getRequestTracer();
 
             requestFilters.clear();
             responseFilters.clear();
@@ -803,7 +970,13 @@ public class AsyncHttpClientConfig {
                     requestFilters,
                     responseFilters,
                     ioExceptionFilters,
-                    requestCompressionLevel);
+                    requestCompressionLevel,
+                    hedgingPolicy,
+                    coalescingPolicy,
+                    responseCache,
+                    requestEventListener,
+                    clientMetrics,
+                    requestTracer);
         }
     }
 }
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client;
+
+/**
+ * An {@link AsyncHandler} holding a resource for the duration of a request, typically the wrapper installed by a
+ * {@link com.ning.http.client.filter.RequestFilter}. The resource is normally released by {@link #onCompleted()} or
+ * {@link #onThrowable(Throwable)}, but no callback follows when the {@link AsyncHttpProvider} fails to execute the
+ * request or when its {@link java.util.concurrent.Future} is cancelled: {@link AsyncHttpClient} then invokes
+ * {@link #release()}.
+ */
+public interface ReleasableAsyncHandler<T> extends AsyncHandler<T> {
+
+    /**
+     * Release the resource held for the request. Invoked at most once by {@link AsyncHttpClient}, but possibly after
+     * {@link #onCompleted()} or {@link #onThrowable(Throwable)}, so it must do nothing when already released.
+     */
+    void release();
+}
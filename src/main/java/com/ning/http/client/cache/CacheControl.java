@@ -0,0 +1,147 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.cache;
+
+import java.util.List;
+
+/**
+ * The directives of one or more Cache-Control headers, as defined by RFC 7234 section 5.2 and RFC 5861.
+ */
+public class CacheControl {
+
+    private int maxAge = -1;
+    private boolean noCache;
+    private boolean noStore;
+    private boolean mustRevalidate;
+    private int staleWhileRevalidate = -1;
+    private int staleIfError = -1;
+
+    private CacheControl() {
+    }
+
+    /**
+     * Parse the values of the Cache-Control headers. Unknown directives are ignored.
+     *
+     * @param values the header values, may be null
+     * @return a {@link CacheControl}
+     */
+    public static CacheControl parse(List<String> values) {
+        CacheControl cc = new CacheControl();
+        if (values == null) {
+            return cc;
+        }
+
+        for (String value : values) {
+            for (String directive : value.split(",")) {
+                directive = directive.trim();
+                String name = directive;
+                String argument = null;
+                int eq = directive.indexOf('=');
+                if (eq > 0) {
+                    name = directive.substring(0, eq).trim();
+                    argument = directive.substring(eq + 1).trim();
+                    if (argument.length() > 1 && argument.charAt(0) == '"') {
+                        argument = argument.substring(1, argument.length() - 1);
+                    }
+                }
+                cc.apply(name.toLowerCase(), argument);
+            }
+        }
+        return cc;
+    }
+
+    void apply(String name, String argument) {
+        if ("max-age".equals(name)) {
+            maxAge = seconds(argument);
+        } else if ("no-cache".equals(name)) {
+            noCache = true;
+        } else if ("no-store".equals(name)) {
+            noStore = true;
+        } else if ("must-revalidate".equals(name)) {
+            mustRevalidate = true;
+        } else if ("stale-while-revalidate".equals(name)) {
+            staleWhileRevalidate = seconds(argument);
+        } else if ("stale-if-error".equals(name)) {
+            staleIfError = seconds(argument);
+        }
+    }
+
+    static int seconds(String argument) {
+        if (argument == null) {
+            return -1;
+        }
+        try {
+            long value = Long.parseLong(argument);
+            return value < 0 ? -1 : (int) Math.min(value, Integer.MAX_VALUE);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Return the max-age directive in seconds, or -1 if absent.
+     *
+     * @return the max-age directive in seconds, or -1 if absent.
+     */
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Return true if the no-cache directive is present, e.g. a stored response must be revalidated before use.
+     *
+     * @return true if the no-cache directive is present.
+     */
+    public boolean isNoCache() {
+        return noCache;
+    }
+
+    /**
+     * Return true if the no-store directive is present, e.g. the response must not be stored.
+     *
+     * @return true if the no-store directive is present.
+     */
+    public boolean isNoStore() {
+        return noStore;
+    }
+
+    /**
+     * Return true if the must-revalidate directive is present, e.g. a stale response must never be served.
+     *
+     * @return true if the must-revalidate directive is present.
+     */
+    public boolean isMustRevalidate() {
+        return mustRevalidate;
+    }
+
+    /**
+     * Return the stale-while-revalidate directive of RFC 5861 in seconds, or -1 if absent.
+     *
+     * @return the stale-while-revalidate directive in seconds, or -1 if absent.
+     */
+    public int getStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    /**
+     * Return the stale-if-error directive of RFC 5861 in seconds, or -1 if absent.
+     *
+     * @return the stale-if-error directive in seconds, or -1 if absent.
+     */
+    public int getStaleIfError() {
+        return staleIfError;
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.cache;
+
+import com.ning.http.client.FluentCaseInsensitiveStringsMap;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.Request;
+import com.ning.http.util.DateUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A response stored by a {@link ResponseCache}: its status, headers and body, and the time the request was sent and the
+ * response received, from which the age of the entry is computed as described by RFC 7234 section 4.2.3.
+ */
+public class CacheEntry {
+
+    private final String url;
+    private final int statusCode;
+    private final String statusText;
+    private final String protocolName;
+    private final int protocolMajorVersion;
+    private final int protocolMinorVersion;
+    private final FluentCaseInsensitiveStringsMap headers;
+    private final Map<String, String> varyValues;
+    private final ByteBuffer body;
+    private final long requestTime;
+    private final long responseTime;
+
+    CacheEntry(String url, int statusCode, String statusText, String protocolName, int protocolMajorVersion,
+               int protocolMinorVersion, FluentCaseInsensitiveStringsMap headers, Map<String, String> varyValues,
+               ByteBuffer body, long requestTime, long responseTime) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.statusText = statusText;
+        this.protocolName = protocolName;
+        this.protocolMajorVersion = protocolMajorVersion;
+        this.protocolMinorVersion = protocolMinorVersion;
+        this.headers = headers;
+        this.varyValues = varyValues;
+        this.body = body.asReadOnlyBuffer();
+        this.requestTime = requestTime;
+        this.responseTime = responseTime;
+    }
+
+    static CacheEntry create(Request request, HttpResponseStatus status, HttpResponseHeaders responseHeaders,
+                             ByteBuffer body, long requestTime, long responseTime) {
+        FluentCaseInsensitiveStringsMap headers = new FluentCaseInsensitiveStringsMap(responseHeaders.getHeaders());
+        return new CacheEntry(request.getUrl(), status.getStatusCode(), status.getStatusText(),
+                status.getProtocolName(), status.getProtocolMajorVersion(), status.getProtocolMinorVersion(),
+                headers, varyValues(request, headers), body, requestTime, responseTime);
+    }
+
+    private static Map<String, String> varyValues(Request request, FluentCaseInsensitiveStringsMap headers) {
+        Map<String, String> values = new HashMap<String, String>();
+        List<String> vary = headers.get("Vary");
+        if (vary != null) {
+            for (String v : vary) {
+                for (String name : v.split(",")) {
+                    name = name.trim().toLowerCase();
+                    if (name.length() > 0) {
+                        values.put(name, request.getHeaders().getJoinedValue(name, ","));
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Return the url of the request this entry is the response of.
+     *
+     * @return the url
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getStatusText() {
+        return statusText;
+    }
+
+    public String getProtocolName() {
+        return protocolName;
+    }
+
+    public int getProtocolMajorVersion() {
+        return protocolMajorVersion;
+    }
+
+    public int getProtocolMinorVersion() {
+        return protocolMinorVersion;
+    }
+
+    /**
+     * Return the stored response headers. The returned map must not be modified.
+     *
+     * @return the stored response headers.
+     */
+    public FluentCaseInsensitiveStringsMap getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Return a read-only view of the body, which may be backed by a memory-mapped file.
+     *
+     * @return a read-only {@link ByteBuffer}
+     */
+    public ByteBuffer getBody() {
+        return body.duplicate();
+    }
+
+    public long getRequestTime() {
+        return requestTime;
+    }
+
+    public long getResponseTime() {
+        return responseTime;
+    }
+
+    /**
+     * Return the approximate memory used by this entry, in bytes.
+     *
+     * @return the approximate size of this entry.
+     */
+    public int size() {
+        int size = body.remaining() + url.length() + 64;
+        for (Map.Entry<String, List<String>> header : headers) {
+            size += header.getKey().length();
+            for (String value : header.getValue()) {
+                size += value.length();
+            }
+        }
+        return size;
+    }
+
+    public CacheControl getCacheControl() {
+        return CacheControl.parse(headers.get("Cache-Control"));
+    }
+
+    public String getETag() {
+        return headers.getFirstValue("ETag");
+    }
+
+    public String getLastModified() {
+        return headers.getFirstValue("Last-Modified");
+    }
+
+    /**
+     * Return true if the entry has an ETag or Last-Modified header, so it can be revalidated with a conditional request.
+     *
+     * @return true if the entry can be revalidated.
+     */
+    public boolean hasValidator() {
+        return getETag() != null || getLastModified() != null;
+    }
+
+    /**
+     * Return true if the entry was stored for a request with the same values of the headers listed in the Vary
+     * response header.
+     *
+     * @param request a {@link Request}
+     * @return true if the entry can be used to answer the {@link Request}
+     */
+    public boolean matches(Request request) {
+        for (Map.Entry<String, String> e : varyValues.entrySet()) {
+            String value = request.getHeaders().getJoinedValue(e.getKey(), ",");
+            if (value == null ? e.getValue() != null : !value.equals(e.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the current age of the entry in millisecond, as described by RFC 7234 section 4.2.3.
+     *
+     * @param now the current time in millisecond
+     * @return the current age in millisecond.
+     */
+    public long getAge(long now) {
+        long date = dateHeader("Date", responseTime);
+        long apparentAge = Math.max(0, responseTime - date);
+        long ageValue = CacheControl.seconds(headers.getFirstValue("Age")) * 1000L;
+        long correctedAgeValue = Math.max(0, ageValue) + (responseTime - requestTime);
+        return Math.max(apparentAge, correctedAgeValue) + (now - responseTime);
+    }
+
+    /**
+     * Return the freshness lifetime of the entry in millisecond, from the max-age directive, the Expires header or,
+     * when none is present, a tenth of the time since the Last-Modified date.
+     *
+     * @return the freshness lifetime in millisecond.
+     */
+    public long getFreshnessLifetime() {
+        CacheControl cc = getCacheControl();
+        if (cc.getMaxAge() >= 0) {
+            return cc.getMaxAge() * 1000L;
+        }
+
+        long date = dateHeader("Date", responseTime);
+        if (headers.containsKey("Expires")) {
+            // An invalid Expires value, e.g. 0, means already expired.
+            return Math.max(0, dateHeader("Expires", date) - date);
+        }
+
+        long lastModified = dateHeader("Last-Modified", -1);
+        if (lastModified > 0 && lastModified < date) {
+            return (date - lastModified) / 10;
+        }
+        return 0;
+    }
+
+    /**
+     * Return true if the entry can be served without revalidation.
+     *
+     * @param now the current time in millisecond
+     * @return true if the entry is fresh.
+     */
+    public boolean isFresh(long now) {
+        return !getCacheControl().isNoCache() && getFreshnessLifetime() > getAge(now);
+    }
+
+    private long dateHeader(String name, long defaultValue) {
+        String value = headers.getFirstValue(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            Date date = DateUtil.parseDate(value);
+            return date.getTime();
+        } catch (DateUtil.DateParseException ex) {
+            return name.equals("Expires") ? 0 : defaultValue;
+        }
+    }
+
+    /**
+     * Return a new entry whose headers are updated with the ones of a 304 Not Modified response, as described by RFC
+     * 7234 section 4.3.4.
+     */
+    CacheEntry revalidated(HttpResponseHeaders notModified, long requestTime, long responseTime) {
+        FluentCaseInsensitiveStringsMap updated = new FluentCaseInsensitiveStringsMap(headers);
+        if (notModified != null) {
+            for (Map.Entry<String, List<String>> header : notModified.getHeaders()) {
+                String name = header.getKey();
+                if (!name.equalsIgnoreCase("Content-Length") && !name.equalsIgnoreCase("Transfer-Encoding")) {
+                    updated.delete(name).add(name, header.getValue());
+                }
+            }
+        }
+        return new CacheEntry(url, statusCode, statusText, protocolName, protocolMajorVersion, protocolMinorVersion,
+                updated, varyValues, body, requestTime, responseTime);
+    }
+
+    /**
+     * Encode everything but the body.
+     */
+    byte[] encodeMetadata() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(url);
+        out.writeInt(statusCode);
+        out.writeUTF(statusText);
+        out.writeUTF(protocolName);
+        out.writeInt(protocolMajorVersion);
+        out.writeInt(protocolMinorVersion);
+        out.writeLong(requestTime);
+        out.writeLong(responseTime);
+
+        out.writeInt(headers.size());
+        for (Map.Entry<String, List<String>> header : headers) {
+            out.writeUTF(header.getKey());
+            out.writeInt(header.getValue().size());
+            for (String value : header.getValue()) {
+                out.writeUTF(value);
+            }
+        }
+
+        out.writeInt(varyValues.size());
+        for (Map.Entry<String, String> e : varyValues.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeBoolean(e.getValue() != null);
+            if (e.getValue() != null) {
+                out.writeUTF(e.getValue());
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static CacheEntry decode(byte[] metadata, ByteBuffer body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(metadata));
+        String url = in.readUTF();
+        int statusCode = in.readInt();
+        String statusText = in.readUTF();
+        String protocolName = in.readUTF();
+        int protocolMajorVersion = in.readInt();
+        int protocolMinorVersion = in.readInt();
+        long requestTime = in.readLong();
+        long responseTime = in.readLong();
+
+        FluentCaseInsensitiveStringsMap headers = new FluentCaseInsensitiveStringsMap();
+        for (int i = in.readInt(); i > 0; i--) {
+            String name = in.readUTF();
+            List<String> values = new ArrayList<String>();
+            for (int j = in.readInt(); j > 0; j--) {
+                values.add(in.readUTF());
+            }
+            headers.add(name, values);
+        }
+
+        Map<String, String> varyValues = new HashMap<String, String>();
+        for (int i = in.readInt(); i > 0; i--) {
+            String name = in.readUTF();
+            varyValues.put(name, in.readBoolean() ? in.readUTF() : null);
+        }
+
+        return new CacheEntry(url, statusCode, statusText, protocolName, protocolMajorVersion, protocolMinorVersion,
+                headers, varyValues, body, requestTime, responseTime);
+    }
+}
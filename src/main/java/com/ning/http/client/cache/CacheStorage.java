@@ -0,0 +1,50 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.cache;
+
+/**
+ * A tier of a {@link ResponseCache}, where {@link CacheEntry} are stored.
+ */
+public interface CacheStorage {
+
+    /**
+     * Return the {@link CacheEntry} stored for the key, or null.
+     *
+     * @param key the cache key
+     * @return the {@link CacheEntry}, or null
+     */
+    CacheEntry get(String key);
+
+    /**
+     * Store a {@link CacheEntry}, replacing the one stored for the same key.
+     *
+     * @param key   the cache key
+     * @param entry the {@link CacheEntry}
+     */
+    void put(String key, CacheEntry entry);
+
+    /**
+     * Remove the {@link CacheEntry} stored for the key, if any.
+     *
+     * @param key the cache key
+     */
+    void remove(String key);
+
+    /**
+     * Remove all the stored {@link CacheEntry}
+     */
+    void clear();
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.cache;
+
+import com.ning.http.client.AsyncHttpProvider;
+import com.ning.http.client.HttpResponseBodyPart;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+/**
+ * The body of a {@link CacheEntry}, delivered as a single {@link HttpResponseBodyPart}. The bytes are only copied out of
+ * the stored {@link ByteBuffer} when {@link #getBodyPartBytes()} or {@link #writeTo(OutputStream)} is invoked.
+ */
+class CachedResponseBodyPart extends HttpResponseBodyPart {
+
+    private final ByteBuffer body;
+    private byte[] bytes;
+
+    CachedResponseBodyPart(URI uri, ByteBuffer body, AsyncHttpProvider<?> provider) {
+        super(uri, provider);
+        this.body = body;
+    }
+
+    public synchronized byte[] getBodyPartBytes() {
+        if (bytes == null) {
+            bytes = new byte[body.remaining()];
+            body.duplicate().get(bytes);
+        }
+        return bytes;
+    }
+
+    public int writeTo(OutputStream outputStream) throws IOException {
+        byte[] b = getBodyPartBytes();
+        outputStream.write(b);
+        return b.length;
+    }
+
+    public ByteBuffer getBodyByteBuffer() {
+        return body.duplicate();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.cache;
+
+import com.ning.http.client.AsyncHttpProvider;
+import com.ning.http.client.FluentCaseInsensitiveStringsMap;
+import com.ning.http.client.HttpResponseHeaders;
+
+import java.net.URI;
+
+/**
+ * The {@link HttpResponseHeaders} of a {@link CacheEntry}, with the Age header set to the current age of the entry.
+ */
+class CachedResponseHeaders extends HttpResponseHeaders {
+
+    private final FluentCaseInsensitiveStringsMap headers;
+
+    CachedResponseHeaders(URI uri, CacheEntry entry, long now, AsyncHttpProvider<?> provider) {
+        super(uri, provider);
+        headers = new FluentCaseInsensitiveStringsMap(entry.getHeaders());
+        headers.replace("Age", String.valueOf(entry.getAge(now) / 1000));
+    }
+
+    public FluentCaseInsensitiveStringsMap getHeaders() {
+        return headers;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.cache;
+
+import com.ning.http.client.AsyncHttpProvider;
+import com.ning.http.client.HttpResponseStatus;
+
+import java.net.URI;
+
+/**
+ * The {@link HttpResponseStatus} of a {@link CacheEntry}
+ */
+class CachedResponseStatus extends HttpResponseStatus {
+
+    private final CacheEntry entry;
+
+    CachedResponseStatus(URI uri, CacheEntry entry, AsyncHttpProvider<?> provider) {
+        super(uri, provider);
+        this.entry = entry;
+    }
+
+    public int getStatusCode() {
+        return entry.getStatusCode();
+    }
+
+    public String getStatusText() {
+        return entry.getStatusText();
+    }
+
+    public String getProtocolName() {
+        return entry.getProtocolName();
+    }
+
+    public int getProtocolMajorVersion() {
+        return entry.getProtocolMajorVersion();
+    }
+
+    public int getProtocolMinorVersion() {
+        return entry.getProtocolMinorVersion();
+    }
+
+    public String getProtocolText() {
+        return entry.getProtocolName() + "/" + entry.getProtocolMajorVersion() + "." + entry.getProtocolMinorVersion();
+    }
+}
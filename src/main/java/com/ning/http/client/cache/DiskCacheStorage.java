@@ -0,0 +1,271 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link CacheStorage} which keeps one file per entry in a directory, and evicts the least recently used ones once
+ * their total size exceeds the configured maximum. Entries are read using memory-mapped files, so the body of a cached
+ * response is never copied on the heap unless the {@link com.ning.http.client.AsyncHandler} asks for its bytes.
+ * <p/>
+ * Entries found in the directory when the storage is created are reused, least recently modified first in the
+ * eviction order.
+ * <p/>
+ * Entries are written by a background thread, so {@link #put(String, CacheEntry)} never blocks the I/O thread that
+ * completed the response. Until its file is written, an entry is served from memory.
+ */
+public class DiskCacheStorage implements CacheStorage {
+
+    private final static Logger logger = LoggerFactory.getLogger(DiskCacheStorage.class);
+
+    private final static String SUFFIX = ".entry";
+
+    private final static char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File directory;
+    private final long maxSizeInBytes;
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private final Map<String, CacheEntry> pending = new HashMap<String, CacheEntry>();
+    private final Executor writer;
+    private long size;
+
+    public DiskCacheStorage(File directory, long maxSizeInBytes) {
+        // A single thread keeps the writes in order, and is only started when there is something to write.
+        this(directory, maxSizeInBytes, new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "AsyncHttpClient-CacheWriter");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }));
+    }
+
+    DiskCacheStorage(File directory, long maxSizeInBytes, Executor writer) {
+        this.directory = directory;
+        this.maxSizeInBytes = maxSizeInBytes;
+        this.writer = writer;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Unable to create cache directory " + directory);
+        }
+
+        File[] existing = directory.listFiles(new FileFilter() {
+            public boolean accept(File f) {
+                return f.isFile() && f.getName().endsWith(SUFFIX);
+            }
+        });
+        Arrays.sort(existing, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                return f1.lastModified() < f2.lastModified() ? -1 : (f1.lastModified() == f2.lastModified() ? 0 : 1);
+            }
+        });
+        for (File f : existing) {
+            files.put(f.getName(), f.length());
+            size += f.length();
+        }
+        evict();
+    }
+
+    public synchronized CacheEntry get(String key) {
+        CacheEntry written = pending.get(key);
+        if (written != null) {
+            return written;
+        }
+
+        String name = fileName(key);
+        if (!files.containsKey(name)) {
+            return null;
+        }
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(new File(directory, name), "r");
+            MappedByteBuffer buffer;
+            try {
+                // The mapping stays valid once the file is closed.
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            } finally {
+                raf.close();
+            }
+
+            byte[] storedKey = new byte[buffer.getInt()];
+            buffer.get(storedKey);
+            if (!key.equals(new String(storedKey, "UTF-8"))) {
+                // Hash collision, don't serve another url's response.
+                return null;
+            }
+
+            byte[] metadata = new byte[buffer.getInt()];
+            buffer.get(metadata);
+            return CacheEntry.decode(metadata, buffer.slice());
+        } catch (IOException ex) {
+            logger.warn("Unable to read cache entry " + name, ex);
+            remove(key);
+            return null;
+        }
+    }
+
+    public synchronized void put(final String key, final CacheEntry entry) {
+        pending.put(key, entry);
+        try {
+            writer.execute(new Runnable() {
+                public void run() {
+                    write(key, entry);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            logger.warn("Unable to write cache entry for " + key, ex);
+            pending.remove(key);
+        }
+    }
+
+    private void write(String key, CacheEntry entry) {
+        synchronized (this) {
+            if (pending.get(key) != entry) {
+                // Replaced or removed while waiting to be written.
+                return;
+            }
+        }
+
+        String name = fileName(key);
+        File tmp = new File(directory, name + ".tmp");
+        try {
+            byte[] storedKey = key.getBytes("UTF-8");
+            byte[] metadata = entry.encodeMetadata();
+
+            ByteBuffer header = ByteBuffer.allocate(8 + storedKey.length + metadata.length);
+            header.putInt(storedKey.length).put(storedKey).putInt(metadata.length).put(metadata);
+            header.flip();
+            ByteBuffer body = entry.getBody();
+
+            RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+            try {
+                FileChannel channel = raf.getChannel();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                while (body.hasRemaining()) {
+                    channel.write(body);
+                }
+            } finally {
+                raf.close();
+            }
+
+            synchronized (this) {
+                if (pending.get(key) != entry) {
+                    tmp.delete();
+                    return;
+                }
+                pending.remove(key);
+                delete(name);
+                File file = new File(directory, name);
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Unable to rename " + tmp + " to " + file);
+                }
+                files.put(name, file.length());
+                size += file.length();
+                evict();
+            }
+        } catch (IOException ex) {
+            logger.warn("Unable to write cache entry " + name, ex);
+            synchronized (this) {
+                if (pending.get(key) == entry) {
+                    pending.remove(key);
+                }
+            }
+            tmp.delete();
+        }
+    }
+
+    public synchronized void remove(String key) {
+        pending.remove(key);
+        delete(fileName(key));
+    }
+
+    public synchronized void clear() {
+        pending.clear();
+        for (String name : files.keySet().toArray(new String[files.size()])) {
+            delete(name);
+        }
+    }
+
+    /**
+     * Return the total size of the entries written on disk, in bytes.
+     *
+     * @return the total size of the stored entries.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    private void delete(String name) {
+        Long length = files.remove(name);
+        if (length != null) {
+            size -= length;
+            new File(directory, name).delete();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator();
+        while (size > maxSizeInBytes && it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            size -= e.getValue();
+            new File(directory, e.getKey()).delete();
+            it.remove();
+        }
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder b = new StringBuilder(digest.length * 2 + SUFFIX.length());
+            for (byte d : digest) {
+                b.append(HEX[(d >> 4) & 0xf]).append(HEX[d & 0xf]);
+            }
+            return b.append(SUFFIX).toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link CacheStorage} which keeps the entries on the heap, and evicts the least recently used ones once their total
+ * size exceeds the configured maximum.
+ */
+public class MemoryCacheStorage implements CacheStorage {
+
+    private final long maxSizeInBytes;
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+    private long size;
+
+    public MemoryCacheStorage(long maxSizeInBytes) {
+        this.maxSizeInBytes = maxSizeInBytes;
+    }
+
+    public synchronized CacheEntry get(String key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(String key, CacheEntry entry) {
+        int entrySize = entry.size();
+        if (entrySize > maxSizeInBytes) {
+            remove(key);
+            return;
+        }
+
+        CacheEntry previous = entries.put(key, entry);
+        if (previous != null) {
+            size -= previous.size();
+        }
+        size += entrySize;
+
+        Iterator<Map.Entry<String, CacheEntry>> it = entries.entrySet().iterator();
+        while (size > maxSizeInBytes && it.hasNext()) {
+            size -= it.next().getValue().size();
+            it.remove();
+        }
+    }
+
+    public synchronized void remove(String key) {
+        CacheEntry previous = entries.remove(key);
+        if (previous != null) {
+            size -= previous.size();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Return the total size of the stored entries, in bytes.
+     *
+     * @return the total size of the stored entries.
+     */
+    public synchronized long size() {
+        return size;
+    }
+}
@@ -0,0 +1,696 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.cache;
+
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.AsyncHttpProvider;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.Request;
+import com.ning.http.client.RequestBuilder;
+import com.ning.http.util.AsyncHttpProviderUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A private HTTP cache, as described by RFC 7234. Responses to GET requests are stored in memory and, optionally, on
+ * disk when the server allows it, and served without any network call for as long as they are fresh. Stale responses
+ * with an ETag or Last-Modified header are revalidated using a conditional request: when the server answers
+ * 304 Not Modified, the stored response is served.
+ * <p/>
+ * A response served from the cache goes through the usual {@link AsyncHandler} callbacks: status, headers (with an Age
+ * header), then the whole body as a single {@link HttpResponseBodyPart}.
+ * <p/>
+ * Stale responses can also be served as described by RFC 5861, unless they carry the must-revalidate or no-cache
+ * directive:
+ * <ul>
+ * <li>stale-while-revalidate: the stale response is served right away, and refreshed in the background. At most one
+ * refresh per url is in flight.</li>
+ * <li>stale-if-error: the stale response is served when the server answers with a 5xx status, or when the
+ * connection fails.</li>
+ * </ul>
+ * The windows come from the response's Cache-Control directives, or from the defaults configured on the
+ * {@link Builder} when the response has none.
+ * <p/>
+ * {@code
+ *      AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder()
+ *          .setResponseCache(new ResponseCache.Builder()
+ *              .setMaxMemorySizeInBytes(32 * 1024 * 1024)
+ *              .setDiskCache(new File("/var/cache/myapp"), 512 * 1024 * 1024)
+ *              .build())
+ *          .build();
+ * }
+ */
+public class ResponseCache {
+
+    private final static Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    private final CacheStorage memoryStorage;
+    private final CacheStorage diskStorage;
+    private final int maxEntrySizeInBytes;
+    private final long staleWhileRevalidateInMs;
+    private final long staleIfErrorInMs;
+    private final ConcurrentHashMap<String, Boolean> refreshing = new ConcurrentHashMap<String, Boolean>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private ResponseCache(CacheStorage memoryStorage, CacheStorage diskStorage, int maxEntrySizeInBytes,
+                          long staleWhileRevalidateInMs, long staleIfErrorInMs) {
+        this.memoryStorage = memoryStorage;
+        this.diskStorage = diskStorage;
+        this.maxEntrySizeInBytes = maxEntrySizeInBytes;
+        this.staleWhileRevalidateInMs = staleWhileRevalidateInMs;
+        this.staleIfErrorInMs = staleIfErrorInMs;
+    }
+
+    /**
+     * Return the number of requests served from the cache without any network call.
+     *
+     * @return the number of cache hits.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Return the number of requests served with a stale response, either while it was being revalidated or because
+     * the server failed.
+     *
+     * @return the number of stale responses served.
+     */
+    public long getStaleHitCount() {
+        return staleHits.get();
+    }
+
+    /**
+     * Return the number of requests served from the cache after the server answered 304 Not Modified.
+     *
+     * @return the number of successful revalidations.
+     */
+    public long getRevalidatedCount() {
+        return revalidated.get();
+    }
+
+    /**
+     * Return the number of cacheable requests for which no usable entry was found.
+     *
+     * @return the number of cache misses.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Remove the response stored for the url, if any.
+     *
+     * @param url the url of a GET request
+     */
+    public void invalidate(String url) {
+        memoryStorage.remove(url);
+        if (diskStorage != null) {
+            diskStorage.remove(url);
+        }
+    }
+
+    /**
+     * Remove every stored response.
+     */
+    public void clear() {
+        memoryStorage.clear();
+        if (diskStorage != null) {
+            diskStorage.clear();
+        }
+    }
+
+    /**
+     * Execute the {@link Request}, or serve it from the cache.
+     *
+     * @param provider the {@link AsyncHttpProvider} used if a network call is required
+     * @param request  a {@link Request}
+     * @param handler  an {@link AsyncHandler}
+     * @param <T>      Type of the value that will be returned by the associated {@link Future}
+     * @return a {@link Future} of type T
+     * @throws IOException if the network call cannot be made.
+     */
+    public <T> Future<T> execute(AsyncHttpProvider<?> provider, Request request, AsyncHandler<T> handler)
+            throws IOException {
+
+        String method = request.getReqType();
+        if (!"GET".equals(method)) {
+            if (isUnsafe(method)) {
+                // RFC 7234 section 4.4
+                invalidate(request.getUrl());
+            }
+            return provider.execute(request, handler);
+        }
+
+        CacheControl requestCacheControl = CacheControl.parse(request.getHeaders().get("Cache-Control"));
+        if (requestCacheControl.isNoStore()) {
+            return provider.execute(request, handler);
+        }
+
+        String key = request.getUrl();
+        long now = System.currentTimeMillis();
+        CacheEntry entry = lookup(key, request);
+        if (entry != null) {
+            boolean forceRevalidation = requestCacheControl.isNoCache()
+                    || "no-cache".equalsIgnoreCase(request.getHeaders().getFirstValue("Pragma"));
+
+            if (!forceRevalidation
+                    && entry.isFresh(now)
+                    && (requestCacheControl.getMaxAge() < 0 || entry.getAge(now) <= requestCacheControl.getMaxAge() * 1000L)) {
+                hits.incrementAndGet();
+                return serve(provider, entry, handler);
+            }
+
+            if (!forceRevalidation && canServeStale(entry, now, entry.getCacheControl().getStaleWhileRevalidate(),
+                    staleWhileRevalidateInMs)) {
+                staleHits.incrementAndGet();
+                refresh(provider, key, request, entry);
+                return serve(provider, entry, handler);
+            }
+
+            RevalidationHandler<T> revalidation = new RevalidationHandler<T>(provider, key, request, entry, handler);
+            try {
+                return new StaleIfErrorFuture<T>(provider.execute(revalidationRequest(request, entry), revalidation),
+                        revalidation);
+            } catch (IOException ex) {
+                if (!revalidation.canServeStaleOnError()) {
+                    throw ex;
+                }
+                revalidation.onThrowable(ex);
+                return new CompletedFuture<T>(revalidation.fallback, revalidation.hasFallback ? null : ex);
+            }
+        }
+
+        misses.incrementAndGet();
+        return provider.execute(request, new StoringHandler<T>(key, request, handler));
+    }
+
+    /**
+     * Return true if the stale entry may still be served, within the window of the directive, or of the default
+     * window if the response has no such directive.
+     */
+    private static boolean canServeStale(CacheEntry entry, long now, int directiveInSec, long defaultWindowInMs) {
+        CacheControl cc = entry.getCacheControl();
+        if (cc.isMustRevalidate() || cc.isNoCache()) {
+            return false;
+        }
+        long window = directiveInSec >= 0 ? directiveInSec * 1000L : defaultWindowInMs;
+        return window > 0 && entry.getAge(now) <= entry.getFreshnessLifetime() + window;
+    }
+
+    /**
+     * Refresh a stale entry in the background, unless it is already being refreshed.
+     */
+    private void refresh(AsyncHttpProvider<?> provider, final String key, Request request, CacheEntry entry) {
+        if (refreshing.putIfAbsent(key, Boolean.TRUE) != null) {
+            return;
+        }
+
+        try {
+            provider.execute(revalidationRequest(request, entry),
+                    new RevalidationHandler<Object>(provider, key, request, entry, new RefreshHandler(key)));
+        } catch (IOException ex) {
+            refreshing.remove(key);
+            logger.debug("Unable to refresh " + key, ex);
+        }
+    }
+
+    private static boolean isUnsafe(String method) {
+        return !"HEAD".equals(method) && !"OPTIONS".equals(method) && !"TRACE".equals(method);
+    }
+
+    private CacheEntry lookup(String key, Request request) {
+        CacheEntry entry = memoryStorage.get(key);
+        if (entry == null && diskStorage != null) {
+            entry = diskStorage.get(key);
+            if (entry != null) {
+                memoryStorage.put(key, entry);
+            }
+        }
+        return entry != null && entry.matches(request) ? entry : null;
+    }
+
+    private void store(String key, CacheEntry entry) {
+        memoryStorage.put(key, entry);
+        if (diskStorage != null) {
+            diskStorage.put(key, entry);
+        }
+    }
+
+    private static Request revalidationRequest(Request request, CacheEntry entry) {
+        if (!entry.hasValidator()) {
+            return request;
+        }
+        RequestBuilder builder = new RequestBuilder(request);
+        if (entry.getETag() != null) {
+            builder.setHeader("If-None-Match", entry.getETag());
+        }
+        if (entry.getLastModified() != null) {
+            builder.setHeader("If-Modified-Since", entry.getLastModified());
+        }
+        return builder.build();
+    }
+
+    private static <T> Future<T> serve(AsyncHttpProvider<?> provider, CacheEntry entry, AsyncHandler<T> handler) {
+        try {
+            return new CompletedFuture<T>(replay(provider, entry, handler), null);
+        } catch (Throwable t) {
+            handler.onThrowable(t);
+            return new CompletedFuture<T>(null, t);
+        }
+    }
+
+    /**
+     * Invoke the {@link AsyncHandler} callbacks with the stored response.
+     */
+    static <T> T replay(AsyncHttpProvider<?> provider, CacheEntry entry, AsyncHandler<T> handler) throws Exception {
+        URI uri = AsyncHttpProviderUtils.createUri(entry.getUrl());
+        ByteBuffer body = entry.getBody();
+        if (handler.onStatusReceived(new CachedResponseStatus(uri, entry, provider)) == AsyncHandler.STATE.CONTINUE
+                && handler.onHeadersReceived(new CachedResponseHeaders(uri, entry, System.currentTimeMillis(), provider))
+                == AsyncHandler.STATE.CONTINUE
+                && body.hasRemaining()) {
+            handler.onBodyPartReceived(new CachedResponseBodyPart(uri, body, provider));
+        }
+        return handler.onCompleted();
+    }
+
+    /**
+     * Delegate to the user's {@link AsyncHandler} while recording the response, and store it once complete if the
+     * server allows it.
+     */
+    private class StoringHandler<T> implements AsyncHandler<T> {
+
+        protected final String key;
+        protected final Request request;
+        protected final AsyncHandler<T> asyncHandler;
+        protected final long requestTime = System.currentTimeMillis();
+        private HttpResponseStatus status;
+        private HttpResponseHeaders headers;
+        private ByteArrayOutputStream body;
+
+        StoringHandler(String key, Request request, AsyncHandler<T> asyncHandler) {
+            this.key = key;
+            this.request = request;
+            this.asyncHandler = asyncHandler;
+        }
+
+        public void onThrowable(Throwable t) {
+            asyncHandler.onThrowable(t);
+        }
+
+        public STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+            if (isStorable(responseStatus.getStatusCode())) {
+                status = responseStatus;
+            }
+            return record(asyncHandler.onStatusReceived(responseStatus));
+        }
+
+        public STATE onHeadersReceived(HttpResponseHeaders responseHeaders) throws Exception {
+            if (status != null && headers == null) {
+                if (isStorable(responseHeaders)) {
+                    headers = responseHeaders;
+                    body = new ByteArrayOutputStream();
+                } else {
+                    status = null;
+                }
+            }
+            return record(asyncHandler.onHeadersReceived(responseHeaders));
+        }
+
+        public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+            if (body != null) {
+                byte[] bytes = bodyPart.getBodyPartBytes();
+                if (body.size() + bytes.length > maxEntrySizeInBytes) {
+                    discard();
+                } else {
+                    body.write(bytes);
+                }
+            }
+            return record(asyncHandler.onBodyPartReceived(bodyPart));
+        }
+
+        public T onCompleted() throws Exception {
+            if (body != null) {
+                store(key, CacheEntry.create(request, status, headers, ByteBuffer.wrap(body.toByteArray()),
+                        requestTime, System.currentTimeMillis()));
+            }
+            return asyncHandler.onCompleted();
+        }
+
+        /**
+         * A response aborted by the {@link AsyncHandler} is incomplete, hence cannot be stored.
+         */
+        private STATE record(STATE state) {
+            if (state == STATE.ABORT) {
+                discard();
+            }
+            return state;
+        }
+
+        private void discard() {
+            status = null;
+            body = null;
+        }
+
+        private boolean isStorable(int statusCode) {
+            switch (statusCode) {
+                case 200:
+                case 203:
+                case 300:
+                case 301:
+                case 410:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private boolean isStorable(HttpResponseHeaders responseHeaders) {
+            CacheControl cc = CacheControl.parse(responseHeaders.getHeaders().get("Cache-Control"));
+            if (cc.isNoStore()) {
+                return false;
+            }
+
+            List<String> vary = responseHeaders.getHeaders().get("Vary");
+            if (vary != null && vary.contains("*")) {
+                return false;
+            }
+
+            String contentLength = responseHeaders.getHeaders().getFirstValue("Content-Length");
+            if (contentLength != null) {
+                try {
+                    if (Long.parseLong(contentLength.trim()) > maxEntrySizeInBytes) {
+                        return false;
+                    }
+                } catch (NumberFormatException ex) {
+                    return false;
+                }
+            }
+
+            return cc.getMaxAge() >= 0
+                    || responseHeaders.getHeaders().containsKey("Expires")
+                    || responseHeaders.getHeaders().containsKey("ETag")
+                    || responseHeaders.getHeaders().containsKey("Last-Modified");
+        }
+    }
+
+    /**
+     * Send a conditional request for a stale {@link CacheEntry}. The stored response is served if the server answers
+     * 304 Not Modified, otherwise the new response is delivered, and stored.
+     */
+    private class RevalidationHandler<T> extends StoringHandler<T> {
+
+        private final AsyncHttpProvider<?> provider;
+        private final CacheEntry entry;
+        private boolean notModified;
+        private boolean serverError;
+        private boolean delivered;
+        private HttpResponseHeaders notModifiedHeaders;
+        private volatile boolean hasFallback;
+        private volatile T fallback;
+
+        RevalidationHandler(AsyncHttpProvider<?> provider, String key, Request request, CacheEntry entry,
+                            AsyncHandler<T> asyncHandler) {
+            super(key, request, asyncHandler);
+            this.provider = provider;
+            this.entry = entry;
+        }
+
+        @Override
+        public STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+            if (responseStatus.getStatusCode() == 304) {
+                notModified = true;
+                return STATE.CONTINUE;
+            }
+            if (responseStatus.getStatusCode() >= 500 && canServeStaleOnError()) {
+                serverError = true;
+                return STATE.CONTINUE;
+            }
+            misses.incrementAndGet();
+            delivered = true;
+            return super.onStatusReceived(responseStatus);
+        }
+
+        @Override
+        public STATE onHeadersReceived(HttpResponseHeaders responseHeaders) throws Exception {
+            if (notModified) {
+                if (notModifiedHeaders == null) {
+                    notModifiedHeaders = responseHeaders;
+                }
+                return STATE.CONTINUE;
+            }
+            if (serverError) {
+                // The stale response is replayed once the error response is done.
+                return STATE.CONTINUE;
+            }
+            return super.onHeadersReceived(responseHeaders);
+        }
+
+        @Override
+        public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+            return notModified || serverError ? STATE.CONTINUE : super.onBodyPartReceived(bodyPart);
+        }
+
+        @Override
+        public void onThrowable(Throwable t) {
+            if (delivered || !canServeStaleOnError()) {
+                super.onThrowable(t);
+                return;
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Serving stale response for " + key, t);
+            }
+            staleHits.incrementAndGet();
+            try {
+                fallback = replay(provider, entry, asyncHandler);
+                hasFallback = true;
+            } catch (Throwable ex) {
+                asyncHandler.onThrowable(ex);
+            }
+        }
+
+        @Override
+        public T onCompleted() throws Exception {
+            if (serverError) {
+                staleHits.incrementAndGet();
+                return replay(provider, entry, asyncHandler);
+            }
+            if (!notModified) {
+                return super.onCompleted();
+            }
+
+            CacheEntry updated = entry.revalidated(notModifiedHeaders, requestTime, System.currentTimeMillis());
+            store(key, updated);
+            revalidated.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Revalidated cached response for {}", key);
+            }
+            return replay(provider, updated, asyncHandler);
+        }
+
+        private boolean canServeStaleOnError() {
+            return canServeStale(entry, System.currentTimeMillis(), entry.getCacheControl().getStaleIfError(),
+                    staleIfErrorInMs);
+        }
+    }
+
+    /**
+     * The {@link AsyncHandler} of a background refresh, which only has to release the key once done.
+     */
+    private class RefreshHandler implements AsyncHandler<Object> {
+
+        private final String key;
+
+        RefreshHandler(String key) {
+            this.key = key;
+        }
+
+        public void onThrowable(Throwable t) {
+            refreshing.remove(key);
+            logger.debug("Unable to refresh " + key, t);
+        }
+
+        public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+            return STATE.CONTINUE;
+        }
+
+        public STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+            return STATE.CONTINUE;
+        }
+
+        public STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+            return STATE.CONTINUE;
+        }
+
+        public Object onCompleted() throws Exception {
+            refreshing.remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * The {@link Future} of a revalidation, which returns the stale response served by the
+     * {@link RevalidationHandler} when the connection failed.
+     */
+    private static class StaleIfErrorFuture<T> implements Future<T> {
+
+        private final Future<T> future;
+        private final RevalidationHandler<T> revalidation;
+
+        StaleIfErrorFuture(Future<T> future, RevalidationHandler<T> revalidation) {
+            this.future = future;
+            this.revalidation = revalidation;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return future.cancel(mayInterruptIfRunning);
+        }
+
+        public boolean isCancelled() {
+            return future.isCancelled() && !revalidation.hasFallback;
+        }
+
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        public T get() throws InterruptedException, ExecutionException {
+            try {
+                return future.get();
+            } catch (ExecutionException ex) {
+                if (revalidation.hasFallback) {
+                    return revalidation.fallback;
+                }
+                throw ex;
+            }
+        }
+
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            try {
+                return future.get(timeout, unit);
+            } catch (ExecutionException ex) {
+                if (revalidation.hasFallback) {
+                    return revalidation.fallback;
+                }
+                throw ex;
+            }
+        }
+    }
+
+    public static class Builder {
+        private long maxMemorySizeInBytes = 10 * 1024 * 1024;
+        private int maxEntrySizeInBytes = 1024 * 1024;
+        private File diskDirectory;
+        private long maxDiskSizeInBytes;
+        private int staleWhileRevalidateInSec;
+        private int staleIfErrorInSec;
+
+        public Builder() {
+        }
+
+        /**
+         * Set the maximum total size of the entries kept in memory. Default is 10MB.
+         *
+         * @param maxMemorySizeInBytes the maximum size of the memory tier
+         * @return a {@link Builder}
+         */
+        public Builder setMaxMemorySizeInBytes(long maxMemorySizeInBytes) {
+            this.maxMemorySizeInBytes = maxMemorySizeInBytes;
+            return this;
+        }
+
+        /**
+         * Set the maximum size of a single response body. Larger responses are never stored. Default is 1MB.
+         *
+         * @param maxEntrySizeInBytes the maximum size of a stored body
+         * @return a {@link Builder}
+         */
+        public Builder setMaxEntrySizeInBytes(int maxEntrySizeInBytes) {
+            this.maxEntrySizeInBytes = maxEntrySizeInBytes;
+            return this;
+        }
+
+        /**
+         * Enable the disk tier, backed by memory-mapped files. Default is disabled.
+         *
+         * @param directory          the directory where entries are stored
+         * @param maxDiskSizeInBytes the maximum size of the disk tier
+         * @return a {@link Builder}
+         */
+        public Builder setDiskCache(File directory, long maxDiskSizeInBytes) {
+            this.diskDirectory = directory;
+            this.maxDiskSizeInBytes = maxDiskSizeInBytes;
+            return this;
+        }
+
+        /**
+         * Set how long after expiration a response without the stale-while-revalidate directive may be served while
+         * it is refreshed in the background. Default is 0, e.g. only the directive is honoured.
+         *
+         * @param staleWhileRevalidateInSec the default stale-while-revalidate window, in seconds
+         * @return a {@link Builder}
+         */
+        public Builder setStaleWhileRevalidateInSec(int staleWhileRevalidateInSec) {
+            this.staleWhileRevalidateInSec = staleWhileRevalidateInSec;
+            return this;
+        }
+
+        /**
+         * Set how long after expiration a response without the stale-if-error directive may be served when the
+         * server fails. Default is 0, e.g. only the directive is honoured.
+         *
+         * @param staleIfErrorInSec the default stale-if-error window, in seconds
+         * @return a {@link Builder}
+         */
+        public Builder setStaleIfErrorInSec(int staleIfErrorInSec) {
+            this.staleIfErrorInSec = staleIfErrorInSec;
+            return this;
+        }
+
+        /**
+         * Build a {@link ResponseCache}
+         *
+         * @return a {@link ResponseCache}
+         */
+        public ResponseCache build() {
+            return new ResponseCache(new MemoryCacheStorage(maxMemorySizeInBytes),
+                    diskDirectory != null ? new DiskCacheStorage(diskDirectory, maxDiskSizeInBytes) : null,
+                    maxEntrySizeInBytes,
+                    staleWhileRevalidateInSec * 1000L,
+                    staleIfErrorInSec * 1000L);
+        }
+    }
+}
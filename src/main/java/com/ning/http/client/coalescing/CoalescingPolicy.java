@@ -0,0 +1,185 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.coalescing;
+
+import com.ning.http.client.Request;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Configure how an {@link com.ning.http.client.AsyncHttpClient} coalesces identical in-flight requests. Two requests
+ * are identical when their method, url and the values of the configured key headers are equal. When a request is
+ * executed while an identical one is still in flight, no new network call is made: the response of the first one is
+ * replayed to both {@link com.ning.http.client.AsyncHandler}.
+ * <p/>
+ * {@code
+ *      AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder()
+ *          .setCoalescingPolicy(new CoalescingPolicy.Builder().addKeyHeader("Accept").build())
+ *          .build();
+ * }
+ */
+public class CoalescingPolicy {
+
+    private final static String[] CREDENTIAL_HEADERS = {"Authorization", "Proxy-Authorization", "Cookie"};
+
+    private final static String EVENT_STREAM = "text/event-stream";
+
+    private final List<String> keyHeaders;
+    private final int maxRecordedBytes;
+
+    private CoalescingPolicy(List<String> keyHeaders, int maxRecordedBytes) {
+        this.keyHeaders = keyHeaders;
+        this.maxRecordedBytes = maxRecordedBytes;
+    }
+
+    /**
+     * Return the names of the headers whose values are part of the coalescing key.
+     *
+     * @return an unmodifiable list of header names.
+     */
+    public List<String> getKeyHeaders() {
+        return keyHeaders;
+    }
+
+    /**
+     * Return the maximum number of body bytes recorded to be replayed to the requests joining a call in flight. Once
+     * a response body exceeds it, the recorded parts are dropped and identical requests make their own network call.
+     *
+     * @return the maximum number of body bytes recorded per call.
+     */
+    public int getMaxRecordedBytes() {
+        return maxRecordedBytes;
+    }
+
+    /**
+     * Return true if a response with those headers is a stream, which can't be recorded for late joiners.
+     *
+     * @param contentType the Content-Type of the response, or null
+     * @return true if the response is an event stream.
+     */
+    boolean isStream(String contentType) {
+        return contentType != null && contentType.toLowerCase().startsWith(EVENT_STREAM);
+    }
+
+    /**
+     * Return true if the {@link Request} can share its response with identical requests. Only idempotent requests
+     * without a body, cookies or {@link com.ning.http.client.Realm} are coalesced, since the latter are rarely
+     * shared between callers. For the same reason, a request with an Authorization, Proxy-Authorization or Cookie
+     * header is only coalesced when that header is one of the key headers. Requests accepting a text/event-stream
+     * are never coalesced, since their response doesn't end.
+     *
+     * @param request a {@link Request}
+     * @return true if the request can be coalesced.
+     */
+    public boolean isCoalesceable(Request request) {
+        String method = request.getReqType();
+        return ("GET".equals(method) || "HEAD".equals(method))
+                && request.getFile() == null
+                && request.getCookies().isEmpty()
+                && request.getRealm() == null
+                && !hasUnkeyedCredentials(request)
+                && !acceptsStream(request);
+    }
+
+    private boolean acceptsStream(Request request) {
+        List<String> accept = request.getHeaders().get("Accept");
+        if (accept != null) {
+            for (String value : accept) {
+                if (value.toLowerCase().contains(EVENT_STREAM)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean hasUnkeyedCredentials(Request request) {
+        for (String name : CREDENTIAL_HEADERS) {
+            if (request.getHeaders().containsKey(name) && !isKeyHeader(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isKeyHeader(String name) {
+        for (String keyHeader : keyHeaders) {
+            if (keyHeader.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the key identifying all the requests sharing the same response.
+     *
+     * @param request a coalesceable {@link Request}
+     * @return the coalescing key.
+     */
+    public String key(Request request) {
+        StringBuilder b = new StringBuilder(request.getReqType()).append(' ').append(request.getUrl());
+        for (String name : keyHeaders) {
+            b.append('\n').append(name).append(':');
+            List<String> values = request.getHeaders().get(name);
+            if (values != null) {
+                b.append(values);
+            }
+        }
+        return b.toString();
+    }
+
+    public static class Builder {
+        private final List<String> keyHeaders = new ArrayList<String>();
+        private int maxRecordedBytes = 256 * 1024;
+
+        public Builder() {
+        }
+
+        /**
+         * Add a header whose value is part of the coalescing key, e.g. Accept or Authorization.
+         *
+         * @param name the header name
+         * @return a {@link Builder}
+         */
+        public Builder addKeyHeader(String name) {
+            keyHeaders.add(name);
+            return this;
+        }
+
+        /**
+         * Set the maximum number of body bytes recorded per call to be replayed to late joiners. Default is 256kb.
+         *
+         * @param maxRecordedBytes the maximum number of body bytes recorded per call
+         * @return a {@link Builder}
+         */
+        public Builder setMaxRecordedBytes(int maxRecordedBytes) {
+            this.maxRecordedBytes = maxRecordedBytes;
+            return this;
+        }
+
+        /**
+         * Build a {@link CoalescingPolicy}
+         *
+         * @return a {@link CoalescingPolicy}
+         */
+        public CoalescingPolicy build() {
+            return new CoalescingPolicy(Collections.unmodifiableList(new ArrayList<String>(keyHeaders)), maxRecordedBytes);
+        }
+    }
+}
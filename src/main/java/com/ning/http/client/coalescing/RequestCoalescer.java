@@ -0,0 +1,391 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.coalescing;
+
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.AsyncHttpProvider;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Share a single network call between identical in-flight {@link Request}, as described by a {@link CoalescingPolicy}.
+ * The status, headers and body parts received by the shared call are recorded: callers joining while the response is
+ * being received first get the recorded parts replayed, then receive the following ones as they arrive. Every caller
+ * gets its own {@link Future}, so cancelling one of them doesn't interrupt the others.
+ * <p/>
+ * Only the first {@link CoalescingPolicy#getMaxRecordedBytes()} of a body are recorded. Past that, or when the
+ * response is an event stream, the call stops recording and doesn't accept joiners anymore: identical requests make
+ * their own network call, and the current subscribers keep receiving the response.
+ * <p/>
+ * Since all the providers create a new {@link HttpResponseBodyPart} for every chunk received, the same instances are
+ * handed to every {@link AsyncHandler}; no bytes are copied.
+ */
+public class RequestCoalescer {
+
+    private final static Logger logger = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    private final CoalescingPolicy policy;
+    private final ConcurrentHashMap<String, Call> calls = new ConcurrentHashMap<String, Call>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public RequestCoalescer(CoalescingPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Return the {@link CoalescingPolicy}
+     *
+     * @return the {@link CoalescingPolicy}
+     */
+    public CoalescingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Return the number of requests which joined an identical in-flight request instead of making a network call.
+     *
+     * @return the number of coalesced requests.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * Execute the {@link Request}, or join the identical request in flight.
+     *
+     * @param provider the {@link AsyncHttpProvider} used if a network call is required
+     * @param request  a coalesceable {@link Request}
+     * @param handler  an {@link AsyncHandler}
+     * @param <T>      Type of the value that will be returned by the associated {@link Future}
+     * @return a {@link Future} of type T
+     */
+    public <T> Future<T> execute(AsyncHttpProvider<?> provider, Request request, AsyncHandler<T> handler) {
+        String key = policy.key(request);
+        Subscriber<T> subscriber = new Subscriber<T>(handler);
+
+        for (; ;) {
+            Call call = calls.get(key);
+            if (call == null) {
+                Call newCall = new Call(key);
+                call = calls.putIfAbsent(key, newCall);
+                if (call == null) {
+                    newCall.subscribe(subscriber);
+                    try {
+                        newCall.setFuture(provider.execute(request, newCall));
+                    } catch (IOException ex) {
+                        // Identical requests may already have joined, they must fail as well.
+                        newCall.onThrowable(ex);
+                    }
+                    return subscriber;
+                }
+            }
+
+            if (call.subscribe(subscriber)) {
+                coalesced.incrementAndGet();
+                return subscriber;
+            }
+            // The call completed before we could join it, try again.
+        }
+    }
+
+    /**
+     * The {@link AsyncHandler} of the shared network call, which records the response and dispatches it to the
+     * {@link Subscriber}. Dispatching is done while holding the call's lock so replayed and live parts are never
+     * interleaved.
+     */
+    private final class Call implements AsyncHandler<Object> {
+
+        private final String key;
+        private final List<Subscriber<?>> subscribers = new ArrayList<Subscriber<?>>();
+        private final List<HttpResponseBodyPart> bodyParts = new ArrayList<HttpResponseBodyPart>();
+        private long recordedBytes;
+        private HttpResponseStatus status;
+        private HttpResponseHeaders headers;
+        private Future<?> future;
+        private boolean closed;
+        private boolean recording = true;
+
+        Call(String key) {
+            this.key = key;
+        }
+
+        synchronized boolean subscribe(Subscriber<?> subscriber) {
+            if (closed || !recording) {
+                return false;
+            }
+            subscribers.add(subscriber);
+            subscriber.call = this;
+
+            if (status != null && subscriber.onStatusReceived(status) && headers != null
+                    && subscriber.onHeadersReceived(headers)) {
+                for (HttpResponseBodyPart bodyPart : bodyParts) {
+                    if (!subscriber.onBodyPartReceived(bodyPart)) {
+                        break;
+                    }
+                }
+            }
+            return true;
+        }
+
+        synchronized void setFuture(Future<?> future) {
+            this.future = future;
+            if (closed) {
+                future.cancel(true);
+            }
+        }
+
+        /**
+         * Cancel the network call once no {@link Subscriber} is interested in the response anymore.
+         */
+        synchronized void unsubscribed() {
+            if (!closed && !hasActiveSubscriber()) {
+                close();
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+
+        private boolean hasActiveSubscriber() {
+            for (Subscriber<?> s : subscribers) {
+                if (!s.done.get()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void close() {
+            closed = true;
+            calls.remove(key, this);
+        }
+
+        /**
+         * Keep dispatching to the current subscribers, but let identical requests make their own call.
+         */
+        private void stopRecording() {
+            recording = false;
+            bodyParts.clear();
+            calls.remove(key, this);
+        }
+
+        private STATE nextState() {
+            if (hasActiveSubscriber()) {
+                return STATE.CONTINUE;
+            }
+            close();
+            return STATE.ABORT;
+        }
+
+        public synchronized STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+            status = responseStatus;
+            for (Subscriber<?> s : subscribers) {
+                s.onStatusReceived(responseStatus);
+            }
+            return nextState();
+        }
+
+        public synchronized STATE onHeadersReceived(HttpResponseHeaders responseHeaders) throws Exception {
+            headers = responseHeaders;
+            if (policy.isStream(responseHeaders.getHeaders().getFirstValue("Content-Type"))) {
+                stopRecording();
+            }
+            for (Subscriber<?> s : subscribers) {
+                s.onHeadersReceived(responseHeaders);
+            }
+            return nextState();
+        }
+
+        public synchronized STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+            if (recording) {
+                recordedBytes += bodyPart.getBodyPartBytes().length;
+                if (recordedBytes > policy.getMaxRecordedBytes()) {
+                    stopRecording();
+                } else {
+                    bodyParts.add(bodyPart);
+                }
+            }
+            for (Subscriber<?> s : subscribers) {
+                s.onBodyPartReceived(bodyPart);
+            }
+            return nextState();
+        }
+
+        public synchronized Object onCompleted() throws Exception {
+            close();
+            for (Subscriber<?> s : subscribers) {
+                s.onCompleted();
+            }
+            return null;
+        }
+
+        public synchronized void onThrowable(Throwable t) {
+            close();
+            for (Subscriber<?> s : subscribers) {
+                s.onThrowable(t);
+            }
+        }
+    }
+
+    /**
+     * A caller of a shared {@link Call}, and its {@link Future}.
+     */
+    private final static class Subscriber<T> implements Future<T> {
+
+        private final AsyncHandler<T> asyncHandler;
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile Call call;
+        private volatile boolean isCancelled;
+        private volatile T content;
+        private volatile Throwable exception;
+
+        Subscriber(AsyncHandler<T> asyncHandler) {
+            this.asyncHandler = asyncHandler;
+        }
+
+        boolean onStatusReceived(HttpResponseStatus responseStatus) {
+            if (done.get()) {
+                return false;
+            }
+            try {
+                return update(asyncHandler.onStatusReceived(responseStatus));
+            } catch (Throwable t) {
+                return fail(t);
+            }
+        }
+
+        boolean onHeadersReceived(HttpResponseHeaders headers) {
+            if (done.get()) {
+                return false;
+            }
+            try {
+                return update(asyncHandler.onHeadersReceived(headers));
+            } catch (Throwable t) {
+                return fail(t);
+            }
+        }
+
+        boolean onBodyPartReceived(HttpResponseBodyPart bodyPart) {
+            if (done.get()) {
+                return false;
+            }
+            try {
+                return update(asyncHandler.onBodyPartReceived(bodyPart));
+            } catch (Throwable t) {
+                return fail(t);
+            }
+        }
+
+        void onCompleted() {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                content = asyncHandler.onCompleted();
+            } catch (Throwable t) {
+                logger.debug("onCompleted", t);
+                exception = t;
+            }
+            latch.countDown();
+        }
+
+        void onThrowable(Throwable t) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                asyncHandler.onThrowable(t);
+            } finally {
+                exception = t;
+                latch.countDown();
+            }
+        }
+
+        /**
+         * Like the providers do, an aborted {@link AsyncHandler} gets completed right away.
+         */
+        private boolean update(AsyncHandler.STATE state) {
+            if (state == AsyncHandler.STATE.ABORT) {
+                onCompleted();
+                return false;
+            }
+            return true;
+        }
+
+        private boolean fail(Throwable t) {
+            onThrowable(t);
+            return false;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!done.compareAndSet(false, true)) {
+                return false;
+            }
+            isCancelled = true;
+            latch.countDown();
+            call.unsubscribed();
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+
+        public boolean isDone() {
+            return latch.getCount() == 0;
+        }
+
+        public T get() throws InterruptedException, ExecutionException {
+            latch.await();
+            return getContent();
+        }
+
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!latch.await(timeout, unit)) {
+                throw new TimeoutException(String.format("No response received after %s", timeout));
+            }
+            return getContent();
+        }
+
+        private T getContent() throws ExecutionException {
+            if (isCancelled) {
+                throw new CancellationException();
+            }
+            if (exception != null) {
+                throw new ExecutionException(exception);
+            }
+            return content;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.hedging;
+
+import com.ning.http.client.Request;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Configure how an {@link com.ning.http.client.AsyncHttpClient} hedges idempotent requests. When the first attempt
+ * hasn't received its response status after the hedge delay, a second identical request is sent, optionally to an
+ * alternate host. The first attempt to receive a status wins, the other one gets cancelled.
+ * <p/>
+ * {@code
+ *      AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder()
+ *          .setHedgingPolicy(new HedgingPolicy.Builder().setHedgeDelayInMs(50).setMaxHedgeRatio(0.05f).build())
+ *          .build();
+ * }
+ */
+public class HedgingPolicy {
+
+    private final int hedgeDelayInMs;
+    private final boolean dynamicDelay;
+    private final float maxHedgeRatio;
+    private final List<String> alternateBaseUrls;
+
+    private HedgingPolicy(int hedgeDelayInMs, boolean dynamicDelay, float maxHedgeRatio, List<String> alternateBaseUrls) {
+        this.hedgeDelayInMs = hedgeDelayInMs;
+        this.dynamicDelay = dynamicDelay;
+        this.maxHedgeRatio = maxHedgeRatio;
+        this.alternateBaseUrls = alternateBaseUrls;
+    }
+
+    /**
+     * Return the time in millisecond to wait for the response status before sending the hedged request. When
+     * {@link #isDynamicDelay()} is true, this value is used until enough latencies have been recorded, and as the
+     * lower bound afterward.
+     *
+     * @return the time in millisecond to wait before hedging.
+     */
+    public int getHedgeDelayInMs() {
+        return hedgeDelayInMs;
+    }
+
+    /**
+     * Return true if the hedge delay is the p95 of the recently observed latencies.
+     *
+     * @return true if the hedge delay is computed from the recently observed latencies.
+     */
+    public boolean isDynamicDelay() {
+        return dynamicDelay;
+    }
+
+    /**
+     * Return the maximum ratio of hedged requests over the total number of hedgeable requests.
+     *
+     * @return the maximum ratio of hedged requests.
+     */
+    public float getMaxHedgeRatio() {
+        return maxHedgeRatio;
+    }
+
+    /**
+     * Return the list of base url (scheme, host and port) the hedged requests may be sent to. When empty, the hedged
+     * request is sent to the same host as the first attempt.
+     *
+     * @return an unmodifiable list of base url.
+     */
+    public List<String> getAlternateBaseUrls() {
+        return alternateBaseUrls;
+    }
+
+    /**
+     * Return true if the {@link Request} can be hedged. Only idempotent requests without a body can be sent twice.
+     *
+     * @param request a {@link Request}
+     * @return true if the request can be hedged.
+     */
+    public boolean isHedgeable(Request request) {
+        String method = request.getReqType();
+        return ("GET".equals(method) || "HEAD".equals(method)) && request.getFile() == null;
+    }
+
+    public static class Builder {
+        private int hedgeDelayInMs = 50;
+        private boolean dynamicDelay = false;
+        private float maxHedgeRatio = 0.1f;
+        private final List<String> alternateBaseUrls = new ArrayList<String>();
+
+        public Builder() {
+        }
+
+        /**
+         * Set the time in millisecond to wait for the response status before sending the hedged request.
+         *
+         * @param hedgeDelayInMs the time in millisecond to wait before hedging.
+         * @return a {@link Builder}
+         */
+        public Builder setHedgeDelayInMs(int hedgeDelayInMs) {
+            this.hedgeDelayInMs = hedgeDelayInMs;
+            return this;
+        }
+
+        /**
+         * Set to true to use the p95 of the recently observed latencies as the hedge delay.
+         *
+         * @param dynamicDelay true to compute the delay from the recently observed latencies.
+         * @return a {@link Builder}
+         */
+        public Builder setDynamicDelay(boolean dynamicDelay) {
+            this.dynamicDelay = dynamicDelay;
+            return this;
+        }
+
+        /**
+         * Set the maximum ratio of hedged requests, e.g. 0.1 means at most one hedge for ten requests.
+         *
+         * @param maxHedgeRatio the maximum ratio of hedged requests, between 0 and 1.
+         * @return a {@link Builder}
+         */
+        public Builder setMaxHedgeRatio(float maxHedgeRatio) {
+            if (maxHedgeRatio < 0 || maxHedgeRatio > 1) {
+                throw new IllegalArgumentException("maxHedgeRatio must be between 0 and 1");
+            }
+            this.maxHedgeRatio = maxHedgeRatio;
+            return this;
+        }
+
+        /**
+         * Add a base url (scheme, host and port, e.g. http://replica:8080) the hedged requests may be sent to.
+         *
+         * @param baseUrl a base url
+         * @return a {@link Builder}
+         */
+        public Builder addAlternateBaseUrl(String baseUrl) {
+            alternateBaseUrls.add(baseUrl);
+            return this;
+        }
+
+        /**
+         * Build a {@link HedgingPolicy}
+         *
+         * @return a {@link HedgingPolicy}
+         */
+        public HedgingPolicy build() {
+            return new HedgingPolicy(hedgeDelayInMs, dynamicDelay, maxHedgeRatio,
+                    Collections.unmodifiableList(new ArrayList<String>(alternateBaseUrls)));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.hedging;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing how often requests got hedged, and how often the hedged request won.
+ */
+public class HedgingStats {
+
+    private final static int WINDOW_SIZE = 128;
+
+    private final static int RECOMPUTE_EVERY = 32;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong hedgesDenied = new AtomicLong();
+
+    private final AtomicIntegerArray latencies = new AtomicIntegerArray(WINDOW_SIZE);
+    private final AtomicInteger samples = new AtomicInteger();
+    private volatile int p95 = -1;
+
+    /**
+     * Return the number of hedgeable requests executed.
+     *
+     * @return the number of hedgeable requests executed.
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Return the number of hedged requests sent.
+     *
+     * @return the number of hedged requests sent.
+     */
+    public long getHedgeCount() {
+        return hedgesSent.get();
+    }
+
+    /**
+     * Return the number of times the hedged request received its status before the first attempt.
+     *
+     * @return the number of times the hedged request won.
+     */
+    public long getHedgeWinCount() {
+        return hedgesWon.get();
+    }
+
+    /**
+     * Return the number of hedged requests that were not sent because the hedge budget was exhausted.
+     *
+     * @return the number of hedged requests denied by the budget.
+     */
+    public long getHedgeDeniedCount() {
+        return hedgesDenied.get();
+    }
+
+    /**
+     * Return the p95 of the recently observed time to response status, or -1 if not enough latencies has been recorded.
+     *
+     * @return the p95 in millisecond, or -1.
+     */
+    public int getLatencyP95InMs() {
+        return p95;
+    }
+
+    void requestStarted() {
+        requests.incrementAndGet();
+    }
+
+    void hedgeSent() {
+        hedgesSent.incrementAndGet();
+    }
+
+    void hedgeWon() {
+        hedgesWon.incrementAndGet();
+    }
+
+    void hedgeDenied() {
+        hedgesDenied.incrementAndGet();
+    }
+
+    void recordLatency(int latencyInMs) {
+        int n = samples.getAndIncrement();
+        latencies.set(n % WINDOW_SIZE, latencyInMs);
+
+        if (n + 1 >= WINDOW_SIZE && (n + 1) % RECOMPUTE_EVERY == 0) {
+            int[] window = new int[WINDOW_SIZE];
+            for (int i = 0; i < WINDOW_SIZE; i++) {
+                window[i] = latencies.get(i);
+            }
+            Arrays.sort(window);
+            p95 = window[(int) (WINDOW_SIZE * 0.95)];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HedgingStats{" +
+                "requests=" + requests +
+                ", hedgesSent=" + hedgesSent +
+                ", hedgesWon=" + hedgesWon +
+                ", hedgesDenied=" + hedgesDenied +
+                ", p95=" + p95 +
+                '}';
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.hedging;
+
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.AsyncHttpProvider;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.Request;
+import com.ning.http.client.RequestBuilder;
+import com.ning.http.util.AsyncHttpProviderUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Execute hedgeable {@link Request} as described by a {@link HedgingPolicy}. Both attempts share the same
+ * {@link AsyncHandler}: only the attempt that receives its response status first is allowed to invoke it, the other
+ * attempt is aborted and its {@link Future} cancelled.
+ */
+public class RequestHedger {
+
+    private final static Logger logger = LoggerFactory.getLogger(RequestHedger.class);
+
+    // The budget is expressed in thousandth of hedge so fractional ratios don't get rounded.
+    private final static long HEDGE_COST = 1000;
+
+    private final static long MAX_CREDITS = 10 * HEDGE_COST;
+
+    private final HedgingPolicy policy;
+    private final ScheduledExecutorService scheduler;
+    private final HedgingStats stats = new HedgingStats();
+    private final AtomicLong credits = new AtomicLong();
+    private final AtomicInteger nextAlternate = new AtomicInteger();
+    private final long creditPerRequest;
+
+    public RequestHedger(HedgingPolicy policy, ScheduledExecutorService scheduler) {
+        this.policy = policy;
+        this.scheduler = scheduler;
+        this.creditPerRequest = (long) (policy.getMaxHedgeRatio() * HEDGE_COST);
+    }
+
+    /**
+     * Return the {@link HedgingPolicy}
+     *
+     * @return the {@link HedgingPolicy}
+     */
+    public HedgingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Return the {@link HedgingStats} of all requests executed by this instance.
+     *
+     * @return the {@link HedgingStats}
+     */
+    public HedgingStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Execute the {@link Request}, and hedge it if the response status hasn't been received after the hedge delay.
+     *
+     * @param provider the {@link AsyncHttpProvider} used to execute every attempt
+     * @param request  a hedgeable {@link Request}
+     * @param handler  the {@link AsyncHandler} shared by all attempts
+     * @param <T>      Type of the value that will be returned by the associated {@link Future}
+     * @return a {@link Future} of type T
+     * @throws IOException if the first attempt cannot be executed.
+     */
+    public <T> Future<T> execute(final AsyncHttpProvider<?> provider, final Request request, AsyncHandler<T> handler)
+            throws IOException {
+
+        stats.requestStarted();
+        deposit();
+
+        final HedgedFuture<T> future = new HedgedFuture<T>(handler);
+        future.launch(provider, request, false);
+
+        try {
+            future.setHedgeTimer(scheduler.schedule(new Runnable() {
+                public void run() {
+                    hedge(provider, request, future);
+                }
+            }, hedgeDelay(), TimeUnit.MILLISECONDS));
+        } catch (RejectedExecutionException ex) {
+            logger.debug("Unable to schedule hedged request", ex);
+        }
+        return future;
+    }
+
+    private <T> void hedge(AsyncHttpProvider<?> provider, Request request, HedgedFuture<T> future) {
+        if (!future.needsHedge()) {
+            return;
+        }
+
+        if (!withdraw()) {
+            stats.hedgeDenied();
+            return;
+        }
+
+        try {
+            if (future.launch(provider, alternate(request), true)) {
+                stats.hedgeSent();
+            }
+        } catch (IOException ex) {
+            // The first attempt is still running, so the hedge failure is not fatal.
+            logger.debug("Unable to send hedged request", ex);
+        }
+    }
+
+    private int hedgeDelay() {
+        int delay = policy.getHedgeDelayInMs();
+        if (policy.isDynamicDelay()) {
+            int p95 = stats.getLatencyP95InMs();
+            if (p95 > delay) {
+                delay = p95;
+            }
+        }
+        return delay;
+    }
+
+    private void deposit() {
+        long current;
+        long next;
+        do {
+            current = credits.get();
+            next = Math.min(MAX_CREDITS, current + creditPerRequest);
+        } while (!credits.compareAndSet(current, next));
+    }
+
+    private boolean withdraw() {
+        long current;
+        do {
+            current = credits.get();
+            if (current < HEDGE_COST) {
+                return false;
+            }
+        } while (!credits.compareAndSet(current, current - HEDGE_COST));
+        return true;
+    }
+
+    private Request alternate(Request request) {
+        List<String> alternates = policy.getAlternateBaseUrls();
+        if (alternates.isEmpty()) {
+            return request;
+        }
+
+        String baseUrl = alternates.get(Math.abs(nextAlternate.getAndIncrement() % alternates.size()));
+        URI uri = AsyncHttpProviderUtils.createUri(request.getUrl());
+
+        // The query parameters are kept by the prototype, only the path needs to be appended.
+        return new RequestBuilder(request).setUrl(baseUrl + uri.getRawPath()).build();
+    }
+
+    private final class HedgedFuture<T> implements Future<T> {
+
+        private final AsyncHandler<T> asyncHandler;
+        private final List<Attempt> attempts = new ArrayList<Attempt>(2);
+        private final AtomicReference<Attempt> winner = new AtomicReference<Attempt>();
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private Future<?> hedgeTimer;
+        private boolean hedgeLaunched;
+        private int failures;
+        private Throwable firstFailure;
+        private volatile boolean isDone;
+        private volatile boolean isCancelled;
+        private volatile T content;
+        private volatile Throwable exception;
+
+        HedgedFuture(AsyncHandler<T> asyncHandler) {
+            this.asyncHandler = asyncHandler;
+        }
+
+        boolean launch(AsyncHttpProvider<?> provider, Request request, boolean hedge) throws IOException {
+            Attempt attempt = new Attempt(hedge);
+            synchronized (this) {
+                if (isDone || winner.get() != null) {
+                    return false;
+                }
+                attempts.add(attempt);
+                hedgeLaunched |= hedge;
+            }
+
+            try {
+                attempt.setFuture(provider.execute(request, attempt));
+            } catch (IOException ex) {
+                Throwable cause = null;
+                synchronized (this) {
+                    attempts.remove(attempt);
+                    // The other attempts may have failed while this one was being sent.
+                    if (failures > 0 && failures >= attempts.size() && claim(attempt)) {
+                        cause = firstFailure;
+                    }
+                }
+                if (cause != null) {
+                    propagate(cause);
+                }
+                throw ex;
+            }
+            return true;
+        }
+
+        synchronized void setHedgeTimer(Future<?> hedgeTimer) {
+            if (isDone || winner.get() != null) {
+                hedgeTimer.cancel(false);
+            }
+            this.hedgeTimer = hedgeTimer;
+        }
+
+        synchronized boolean needsHedge() {
+            return !isDone && !hedgeLaunched && winner.get() == null;
+        }
+
+        void won(Attempt attempt) {
+            List<Attempt> losers;
+            synchronized (this) {
+                if (hedgeTimer != null) {
+                    hedgeTimer.cancel(false);
+                }
+                losers = new ArrayList<Attempt>(attempts);
+            }
+            for (Attempt a : losers) {
+                if (a != attempt) {
+                    a.cancel();
+                }
+            }
+        }
+
+        void failed(Attempt attempt, Throwable t) {
+            synchronized (this) {
+                if (firstFailure == null) {
+                    firstFailure = t;
+                }
+                if (++failures < attempts.size()) {
+                    // Another attempt is still running.
+                    return;
+                }
+                if (!claim(attempt)) {
+                    return;
+                }
+            }
+            propagate(t);
+        }
+
+        /**
+         * Make the {@link Attempt} the one that completes the request, once every attempt has failed.
+         */
+        private synchronized boolean claim(Attempt attempt) {
+            if (!winner.compareAndSet(null, attempt)) {
+                return false;
+            }
+            if (hedgeTimer != null) {
+                hedgeTimer.cancel(false);
+            }
+            return true;
+        }
+
+        private void propagate(Throwable t) {
+            try {
+                asyncHandler.onThrowable(t);
+            } finally {
+                abort(t);
+            }
+        }
+
+        void done(T content) {
+            this.content = content;
+            isDone = true;
+            latch.countDown();
+        }
+
+        void abort(Throwable t) {
+            exception = t;
+            isDone = true;
+            latch.countDown();
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            List<Attempt> all;
+            synchronized (this) {
+                if (isDone) {
+                    return false;
+                }
+                isCancelled = true;
+                isDone = true;
+                if (hedgeTimer != null) {
+                    hedgeTimer.cancel(false);
+                }
+                all = new ArrayList<Attempt>(attempts);
+            }
+            for (Attempt a : all) {
+                a.cancel();
+            }
+            latch.countDown();
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+
+        public boolean isDone() {
+            return isDone;
+        }
+
+        public T get() throws InterruptedException, ExecutionException {
+            latch.await();
+            return getContent();
+        }
+
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!latch.await(timeout, unit)) {
+                throw new TimeoutException(String.format("No response received after %s", timeout));
+            }
+            return getContent();
+        }
+
+        private T getContent() throws ExecutionException {
+            if (isCancelled) {
+                throw new CancellationException();
+            }
+            if (exception != null) {
+                throw new ExecutionException(exception);
+            }
+            return content;
+        }
+
+        /**
+         * The {@link AsyncHandler} of a single attempt. Only the winning attempt delegates to the shared handler.
+         */
+        private final class Attempt implements AsyncHandler<T> {
+
+            private final boolean hedge;
+            private final long startTime = System.currentTimeMillis();
+            private Future<T> future;
+            private boolean cancelled;
+
+            Attempt(boolean hedge) {
+                this.hedge = hedge;
+            }
+
+            synchronized void setFuture(Future<T> future) {
+                this.future = future;
+                if (cancelled) {
+                    future.cancel(true);
+                }
+            }
+
+            synchronized void cancel() {
+                cancelled = true;
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+
+            private boolean isWinner() {
+                return winner.get() == this;
+            }
+
+            public STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+                if (winner.compareAndSet(null, this)) {
+                    stats.recordLatency((int) (System.currentTimeMillis() - startTime));
+                    if (hedge) {
+                        stats.hedgeWon();
+                    }
+                    won(this);
+                } else if (!isWinner()) {
+                    return STATE.ABORT;
+                }
+                return asyncHandler.onStatusReceived(responseStatus);
+            }
+
+            public STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+                return isWinner() ? asyncHandler.onHeadersReceived(headers) : STATE.ABORT;
+            }
+
+            public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+                return isWinner() ? asyncHandler.onBodyPartReceived(bodyPart) : STATE.ABORT;
+            }
+
+            public T onCompleted() throws Exception {
+                if (!isWinner()) {
+                    return null;
+                }
+                T t = asyncHandler.onCompleted();
+                done(t);
+                return t;
+            }
+
+            public void onThrowable(Throwable t) {
+                if (isWinner()) {
+                    try {
+                        asyncHandler.onThrowable(t);
+                    } finally {
+                        abort(t);
+                    }
+                } else if (winner.get() == null) {
+                    failed(this, t);
+                }
+            }
+        }
+    }
+}
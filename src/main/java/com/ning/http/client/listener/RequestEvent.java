@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.listener;
+
+/**
+ * The phases of a request lifecycle reported to a {@link RequestEventListener}. Events are reported for every
+ * exchange, so a redirected or authenticated request reports its phases more than once.
+ */
+public enum RequestEvent {
+
+    /**
+     * A pooled connection has been found for the request.
+     */
+    POOL_HIT,
+
+    /**
+     * No pooled connection was available, a new connection is about to be opened.
+     */
+    POOL_MISS,
+
+    /**
+     * The remote host name is about to be resolved.
+     */
+    DNS_RESOLUTION_STARTED,
+
+    /**
+     * The remote host name has been resolved.
+     */
+    DNS_RESOLUTION_COMPLETED,
+
+    /**
+     * The TCP connection is about to be opened.
+     */
+    CONNECT_STARTED,
+
+    /**
+     * The TCP connection has been established.
+     */
+    CONNECT_COMPLETED,
+
+    /**
+     * The TLS handshake has completed. The handshake starts when {@link #CONNECT_COMPLETED} is reported.
+     */
+    TLS_HANDSHAKE_COMPLETED,
+
+    /**
+     * The request line and headers have been written.
+     */
+    HEADERS_WRITTEN,
+
+    /**
+     * The request body has been written. A body buffered in memory is written with the headers, in which case this
+     * event is reported immediately after {@link #HEADERS_WRITTEN}.
+     */
+    BODY_WRITTEN,
+
+    /**
+     * The response status line has been received.
+     */
+    STATUS_RECEIVED,
+
+    /**
+     * The last chunk of the response has been received.
+     */
+    LAST_CHUNK_RECEIVED
+}
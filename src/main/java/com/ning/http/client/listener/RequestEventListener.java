@@ -0,0 +1,37 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.listener;
+
+import com.ning.http.client.Request;
+
+/**
+ * A listener an application can register with {@link com.ning.http.client.AsyncHttpClientConfig.Builder#setRequestEventListener}
+ * in order to know when a request enters every phase of its lifecycle, e.g. to find out whether a slow request was
+ * waiting for DNS, the connect, the TLS handshake or the server.
+ * <p/>
+ * The listener is invoked from the I/O threads and must not block.
+ */
+public interface RequestEventListener {
+
+    /**
+     * Invoked when a {@link Request} enters a new phase of its lifecycle.
+     *
+     * @param request  the {@link Request}
+     * @param event    the {@link RequestEvent}
+     * @param nanoTime the value of {@link System#nanoTime()} when the event occurred
+     */
+    public void onEvent(Request request, RequestEvent event, long nanoTime);
+}
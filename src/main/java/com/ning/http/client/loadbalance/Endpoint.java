@@ -0,0 +1,142 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.loadbalance;
+
+import com.ning.http.util.AsyncHttpProviderUtils;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A real server (scheme, host and port) member of a {@link HostGroup}. An {@link Endpoint} keeps track of the number of
+ * requests in flight, of an exponentially weighted moving average of its latency and of its health.
+ */
+public class Endpoint {
+
+    // Weight of the latest sample in the moving average.
+    private final static double EWMA_ALPHA = 0.3;
+
+    private final String baseUrl;
+    private final String host;
+    private final int port;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile double latencyEwma = 0;
+    private volatile boolean healthy = true;
+
+    Endpoint(String baseUrl) {
+        URI uri = AsyncHttpProviderUtils.createUri(baseUrl);
+        this.host = uri.getHost();
+        this.port = AsyncHttpProviderUtils.getPort(uri);
+        this.baseUrl = uri.getScheme() + "://" + host + ":" + port;
+    }
+
+    /**
+     * Return the base url (scheme, host and port) of this endpoint.
+     *
+     * @return the base url of this endpoint.
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Return the host of this endpoint.
+     *
+     * @return the host of this endpoint.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Return the port of this endpoint.
+     *
+     * @return the port of this endpoint.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Return the number of requests currently in flight.
+     *
+     * @return the number of requests currently in flight.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Return the moving average of the time to response status, in millisecond.
+     *
+     * @return the moving average of the latency.
+     */
+    public double getLatencyEwmaInMs() {
+        return latencyEwma;
+    }
+
+    /**
+     * Return false if the endpoint has been ejected, and no health check has reinstated it yet.
+     *
+     * @return true if the endpoint can receive requests.
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    void requestStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    void requestSucceeded(long latencyInMs) {
+        double current = latencyEwma;
+        latencyEwma = current == 0 ? latencyInMs : current + EWMA_ALPHA * (latencyInMs - current);
+        consecutiveFailures.set(0);
+    }
+
+    /**
+     * Record a failure and return the number of consecutive failures.
+     */
+    int requestFailed() {
+        return consecutiveFailures.incrementAndGet();
+    }
+
+    void requestDone() {
+        inFlight.decrementAndGet();
+    }
+
+    void eject() {
+        healthy = false;
+    }
+
+    void reinstate() {
+        consecutiveFailures.set(0);
+        // Don't penalize the endpoint for the latency observed before it got ejected.
+        latencyEwma = 0;
+        healthy = true;
+    }
+
+    @Override
+    public String toString() {
+        return "Endpoint{" +
+                "baseUrl=" + baseUrl +
+                ", inFlight=" + inFlight +
+                ", latencyEwma=" + latencyEwma +
+                ", healthy=" + healthy +
+                '}';
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.loadbalance;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A logical host name which maps to a list of {@link Endpoint}. Requests sent to http://name/path by an
+ * {@link com.ning.http.client.AsyncHttpClient} configured with a {@link HostGroupRequestFilter} are sent to one of the
+ * endpoints selected by the {@link LoadBalancingPolicy}.
+ * <p/>
+ * {@code
+ *      HostGroup catalog = new HostGroup.Builder("catalog")
+ *          .addEndpoint("http://10.0.0.1:8080")
+ *          .addEndpoint("http://10.0.0.2:8080")
+ *          .setLoadBalancingPolicy(new PowerOfTwoChoicesPolicy())
+ *          .build();
+ * }
+ */
+public class HostGroup {
+
+    private final static Logger logger = LoggerFactory.getLogger(HostGroup.class);
+
+    private final String name;
+    private final List<Endpoint> endpoints;
+    private final LoadBalancingPolicy policy;
+    private final int maxConsecutiveFailures;
+
+    private HostGroup(String name, List<Endpoint> endpoints, LoadBalancingPolicy policy, int maxConsecutiveFailures) {
+        this.name = name;
+        this.endpoints = endpoints;
+        this.policy = policy;
+        this.maxConsecutiveFailures = maxConsecutiveFailures;
+    }
+
+    /**
+     * Return the logical name of the group, used as the host of the requests' url.
+     *
+     * @return the name of the group.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Return the {@link Endpoint} of this group, healthy or not.
+     *
+     * @return an unmodifiable list of {@link Endpoint}
+     */
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Return the {@link LoadBalancingPolicy}
+     *
+     * @return the {@link LoadBalancingPolicy}
+     */
+    public LoadBalancingPolicy getLoadBalancingPolicy() {
+        return policy;
+    }
+
+    /**
+     * Return the number of consecutive failures after which an {@link Endpoint} gets ejected.
+     *
+     * @return the number of consecutive failures after which an {@link Endpoint} gets ejected.
+     */
+    public int getMaxConsecutiveFailures() {
+        return maxConsecutiveFailures;
+    }
+
+    /**
+     * Select the {@link Endpoint} the next request will be sent to. If every endpoint has been ejected, all of them
+     * are considered since failing fast wouldn't be better than trying.
+     *
+     * @return an {@link Endpoint}
+     */
+    public Endpoint select() {
+        List<Endpoint> healthy = new ArrayList<Endpoint>(endpoints.size());
+        for (Endpoint e : endpoints) {
+            if (e.isHealthy()) {
+                healthy.add(e);
+            }
+        }
+        return policy.select(healthy.isEmpty() ? endpoints : healthy);
+    }
+
+    void failed(Endpoint endpoint) {
+        if (endpoint.requestFailed() >= maxConsecutiveFailures && endpoint.isHealthy()) {
+            logger.warn("Ejecting {} from host group {}", endpoint.getBaseUrl(), name);
+            endpoint.eject();
+        }
+    }
+
+    /**
+     * Try to open a connection to every ejected {@link Endpoint}, and reinstate the ones that accept it.
+     *
+     * @param connectTimeoutInMs the connect timeout of every probe
+     */
+    void checkHealth(int connectTimeoutInMs) {
+        for (Endpoint e : endpoints) {
+            if (e.isHealthy()) {
+                continue;
+            }
+
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(e.getHost(), e.getPort()), connectTimeoutInMs);
+                logger.info("Reinstating {} in host group {}", e.getBaseUrl(), name);
+                e.reinstate();
+            } catch (IOException ex) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Health check of " + e.getBaseUrl() + " failed", ex);
+                }
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HostGroup{" +
+                "name=" + name +
+                ", endpoints=" + endpoints +
+                '}';
+    }
+
+    public static class Builder {
+        private final String name;
+        private final List<Endpoint> endpoints = new ArrayList<Endpoint>();
+        private LoadBalancingPolicy policy = new RoundRobinPolicy();
+        private int maxConsecutiveFailures = 3;
+
+        /**
+         * Create a {@link Builder} for the group of the given name.
+         *
+         * @param name the logical host name of the group, e.g. catalog.
+         */
+        public Builder(String name) {
+            this.name = name.toLowerCase();
+        }
+
+        /**
+         * Add an {@link Endpoint} to the group.
+         *
+         * @param baseUrl the base url (scheme, host and port) of the endpoint, e.g. http://10.0.0.1:8080
+         * @return a {@link Builder}
+         */
+        public Builder addEndpoint(String baseUrl) {
+            endpoints.add(new Endpoint(baseUrl));
+            return this;
+        }
+
+        /**
+         * Set the {@link LoadBalancingPolicy}. Default is {@link RoundRobinPolicy}
+         *
+         * @param policy a {@link LoadBalancingPolicy}
+         * @return a {@link Builder}
+         */
+        public Builder setLoadBalancingPolicy(LoadBalancingPolicy policy) {
+            this.policy = policy;
+            return this;
+        }
+
+        /**
+         * Set the number of consecutive failures, i.e. connection errors or 5xx responses, after which an
+         * {@link Endpoint} gets ejected until a health check reinstates it. Default is 3.
+         *
+         * @param maxConsecutiveFailures the number of consecutive failures
+         * @return a {@link Builder}
+         */
+        public Builder setMaxConsecutiveFailures(int maxConsecutiveFailures) {
+            this.maxConsecutiveFailures = maxConsecutiveFailures;
+            return this;
+        }
+
+        /**
+         * Build a {@link HostGroup}
+         *
+         * @return a {@link HostGroup}
+         */
+        public HostGroup build() {
+            if (endpoints.isEmpty()) {
+                throw new IllegalStateException("A HostGroup requires at least one endpoint");
+            }
+            return new HostGroup(name, Collections.unmodifiableList(new ArrayList<Endpoint>(endpoints)),
+                    policy, maxConsecutiveFailures);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.loadbalance;
+
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.ReleasableAsyncHandler;
+import com.ning.http.client.Request;
+import com.ning.http.client.RequestBuilder;
+import com.ning.http.client.filter.FilterContext;
+import com.ning.http.client.filter.FilterException;
+import com.ning.http.client.filter.RequestFilter;
+import com.ning.http.util.AsyncHttpProviderUtils;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link RequestFilter} which resolves the {@link HostGroup} name used as the host of a request's url to one of the
+ * group's {@link Endpoint}. Since the url is rewritten before the request reaches the
+ * {@link com.ning.http.client.AsyncHttpProvider}, pooled connections are reused per real endpoint.
+ * <p/>
+ * Ejected endpoints are periodically probed by opening a TCP connection, and reinstated once it succeeds. The filter
+ * is closed with the {@link com.ning.http.client.AsyncHttpClient} it is configured with, so it must not be shared by
+ * several clients.
+ * <p/>
+ * {@code
+ *      AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder()
+ *          .addRequestFilter(new HostGroupRequestFilter(catalog))
+ *          .build();
+ *      client.prepareGet("http://catalog/items/1").execute();
+ * }
+ */
+public class HostGroupRequestFilter implements RequestFilter, Closeable {
+
+    private final static int HEALTH_CHECK_CONNECT_TIMEOUT = 1000;
+
+    private final Map<String, HostGroup> groups = new HashMap<String, HostGroup>();
+    private final ScheduledExecutorService healthChecker;
+    private final boolean ownHealthChecker;
+
+    /**
+     * Create a {@link HostGroupRequestFilter} which checks the health of ejected endpoints every 5 seconds, using its own
+     * thread.
+     *
+     * @param groups the {@link HostGroup}
+     */
+    public HostGroupRequestFilter(HostGroup... groups) {
+        this(Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "AsyncHttpClient-HealthCheck");
+                t.setDaemon(true);
+                return t;
+            }
+        }), 5000, true, groups);
+    }
+
+    /**
+     * Create a {@link HostGroupRequestFilter}
+     *
+     * @param healthChecker             the {@link ScheduledExecutorService} used to run the health checks
+     * @param healthCheckIntervalInMs   the time in millisecond between two health checks of the ejected endpoints
+     * @param groups                    the {@link HostGroup}
+     */
+    public HostGroupRequestFilter(ScheduledExecutorService healthChecker, long healthCheckIntervalInMs, HostGroup... groups) {
+        this(healthChecker, healthCheckIntervalInMs, false, groups);
+    }
+
+    private HostGroupRequestFilter(ScheduledExecutorService healthChecker, long healthCheckIntervalInMs,
+                                   boolean ownHealthChecker, HostGroup... groups) {
+        this.healthChecker = healthChecker;
+        this.ownHealthChecker = ownHealthChecker;
+        for (HostGroup group : groups) {
+            this.groups.put(group.getName(), group);
+        }
+
+        healthChecker.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                for (HostGroup group : HostGroupRequestFilter.this.groups.values()) {
+                    group.checkHealth(HEALTH_CHECK_CONNECT_TIMEOUT);
+                }
+            }
+        }, healthCheckIntervalInMs, healthCheckIntervalInMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Return the {@link HostGroup} of the given name, or null.
+     *
+     * @param name the name of the group
+     * @return the {@link HostGroup}, or null
+     */
+    public HostGroup getHostGroup(String name) {
+        return groups.get(name.toLowerCase());
+    }
+
+    public FilterContext filter(FilterContext ctx) throws FilterException {
+        return resolve((FilterContext<?>) ctx);
+    }
+
+    private <T> FilterContext<?> resolve(FilterContext<T> ctx) {
+        Request request = ctx.getRequest();
+        URI uri = AsyncHttpProviderUtils.createUri(request.getUrl());
+        HostGroup group = uri.getHost() == null ? null : groups.get(uri.getHost().toLowerCase());
+        if (group == null) {
+            return ctx;
+        }
+
+        Endpoint endpoint = group.select();
+
+        // The query parameters are kept by the prototype, only the path needs to be appended.
+        Request resolved = new RequestBuilder(request).setUrl(endpoint.getBaseUrl() + uri.getRawPath()).build();
+
+        endpoint.requestStarted();
+        return new FilterContext.FilterContextBuilder<T>(ctx)
+                .asyncHandler(new AsyncHandlerWrapper<T>(ctx.getAsyncHandler(), group, endpoint))
+                .request(resolved)
+                .build();
+    }
+
+    /**
+     * Stop the health checks if the thread running them has been created by this instance. Invoked by
+     * {@link com.ning.http.client.AsyncHttpClient#close()}.
+     */
+    public void close() {
+        if (ownHealthChecker) {
+            healthChecker.shutdown();
+        }
+    }
+
+    private static class AsyncHandlerWrapper<T> implements ReleasableAsyncHandler<T> {
+
+        private final AsyncHandler<T> asyncHandler;
+        private final HostGroup group;
+        private final Endpoint endpoint;
+        private final long startTime = System.currentTimeMillis();
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        public AsyncHandlerWrapper(AsyncHandler<T> asyncHandler, HostGroup group, Endpoint endpoint) {
+            this.asyncHandler = asyncHandler;
+            this.group = group;
+            this.endpoint = endpoint;
+        }
+
+        public void release() {
+            if (done.compareAndSet(false, true)) {
+                endpoint.requestDone();
+            }
+        }
+
+        public void onThrowable(Throwable t) {
+            if (done.compareAndSet(false, true)) {
+                endpoint.requestDone();
+                group.failed(endpoint);
+            }
+            asyncHandler.onThrowable(t);
+        }
+
+        public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+            return asyncHandler.onBodyPartReceived(bodyPart);
+        }
+
+        public STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+            if (responseStatus.getStatusCode() >= 500) {
+                group.failed(endpoint);
+            } else {
+                endpoint.requestSucceeded(System.currentTimeMillis() - startTime);
+            }
+            return asyncHandler.onStatusReceived(responseStatus);
+        }
+
+        public STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+            return asyncHandler.onHeadersReceived(headers);
+        }
+
+        public T onCompleted() throws Exception {
+            release();
+            return asyncHandler.onCompleted();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.loadbalance;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link LoadBalancingPolicy} which sends requests to the {@link Endpoint} with the fewest requests in flight. Ties
+ * are broken in round-robin order so idle endpoints share the load evenly.
+ */
+public class LeastInFlightPolicy implements LoadBalancingPolicy {
+
+    private final AtomicInteger offset = new AtomicInteger();
+
+    public Endpoint select(List<Endpoint> endpoints) {
+        int size = endpoints.size();
+        int start = Math.abs(offset.getAndIncrement() % size);
+
+        Endpoint best = null;
+        int bestInFlight = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            Endpoint e = endpoints.get((start + i) % size);
+            int inFlight = e.getInFlight();
+            if (inFlight < bestInFlight) {
+                best = e;
+                bestInFlight = inFlight;
+            }
+        }
+        return best;
+    }
+}
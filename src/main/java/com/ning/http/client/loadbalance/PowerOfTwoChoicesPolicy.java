@@ -0,0 +1,50 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.loadbalance;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A {@link LoadBalancingPolicy} which picks two random {@link Endpoint} and sends the request to the one with the lowest
+ * expected cost, i.e. its latency moving average weighted by the number of requests in flight. Endpoints without
+ * latency recorded yet are preferred so they get a chance to be measured.
+ */
+public class PowerOfTwoChoicesPolicy implements LoadBalancingPolicy {
+
+    private final Random random = new Random();
+
+    public Endpoint select(List<Endpoint> endpoints) {
+        int size = endpoints.size();
+        if (size == 1) {
+            return endpoints.get(0);
+        }
+
+        int i = random.nextInt(size);
+        int j = random.nextInt(size - 1);
+        if (j >= i) {
+            j++;
+        }
+
+        Endpoint a = endpoints.get(i);
+        Endpoint b = endpoints.get(j);
+        return cost(a) <= cost(b) ? a : b;
+    }
+
+    private static double cost(Endpoint e) {
+        return e.getLatencyEwmaInMs() * (e.getInFlight() + 1);
+    }
+}
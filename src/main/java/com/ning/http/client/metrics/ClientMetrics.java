@@ -0,0 +1,336 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per host request and byte counters, latency histograms, and connection gauges, of an
+ * {@link com.ning.http.client.AsyncHttpClient}. Metrics are recorded by the
+ * {@link com.ning.http.client.providers.netty.NettyAsyncHttpProvider} without locking.
+ * <p/>
+ * {@code
+ *      ClientMetrics metrics = new ClientMetrics("my-client");
+ *      AsyncHttpClient c = new AsyncHttpClient(new AsyncHttpClientConfig.Builder().setClientMetrics(metrics).build());
+ *      ...
+ *      MetricsSnapshot snapshot = c.getMetricsSnapshot();
+ * }
+ * <p/>
+ * When created with a name, the metrics are also registered as MBeans in the platform {@link MBeanServer}, under the
+ * {@code com.ning.http.client} domain, until {@link #close()} is invoked.
+ */
+public class ClientMetrics implements ClientMetricsMBean {
+
+    private final static Logger logger = LoggerFactory.getLogger(ClientMetrics.class);
+
+    private final static String DOMAIN = "com.ning.http.client";
+
+    private final String name;
+    private final ConcurrentMap<String, HostMetrics> hosts = new ConcurrentHashMap<String, HostMetrics>();
+    private volatile ConnectionGauges connectionGauges;
+
+    /**
+     * Create metrics which are not registered in JMX.
+     */
+    public ClientMetrics() {
+        this(null);
+    }
+
+    /**
+     * Create metrics registered in JMX under the given name.
+     *
+     * @param name the name of the client, or null to disable JMX.
+     */
+    public ClientMetrics(String name) {
+        this.name = name;
+        if (name != null) {
+            register(clientObjectName(), this);
+        }
+    }
+
+    /**
+     * Install the {@link ConnectionGauges} of the provider.
+     *
+     * @param connectionGauges the {@link ConnectionGauges}
+     */
+    public void setConnectionGauges(ConnectionGauges connectionGauges) {
+        this.connectionGauges = connectionGauges;
+    }
+
+    /**
+     * Record a response received from a host.
+     *
+     * @param baseUrl         the base url (scheme, host and port) of the host
+     * @param statusCode      the response status code
+     * @param latencyInMicros the time between the execution of the request and the end of the response.
+     */
+    public void recordResponse(String baseUrl, int statusCode, long latencyInMicros) {
+        getOrCreate(baseUrl).recordResponse(statusCode, latencyInMicros);
+    }
+
+    /**
+     * Record a request which failed without a response.
+     *
+     * @param baseUrl         the base url (scheme, host and port) of the host
+     * @param latencyInMicros the time between the execution of the request and its failure.
+     */
+    public void recordFailure(String baseUrl, long latencyInMicros) {
+        getOrCreate(baseUrl).recordFailure(latencyInMicros);
+    }
+
+    /**
+     * Record a request which has been rejected because the maximum number of connections was reached.
+     *
+     * @param baseUrl the base url (scheme, host and port) of the host
+     */
+    public void recordRejection(String baseUrl) {
+        getOrCreate(baseUrl).recordRejection();
+    }
+
+    /**
+     * Record a lookup of the connection pool.
+     *
+     * @param baseUrl the base url (scheme, host and port) of the host
+     * @param hit     true if a pooled connection has been reused.
+     */
+    public void recordPoolLookup(String baseUrl, boolean hit) {
+        getOrCreate(baseUrl).recordPoolLookup(hit);
+    }
+
+    /**
+     * Record a keep-alive connection the pool refused to cache.
+     *
+     * @param baseUrl the base url (scheme, host and port) of the host
+     */
+    public void recordPoolOfferRejected(String baseUrl) {
+        getOrCreate(baseUrl).recordPoolOfferRejected();
+    }
+
+    /**
+     * Record a pooled connection found closed when polled.
+     *
+     * @param baseUrl the base url (scheme, host and port) of the host
+     */
+    public void recordStaleConnection(String baseUrl) {
+        getOrCreate(baseUrl).recordStaleConnection();
+    }
+
+    /**
+     * Record a closed connection.
+     *
+     * @param baseUrl      the base url (scheme, host and port) of the host
+     * @param ageInMs      the time between the connect and the close of the connection.
+     * @param requestCount the number of requests served by the connection.
+     */
+    public void recordConnectionClosed(String baseUrl, long ageInMs, int requestCount) {
+        getOrCreate(baseUrl).recordConnectionClosed(ageInMs, requestCount);
+    }
+
+    /**
+     * Record bytes exchanged with a host, TLS records and HTTP headers included.
+     *
+     * @param baseUrl  the base url (scheme, host and port) of the host
+     * @param sent     the number of bytes written to the connection
+     * @param received the number of bytes read from the connection
+     */
+    public void recordBytes(String baseUrl, long sent, long received) {
+        getOrCreate(baseUrl).recordBytes(sent, received);
+    }
+
+    /**
+     * Return the {@link HostMetrics} of a host, or null if no request has been sent to that host.
+     *
+     * @param baseUrl the base url (scheme, host and port) of the host
+     * @return the {@link HostMetrics}, or null.
+     */
+    public HostMetrics getHostMetrics(String baseUrl) {
+        return hosts.get(baseUrl);
+    }
+
+    /**
+     * Return the {@link HostMetrics} of every host.
+     *
+     * @return an unmodifiable collection of {@link HostMetrics}
+     */
+    public Collection<HostMetrics> getHostMetrics() {
+        return Collections.unmodifiableCollection(hosts.values());
+    }
+
+    public int getIdleConnectionCount() {
+        ConnectionGauges gauges = connectionGauges;
+        return gauges != null ? gauges.getIdleConnectionCount() : -1;
+    }
+
+    public int getActiveConnectionCount() {
+        ConnectionGauges gauges = connectionGauges;
+        return gauges != null ? gauges.getActiveConnectionCount() : -1;
+    }
+
+    public int getMaxConnections() {
+        ConnectionGauges gauges = connectionGauges;
+        return gauges != null ? gauges.getMaxConnections() : -1;
+    }
+
+    public long getRequestCount() {
+        long count = 0;
+        for (HostMetrics host : hosts.values()) {
+            count += host.getRequestCount();
+        }
+        return count;
+    }
+
+    public long getFailureCount() {
+        long count = 0;
+        for (HostMetrics host : hosts.values()) {
+            count += host.getFailureCount();
+        }
+        return count;
+    }
+
+    public long getRejectionCount() {
+        long count = 0;
+        for (HostMetrics host : hosts.values()) {
+            count += host.getRejectionCount();
+        }
+        return count;
+    }
+
+    public long getBytesSent() {
+        long count = 0;
+        for (HostMetrics host : hosts.values()) {
+            count += host.getBytesSent();
+        }
+        return count;
+    }
+
+    public long getBytesReceived() {
+        long count = 0;
+        for (HostMetrics host : hosts.values()) {
+            count += host.getBytesReceived();
+        }
+        return count;
+    }
+
+    public long getPoolHitCount() {
+        long count = 0;
+        for (HostMetrics host : hosts.values()) {
+            count += host.getPoolHitCount();
+        }
+        return count;
+    }
+
+    public long getPoolMissCount() {
+        long count = 0;
+        for (HostMetrics host : hosts.values()) {
+            count += host.getPoolMissCount();
+        }
+        return count;
+    }
+
+    public String[] getHosts() {
+        List<String> baseUrls = new ArrayList<String>(hosts.keySet());
+        return baseUrls.toArray(new String[baseUrls.size()]);
+    }
+
+    /**
+     * Return an immutable copy of the current metrics.
+     *
+     * @return a {@link MetricsSnapshot}
+     */
+    public MetricsSnapshot snapshot() {
+        Map<String, MetricsSnapshot.HostSnapshot> hostSnapshots = new HashMap<String, MetricsSnapshot.HostSnapshot>();
+        for (HostMetrics host : hosts.values()) {
+            hostSnapshots.put(host.getBaseUrl(), new MetricsSnapshot.HostSnapshot(host));
+        }
+        return new MetricsSnapshot(System.currentTimeMillis(), getIdleConnectionCount(), getActiveConnectionCount(),
+                getMaxConnections(), hostSnapshots);
+    }
+
+    /**
+     * Unregister the MBeans, if any.
+     */
+    public void close() {
+        if (name == null) {
+            return;
+        }
+        unregister(clientObjectName());
+        for (String baseUrl : hosts.keySet()) {
+            unregister(hostObjectName(baseUrl));
+        }
+    }
+
+    private HostMetrics getOrCreate(String baseUrl) {
+        HostMetrics host = hosts.get(baseUrl);
+        if (host == null) {
+            HostMetrics newHost = new HostMetrics(baseUrl);
+            host = hosts.putIfAbsent(baseUrl, newHost);
+            if (host == null) {
+                host = newHost;
+                if (name != null) {
+                    register(hostObjectName(baseUrl), host);
+                }
+            }
+        }
+        return host;
+    }
+
+    private String clientObjectName() {
+        return DOMAIN + ":type=AsyncHttpClient,name=" + ObjectName.quote(name);
+    }
+
+    private String hostObjectName(String baseUrl) {
+        return DOMAIN + ":type=Host,client=" + ObjectName.quote(name) + ",name=" + ObjectName.quote(baseUrl);
+    }
+
+    private static void register(String objectName, Object mbean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName(objectName);
+            if (server.isRegistered(on)) {
+                server.unregisterMBean(on);
+            }
+            server.registerMBean(mbean, on);
+        } catch (JMException ex) {
+            logger.warn("Unable to register MBean " + objectName, ex);
+        }
+    }
+
+    private static void unregister(String objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName(objectName);
+            if (server.isRegistered(on)) {
+                server.unregisterMBean(on);
+            }
+        } catch (JMException ex) {
+            logger.warn("Unable to unregister MBean " + objectName, ex);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.metrics;
+
+/**
+ * The JMX view of a {@link ClientMetrics}.
+ */
+public interface ClientMetricsMBean {
+
+    public int getIdleConnectionCount();
+
+    public int getActiveConnectionCount();
+
+    public int getMaxConnections();
+
+    public long getRequestCount();
+
+    public long getFailureCount();
+
+    public long getRejectionCount();
+
+    public long getBytesSent();
+
+    public long getBytesReceived();
+
+    public long getPoolHitCount();
+
+    public long getPoolMissCount();
+
+    public String[] getHosts();
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.metrics;
+
+/**
+ * Expose the state of the connections of an {@link com.ning.http.client.AsyncHttpProvider}. An implementation is
+ * installed by the provider with {@link ClientMetrics#setConnectionGauges(ConnectionGauges)}.
+ */
+public interface ConnectionGauges {
+
+    /**
+     * Return the number of idle connections in the pool.
+     *
+     * @return the number of idle connections in the pool.
+     */
+    public int getIdleConnectionCount();
+
+    /**
+     * Return the number of connections currently used by a request.
+     *
+     * @return the number of connections currently used by a request.
+     */
+    public int getActiveConnectionCount();
+
+    /**
+     * Return the maximum number of connections, or -1 if unlimited.
+     *
+     * @return the maximum number of connections, or -1 if unlimited.
+     */
+    public int getMaxConnections();
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histogram of the requests sent to a single host.
+ */
+public class HostMetrics implements HostMetricsMBean {
+
+    private final String baseUrl;
+    private final AtomicLongArray statusClasses = new AtomicLongArray(5);
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final AtomicLong poolHits = new AtomicLong();
+    private final AtomicLong poolMisses = new AtomicLong();
+    private final AtomicLong poolOffersRejected = new AtomicLong();
+    private final AtomicLong staleConnections = new AtomicLong();
+    private final AtomicLong closedConnections = new AtomicLong();
+    private final AtomicLong requestsOnClosedConnections = new AtomicLong();
+    private final LatencyHistogram connectionAge = new LatencyHistogram();
+
+    HostMetrics(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    void recordResponse(int statusCode, long latencyInMicros) {
+        int statusClass = statusCode / 100 - 1;
+        if (statusClass >= 0 && statusClass < 5) {
+            statusClasses.incrementAndGet(statusClass);
+        }
+        latency.record(latencyInMicros);
+    }
+
+    void recordFailure(long latencyInMicros) {
+        failures.incrementAndGet();
+        latency.record(latencyInMicros);
+    }
+
+    void recordRejection() {
+        rejections.incrementAndGet();
+    }
+
+    void recordPoolLookup(boolean hit) {
+        if (hit) {
+            poolHits.incrementAndGet();
+        } else {
+            poolMisses.incrementAndGet();
+        }
+    }
+
+    void recordPoolOfferRejected() {
+        poolOffersRejected.incrementAndGet();
+    }
+
+    void recordStaleConnection() {
+        staleConnections.incrementAndGet();
+    }
+
+    void recordConnectionClosed(long ageInMs, int requestCount) {
+        closedConnections.incrementAndGet();
+        requestsOnClosedConnections.addAndGet(requestCount);
+        connectionAge.record(ageInMs * 1000);
+    }
+
+    void recordBytes(long sent, long received) {
+        if (sent != 0) {
+            bytesSent.addAndGet(sent);
+        }
+        if (received != 0) {
+            bytesReceived.addAndGet(received);
+        }
+    }
+
+    /**
+     * Return the base url (scheme, host and port) of the host.
+     *
+     * @return the base url of the host.
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Return the number of requests which completed, with a response or a failure.
+     *
+     * @return the number of completed requests.
+     */
+    public long getRequestCount() {
+        long count = failures.get();
+        for (int i = 0; i < 5; i++) {
+            count += statusClasses.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Return the number of 1xx responses.
+     *
+     * @return the number of 1xx responses.
+     */
+    public long getInformationalCount() {
+        return statusClasses.get(0);
+    }
+
+    /**
+     * Return the number of 2xx responses.
+     *
+     * @return the number of 2xx responses.
+     */
+    public long getSuccessCount() {
+        return statusClasses.get(1);
+    }
+
+    /**
+     * Return the number of 3xx responses.
+     *
+     * @return the number of 3xx responses.
+     */
+    public long getRedirectionCount() {
+        return statusClasses.get(2);
+    }
+
+    /**
+     * Return the number of 4xx responses.
+     *
+     * @return the number of 4xx responses.
+     */
+    public long getClientErrorCount() {
+        return statusClasses.get(3);
+    }
+
+    /**
+     * Return the number of 5xx responses.
+     *
+     * @return the number of 5xx responses.
+     */
+    public long getServerErrorCount() {
+        return statusClasses.get(4);
+    }
+
+    /**
+     * Return the number of requests which failed without a response, e.g. because of a connect error or a timeout.
+     *
+     * @return the number of failed requests.
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Return the number of requests rejected because the maximum number of connections was reached.
+     *
+     * @return the number of rejected requests.
+     */
+    public long getRejectionCount() {
+        return rejections.get();
+    }
+
+    /**
+     * Return the number of bytes written to the connections of that host, TLS records and HTTP headers included.
+     *
+     * @return the number of bytes sent.
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * Return the number of bytes read from the connections of that host, TLS records and HTTP headers included.
+     *
+     * @return the number of bytes received.
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * Return the {@link LatencyHistogram} of the completed requests, measured from the time the request is executed
+     * until its response is fully received.
+     *
+     * @return the {@link LatencyHistogram}
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return latency;
+    }
+
+    /**
+     * Return the number of requests which reused a pooled connection.
+     *
+     * @return the number of pool hits.
+     */
+    public long getPoolHitCount() {
+        return poolHits.get();
+    }
+
+    /**
+     * Return the number of requests which found no pooled connection and had to open a new one.
+     *
+     * @return the number of pool misses.
+     */
+    public long getPoolMissCount() {
+        return poolMisses.get();
+    }
+
+    /**
+     * Return the ratio of pool hits over pool lookups, or -1 if the pool has never been looked up.
+     *
+     * @return the pool hit ratio, between 0 and 1, or -1.
+     */
+    public double getPoolHitRatio() {
+        long hits = poolHits.get();
+        long lookups = hits + poolMisses.get();
+        return lookups == 0 ? -1 : (double) hits / lookups;
+    }
+
+    /**
+     * Return the number of keep-alive connections which have been closed instead of being pooled, because the pool
+     * refused them, e.g. when the maximum number of connections per host was reached.
+     *
+     * @return the number of connections refused by the pool.
+     */
+    public long getPoolOfferRejectedCount() {
+        return poolOffersRejected.get();
+    }
+
+    /**
+     * Return the number of pooled connections found closed when polled.
+     *
+     * @return the number of stale connections.
+     */
+    public long getStaleConnectionCount() {
+        return staleConnections.get();
+    }
+
+    /**
+     * Return the number of connections closed.
+     *
+     * @return the number of connections closed.
+     */
+    public long getClosedConnectionCount() {
+        return closedConnections.get();
+    }
+
+    /**
+     * Return the mean number of requests served by the closed connections, or -1 if no connection has been closed.
+     *
+     * @return the mean number of requests per connection, or -1.
+     */
+    public double getMeanRequestsPerConnection() {
+        long closed = closedConnections.get();
+        return closed == 0 ? -1 : (double) requestsOnClosedConnections.get() / closed;
+    }
+
+    /**
+     * Return the {@link LatencyHistogram} of the age of the closed connections, from connect to close.
+     *
+     * @return the {@link LatencyHistogram}
+     */
+    public LatencyHistogram getConnectionAgeHistogram() {
+        return connectionAge;
+    }
+
+    public long getMedianConnectionAgeInMs() {
+        return connectionAge.snapshot().getValueAtPercentileInMicros(50) / 1000;
+    }
+
+    public long getMaxConnectionAgeInMs() {
+        return connectionAge.snapshot().getMaxInMicros() / 1000;
+    }
+
+    public double getMeanLatencyInMicros() {
+        return latency.snapshot().getMeanInMicros();
+    }
+
+    public long getMedianLatencyInMicros() {
+        return latency.snapshot().getValueAtPercentileInMicros(50);
+    }
+
+    public long get99thPercentileLatencyInMicros() {
+        return latency.snapshot().getValueAtPercentileInMicros(99);
+    }
+
+    public long getMaxLatencyInMicros() {
+        return latency.snapshot().getMaxInMicros();
+    }
+
+    @Override
+    public String toString() {
+        return "HostMetrics{" +
+                "baseUrl=" + baseUrl +
+                ", statusClasses=" + statusClasses +
+                ", failures=" + failures +
+                ", rejections=" + rejections +
+                ", bytesSent=" + bytesSent +
+                ", bytesReceived=" + bytesReceived +
+                ", latency=" + latency.snapshot() +
+                ", poolHits=" + poolHits +
+                ", poolMisses=" + poolMisses +
+                ", poolOffersRejected=" + poolOffersRejected +
+                ", staleConnections=" + staleConnections +
+                ", closedConnections=" + closedConnections +
+                ", requestsPerConnection=" + getMeanRequestsPerConnection() +
+                '}';
+    }
+}
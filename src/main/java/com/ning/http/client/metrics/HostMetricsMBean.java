@@ -0,0 +1,70 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.metrics;
+
+/**
+ * The JMX view of a {@link HostMetrics}.
+ */
+public interface HostMetricsMBean {
+
+    public String getBaseUrl();
+
+    public long getRequestCount();
+
+    public long getInformationalCount();
+
+    public long getSuccessCount();
+
+    public long getRedirectionCount();
+
+    public long getClientErrorCount();
+
+    public long getServerErrorCount();
+
+    public long getFailureCount();
+
+    public long getRejectionCount();
+
+    public long getBytesSent();
+
+    public long getBytesReceived();
+
+    public long getPoolHitCount();
+
+    public long getPoolMissCount();
+
+    public double getPoolHitRatio();
+
+    public long getPoolOfferRejectedCount();
+
+    public long getStaleConnectionCount();
+
+    public long getClosedConnectionCount();
+
+    public double getMeanRequestsPerConnection();
+
+    public long getMedianConnectionAgeInMs();
+
+    public long getMaxConnectionAgeInMs();
+
+    public double getMeanLatencyInMicros();
+
+    public long getMedianLatencyInMicros();
+
+    public long get99thPercentileLatencyInMicros();
+
+    public long getMaxLatencyInMicros();
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free log-linear histogram of latencies in microseconds. Every power of two range is split into 8 linear
+ * buckets, so a recorded value is reported with at most 12.5% error, whatever its magnitude. Recording a value never
+ * allocates.
+ */
+public class LatencyHistogram {
+
+    private final static int SUB_BUCKET_BITS = 3;
+
+    private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final static int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a latency.
+     *
+     * @param latencyInMicros the latency in microseconds
+     */
+    public void record(long latencyInMicros) {
+        long value = latencyInMicros < 0 ? 0 : latencyInMicros;
+        counts.incrementAndGet(bucketOf(value));
+        sum.addAndGet(value);
+
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+        }
+    }
+
+    /**
+     * Return a copy of the recorded latencies.
+     *
+     * @return a {@link Snapshot}
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.get(), max.get());
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * An immutable copy of a {@link LatencyHistogram}.
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Return the number of recorded latencies.
+         *
+         * @return the number of recorded latencies.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Return the highest recorded latency in microseconds.
+         *
+         * @return the highest recorded latency in microseconds.
+         */
+        public long getMaxInMicros() {
+            return max;
+        }
+
+        /**
+         * Return the mean latency in microseconds, or 0 if nothing has been recorded.
+         *
+         * @return the mean latency in microseconds.
+         */
+        public double getMeanInMicros() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Return the latency in microseconds below which the given percentage of latencies fall, or 0 if nothing has
+         * been recorded.
+         *
+         * @param percentile a percentage between 0 and 100, e.g. 99.9
+         * @return the latency in microseconds at the percentile.
+         */
+        public long getValueAtPercentileInMicros(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" +
+                    "count=" + count +
+                    ", mean=" + getMeanInMicros() +
+                    ", p50=" + getValueAtPercentileInMicros(50) +
+                    ", p99=" + getValueAtPercentileInMicros(99) +
+                    ", max=" + max +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An immutable copy of a {@link ClientMetrics}, e.g. to be published to a monitoring system.
+ */
+public class MetricsSnapshot {
+
+    private final long timestamp;
+    private final int idleConnectionCount;
+    private final int activeConnectionCount;
+    private final int maxConnections;
+    private final Map<String, HostSnapshot> hosts;
+
+    MetricsSnapshot(long timestamp, int idleConnectionCount, int activeConnectionCount, int maxConnections,
+                    Map<String, HostSnapshot> hosts) {
+        this.timestamp = timestamp;
+        this.idleConnectionCount = idleConnectionCount;
+        this.activeConnectionCount = activeConnectionCount;
+        this.maxConnections = maxConnections;
+        this.hosts = Collections.unmodifiableMap(hosts);
+    }
+
+    /**
+     * Return the time in millisecond the snapshot has been taken.
+     *
+     * @return the time in millisecond the snapshot has been taken.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Return the number of idle connections in the pool, or -1 if the provider doesn't expose it.
+     *
+     * @return the number of idle connections in the pool.
+     */
+    public int getIdleConnectionCount() {
+        return idleConnectionCount;
+    }
+
+    /**
+     * Return the number of connections used by a request, or -1 if the provider doesn't expose it.
+     *
+     * @return the number of connections used by a request.
+     */
+    public int getActiveConnectionCount() {
+        return activeConnectionCount;
+    }
+
+    /**
+     * Return the maximum number of connections, or -1 if unlimited.
+     *
+     * @return the maximum number of connections.
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Return the {@link HostSnapshot} of every host, keyed by base url.
+     *
+     * @return an unmodifiable map of {@link HostSnapshot}
+     */
+    public Map<String, HostSnapshot> getHosts() {
+        return hosts;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{" +
+                "timestamp=" + timestamp +
+                ", idleConnectionCount=" + idleConnectionCount +
+                ", activeConnectionCount=" + activeConnectionCount +
+                ", maxConnections=" + maxConnections +
+                ", hosts=" + hosts.values() +
+                '}';
+    }
+
+    /**
+     * An immutable copy of a {@link HostMetrics}.
+     */
+    public static class HostSnapshot {
+
+        private final String baseUrl;
+        private final long[] statusClasses;
+        private final long failureCount;
+        private final long rejectionCount;
+        private final long bytesSent;
+        private final long bytesReceived;
+        private final LatencyHistogram.Snapshot latency;
+        private final long poolHitCount;
+        private final long poolMissCount;
+        private final long poolOfferRejectedCount;
+        private final long staleConnectionCount;
+        private final long closedConnectionCount;
+        private final double meanRequestsPerConnection;
+        private final LatencyHistogram.Snapshot connectionAge;
+
+        HostSnapshot(HostMetrics metrics) {
+            this.baseUrl = metrics.getBaseUrl();
+            this.statusClasses = new long[]{metrics.getInformationalCount(), metrics.getSuccessCount(),
+                    metrics.getRedirectionCount(), metrics.getClientErrorCount(), metrics.getServerErrorCount()};
+            this.failureCount = metrics.getFailureCount();
+            this.rejectionCount = metrics.getRejectionCount();
+            this.bytesSent = metrics.getBytesSent();
+            this.bytesReceived = metrics.getBytesReceived();
+            this.latency = metrics.getLatencyHistogram().snapshot();
+            this.poolHitCount = metrics.getPoolHitCount();
+            this.poolMissCount = metrics.getPoolMissCount();
+            this.poolOfferRejectedCount = metrics.getPoolOfferRejectedCount();
+            this.staleConnectionCount = metrics.getStaleConnectionCount();
+            this.closedConnectionCount = metrics.getClosedConnectionCount();
+            this.meanRequestsPerConnection = metrics.getMeanRequestsPerConnection();
+            this.connectionAge = metrics.getConnectionAgeHistogram().snapshot();
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        /**
+         * Return the number of completed requests, with a response or a failure.
+         *
+         * @return the number of completed requests.
+         */
+        public long getRequestCount() {
+            long count = failureCount;
+            for (long c : statusClasses) {
+                count += c;
+            }
+            return count;
+        }
+
+        /**
+         * Return the number of responses of a status class, e.g. 5 for 5xx.
+         *
+         * @param statusClass the first digit of the status code, between 1 and 5.
+         * @return the number of responses of the status class.
+         */
+        public long getStatusClassCount(int statusClass) {
+            if (statusClass < 1 || statusClass > 5) {
+                throw new IllegalArgumentException("Invalid status class " + statusClass);
+            }
+            return statusClasses[statusClass - 1];
+        }
+
+        public long getFailureCount() {
+            return failureCount;
+        }
+
+        public long getRejectionCount() {
+            return rejectionCount;
+        }
+
+        /**
+         * Return the number of bytes written to the connections of that host, TLS records and HTTP headers included.
+         *
+         * @return the number of bytes sent.
+         */
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        /**
+         * Return the number of bytes read from the connections of that host, TLS records and HTTP headers included.
+         *
+         * @return the number of bytes received.
+         */
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        public long getPoolHitCount() {
+            return poolHitCount;
+        }
+
+        public long getPoolMissCount() {
+            return poolMissCount;
+        }
+
+        public long getPoolOfferRejectedCount() {
+            return poolOfferRejectedCount;
+        }
+
+        public long getStaleConnectionCount() {
+            return staleConnectionCount;
+        }
+
+        public long getClosedConnectionCount() {
+            return closedConnectionCount;
+        }
+
+        /**
+         * Return the mean number of requests served by the closed connections, or -1 if no connection has been closed.
+         *
+         * @return the mean number of requests per connection, or -1.
+         */
+        public double getMeanRequestsPerConnection() {
+            return meanRequestsPerConnection;
+        }
+
+        /**
+         * Return the age of the closed connections, from connect to close.
+         *
+         * @return a {@link LatencyHistogram.Snapshot} in microseconds.
+         */
+        public LatencyHistogram.Snapshot getConnectionAge() {
+            return connectionAge;
+        }
+
+        @Override
+        public String toString() {
+            return "HostSnapshot{" +
+                    "baseUrl=" + baseUrl +
+                    ", 1xx=" + statusClasses[0] +
+                    ", 2xx=" + statusClasses[1] +
+                    ", 3xx=" + statusClasses[2] +
+                    ", 4xx=" + statusClasses[3] +
+                    ", 5xx=" + statusClasses[4] +
+                    ", failures=" + failureCount +
+                    ", rejections=" + rejectionCount +
+                    ", bytesSent=" + bytesSent +
+                    ", bytesReceived=" + bytesReceived +
+                    ", latency=" + latency +
+                    ", poolHits=" + poolHitCount +
+                    ", poolMisses=" + poolMissCount +
+                    ", poolOffersRejected=" + poolOfferRejectedCount +
+                    ", staleConnections=" + staleConnectionCount +
+                    ", closedConnections=" + closedConnectionCount +
+                    ", requestsPerConnection=" + meanRequestsPerConnection +
+                    ", connectionAge=" + connectionAge +
+                    '}';
+        }
+    }
+}
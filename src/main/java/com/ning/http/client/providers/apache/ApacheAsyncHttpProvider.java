@@ -27,6 +27,8 @@ import com.ning.http.client.filter.IOExceptionFilter;
 import com.ning.http.client.filter.RequestFilter;
 import com.ning.http.client.filter.ResponseFilter;
 import com.ning.http.client.resumable.ResumableAsyncHandler;
+import com.ning.http.client.tracing.RequestTracer;
+import com.ning.http.client.tracing.Trace;
 import com.ning.http.util.AsyncHttpProviderUtils;
 import com.ning.http.util.UTF8UrlEncoder;
 import org.apache.commons.httpclient.CircularRedirectException;
@@ -187,7 +189,8 @@ public class ApacheAsyncHttpProvider implements AsyncHttpProvider<HttpClient> {
         ApacheResponseFuture f = new ApacheResponseFuture<T>(handler, requestTimeout, request, method);
         f.touch();
 
-        f.setInnerFuture(config.executorService().submit(new ApacheClientRunnable(request, handler, method, f, httpClient)));
+        Trace<?> trace = Trace.start(config.getRequestTracer(), request);
+        f.setInnerFuture(config.executorService().submit(new ApacheClientRunnable(request, handler, method, f, httpClient, trace)));
         maxConnections.incrementAndGet();
         return f;
     }
@@ -402,13 +405,15 @@ public class ApacheAsyncHttpProvider implements AsyncHttpProvider<HttpClient> {
         private byte[] cachedBytes;
         private int cachedBytesLenght;
         private boolean terminate = true;
+        private final Trace<?> trace;
 
-        public ApacheClientRunnable(Request request, AsyncHandler<T> asyncHandler, HttpMethodBase method, ApacheResponseFuture<T> future, HttpClient httpClient) {
+        public ApacheClientRunnable(Request request, AsyncHandler<T> asyncHandler, HttpMethodBase method, ApacheResponseFuture<T> future, HttpClient httpClient, Trace<?> trace) {
             this.asyncHandler = asyncHandler;
             this.method = method;
             this.future = future;
             this.request = request;
             this.httpClient = httpClient;
+            this.trace = trace;
         }
 
         public T call() {
@@ -430,6 +435,14 @@ public class ApacheAsyncHttpProvider implements AsyncHttpProvider<HttpClient> {
                     future.setReaperFuture(reaperFuture);
                 }
 
+                if (trace != null) {
+                    for (Map.Entry<String, List<String>> header : trace.attemptStarted(request)) {
+                        for (String value : header.getValue()) {
+                            method.addRequestHeader(header.getKey(), value);
+                        }
+                    }
+                }
+
                 int statusCode = 200;
                 try {
                     statusCode = httpClient.executeMethod(method);
@@ -438,6 +451,9 @@ public class ApacheAsyncHttpProvider implements AsyncHttpProvider<HttpClient> {
                     statusCode = 302;
                     currentRedirectCount = config.getMaxRedirects();
                 }
+                if (trace != null) {
+                    trace.attemptCompleted(statusCode, null);
+                }
 
                 ApacheResponseStatus status = new ApacheResponseStatus(uri, method, ApacheAsyncHttpProvider.this);
                 FilterContext fc = new FilterContext.FilterContextBuilder().asyncHandler(asyncHandler).request(request).responseStatus(status).build();
@@ -476,6 +492,9 @@ public class ApacheAsyncHttpProvider implements AsyncHttpProvider<HttpClient> {
                             request = builder.setUrl(newUrl).build();
                             method = createMethod(httpClient, request);
                             terminate = false;
+                            if (trace != null) {
+                                trace.nextAttempt(RequestTracer.Attempt.REDIRECT);
+                            }
                             return call();
                         }
                     } else {
@@ -545,7 +564,11 @@ public class ApacheAsyncHttpProvider implements AsyncHttpProvider<HttpClient> {
                 }
 
                 try {
-                    return asyncHandler.onCompleted();
+                    T t = asyncHandler.onCompleted();
+                    if (trace != null) {
+                        trace.requestCompleted(null);
+                    }
+                    return t;
                 } catch (Throwable t) {
                     RuntimeException ex = new RuntimeException();
                     ex.initCause(t);
@@ -553,6 +576,10 @@ public class ApacheAsyncHttpProvider implements AsyncHttpProvider<HttpClient> {
                 }
             } catch (Throwable t) {
 
+                if (trace != null) {
+                    trace.attemptCompleted(-1, t);
+                }
+
                 if (IOException.class.isAssignableFrom(t.getClass()) && config.getIOExceptionFilters().size() > 0) {
                     FilterContext fc = new FilterContext.FilterContextBuilder().asyncHandler(asyncHandler)
                         .request(future.getRequest()).ioException(IOException.class.cast(t)).build();
@@ -573,6 +600,11 @@ public class ApacheAsyncHttpProvider implements AsyncHttpProvider<HttpClient> {
                     }
                 }
 
+                Throwable cause = filterException(t);
+                if (trace != null) {
+                    trace.requestCompleted(cause);
+                }
+
                 if (method.isAborted()) {
                     return null;
                 }
@@ -580,7 +612,7 @@ public class ApacheAsyncHttpProvider implements AsyncHttpProvider<HttpClient> {
                 logger.debug(t.getMessage(), t);
 
                 try {
-                    future.abort(filterException(t));
+                    future.abort(cause);
                 } catch (Throwable t2) {
                     logger.error(t2.getMessage(), t2);
                 }
@@ -102,6 +102,8 @@ public class ApacheResponseFuture<V> implements FutureImpl<V> {
     }
 
     public void abort(Throwable t) {
+        // Set before the inner future is cancelled, which wakes up get().
+        exception.set(t);
         if (innerFuture != null) {
             innerFuture.cancel(true);
         }
@@ -114,7 +116,6 @@ public class ApacheResponseFuture<V> implements FutureImpl<V> {
             reaperFuture.cancel(true);
         }
 
-        exception.set(t);
         if (!timedOut.get() && !cancelled.get()) {
             asyncHandler.onThrowable(t);
         }     
@@ -40,6 +40,8 @@ import com.ning.http.client.filter.IOExceptionFilter;
 import com.ning.http.client.filter.RequestFilter;
 import com.ning.http.client.filter.ResponseFilter;
 import com.ning.http.client.resumable.ResumableAsyncHandler;
+import com.ning.http.client.tracing.RequestTracer;
+import com.ning.http.client.tracing.Trace;
 import com.ning.http.multipart.MultipartRequestEntity;
 import com.ning.http.util.AsyncHttpProviderUtils;
 import com.ning.http.util.AuthenticatorUtils;
@@ -149,7 +151,9 @@ public class JDKAsyncHttpProvider implements AsyncHttpProvider<HttpURLConnection
         JDKFuture f = delegate == null ? new JDKFuture<T>(handler, config.getRequestTimeoutInMs()) : delegate;
         f.touch();
 
-        f.setInnerFuture(config.executorService().submit(new AsyncHttpUrlConnection(urlConnection, request, handler, f)));
+        // A delegated request is the continuation of a request traced by another provider.
+        Trace<?> trace = delegate == null ? Trace.start(config.getRequestTracer(), request) : null;
+        f.setInnerFuture(config.executorService().submit(new AsyncHttpUrlConnection(urlConnection, request, handler, f, trace)));
         maxConnections.incrementAndGet();
         
         return f;
@@ -216,13 +220,15 @@ public class JDKAsyncHttpProvider implements AsyncHttpProvider<HttpURLConnection
         private byte[] cachedBytes;
         private int cachedBytesLenght;
         private boolean terminate = true;
+        private final Trace<?> trace;
 
-        public AsyncHttpUrlConnection(HttpURLConnection urlConnection, Request request, AsyncHandler<T> asyncHandler, FutureImpl<T> future) {
+        public AsyncHttpUrlConnection(HttpURLConnection urlConnection, Request request, AsyncHandler<T> asyncHandler, FutureImpl<T> future, Trace<?> trace) {
             this.urlConnection = urlConnection;
             this.request = request;
             this.asyncHandler = asyncHandler;
             this.future = future;
             this.request = request;
+            this.trace = trace;
         }
 
         public T call() throws Exception {
@@ -237,9 +243,19 @@ public class JDKAsyncHttpProvider implements AsyncHttpProvider<HttpURLConnection
                 }
 
                 configure(uri, urlConnection, request);
+                if (trace != null) {
+                    for (Map.Entry<String, List<String>> header : trace.attemptStarted(request)) {
+                        for (String value : header.getValue()) {
+                            urlConnection.addRequestProperty(header.getKey(), value);
+                        }
+                    }
+                }
                 urlConnection.connect();
 
                 int statusCode = urlConnection.getResponseCode();
+                if (trace != null) {
+                    trace.attemptCompleted(statusCode, null);
+                }
 
                 logger.debug("\n\nRequest {}\n\nResponse {}\n", request, statusCode);
 
@@ -276,6 +292,9 @@ public class JDKAsyncHttpProvider implements AsyncHttpProvider<HttpURLConnection
                             request = builder.setUrl(newUrl).build();
                             urlConnection = createUrlConnection(request);
                             terminate = false;
+                            if (trace != null) {
+                                trace.nextAttempt(RequestTracer.Attempt.REDIRECT);
+                            }
                             return call();
                         }
                     } else {
@@ -300,6 +319,9 @@ public class JDKAsyncHttpProvider implements AsyncHttpProvider<HttpURLConnection
                     request = builder.setRealm(nr).build();
                     urlConnection = createUrlConnection(request);
                     terminate = false;
+                    if (trace != null) {
+                        trace.nextAttempt(RequestTracer.Attempt.AUTHENTICATION);
+                    }
                     return call();
                 }
 
@@ -354,6 +376,9 @@ public class JDKAsyncHttpProvider implements AsyncHttpProvider<HttpURLConnection
                 }
                 try {
                     T t = asyncHandler.onCompleted();
+                    if (trace != null) {
+                        trace.requestCompleted(null);
+                    }
                     future.content(t);
                     future.done(null);
                     return t;
@@ -365,6 +390,10 @@ public class JDKAsyncHttpProvider implements AsyncHttpProvider<HttpURLConnection
             } catch (Throwable t) {
                 logger.debug(t.getMessage(), t);
 
+                if (trace != null) {
+                    trace.attemptCompleted(-1, t);
+                }
+
                 if (IOException.class.isAssignableFrom(t.getClass()) && config.getIOExceptionFilters().size() > 0) {
                     FilterContext fc = new FilterContext.FilterContextBuilder().asyncHandler(asyncHandler)
                             .request(request).ioException(IOException.class.cast(t)).build();
@@ -385,8 +414,12 @@ public class JDKAsyncHttpProvider implements AsyncHttpProvider<HttpURLConnection
                     }
                 }
 
+                Throwable cause = filterException(t);
+                if (trace != null) {
+                    trace.requestCompleted(cause);
+                }
                 try {
-                    future.abort(filterException(t));
+                    future.abort(cause);
                 } catch (Throwable t2) {
                     logger.error(t2.getMessage(), t2);
                 }
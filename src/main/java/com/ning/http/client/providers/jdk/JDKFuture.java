@@ -60,10 +60,11 @@ public class JDKFuture<V> implements FutureImpl<V> {
     }
 
     public void abort(Throwable t) {
+        // Set before the inner future is cancelled, which wakes up get().
+        exception.set(t);
         if (innerFuture != null) {
             innerFuture.cancel(true);
         }
-        exception.set(t);
         if (!timedOut.get() && !cancelled.get()) {
             asyncHandler.onThrowable(t);
         }     
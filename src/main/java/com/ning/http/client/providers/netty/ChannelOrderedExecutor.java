@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.providers.netty;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.handler.execution.ChannelEventRunnable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An {@link Executor} running the events of a given {@link Channel} one at a time and in the order they were received,
+ * on top of any {@link Executor}. Events of different channels still run concurrently. Used with an
+ * {@link org.jboss.netty.handler.execution.ExecutionHandler} so the {@link com.ning.http.client.AsyncHandler}
+ * callbacks of a request are never reordered nor run concurrently when they are moved off the I/O threads.
+ */
+final class ChannelOrderedExecutor implements Executor {
+
+    private final static Logger log = LoggerFactory.getLogger(ChannelOrderedExecutor.class);
+
+    private final Executor executor;
+    private final ConcurrentHashMap<Channel, ChildExecutor> children = new ConcurrentHashMap<Channel, ChildExecutor>();
+
+    ChannelOrderedExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public void execute(Runnable task) {
+        if (!(task instanceof ChannelEventRunnable)) {
+            executor.execute(task);
+            return;
+        }
+        ChannelEvent e = ((ChannelEventRunnable) task).getEvent();
+        ChildExecutor child = children.get(e.getChannel());
+        if (child == null) {
+            child = new ChildExecutor();
+            ChildExecutor previous = children.putIfAbsent(e.getChannel(), child);
+            if (previous != null) {
+                child = previous;
+            }
+        }
+
+        // The closed event is the last one of a channel: the child still runs the events already queued.
+        if (e instanceof ChannelStateEvent && ((ChannelStateEvent) e).getState() == ChannelState.OPEN
+                && !e.getChannel().isOpen()) {
+            children.remove(e.getChannel());
+        }
+        child.execute(task);
+    }
+
+    int getChannelCount() {
+        return children.size();
+    }
+
+    private final class ChildExecutor implements Runnable {
+
+        private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+        private boolean running;
+
+        void execute(Runnable task) {
+            synchronized (tasks) {
+                tasks.add(task);
+                if (running) {
+                    return;
+                }
+                running = true;
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException ex) {
+                synchronized (tasks) {
+                    tasks.clear();
+                    running = false;
+                }
+                throw ex;
+            }
+        }
+
+        public void run() {
+            for (;;) {
+                Runnable task;
+                synchronized (tasks) {
+                    task = tasks.poll();
+                    if (task == null) {
+                        running = false;
+                        return;
+                    }
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    log.warn("Unexpected exception while processing a channel event", ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.providers.netty;
+
+import com.ning.http.client.metrics.ClientMetrics;
+import com.ning.http.util.AsyncHttpProviderUtils;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.WriteCompletionEvent;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Track a single connection: count the bytes read from and written to the socket, TLS records and HTTP headers
+ * included, and attribute them to the {@link NettyResponseFuture} currently using the channel. When the connection
+ * is closed, its age and the number of requests it served are recorded in the {@link ClientMetrics}, if any. Must be
+ * the first handler of the pipeline.
+ * <p/>
+ * Bytes exchanged while no request is attached to the channel, e.g. during the TLS handshake of a new connection, are
+ * attributed to the next request.
+ */
+final class ConnectionStatsHandler extends SimpleChannelUpstreamHandler {
+
+    private final ClientMetrics metrics;
+    private final AtomicLong pendingSent = new AtomicLong();
+    private final AtomicLong pendingReceived = new AtomicLong();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long connectedAt;
+    private volatile Host host;
+
+    ConnectionStatsHandler(ClientMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Invoked every time a request is written on the connection.
+     */
+    void requestWritten() {
+        requests.incrementAndGet();
+    }
+
+    @Override
+    public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        connectedAt = System.currentTimeMillis();
+        ctx.sendUpstream(e);
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        Host h = host;
+        if (metrics != null && h != null && connectedAt != 0) {
+            metrics.recordConnectionClosed(h.baseUrl, System.currentTimeMillis() - connectedAt, requests.get());
+        }
+        ctx.sendUpstream(e);
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (e.getMessage() instanceof ChannelBuffer) {
+            count(ctx, 0, ((ChannelBuffer) e.getMessage()).readableBytes());
+        }
+        ctx.sendUpstream(e);
+    }
+
+    @Override
+    public void writeComplete(ChannelHandlerContext ctx, WriteCompletionEvent e) throws Exception {
+        count(ctx, e.getWrittenAmount(), 0);
+        ctx.sendUpstream(e);
+    }
+
+    private void count(ChannelHandlerContext ctx, long sent, long received) throws Exception {
+        NettyResponseFuture<?> future = NettyAsyncHttpProvider.attachedFuture(ctx.getPipeline());
+        if (future == null) {
+            pendingSent.addAndGet(sent);
+            pendingReceived.addAndGet(received);
+            return;
+        }
+
+        if (pendingSent.get() != 0) {
+            sent += pendingSent.getAndSet(0);
+        }
+        if (pendingReceived.get() != 0) {
+            received += pendingReceived.getAndSet(0);
+        }
+        future.addBytes(sent, received);
+
+        if (metrics != null) {
+            // The base url is computed once per request and redirect, not once per read or write.
+            URI uri = future.getURI();
+            Host h = host;
+            if (h == null || h.uri != uri) {
+                h = new Host(uri, AsyncHttpProviderUtils.getBaseUrl(uri));
+                host = h;
+            }
+            metrics.recordBytes(h.baseUrl, sent, received);
+        }
+    }
+
+    private final static class Host {
+        final URI uri;
+        final String baseUrl;
+
+        Host(URI uri, String baseUrl) {
+            this.uri = uri;
+            this.baseUrl = baseUrl;
+        }
+    }
+}
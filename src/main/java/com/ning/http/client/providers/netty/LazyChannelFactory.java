@@ -0,0 +1,59 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.providers.netty;
+
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.SocketChannel;
+
+/**
+ * A {@link ClientSocketChannelFactory} creating the actual factory, and its boss and worker pools, when the first
+ * channel is opened.
+ */
+abstract class LazyChannelFactory implements ClientSocketChannelFactory {
+
+    private volatile ClientSocketChannelFactory factory;
+
+    /**
+     * Create the actual factory. Invoked once.
+     *
+     * @return the {@link ClientSocketChannelFactory} channels are delegated to.
+     */
+    protected abstract ClientSocketChannelFactory create();
+
+    public SocketChannel newChannel(ChannelPipeline pipeline) {
+        ClientSocketChannelFactory f = factory;
+        if (f == null) {
+            synchronized (this) {
+                if (factory == null) {
+                    factory = create();
+                }
+                f = factory;
+            }
+        }
+        return f.newChannel(pipeline);
+    }
+
+    public void releaseExternalResources() {
+        ClientSocketChannelFactory f;
+        synchronized (this) {
+            f = factory;
+        }
+        if (f != null) {
+            f.releaseExternalResources();
+        }
+    }
+}
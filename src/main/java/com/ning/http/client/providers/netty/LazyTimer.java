@@ -0,0 +1,63 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.providers.netty;
+
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Timer} creating its {@link HashedWheelTimer} when the first timeout is scheduled, so a client which never
+ * opens a connection doesn't allocate the wheel nor its thread.
+ */
+final class LazyTimer implements Timer {
+
+    private volatile HashedWheelTimer timer;
+    private boolean stopped;
+
+    public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+        HashedWheelTimer t = timer;
+        if (t == null) {
+            synchronized (this) {
+                if (stopped) {
+                    throw new IllegalStateException("cannot be started once stopped");
+                }
+                if (timer == null) {
+                    timer = new HashedWheelTimer();
+                }
+                t = timer;
+            }
+        }
+        return t.newTimeout(task, delay, unit);
+    }
+
+    public Set<Timeout> stop() {
+        HashedWheelTimer t;
+        synchronized (this) {
+            stopped = true;
+            t = timer;
+        }
+        if (t == null) {
+            return Collections.emptySet();
+        }
+        return t.stop();
+    }
+}
@@ -39,8 +39,15 @@ import com.ning.http.client.filter.FilterContext;
 import com.ning.http.client.filter.FilterException;
 import com.ning.http.client.filter.IOExceptionFilter;
 import com.ning.http.client.filter.ResponseFilter;
+import com.ning.http.client.listener.RequestEvent;
+import com.ning.http.client.listener.RequestEventListener;
 import com.ning.http.client.listener.TransferCompletionHandler;
+import com.ning.http.client.metrics.ClientMetrics;
+import com.ning.http.client.metrics.ConnectionGauges;
 import com.ning.http.client.providers.jdk.JDKAsyncHttpProvider;
+import com.ning.http.client.tracing.RequestTracer;
+import com.ning.http.client.tracing.Trace;
+import com.ning.http.client.websocket.WebSocketUpgradeHandler;
 import com.ning.http.multipart.MultipartRequestEntity;
 import com.ning.http.util.AsyncHttpProviderUtils;
 import com.ning.http.util.AuthenticatorUtils;
@@ -63,6 +70,8 @@ import org.jboss.netty.channel.FileRegion;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.local.DefaultLocalClientChannelFactory;
+import org.jboss.netty.channel.local.LocalAddress;
 import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.jboss.netty.channel.socket.oio.OioClientSocketChannelFactory;
@@ -80,12 +89,14 @@ import org.jboss.netty.handler.codec.http.HttpMethod;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
 import org.jboss.netty.handler.ssl.SslHandler;
 import org.jboss.netty.handler.stream.ChunkedFile;
 import org.jboss.netty.handler.stream.ChunkedWriteHandler;
 import org.jboss.netty.handler.timeout.IdleState;
 import org.jboss.netty.handler.timeout.IdleStateHandler;
-import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -97,7 +108,9 @@ import java.io.RandomAccessFile;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
+import java.net.SocketAddress;
 import java.net.URI;
+import java.net.UnknownHostException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
@@ -105,14 +118,24 @@ import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -123,6 +146,13 @@ import static org.jboss.netty.channel.Channels.pipeline;
 public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHttpProvider<HttpResponse> {
     private final static String HTTP_HANDLER = "httpHandler";
     final static String SSL_HANDLER = "sslHandler";
+    private final static String CONNECTION_STATS = "connectionStats";
+    private final static String CALLBACK_EXECUTOR = "callbackExecutor";
+
+    // Do no enable this with win.
+    private final static boolean REUSE_ADDRESS = System.getProperty("os.name").toLowerCase().indexOf("win") == -1;
+    private final static String WEBSOCKET_HANDSHAKE = "webSocketHandshake";
+    private final static String WEBSOCKET_DECODER = "webSocketDecoder";
     private final static String HTTPS = "https";
     private final static String HTTP = "http";
 
@@ -132,6 +162,10 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
 
     private final ClientBootstrap secureBootstrap;
 
+    private final ClientBootstrap localBootstrap;
+
+    private final Set<String> localHosts;
+
     private final static int MAX_BUFFERED_BYTES = 8192;
 
     private final AsyncHttpClientConfig config;
@@ -140,22 +174,40 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
 
     private final ClientSocketChannelFactory socketChannelFactory;
 
+    private final NettyClientRuntime runtime;
+
     private final ChannelGroup openChannels = new DefaultChannelGroup("asyncHttpClient");
 
     private final ConnectionsPool<String, Channel> connectionsPool;
 
-    private final JDKAsyncHttpProvider ntlmProvider;
+    // Only used for NTLM authentication, so it is created on demand.
+    private volatile JDKAsyncHttpProvider ntlmProvider;
 
     private final AtomicInteger maxConnections = new AtomicInteger();
+    private final ConcurrentMap<NettyResponseFuture<?>, Boolean> inFlight =
+            new ConcurrentHashMap<NettyResponseFuture<?>, Boolean>();
 
     private final NettyAsyncHttpProviderConfig asyncHttpProviderConfig;
 
     private boolean executeConnectAsync = false;
 
+    // Evaluated once, so the hot paths don't pay for the logger lookup nor the logging arguments.
+    private final boolean debugEnabled = log.isDebugEnabled();
+
+    private final WireTrace wireTrace;
+
+    private final ExecutionHandler executionHandler;
+
+    private final Map<String, SocketProfile> socketProfiles;
+
+    private final int connectAttemptDelay;
+
+    private final PipelinedConnections pipelinedConnections;
+
     public static final ThreadLocal<Boolean> IN_IO_THREAD = new ThreadLocalBoolean();
 
     public NettyAsyncHttpProvider(AsyncHttpClientConfig config) {
-        super(new HashedWheelTimer(), 0, 0, config.getIdleConnectionTimeoutInMs(), TimeUnit.MILLISECONDS);
+        super(timer(config), 0, 0, config.getIdleConnectionTimeoutInMs(), TimeUnit.MILLISECONDS);
 
         if (config.getAsyncHttpProviderConfig() != null
                 && NettyAsyncHttpProviderConfig.class.isAssignableFrom(config.getAsyncHttpProviderConfig().getClass())) {
@@ -164,16 +216,86 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
             asyncHttpProviderConfig = null;
         }
 
-        if (asyncHttpProviderConfig != null && asyncHttpProviderConfig.getProperty(NettyAsyncHttpProviderConfig.USE_BLOCKING_IO) != null) {
-            socketChannelFactory = new OioClientSocketChannelFactory(config.executorService());
+        Object wireTraceSize = asyncHttpProviderConfig == null ? null
+                : asyncHttpProviderConfig.getProperty(NettyAsyncHttpProviderConfig.WIRE_TRACE_SIZE);
+        wireTrace = wireTraceSize == null ? null : new WireTrace(Integer.parseInt(wireTraceSize.toString()));
+
+        Object callbackExecutor = asyncHttpProviderConfig == null ? null
+                : asyncHttpProviderConfig.getProperty(NettyAsyncHttpProviderConfig.CALLBACK_EXECUTOR);
+        if (callbackExecutor == null) {
+            executionHandler = null;
+        } else if (callbackExecutor instanceof OrderedMemoryAwareThreadPoolExecutor) {
+            executionHandler = new ExecutionHandler((Executor) callbackExecutor);
+        } else {
+            executionHandler = new ExecutionHandler(new ChannelOrderedExecutor((Executor) callbackExecutor));
+        }
+
+        Object profiles = asyncHttpProviderConfig == null ? null
+                : asyncHttpProviderConfig.getProperty(NettyAsyncHttpProviderConfig.SOCKET_PROFILES);
+        if (profiles != null) {
+            socketProfiles = new HashMap<String, SocketProfile>();
+            for (Entry<?, ?> entry : ((Map<?, ?>) profiles).entrySet()) {
+                socketProfiles.put(entry.getKey().toString().toLowerCase(), (SocketProfile) entry.getValue());
+            }
         } else {
-            socketChannelFactory = new NioClientSocketChannelFactory(
-                    Executors.newCachedThreadPool(),
-                    config.executorService());
+            socketProfiles = null;
+        }
+
+        Object attemptDelay = asyncHttpProviderConfig == null ? null
+                : asyncHttpProviderConfig.getProperty(NettyAsyncHttpProviderConfig.CONNECT_ATTEMPT_DELAY);
+        connectAttemptDelay = attemptDelay == null ? -1 : Integer.parseInt(attemptDelay.toString());
+
+        Object pipeliningDepth = asyncHttpProviderConfig == null ? null
+                : asyncHttpProviderConfig.getProperty(NettyAsyncHttpProviderConfig.HTTP_PIPELINING_DEPTH);
+        pipelinedConnections = pipeliningDepth == null || !config.getAllowPoolingConnection() ? null
+                : new PipelinedConnections(Integer.parseInt(pipeliningDepth.toString()));
+
+        runtime = runtime(config);
+        if (runtime != null) {
+            socketChannelFactory = runtime.getChannelFactory();
+        } else {
+            final boolean useBlockingIO = asyncHttpProviderConfig != null
+                    && asyncHttpProviderConfig.getProperty(NettyAsyncHttpProviderConfig.USE_BLOCKING_IO) != null;
+            Object workerCount = asyncHttpProviderConfig == null ? null
+                    : asyncHttpProviderConfig.getProperty(NettyAsyncHttpProviderConfig.NIO_WORKER_COUNT);
+            final int workers = workerCount == null ? -1 : Integer.parseInt(workerCount.toString());
+
+            // Created on the first connection, so short-lived clients don't pay for it.
+            socketChannelFactory = new LazyChannelFactory() {
+                protected ClientSocketChannelFactory create() {
+                    if (useBlockingIO) {
+                        return new OioClientSocketChannelFactory(NettyAsyncHttpProvider.this.config.executorService());
+                    } else if (workers > 0) {
+                        return new NioClientSocketChannelFactory(
+                                Executors.newCachedThreadPool(),
+                                NettyAsyncHttpProvider.this.config.executorService(),
+                                workers);
+                    } else {
+                        return new NioClientSocketChannelFactory(
+                                Executors.newCachedThreadPool(),
+                                NettyAsyncHttpProvider.this.config.executorService());
+                    }
+                }
+            };
         }
         plainBootstrap = new ClientBootstrap(socketChannelFactory);
         secureBootstrap = new ClientBootstrap(socketChannelFactory);
 
+        Object hosts = asyncHttpProviderConfig == null ? null
+                : asyncHttpProviderConfig.getProperty(NettyAsyncHttpProviderConfig.LOCAL_TRANSPORT_HOSTS);
+        if (hosts != null) {
+            localHosts = new HashSet<String>();
+            for (String host : hosts.toString().split(",")) {
+                if (host.trim().length() > 0) {
+                    localHosts.add(host.trim().toLowerCase());
+                }
+            }
+            localBootstrap = new ClientBootstrap(new DefaultLocalClientChannelFactory());
+        } else {
+            localHosts = null;
+            localBootstrap = null;
+        }
+
         this.config = config;
 
         // This is dangerous as we can't catch a wrong typed ConnectionsPool
@@ -183,8 +305,35 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
         }
         this.connectionsPool = cp;
 
+        if (config.getClientMetrics() != null) {
+            config.getClientMetrics().setConnectionGauges(new ConnectionGauges() {
+                public int getIdleConnectionCount() {
+                    return connectionsPool instanceof NettyConnectionsPool ?
+                            ((NettyConnectionsPool) connectionsPool).getIdleConnectionCount() : -1;
+                }
+
+                public int getActiveConnectionCount() {
+                    int idle = getIdleConnectionCount();
+                    return openChannels.size() - (idle > 0 ? idle : 0);
+                }
+
+                public int getMaxConnections() {
+                    return NettyAsyncHttpProvider.this.config.getMaxTotalConnections();
+                }
+            });
+        }
+
         configureNetty();
-        ntlmProvider = new JDKAsyncHttpProvider(config);
+        if (localBootstrap != null) {
+            // Same codec as over TCP, only the transport differs.
+            localBootstrap.setPipelineFactory(plainBootstrap.getPipelineFactory());
+            localBootstrap.setOption("connectTimeoutMillis", config.getConnectionTimeoutInMs());
+        }
+
+        if (runtime != null) {
+            // Last, so the reference can't leak if the constructor fails.
+            runtime.retain();
+        }
     }
 
     void configureNetty() {
@@ -194,12 +343,21 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
             }
         }
 
+        // The per host SocketProfile, if any, are applied on top of those options when connecting.
+        for (ClientBootstrap bootstrap : new ClientBootstrap[]{plainBootstrap, secureBootstrap}) {
+            bootstrap.setOption("connectTimeoutMillis", config.getConnectionTimeoutInMs());
+            if (REUSE_ADDRESS) {
+                bootstrap.setOption("reuseAddress", true);
+            }
+        }
+
         plainBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
 
             /* @Override */
             public ChannelPipeline getPipeline() throws Exception {
                 ChannelPipeline pipeline = pipeline();
 
+                pipeline.addLast(CONNECTION_STATS, new ConnectionStatsHandler(config.getClientMetrics()));
                 pipeline.addLast(HTTP_HANDLER, new HttpClientCodec());
 
                 if (config.getRequestCompressionLevel() > 0) {
@@ -210,6 +368,9 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
                     pipeline.addLast("inflater", new HttpContentDecompressor());
                 }
                 pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
+                if (executionHandler != null) {
+                    pipeline.addLast(CALLBACK_EXECUTOR, executionHandler);
+                }
                 pipeline.addLast("httpProcessor", NettyAsyncHttpProvider.this);
                 return pipeline;
             }
@@ -233,6 +394,7 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
             public ChannelPipeline getPipeline() throws Exception {
                 ChannelPipeline pipeline = pipeline();
 
+                pipeline.addLast(CONNECTION_STATS, new ConnectionStatsHandler(config.getClientMetrics()));
                 try {
                     pipeline.addLast(SSL_HANDLER, new SslHandler(createSSLEngine()));
                 } catch (Throwable ex) {
@@ -245,6 +407,9 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
                     pipeline.addLast("inflater", new HttpContentDecompressor());
                 }
                 pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
+                if (executionHandler != null) {
+                    pipeline.addLast(CALLBACK_EXECUTOR, executionHandler);
+                }
                 pipeline.addLast("httpProcessor", NettyAsyncHttpProvider.this);
                 return pipeline;
             }
@@ -261,7 +426,9 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
         final Channel channel = connectionsPool.poll(AsyncHttpProviderUtils.getBaseUrl(uri));
 
         if (channel != null) {
-            log.debug("Using cached Channel %s for uri {}", channel, uri);
+            if (debugEnabled) {
+                log.debug("Using cached Channel {} for uri {}", channel, uri);
+            }
 
             try {
                 // Always make sure the channel who got cached support the proper protocol. It could
@@ -269,7 +436,9 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
                 // https.
                 return verifyChannelPipeline(channel, uri.getScheme());
             } catch (Exception ex) {
-                log.debug(ex.getMessage(), ex);
+                if (debugEnabled) {
+                    log.debug(ex.getMessage(), ex);
+                }
             }
         }
         return null;
@@ -290,7 +459,7 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
         } else if (channel.getPipeline().get(HTTP_HANDLER) != null && HTTP.equalsIgnoreCase(scheme)) {
             return channel;
         } else if (channel.getPipeline().get(SSL_HANDLER) == null && HTTPS.equalsIgnoreCase(scheme)) {
-            channel.getPipeline().addFirst(SSL_HANDLER, new SslHandler(createSSLEngine()));
+            channel.getPipeline().addAfter(CONNECTION_STATS, SSL_HANDLER, new SslHandler(createSSLEngine()));
         }
         return channel;
     }
@@ -299,6 +468,8 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
                                           final AsyncHttpClientConfig config,
                                           final NettyResponseFuture<T> future,
                                           final HttpRequest nettyRequest) {
+        register(future);
+        future.setConnection(channel, future.getState() == NettyResponseFuture.STATE.POOLED);
         try {
 
             if (TransferCompletionHandler.class.isAssignableFrom(future.getAsyncHandler().getClass())) {
@@ -340,10 +511,34 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
 
             // Leave it to true.
             if (future.getAndSetWriteHeaders(true)) {
+                Trace<?> trace = future.getTrace();
+                if (trace != null && !nettyRequest.getMethod().equals(HttpMethod.CONNECT)) {
+                    for (Entry<String, List<String>> header : trace.attemptStarted(future.getCurrentRequest())) {
+                        nettyRequest.setHeader(header.getKey(), header.getValue());
+                    }
+                }
+                if (wireTrace != null) {
+                    wireTrace.request(channel, nettyRequest);
+                }
+                ConnectionStatsHandler stats = (ConnectionStatsHandler) channel.getPipeline().get(CONNECTION_STATS);
+                if (stats != null) {
+                    stats.requestWritten();
+                }
+                if (isWebSocketUpgrade(future.getRequest()) && !nettyRequest.getMethod().equals(HttpMethod.CONNECT)
+                        && channel.getPipeline().get(WEBSOCKET_HANDSHAKE) == null) {
+                    channel.getPipeline().addBefore(HTTP_HANDLER, WEBSOCKET_HANDSHAKE, new WebSocketHandshakeSplitter());
+                }
+
                 try {
                     channel.write(nettyRequest).addListener(new ProgressListener(true, future.getAsyncHandler(), future));
+                    if (pipelinedConnections != null) {
+                        pipelinedConnections.requestWritten(AsyncHttpProviderUtils.getBaseUrl(future.getURI()), channel,
+                                future.getCurrentRequest());
+                    }
                 } catch (Throwable cause) {
-                    log.debug(cause.getMessage(), cause);
+                    if (debugEnabled) {
+                        log.debug(cause.getMessage(), cause);
+                    }
 
                     if (future.provider().remotelyClosed(channel, future)) {
                         return;
@@ -415,7 +610,7 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
             int delay = requestTimeout(config, future.getRequest().getPerRequestConfig());
             if (delay != -1) {
                 ReaperFuture reaperFuture = new ReaperFuture(channel, future);
-                Future scheduledFuture = config.reaper().scheduleAtFixedRate(reaperFuture, delay, 500, TimeUnit.MILLISECONDS);
+                Future scheduledFuture = reaper().scheduleAtFixedRate(reaperFuture, delay, 500, TimeUnit.MILLISECONDS);
                 reaperFuture.setScheduledFuture(scheduledFuture);
                 future.setReaperFuture(reaperFuture);
 
@@ -430,12 +625,17 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
                                                     boolean allowConnect, ChannelBuffer buffer) throws IOException {
 
         String method = request.getReqType();
-        if (allowConnect && ((request.getProxyServer() != null || config.getProxyServer() != null) && HTTPS.equalsIgnoreCase(uri.getScheme()))) {
+        if (allowConnect && ((request.getProxyServer() != null || config.getProxyServer() != null)
+                && (HTTPS.equalsIgnoreCase(uri.getScheme()) || isWebSocketUpgrade(request)))) {
             method = HttpMethod.CONNECT.toString();
         }
         return construct(config, request, new HttpMethod(method), uri, buffer);
     }
 
+    static boolean isWebSocketUpgrade(Request request) {
+        return "websocket".equalsIgnoreCase(request.getHeaders().getFirstValue(HttpHeaders.Names.UPGRADE));
+    }
+
     @SuppressWarnings("deprecation")
     private static HttpRequest construct(AsyncHttpClientConfig config,
                                          Request request,
@@ -509,7 +709,14 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
         }
 
         String ka = config.getAllowPoolingConnection() ? "keep-alive" : "close";
-        nettyRequest.setHeader(HttpHeaders.Names.CONNECTION, ka);
+        if (!m.equals(HttpMethod.CONNECT) && isWebSocketUpgrade(request)) {
+            // Every handshake attempt needs a new key.
+            nettyRequest.setHeader(HttpHeaders.Names.CONNECTION, "Upgrade");
+            nettyRequest.setHeader(NettyWebSocket.SEC_WEBSOCKET_KEY, NettyWebSocket.newKey());
+            nettyRequest.setHeader(NettyWebSocket.SEC_WEBSOCKET_VERSION, "13");
+        } else {
+            nettyRequest.setHeader(HttpHeaders.Names.CONNECTION, ka);
+        }
         ProxyServer proxyServer = request.getProxyServer() != null ? request.getProxyServer() : config.getProxyServer();
         if (proxyServer != null) {
             nettyRequest.setHeader("Proxy-Connection", ka);
@@ -628,16 +835,83 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
         return nettyRequest;
     }
 
+    private static NettyClientRuntime runtime(AsyncHttpClientConfig config) {
+        if (config.getAsyncHttpProviderConfig() instanceof NettyAsyncHttpProviderConfig) {
+            return (NettyClientRuntime) NettyAsyncHttpProviderConfig.class.cast(config.getAsyncHttpProviderConfig())
+                    .getProperty(NettyAsyncHttpProviderConfig.CLIENT_RUNTIME);
+        }
+        return null;
+    }
+
+    private static Timer timer(AsyncHttpClientConfig config) {
+        NettyClientRuntime runtime = runtime(config);
+        return runtime != null ? runtime.getTimer() : new LazyTimer();
+    }
+
+    private ChannelFuture connect(ClientBootstrap bootstrap, SocketProfile profile, SocketAddress remoteAddress)
+            throws Exception {
+        if (profile == null) {
+            return bootstrap.connect(remoteAddress);
+        }
+
+        // What ClientBootstrap.connect does, with the profile applied on top of the bootstrap options.
+        Channel channel = bootstrap.getFactory().newChannel(bootstrap.getPipelineFactory().getPipeline());
+        channel.getConfig().setOptions(bootstrap.getOptions());
+        profile.applyTo(channel.getConfig());
+        return channel.connect(remoteAddress);
+    }
+
+    /**
+     * Return the {@link SocketProfile} of the host, or of the closest domain it belongs to, if any.
+     */
+    private SocketProfile socketProfile(String host) {
+        if (socketProfiles == null) {
+            return null;
+        }
+        host = host.toLowerCase();
+        SocketProfile profile = socketProfiles.get(host);
+        int dot = host.indexOf('.');
+        while (profile == null && dot != -1) {
+            profile = socketProfiles.get("*" + host.substring(dot));
+            dot = host.indexOf('.', dot + 1);
+        }
+        return profile;
+    }
+
+    private ScheduledExecutorService reaper() {
+        return runtime != null ? runtime.getReaper() : config.reaper();
+    }
+
+    private JDKAsyncHttpProvider ntlmProvider() {
+        JDKAsyncHttpProvider provider = ntlmProvider;
+        if (provider == null) {
+            synchronized (this) {
+                if (ntlmProvider == null) {
+                    ntlmProvider = new JDKAsyncHttpProvider(config);
+                }
+                provider = ntlmProvider;
+            }
+        }
+        return provider;
+    }
+
     public void close() {
         isClose.set(true);
         connectionsPool.destroy();
         openChannels.close();
-        this.releaseExternalResources();
-        config.reaper().shutdown();
-        config.executorService().shutdown();
-        socketChannelFactory.releaseExternalResources();
-        plainBootstrap.releaseExternalResources();
-        secureBootstrap.releaseExternalResources();
+        config.shutdownExecutors();
+        if (runtime != null) {
+            // The timer, reaper and channel factory are shared with other clients.
+            runtime.release();
+        } else {
+            this.releaseExternalResources();
+            socketChannelFactory.releaseExternalResources();
+            plainBootstrap.releaseExternalResources();
+            secureBootstrap.releaseExternalResources();
+        }
+        if (localBootstrap != null) {
+            localBootstrap.releaseExternalResources();
+        }
     }
 
     /* @Override */
@@ -669,18 +943,29 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
          */
         Realm realm = request.getRealm() != null ? request.getRealm() : config.getRealm();
         if (realm != null && realm.getUsePreemptiveAuth() && realm.getScheme() == Realm.AuthScheme.NTLM) {
-            log.debug("NTLM not supported by this provider. Using the " + JDKAsyncHttpProvider.class.getName());
-            return ntlmProvider.execute(request, asyncHandler);
+            if (debugEnabled) {
+                log.debug("NTLM not supported by this provider. Using the " + JDKAsyncHttpProvider.class.getName());
+            }
+            return ntlmProvider().execute(request, asyncHandler);
         }
 
         URI uri = AsyncHttpProviderUtils.createUri(request.getUrl());
         Channel channel = null;
 
         if (useCache) {
+            if (f != null && f.channel() != null && releasePipelinedChannel(f.channel())) {
+                // Other requests are pipelined on that channel, so this one must go through another connection.
+                f.attachChannel(null);
+            }
+
             if (f != null && f.channel() != null) {
                 channel = f.channel();
             } else {
                 channel = lookupInCache(uri);
+                fireEvent(request, channel != null ? RequestEvent.POOL_HIT : RequestEvent.POOL_MISS);
+                if (config.getClientMetrics() != null) {
+                    config.getClientMetrics().recordPoolLookup(AsyncHttpProviderUtils.getBaseUrl(uri), channel != null);
+                }
             }
         }
 
@@ -700,17 +985,45 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
             }
             f.setState(NettyResponseFuture.STATE.POOLED);
 
-            log.debug("\n\nCached Request {}\n", channel);
+            if (debugEnabled) {
+                log.debug("\n\nCached Request {}\n", channel);
+            }
             channel.getPipeline().getContext(NettyAsyncHttpProvider.class).setAttachment(f);
 
             writeRequest(channel, config, f, nettyRequest);
             return f;
         }
 
-        log.debug("\n\nNon cached Request {}\n", request);
+        if (pipelinedConnections != null && useCache && PipelinedConnections.isPipelinable(request)) {
+            PipelinedConnections.Connection connection = pipelinedConnections.select(AsyncHttpProviderUtils.getBaseUrl(uri));
+            if (connection != null) {
+                HttpRequest nettyRequest = buildRequest(config, request, uri, false, bufferedBytes);
+                if (f == null) {
+                    f = newFuture(uri, request, asyncHandler, nettyRequest, config, this);
+                } else {
+                    f.setNettyRequest(nettyRequest);
+                }
+
+                // The requests must be written in the order of the FIFO their responses are matched with.
+                synchronized (connection) {
+                    if (connection.add(f)) {
+                        f.setState(NettyResponseFuture.STATE.POOLED);
+                        writeRequest(connection.channel(), config, f, nettyRequest);
+                        return f;
+                    }
+                }
+            }
+        }
+
+        if (debugEnabled) {
+            log.debug("\n\nNon cached Request {}\n", request);
+        }
 
         if (!connectionsPool.canCacheConnection() ||
                 (config.getMaxTotalConnections() > -1 && (maxConnections.get() + 1) > config.getMaxTotalConnections())) {
+            if (config.getClientMetrics() != null) {
+                config.getClientMetrics().recordRejection(AsyncHttpProviderUtils.getBaseUrl(uri));
+            }
             throw new IOException(String.format("Too many connections %s", config.getMaxTotalConnections()));
         }
 
@@ -718,6 +1031,8 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
         ProxyServer proxyServer = request.getProxyServer() != null ? request.getProxyServer() : config.getProxyServer();
 
         boolean useSSl = uri.getScheme().compareToIgnoreCase(HTTPS) == 0 && proxyServer == null;
+        boolean useLocal = localHosts != null && proxyServer == null && HTTP.equalsIgnoreCase(uri.getScheme())
+                && localHosts.contains(uri.getHost().toLowerCase());
 
         if (useSSl) {
             constructSSLPipeline(c);
@@ -728,19 +1043,58 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
         }
 
         ChannelFuture channelFuture;
-        ClientBootstrap bootstrap = useSSl ? secureBootstrap : plainBootstrap;
-        bootstrap.setOption("connectTimeoutMillis", config.getConnectionTimeoutInMs());
+        final ClientBootstrap bootstrap = useLocal ? localBootstrap : useSSl ? secureBootstrap : plainBootstrap;
+        final SocketProfile profile = useLocal ? null : socketProfile(uri.getHost());
+        int connectTimeout = profile != null && profile.getConnectTimeoutInMs() != -1 ? profile.getConnectTimeoutInMs()
+                : config.getConnectionTimeoutInMs();
 
-        // Do no enable this with win.
-        if (System.getProperty("os.name").toLowerCase().indexOf("win") == -1) {
-            bootstrap.setOption("reuseAddress", true);
+        boolean directInvokation = true;
+        if (IN_IO_THREAD.get() && DefaultChannelFuture.isUseDeadLockChecker()) {
+            directInvokation = false;
         }
+        boolean awaitConnect = directInvokation && !executeConnectAsync && request.getFile() == null;
 
+        StaggeredConnect staggeredConnect = null;
         try {
-            if (proxyServer == null) {
-                channelFuture = bootstrap.connect(new InetSocketAddress(uri.getHost(), AsyncHttpProviderUtils.getPort(uri)));
+            SocketAddress remoteAddress;
+            List<InetSocketAddress> addresses = null;
+            if (useLocal) {
+                // An in-VM server bound to a LocalAddress named after the host.
+                remoteAddress = new LocalAddress(uri.getHost().toLowerCase());
+            } else {
+                // The InetSocketAddress constructor resolves the host name.
+                fireEvent(c.future(), RequestEvent.DNS_RESOLUTION_STARTED);
+                if (proxyServer == null) {
+                    if (connectAttemptDelay > 0) {
+                        try {
+                            addresses = StaggeredConnect.resolve(uri.getHost(), AsyncHttpProviderUtils.getPort(uri));
+                        } catch (UnknownHostException ex) {
+                            // Fail the same way as without staggered connects.
+                            addresses = null;
+                        }
+                    }
+                    remoteAddress = addresses != null ? addresses.get(0)
+                            : new InetSocketAddress(uri.getHost(), AsyncHttpProviderUtils.getPort(uri));
+                } else {
+                    remoteAddress = new InetSocketAddress(proxyServer.getHost(), proxyServer.getPort());
+                }
+                fireEvent(c.future(), RequestEvent.DNS_RESOLUTION_COMPLETED);
+            }
+
+            fireEvent(c.future(), RequestEvent.CONNECT_STARTED);
+            if (addresses != null && addresses.size() > 1) {
+                staggeredConnect = new StaggeredConnect(addresses, connectAttemptDelay, reaper(),
+                        new StaggeredConnect.Connector() {
+                            public ChannelFuture connect(SocketAddress address) throws Exception {
+                                ChannelFuture attempt = NettyAsyncHttpProvider.this.connect(bootstrap, profile, address);
+                                openChannels.add(attempt.getChannel());
+                                return attempt;
+                            }
+                        }, awaitConnect ? null : c);
+                staggeredConnect.start();
+                channelFuture = null;
             } else {
-                channelFuture = bootstrap.connect(new InetSocketAddress(proxyServer.getHost(), proxyServer.getPort()));
+                channelFuture = connect(bootstrap, profile, remoteAddress);
             }
         } catch (Throwable t) {
             log.error("bootstrap.connect", t);
@@ -748,13 +1102,29 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
             return c.future();
         }
 
-        boolean directInvokation = true;
-        if (IN_IO_THREAD.get() && DefaultChannelFuture.isUseDeadLockChecker()) {
-            directInvokation = false;
+        if (staggeredConnect != null) {
+            if (awaitConnect) {
+                // Every address but the last one may be given up after the attempt delay.
+                channelFuture = staggeredConnect.await(connectTimeout
+                        + connectAttemptDelay * (staggeredConnect.getAddressCount() - 1));
+                if (channelFuture == null) {
+                    staggeredConnect.cancel();
+                    abort(c.future(), new ConnectException("Connect times out"));
+                    return c.future();
+                }
+                try {
+                    c.operationComplete(channelFuture);
+                } catch (Exception e) {
+                    IOException ioe = new IOException(e.getMessage());
+                    ioe.initCause(e);
+                    throw ioe;
+                }
+            }
+            return c.future();
         }
 
-        if (directInvokation && !executeConnectAsync && request.getFile() == null) {
-            if (! channelFuture.awaitUninterruptibly(config.getConnectionTimeoutInMs(), TimeUnit.MILLISECONDS) ) {
+        if (awaitConnect) {
+            if (! channelFuture.awaitUninterruptibly(connectTimeout, TimeUnit.MILLISECONDS) ) {
                 abort(c.future(), new ConnectException("Connect times out"));
             };
             try {
@@ -774,6 +1144,139 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
         return c.future();
     }
 
+    /**
+     * Record the {@link RequestEvent} as the current phase of the {@link NettyResponseFuture}, and report it to the
+     * {@link RequestEventListener}, if any.
+     */
+    final void fireEvent(NettyResponseFuture<?> future, RequestEvent event) {
+        future.setPhase(event);
+        fireEvent(future.getRequest(), event);
+    }
+
+    /**
+     * Report a {@link RequestEvent} to the {@link RequestEventListener}, if any.
+     */
+    final void fireEvent(Request request, RequestEvent event) {
+        RequestEventListener listener = config.getRequestEventListener();
+        if (listener != null) {
+            try {
+                listener.onEvent(request, event, System.nanoTime());
+            } catch (Throwable t) {
+                log.warn("RequestEventListener failed", t);
+            }
+        }
+    }
+
+    /**
+     * Record a completed request in the {@link ClientMetrics}, if any.
+     *
+     * @param response the {@link HttpResponse}, or null if the request failed.
+     */
+    final void recordMetrics(URI uri, HttpResponse response, long startTime) {
+        ClientMetrics metrics = config.getClientMetrics();
+        if (metrics != null) {
+            long latencyInMicros = (System.nanoTime() - startTime) / 1000;
+            if (response == null) {
+                metrics.recordFailure(AsyncHttpProviderUtils.getBaseUrl(uri), latencyInMicros);
+            } else {
+                metrics.recordResponse(AsyncHttpProviderUtils.getBaseUrl(uri), response.getStatus().getCode(), latencyInMicros);
+            }
+        }
+    }
+
+    /**
+     * Return the {@link NettyResponseFuture} currently using the channel of that pipeline, if any.
+     */
+    static NettyResponseFuture<?> attachedFuture(ChannelPipeline pipeline) {
+        ChannelHandlerContext ctx = pipeline.getContext(NettyAsyncHttpProvider.class);
+        Object attachment = ctx == null ? null : ctx.getAttachment();
+        if (attachment instanceof NettyResponseFuture) {
+            return (NettyResponseFuture<?>) attachment;
+        } else if (attachment instanceof AsyncCallable) {
+            return ((AsyncCallable) attachment).future();
+        }
+        return null;
+    }
+
+    /**
+     * Track the future once its request is written: a future dropped before, e.g. when the connection is refused
+     * because of the connection limits, would otherwise never be unregistered.
+     */
+    final void register(NettyResponseFuture<?> future) {
+        inFlight.put(future, Boolean.TRUE);
+        if (future.isDone() || future.isCancelled()) {
+            // Completed concurrently, unregister may have run first.
+            inFlight.remove(future);
+        }
+    }
+
+    final void unregister(NettyResponseFuture<?> future) {
+        inFlight.remove(future);
+    }
+
+    /**
+     * Close the {@link Channel} of a cancelled request, so its response stops being read and the connection isn't
+     * reused with a response half read. A channel which already serves another request is left open.
+     */
+    final void cancelled(NettyResponseFuture<?> future) {
+        unregister(future);
+        Channel channel = future.getConnection();
+        if (channel == null) {
+            return;
+        }
+        ChannelHandlerContext ctx = channel.getPipeline().getContext(NettyAsyncHttpProvider.class);
+        if (ctx != null && ctx.getAttachment() == future) {
+            // channelClosed releases the connection, as for any discarded channel.
+            ctx.setAttachment(new DiscardEvent());
+            channel.close();
+        }
+    }
+
+    /**
+     * Return the number of requests that are not yet completed, aborted or cancelled.
+     *
+     * @return the number of requests in flight.
+     */
+    public int getInFlightRequestCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Describe every request in flight, oldest first: its age, url, the phase it has reached, the bytes sent and
+     * received so far, and the {@link Channel} it uses. This is meant to be called on demand, e.g. from a JMX operation
+     * or an admin page, to find where requests are stuck without turning debug logging on.
+     *
+     * @return one line per request in flight.
+     */
+    public String dumpInFlightRequests() {
+        List<NettyResponseFuture<?>> futures = new ArrayList<NettyResponseFuture<?>>(inFlight.keySet());
+        Collections.sort(futures, new Comparator<NettyResponseFuture<?>>() {
+            public int compare(NettyResponseFuture<?> f1, NettyResponseFuture<?> f2) {
+                long a1 = f1.getAgeInMs();
+                long a2 = f2.getAgeInMs();
+                return a1 > a2 ? -1 : (a1 == a2 ? 0 : 1);
+            }
+        });
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(futures.size()).append(" request(s) in flight\n");
+        for (NettyResponseFuture<?> f : futures) {
+            sb.append(f.getRequest().getReqType()).append(' ').append(f.getRequest().getUrl())
+                    .append(": ").append(f.diagnostics()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Return the metadata of the most recent requests and responses, oldest first, when the
+     * {@link NettyAsyncHttpProviderConfig#WIRE_TRACE_SIZE} property is set.
+     *
+     * @return one line per request, response or failure, or an empty String if the wire trace is disabled.
+     */
+    public String dumpWireTrace() {
+        return wireTrace == null ? "" : wireTrace.dump();
+    }
+
     protected static int requestTimeout(AsyncHttpClientConfig config, PerRequestConfig perRequestConfig) {
         int result;
         if (perRequestConfig != null) {
@@ -788,7 +1291,7 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
     @Override
     protected void channelIdle(ChannelHandlerContext ctx, IdleState state, long lastActivityTimeMillis) throws Exception {
 
-        if (log.isDebugEnabled()) {
+        if (debugEnabled) {
             log.debug("Idle state {}, last activity {}ms ago",
                     new Object[] {state, System.currentTimeMillis() - lastActivityTimeMillis});
         }
@@ -797,6 +1300,14 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
         }
 
         Object attachment = ctx.getAttachment();
+
+        if (attachment instanceof NettyWebSocket) {
+            // An idle WebSocket is only closed if it was waiting for the closing handshake.
+            if (!((NettyWebSocket) attachment).isOpen()) {
+                ctx.getChannel().close();
+            }
+            return;
+        }
         
         if (attachment != null) {
             if (NettyResponseFuture.class.isAssignableFrom(attachment.getClass())) {
@@ -813,10 +1324,48 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
           log.warn("null attachment on ChannelHandlerContext {}", ctx);
         }
         
-        log.debug("Channel Idle: {}", ctx.getChannel());
+        if (debugEnabled) {
+            log.debug("Channel Idle: {}", ctx.getChannel());
+        }
         closeChannel(ctx);
     }
 
+    private boolean offerToPool(String baseUrl, Channel channel) {
+        if (releasePipelinedChannel(channel) || connectionsPool.offer(baseUrl, channel)) {
+            return true;
+        }
+        if (config.getClientMetrics() != null) {
+            config.getClientMetrics().recordPoolOfferRejected(baseUrl);
+        }
+        return false;
+    }
+
+    /**
+     * Attach the next request pipelined on the channel, if any.
+     *
+     * @return true if the channel has been handed over to a pipelined request, and must not be pooled.
+     */
+    private boolean releasePipelinedChannel(Channel channel) {
+        if (pipelinedConnections == null) {
+            return false;
+        }
+
+        NettyResponseFuture<?> next = pipelinedConnections.next(channel);
+        if (next == null) {
+            return false;
+        }
+        channel.getPipeline().getContext(NettyAsyncHttpProvider.class).setAttachment(next);
+        return true;
+    }
+
+    private void replayPipelinedRequests(Channel channel) {
+        for (NettyResponseFuture<?> follower : pipelinedConnections.closed(channel)) {
+            if (!follower.isDone() && !remotelyClosed(channel, follower)) {
+                follower.abort(new IOException("Connection closed before the pipelined request was answered"));
+            }
+        }
+    }
+
     private void closeChannel(final ChannelHandlerContext ctx) {
         if (config.getMaxTotalConnections() != -1) {
             maxConnections.decrementAndGet();
@@ -845,7 +1394,10 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
             log.warn("ChannelHandlerContext wasn't having any attachment");
         }
 
-        if (ctx.getAttachment() instanceof DiscardEvent) {
+        if (ctx.getAttachment() instanceof NettyWebSocket) {
+            ((NettyWebSocket) ctx.getAttachment()).onFrame((WebSocketFrameDecoder.Frame) e.getMessage());
+            return;
+        } else if (ctx.getAttachment() instanceof DiscardEvent) {
             return;
         } else if (ctx.getAttachment() instanceof AsyncCallable) {
             HttpChunk chunk = (HttpChunk) e.getMessage();
@@ -872,13 +1424,25 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
         try {
             if (e.getMessage() instanceof HttpResponse) {
                 response = (HttpResponse) e.getMessage();
+                fireEvent(future, RequestEvent.STATUS_RECEIVED);
+                if (!response.isChunked()) {
+                    fireEvent(future, RequestEvent.LAST_CHUNK_RECEIVED);
+                }
 
-                log.debug("\n\nRequest {}\n\nResponse {}\n", nettyRequest, response);
+                if (debugEnabled) {
+                    log.debug("\n\nRequest {}\n\nResponse {}\n", nettyRequest, response);
+                }
+                if (wireTrace != null) {
+                    wireTrace.response(ctx.getChannel(), future.getURI().toString(), response);
+                }
                 
                 // Required if there is some trailing headers.
                 future.setHttpResponse(response);
 
                 int statusCode = response.getStatus().getCode();
+                if (future.getTrace() != null && statusCode != 100) {
+                    future.getTrace().attemptCompleted(statusCode, null);
+                }
 
                 String ka = response.getHeader(HttpHeaders.Names.CONNECTION);
                 future.setKeepAlive(ka == null || ka.toLowerCase().equals("keep-alive"));
@@ -886,7 +1450,7 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
                 List<String> wwwAuth = getWwwAuth(response.getHeaders());
                 Realm realm = request.getRealm() != null ? request.getRealm() : config.getRealm();
 
-                HttpResponseStatus status = new ResponseStatus(future.getURI(), response, this);
+                HttpResponseStatus status = new ResponseStatus(future.getURI(), response, this, future);
                 FilterContext fc = new FilterContext.FilterContextBuilder().asyncHandler(handler).request(request).responseStatus(status).build();
                 for (ResponseFilter asyncFilter : config.getResponseFilters()) {
                     try {
@@ -912,6 +1476,9 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
 
                     final RequestBuilder builder = new RequestBuilder(future.getRequest());
                     future.setState(NettyResponseFuture.STATE.NEW);
+                    if (future.getTrace() != null) {
+                        future.getTrace().nextAttempt(RequestTracer.Attempt.AUTHENTICATION);
+                    }
 
                     if (!future.getURI().getPath().equalsIgnoreCase(realm.getUri())) {
                         builder.setUrl(future.getURI().toString());
@@ -920,7 +1487,7 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
                     // NTLM
                     if (wwwAuth.contains("Negotiate") && wwwAuth.contains("NTLM")) {
                         final Realm nr = new Realm.RealmBuilder().clone(realm).setUsePreemptiveAuth(true).build();
-                        ntlmProvider.execute(builder.setRealm(nr).build(), future.getAsyncHandler(), future);
+                        ntlmProvider().execute(builder.setRealm(nr).build(), future.getAsyncHandler(), future);
                         return;
                     }
 
@@ -932,7 +1499,9 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
                             .parseWWWAuthenticateHeader(wwwAuth.get(0))
                             .build();
 
-                    log.debug("Sending authentication to {}", request.getUrl());
+                    if (debugEnabled) {
+                        log.debug("Sending authentication to {}", request.getUrl());
+                    }
 
                     if (future.getKeepAlive()) {
                         future.attachChannel(ctx.getChannel());
@@ -965,7 +1534,12 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
                         && future.getRequest().getRealm() != null
                         && !future.getAndSetAuth(true)) {
 
-                    log.debug("Sending proxy authentication to {}", request.getUrl());
+                    if (debugEnabled) {
+                        log.debug("Sending proxy authentication to {}", request.getUrl());
+                    }
+                    if (future.getTrace() != null) {
+                        future.getTrace().nextAttempt(RequestTracer.Attempt.AUTHENTICATION);
+                    }
 
                     if (response.isChunked()) {
                         ctx.setAttachment(new AsyncCallable(future) {
@@ -984,7 +1558,9 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
                         && statusCode == 200) {
 
                     ProxyServer proxyServer = request.getProxyServer() != null ? request.getProxyServer() : config.getProxyServer();
-                    log.debug("Connected to {}:{}", proxyServer.getHost(), proxyServer.getPort());
+                    if (debugEnabled) {
+                        log.debug("Connected to {}:{}", proxyServer.getHost(), proxyServer.getPort());
+                    }
 
                     if (future.getKeepAlive()) {
                         future.attachChannel(ctx.getChannel());
@@ -1018,13 +1594,18 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
                             future.setURI(uri);
                             final String newUrl = uri.toString();
 
-                            log.debug("Redirecting to {}", newUrl);
+                            if (debugEnabled) {
+                                log.debug("Redirecting to {}", newUrl);
+                            }
+                            if (future.getTrace() != null) {
+                                future.getTrace().nextAttempt(RequestTracer.Attempt.REDIRECT);
+                            }
 
                             if (response.isChunked()) {
                                 ctx.setAttachment(new AsyncCallable(future) {
                                     public Object call() throws Exception {
                                         if (initialConnectionKeepAlive) {
-                                            if (!connectionsPool.offer(AsyncHttpProviderUtils.getBaseUrl(initialConnectionUri), ctx.getChannel())) {
+                                            if (!offerToPool(AsyncHttpProviderUtils.getBaseUrl(initialConnectionUri), ctx.getChannel())) {
                                                 finishChannel(ctx);
                                             }
                                         } else {
@@ -1036,7 +1617,7 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
                                 });
                             } else {
                                 if (initialConnectionKeepAlive) {
-                                    if (!connectionsPool.offer(AsyncHttpProviderUtils.getBaseUrl(initialConnectionUri), ctx.getChannel())) {
+                                    if (!offerToPool(AsyncHttpProviderUtils.getBaseUrl(initialConnectionUri), ctx.getChannel())) {
                                         finishChannel(ctx);
                                     }
                                 } else {
@@ -1051,6 +1632,11 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
                     }
                 }
 
+                if (statusCode == 101 && handler instanceof WebSocketUpgradeHandler) {
+                    upgradeToWebSocket(ctx, future, response, status);
+                    return;
+                }
+
                 if (!future.getAndSetStatusReceived(true) && updateStatusAndInterrupt(handler, status)) {
                     finishUpdate(future, ctx, response.isChunked());
 
@@ -1072,6 +1658,9 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
 
             } else if (e.getMessage() instanceof HttpChunk) {
                 HttpChunk chunk = (HttpChunk) e.getMessage();
+                if (chunk.isLast()) {
+                    fireEvent(future, RequestEvent.LAST_CHUNK_RECEIVED);
+                }
 
                 if (handler != null) {
                     if (chunk.isLast() || updateBodyAndInterrupt(handler, new ResponseBodyPart(future.getURI(), null, this, chunk))) {
@@ -1104,6 +1693,40 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
         }
     }
 
+    private void upgradeToWebSocket(ChannelHandlerContext ctx, NettyResponseFuture<?> future, HttpResponse response,
+                                    HttpResponseStatus status) throws Exception {
+        String key = future.getNettyRequest().getHeader(NettyWebSocket.SEC_WEBSOCKET_KEY);
+        String accept = response.getHeader(NettyWebSocket.SEC_WEBSOCKET_ACCEPT);
+        if (key == null || !"websocket".equalsIgnoreCase(response.getHeader(HttpHeaders.Names.UPGRADE))
+                || !NettyWebSocket.acceptKey(key).equals(accept)) {
+            abort(future, new IOException("Invalid WebSocket handshake response from " + future.getURI()));
+            closeChannel(ctx);
+            return;
+        }
+
+        WebSocketUpgradeHandler handler = (WebSocketUpgradeHandler) future.getAsyncHandler();
+        future.getAndSetStatusReceived(true);
+        handler.onStatusReceived(status);
+        handler.onHeadersReceived(new ResponseHeaders(future.getURI(), response, this));
+
+        ChannelPipeline p = ctx.getPipeline();
+        p.replace(HTTP_HANDLER, WEBSOCKET_DECODER, new WebSocketFrameDecoder(handler.getMaxMessageSize()));
+        if (p.get("deflater") != null) {
+            p.remove("deflater");
+        }
+        if (p.get("inflater") != null) {
+            p.remove("inflater");
+        }
+
+        NettyWebSocket webSocket = new NettyWebSocket(ctx.getChannel(), handler.getMaxMessageSize());
+        ctx.setAttachment(webSocket);
+        if (debugEnabled) {
+            log.debug("Upgraded {} to a WebSocket", ctx.getChannel());
+        }
+        handler.onSuccess(webSocket);
+        future.done(null);
+    }
+
     private FilterContext handleIoException(FilterContext fc, NettyResponseFuture<?> future) {
         for (IOExceptionFilter asyncFilter : config.getIOExceptionFilters()) {
             try {
@@ -1123,7 +1746,9 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
         future.setAsyncHandler(fc.getAsyncHandler());
         future.setState(NettyResponseFuture.STATE.NEW);
 
-        log.debug("\n\nReplayed Request {}\n", newRequest);
+        if (debugEnabled) {
+            log.debug("\n\nReplayed Request {}\n", newRequest);
+        }
 
         // We must consume the body first in order to re-use the connection.
         if (response != null && response.isChunked()) {
@@ -1154,6 +1779,7 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
     }
 
     private void nextRequest(final Request request, final NettyResponseFuture<?> future, final boolean useCache) throws IOException {
+        future.setCurrentRequest(request);
         execute(request, future, useCache);
     }
 
@@ -1162,8 +1788,13 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
             maxConnections.decrementAndGet();
         }
 
-        log.debug("abording Future {}", future);
-        log.debug(t.getMessage(), t);
+        if (debugEnabled) {
+            log.debug("abording Future {}", future);
+            log.debug(t.getMessage(), t);
+        }
+        if (wireTrace != null) {
+            wireTrace.failure(future.getConnection(), future.getRequest().getUrl(), t);
+        }
 
         future.abort(t);
     }
@@ -1173,18 +1804,20 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
             p.remove(HTTP_HANDLER);
         }
 
-        log.debug("Connecting to proxy {} for scheme {}", proxyServer, scheme);
+        if (debugEnabled) {
+            log.debug("Connecting to proxy {} for scheme {}", proxyServer, scheme);
+        }
 
         if (scheme.startsWith(HTTPS)) {
             if (p.get(SSL_HANDLER) == null) {
-                p.addFirst(HTTP_HANDLER, new HttpClientCodec());
-                p.addFirst(SSL_HANDLER, new SslHandler(createSSLEngine()));
+                p.addAfter(CONNECTION_STATS, HTTP_HANDLER, new HttpClientCodec());
+                p.addAfter(CONNECTION_STATS, SSL_HANDLER, new SslHandler(createSSLEngine()));
             } else {
                 p.addAfter(SSL_HANDLER, HTTP_HANDLER, new HttpClientCodec());
             }
 
         } else {
-            p.addFirst(HTTP_HANDLER, new HttpClientCodec());
+            p.addAfter(CONNECTION_STATS, HTTP_HANDLER, new HttpClientCodec());
         }
     }
 
@@ -1192,6 +1825,10 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
 
         connectionsPool.removeAll(ctx.getChannel());
 
+        if (pipelinedConnections != null) {
+            replayPipelinedRequests(ctx.getChannel());
+        }
+
         Exception exception = null;
         try {
             super.channelClosed(ctx, e);
@@ -1199,7 +1836,15 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
             exception = ex;
         }
 
-        log.debug("Channel Closed: {}", e.getChannel());
+        if (debugEnabled) {
+            log.debug("Channel Closed: {}", e.getChannel());
+        }
+
+        if (ctx.getAttachment() instanceof NettyWebSocket) {
+            ((NettyWebSocket) ctx.getAttachment()).onClose();
+            closeChannel(ctx);
+            return;
+        }
 
         if (ctx.getAttachment() instanceof AsyncCallable) {
             AsyncCallable ac = (AsyncCallable) ctx.getAttachment();
@@ -1235,6 +1880,12 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
             return false;
         }
 
+        if (pipelinedConnections != null && future != null && pipelinedConnections.isFollower(channel, future)) {
+            // The requests pipelined on that channel are replayed in order once it is closed.
+            channel.close();
+            return true;
+        }
+
         connectionsPool.removeAll(channel);
 
         if (future == null && channel.getPipeline().getContext(NettyAsyncHttpProvider.class).getAttachment() != null
@@ -1250,7 +1901,9 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
 
         future.setState(NettyResponseFuture.STATE.RECONNECTED);
 
-        log.debug("Trying to recover request {}", future.getNettyRequest());
+        if (debugEnabled) {
+            log.debug("Trying to recover request {}", future.getNettyRequest());
+        }
 
         try {
             nextRequest(future.getRequest(), future);
@@ -1270,7 +1923,7 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
             future.done(new Callable<Boolean>() {
                 public Boolean call() throws Exception {
                     if (future.getKeepAlive() && cache) {
-                        if (!connectionsPool.offer(AsyncHttpProviderUtils.getBaseUrl(future.getURI()), ctx.getChannel()) ) {
+                        if (!offerToPool(AsyncHttpProviderUtils.getBaseUrl(future.getURI()), ctx.getChannel())) {
                             finishChannel(ctx);
                         }
                     }
@@ -1279,7 +1932,9 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
             });
         } catch (Throwable t) {
             // Never propagate exception once we know we are done.
-            log.debug(t.getMessage(), t);
+            if (debugEnabled) {
+                log.debug(t.getMessage(), t);
+            }
         }
 
         if (!future.getKeepAlive()) {
@@ -1339,6 +1994,18 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
                 return;
             }
 
+            if (ctx.getAttachment() instanceof NettyWebSocket) {
+                // The listeners are notified of the closing by channelClosed.
+                NettyWebSocket webSocket = (NettyWebSocket) ctx.getAttachment();
+                webSocket.onError(cause);
+                if (cause instanceof WebSocketFrameDecoder.MessageTooBigException) {
+                    webSocket.closeMessageTooBig();
+                } else {
+                    channel.close();
+                }
+                return;
+            }
+
             if (ctx.getAttachment() instanceof NettyResponseFuture<?>) {
                 future = (NettyResponseFuture<?>) ctx.getAttachment();
                 future.attachChannel(null);
@@ -1374,7 +2041,7 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
             }
         }
 
-        if (log.isDebugEnabled()) {
+        if (debugEnabled) {
             log.error("Exception Caught: {} Attachment was {}",
                     cause != null ? cause.getMessage() : "unavailable cause",
                     ctx.getAttachment());
@@ -1473,6 +2140,7 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
 
         NettyResponseFuture<T> f = new NettyResponseFuture<T>(uri, request, asyncHandler, nettyRequest,
                 requestTimeout(config, request.getPerRequestConfig()), provider);
+        f.setTrace(Trace.start(config.getRequestTracer(), request));
 
         if (request.getHeaders().getFirstValue("Expect") != null
                 && request.getHeaders().getFirstValue("Expect").equalsIgnoreCase("100-Continue")) {
@@ -1528,6 +2196,15 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
             }
             future.touch();
 
+            if (notifyHeaders) {
+                future.provider().fireEvent(future, RequestEvent.HEADERS_WRITTEN);
+                if (future.getRequest().getFile() == null && future.getRequest().getBodyGenerator() == null) {
+                    future.provider().fireEvent(future, RequestEvent.BODY_WRITTEN);
+                }
+            } else {
+                future.provider().fireEvent(future, RequestEvent.BODY_WRITTEN);
+            }
+
             if (ProgressAsyncHandler.class.isAssignableFrom(asyncHandler.getClass())) {
                 if (notifyHeaders) {
                     ProgressAsyncHandler.class.cast(asyncHandler).onHeaderWriteCompleted();
@@ -1610,15 +2287,23 @@ public class NettyAsyncHttpProvider extends IdleStateHandler implements AsyncHtt
          */
         public synchronized void run() {
             if (this.nettyResponseFuture != null && this.nettyResponseFuture.hasExpired()) {
-                log.debug("Request Timeout expired for {}", this.nettyResponseFuture);
+                if (debugEnabled) {
+                    log.debug("Request Timeout expired for {}", this.nettyResponseFuture);
+                }
 
                 int requestTimeout = config.getRequestTimeoutInMs();
                 PerRequestConfig p = this.nettyResponseFuture.getRequest().getPerRequestConfig();
                 if (p != null && p.getRequestTimeoutInMs() != -1) {
                     requestTimeout = p.getRequestTimeoutInMs();
                 }
-                abort(this.nettyResponseFuture, new TimeoutException(String.format("No response received after %s", requestTimeout)));
-                markChannelNotReadable(channel.getPipeline().getContext(NettyAsyncHttpProvider.class));
+                abort(this.nettyResponseFuture, new TimeoutException(String.format("No response received after %s (%s)",
+                        requestTimeout, this.nettyResponseFuture.diagnostics())));
+                if (pipelinedConnections != null && pipelinedConnections.isPipelined(channel)) {
+                    // The responses of the other pipelined requests can't be matched anymore, replay them.
+                    channel.close();
+                } else {
+                    markChannelNotReadable(channel.getPipeline().getContext(NettyAsyncHttpProvider.class));
+                }
 
                 this.nettyResponseFuture = null;
                 this.channel = null;
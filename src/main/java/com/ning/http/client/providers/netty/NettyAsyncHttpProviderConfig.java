@@ -44,6 +44,59 @@ public class NettyAsyncHttpProviderConfig implements AsyncHttpProviderConfig<Str
      */
     public final static String DISABLE_NESTED_REQUEST = "disableNestedRequest";
 
+    /**
+     * Keep the metadata of the most recent requests and responses in a ring buffer of that size, which can be read with
+     * {@link NettyAsyncHttpProvider#dumpWireTrace()}
+     */
+    public final static String WIRE_TRACE_SIZE = "wireTraceSize";
+
+    /**
+     * Pipeline idempotent requests on keep-alive connections, up to that number of requests in flight per connection.
+     * Only enable it for servers which support HTTP/1.1 pipelining.
+     */
+    public final static String HTTP_PIPELINING_DEPTH = "httpPipeliningDepth";
+
+    /**
+     * A comma separated list of host names served in the same JVM: plain http requests to those hosts are sent over
+     * Netty's in-VM transport to the {@link org.jboss.netty.channel.local.LocalAddress} named after the host, instead
+     * of a TCP connection.
+     */
+    public final static String LOCAL_TRANSPORT_HOSTS = "localTransportHosts";
+
+    /**
+     * The number of NIO worker threads. Defaults to twice the number of available processors.
+     */
+    public final static String NIO_WORKER_COUNT = "nioWorkerCount";
+
+    /**
+     * A {@link NettyClientRuntime} shared with other clients. The provider then uses the runtime's threads, timer
+     * and reaper instead of creating its own, and {@link #NIO_WORKER_COUNT} is ignored.
+     */
+    public final static String CLIENT_RUNTIME = "clientRuntime";
+
+    /**
+     * A {@link java.util.concurrent.Executor} the {@link com.ning.http.client.AsyncHandler} callbacks are invoked on,
+     * instead of the I/O threads, so a slow handler doesn't delay the other connections. The callbacks of a request
+     * are still invoked one at a time and in order. An
+     * {@link org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor} also stops reading from the
+     * connections whose responses aren't consumed fast enough. The executor isn't shut down when the client is closed.
+     */
+    public final static String CALLBACK_EXECUTOR = "callbackExecutor";
+
+    /**
+     * A {@link Map} of {@link SocketProfile} keyed by host name, or by domain with a leading wildcard, e.g.
+     * {@code *.example.com}. The connections to a host use the profile of the host, or else of its closest domain.
+     * When a proxy is used, the profile is looked up with the host of the request.
+     */
+    public final static String SOCKET_PROFILES = "socketProfiles";
+
+    /**
+     * When a host resolves to several addresses, connect to them in turn and use the first connection established
+     * ("Happy Eyeballs"): the next address is tried after that delay in millisecond if the previous attempt is still
+     * pending, or as soon as it fails. 250 is a sensible value. Not used for connections through a proxy.
+     */
+    public final static String CONNECT_ATTEMPT_DELAY = "connectAttemptDelayInMs";
+
     private final ConcurrentHashMap<String, Object> properties = new ConcurrentHashMap<String, Object>();
 
     /**
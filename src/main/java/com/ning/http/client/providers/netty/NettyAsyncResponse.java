@@ -103,13 +103,8 @@ public class NettyAsyncResponse implements Response {
 
         ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
         for (HttpResponseBodyPart bp : bodyParts) {
-            // Ugly. TODO
-            // (1) We must remove the downcast,
-            // (2) we need a CompositeByteArrayInputStream to avoid
-            // copying the bytes.
-            if (bp.getClass().isAssignableFrom(ResponseBodyPart.class)) {
-                buf.writeBytes(bp.getBodyPartBytes());
-            }
+            // TODO we need a CompositeByteArrayInputStream to avoid copying the bytes.
+            buf.writeBytes(bp.getBodyPartBytes());
         }
         return new ChannelBufferInputStream(buf);
     }
@@ -251,4 +246,29 @@ public class NettyAsyncResponse implements Response {
         return (bodyParts != null && bodyParts.size() > 0 ? true : false);
     }
 
+    /**
+     * Return the number of bytes written to the socket for this request, TLS records, HTTP headers, redirects and
+     * retries included.
+     *
+     * @return the number of bytes sent, or -1 if unknown.
+     */
+    public long getBytesSent() {
+        NettyResponseFuture<?> future = future();
+        return future != null ? future.getBytesSent() : -1;
+    }
+
+    /**
+     * Return the number of bytes read from the socket for this request, TLS records, HTTP headers, redirects and
+     * retries included.
+     *
+     * @return the number of bytes received, or -1 if unknown.
+     */
+    public long getBytesReceived() {
+        NettyResponseFuture<?> future = future();
+        return future != null ? future.getBytesReceived() : -1;
+    }
+
+    private NettyResponseFuture<?> future() {
+        return status instanceof ResponseStatus ? ((ResponseStatus) status).future() : null;
+    }
 }
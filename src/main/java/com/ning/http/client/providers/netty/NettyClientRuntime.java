@@ -0,0 +1,146 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.providers.netty;
+
+import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The I/O resources of the {@link NettyAsyncHttpProvider}: the NIO boss and worker threads, the idle connection
+ * {@link Timer} and the request timeout reaper. By default every provider creates its own; a single runtime can instead
+ * be shared by many {@link com.ning.http.client.AsyncHttpClient} using the
+ * {@link NettyAsyncHttpProviderConfig#CLIENT_RUNTIME} property, so they all run on the same event loop.
+ * <p/>
+ * The runtime is reference counted: every provider retains it when created and releases it when closed, and its
+ * threads are stopped once the last reference is released. An application which creates and closes clients over time
+ * can {@link #retain()} the runtime itself to keep it alive between clients.
+ */
+public class NettyClientRuntime {
+
+    private final ClientSocketChannelFactory channelFactory;
+    private final HashedWheelTimer timer;
+    private final ScheduledExecutorService reaper;
+    private final int workerCount;
+    private int references;
+    private boolean released;
+
+    /**
+     * Create a runtime with twice as many NIO workers as there are available processors, like Netty does.
+     */
+    public NettyClientRuntime() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Create a runtime.
+     *
+     * @param workerCount the number of NIO worker threads.
+     */
+    public NettyClientRuntime(int workerCount) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("The worker count must be positive");
+        }
+        this.workerCount = workerCount;
+        channelFactory = new NioClientSocketChannelFactory(Executors.newCachedThreadPool(),
+                Executors.newCachedThreadPool(), workerCount);
+        timer = new HashedWheelTimer();
+        reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "AsyncHttpClient-Reaper");
+            }
+        });
+    }
+
+    /**
+     * Add a reference to this runtime.
+     *
+     * @return this runtime.
+     * @throws IllegalStateException if the runtime has already been released.
+     */
+    public synchronized NettyClientRuntime retain() {
+        if (released) {
+            throw new IllegalStateException("The client runtime has been released");
+        }
+        references++;
+        return this;
+    }
+
+    /**
+     * Remove a reference to this runtime, and stop its threads if it was the last one.
+     *
+     * @return true if the runtime has been released by this call.
+     */
+    public boolean release() {
+        synchronized (this) {
+            if (released || references == 0) {
+                return false;
+            }
+            if (--references > 0) {
+                return false;
+            }
+            released = true;
+        }
+        reaper.shutdown();
+        timer.stop();
+        channelFactory.releaseExternalResources();
+        return true;
+    }
+
+    /**
+     * Return true once the last reference has been released.
+     *
+     * @return true once the last reference has been released.
+     */
+    public synchronized boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * Return the number of references to this runtime.
+     *
+     * @return the number of references to this runtime.
+     */
+    public synchronized int getReferenceCount() {
+        return references;
+    }
+
+    /**
+     * Return the number of NIO worker threads.
+     *
+     * @return the number of NIO worker threads.
+     */
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    ClientSocketChannelFactory getChannelFactory() {
+        return channelFactory;
+    }
+
+    Timer getTimer() {
+        return timer;
+    }
+
+    ScheduledExecutorService getReaper() {
+        return reaper;
+    }
+}
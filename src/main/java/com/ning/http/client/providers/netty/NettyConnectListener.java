@@ -19,6 +19,7 @@ package com.ning.http.client.providers.netty;
 import com.ning.http.client.AsyncHandler;
 import com.ning.http.client.AsyncHttpClientConfig;
 import com.ning.http.client.Request;
+import com.ning.http.client.listener.RequestEvent;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
@@ -58,9 +59,14 @@ final class NettyConnectListener<T> implements ChannelFutureListener {
 
     public final void operationComplete(ChannelFuture f) throws Exception {
         if (f.isSuccess()) {
-            if (!handshakeDone.getAndSet(true) && f.getChannel().getPipeline().get(NettyAsyncHttpProvider.SSL_HANDLER) != null) {
-                ((SslHandler) f.getChannel().getPipeline().get(NettyAsyncHttpProvider.SSL_HANDLER)).handshake().addListener(this);
-                return;
+            if (!handshakeDone.getAndSet(true)) {
+                future.provider().fireEvent(future, RequestEvent.CONNECT_COMPLETED);
+                if (f.getChannel().getPipeline().get(NettyAsyncHttpProvider.SSL_HANDLER) != null) {
+                    ((SslHandler) f.getChannel().getPipeline().get(NettyAsyncHttpProvider.SSL_HANDLER)).handshake().addListener(this);
+                    return;
+                }
+            } else {
+                future.provider().fireEvent(future, RequestEvent.TLS_HANDSHAKE_COMPLETED);
             }
             f.getChannel().getPipeline().getContext(NettyAsyncHttpProvider.class).setAttachment(future);
             future.provider().writeRequest(f.getChannel(), config, future, nettyRequest);
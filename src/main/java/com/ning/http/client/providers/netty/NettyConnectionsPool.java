@@ -38,7 +38,7 @@ public class NettyConnectionsPool implements ConnectionsPool<String, Channel> {
             new ConcurrentHashMap<String, List<Channel>>();
     private final AtomicInteger totalConnections = new AtomicInteger(0);
     private final AsyncHttpClientConfig config;
-
+    private final boolean debugEnabled = log.isDebugEnabled();
 
     public NettyConnectionsPool(AsyncHttpClientConfig config) {
         this.config = config;
@@ -48,7 +48,9 @@ public class NettyConnectionsPool implements ConnectionsPool<String, Channel> {
      * {@inheritDoc}
      */
     public boolean offer(String uri, Channel connection) {
-        log.debug("Adding uri: {} for channel {}", uri, connection);
+        if (debugEnabled) {
+            log.debug("Adding uri: {} for channel {}", uri, connection);
+        }
         connection.getPipeline().getContext(NettyAsyncHttpProvider.class).setAttachment(new NettyAsyncHttpProvider.DiscardEvent());
 
         List<Channel> pooledConnectionForHost = connectionsPool.get(uri);
@@ -93,6 +95,9 @@ public class NettyConnectionsPool implements ConnectionsPool<String, Channel> {
                 } else if (!channel.isConnected() || !channel.isOpen()) {
                     removeAll(channel);
                     channel = null;
+                    if (config.getClientMetrics() != null) {
+                        config.getClientMetrics().recordStaleConnection(uri);
+                    }
                 } else {
                     totalConnections.decrementAndGet();
                 }
@@ -112,7 +117,9 @@ public class NettyConnectionsPool implements ConnectionsPool<String, Channel> {
             synchronized (e.getValue()) {
                 boolean removed = e.getValue().remove(connection);
                 if (removed) {
-                    log.debug("Removing uri: {} for channel {}", e.getKey(), e.getValue());
+                    if (debugEnabled) {
+                        log.debug("Removing uri: {} for channel {}", e.getKey(), e.getValue());
+                    }
                     totalConnections.decrementAndGet();
 
                 }
@@ -133,6 +140,15 @@ public class NettyConnectionsPool implements ConnectionsPool<String, Channel> {
         }
     }
 
+    /**
+     * Return the number of idle connections in the pool.
+     *
+     * @return the number of idle connections in the pool.
+     */
+    public int getIdleConnectionCount() {
+        return totalConnections.get();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -18,6 +18,8 @@ package com.ning.http.client.providers.netty;
 import com.ning.http.client.AsyncHandler;
 import com.ning.http.client.FutureImpl;
 import com.ning.http.client.Request;
+import com.ning.http.client.listener.RequestEvent;
+import com.ning.http.client.tracing.Trace;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponse;
@@ -25,6 +27,7 @@ import org.jboss.netty.handler.codec.http.HttpResponse;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -76,6 +79,16 @@ public final class NettyResponseFuture<V> implements FutureImpl<V> {
     private final int maxRetry;
     private boolean writeHeaders;
     private boolean writeBody;
+    private final long startTime = System.nanoTime();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    // Diagnostics, only updated by the thread currently processing the request.
+    private volatile RequestEvent phase;
+    private volatile Channel connection;
+    private volatile boolean pooledConnection;
+    private Trace<?> trace;
+    private volatile Request currentRequest;
 
     public NettyResponseFuture(URI uri,
                                Request request,
@@ -87,6 +100,7 @@ public final class NettyResponseFuture<V> implements FutureImpl<V> {
         this.asyncHandler = asyncHandler;
         this.responseTimeoutInMs = responseTimeoutInMs;
         this.request = request;
+        this.currentRequest = request;
         this.nettyRequest = nettyRequest;
         this.uri = uri;
         this.asyncHttpProvider = asyncHttpProvider;
@@ -134,8 +148,15 @@ public final class NettyResponseFuture<V> implements FutureImpl<V> {
      */
     /* @Override */
     public boolean cancel(boolean force) {
+        // A completed request keeps its connection, and is only cancelled once.
+        if (isDone() || !isCancelled.compareAndSet(false, true)) {
+            return false;
+        }
+        asyncHttpProvider.cancelled(this);
+        if (trace != null) {
+            trace.requestCompleted(new CancellationException());
+        }
         latch.countDown();
-        isCancelled.set(true);
         if (reaperFuture != null) reaperFuture.cancel(true);
         return true;
     }
@@ -179,7 +200,11 @@ public final class NettyResponseFuture<V> implements FutureImpl<V> {
 
             if (expired) {
                 isCancelled.set(true);
-                TimeoutException te = new TimeoutException(String.format("No response received after %s", l));
+                asyncHttpProvider.unregister(this);
+                TimeoutException te = new TimeoutException(String.format("No response received after %s (%s)", l, diagnostics()));
+                if (trace != null) {
+                    trace.requestCompleted(te);
+                }
                 try {
                     asyncHandler.onThrowable(te);
                 } finally {
@@ -225,7 +250,12 @@ public final class NettyResponseFuture<V> implements FutureImpl<V> {
             }
             if (reaperFuture != null) reaperFuture.cancel(true);
             getContent();
-            isDone.set(true);
+            if (!isDone.getAndSet(true)) {
+                asyncHttpProvider.recordMetrics(uri, httpResponse, startTime);
+                if (trace != null) {
+                    trace.requestCompleted(null);
+                }
+            }
             if (callable != null) {
                 try {
                     callable.call();
@@ -238,6 +268,7 @@ public final class NettyResponseFuture<V> implements FutureImpl<V> {
         } catch (RuntimeException t) {
             exEx.compareAndSet(null, new ExecutionException(t));
         } finally {
+            asyncHttpProvider.unregister(this);
             latch.countDown();
         }
     }
@@ -247,11 +278,16 @@ public final class NettyResponseFuture<V> implements FutureImpl<V> {
 
         if (isDone.get() || isCancelled.get()) return;
 
+        asyncHttpProvider.recordMetrics(uri, null, startTime);
+        if (trace != null) {
+            trace.requestCompleted(t);
+        }
         exEx.compareAndSet(null, new ExecutionException(t));
         try {
             asyncHandler.onThrowable(t);
         } finally {
             isCancelled.set(true);
+            asyncHttpProvider.unregister(this);
             latch.countDown();
         }
     }
@@ -374,6 +410,100 @@ public final class NettyResponseFuture<V> implements FutureImpl<V> {
         return channel;
     }
 
+    void setTrace(Trace<?> trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Return the {@link Trace} of this request, or null if requests are not traced.
+     *
+     * @return the {@link Trace}, or null
+     */
+    Trace<?> getTrace() {
+        return trace;
+    }
+
+    /**
+     * Return the {@link Request} currently sent, which differs from {@link #getRequest()} after a redirect or an
+     * authentication challenge.
+     *
+     * @return the {@link Request} currently sent.
+     */
+    Request getCurrentRequest() {
+        return currentRequest;
+    }
+
+    void setCurrentRequest(Request currentRequest) {
+        this.currentRequest = currentRequest;
+    }
+
+    void setPhase(RequestEvent phase) {
+        this.phase = phase;
+    }
+
+    void setConnection(Channel connection, boolean pooled) {
+        this.connection = connection;
+        this.pooledConnection = pooled;
+    }
+
+    Channel getConnection() {
+        return connection;
+    }
+
+    void addBytes(long sent, long received) {
+        if (sent != 0) {
+            bytesSent.addAndGet(sent);
+        }
+        if (received != 0) {
+            bytesReceived.addAndGet(received);
+        }
+    }
+
+    /**
+     * Return the number of bytes written to the socket for this request, TLS records, HTTP headers, redirects and
+     * retries included.
+     *
+     * @return the number of bytes sent.
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * Return the number of bytes read from the socket for this request, TLS records, HTTP headers, redirects and
+     * retries included.
+     *
+     * @return the number of bytes received.
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * Return the time in millisecond since this {@link Future} was created.
+     *
+     * @return the age in millisecond.
+     */
+    long getAgeInMs() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Describe where this request currently is: the last {@link RequestEvent} it reached, the bytes sent and
+     * received so far, the {@link Channel} it was written to and whether that {@link Channel} came from the pool.
+     *
+     * @return a one line description of the request progress.
+     */
+    String diagnostics() {
+        RequestEvent p = phase;
+        return "phase=" + (p == null ? "PENDING" : p.name())
+                + ", age=" + getAgeInMs() + "ms"
+                + ", bytesSent=" + bytesSent
+                + ", bytesReceived=" + bytesReceived
+                + ", channel=" + connection
+                + ", pooled=" + pooledConnection;
+    }
+
     protected boolean canRetry() {
         if (currentRetry.incrementAndGet() > maxRetry) {
             return false;
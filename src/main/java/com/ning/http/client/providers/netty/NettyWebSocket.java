@@ -0,0 +1,399 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.providers.netty;
+
+import com.ning.http.client.websocket.WebSocket;
+import com.ning.http.client.websocket.WebSocketByteListener;
+import com.ning.http.client.websocket.WebSocketListener;
+import com.ning.http.client.websocket.WebSocketPingListener;
+import com.ning.http.client.websocket.WebSocketPongListener;
+import com.ning.http.client.websocket.WebSocketTextListener;
+import com.ning.http.util.Base64;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+import java.io.UnsupportedEncodingException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.ning.http.client.providers.netty.WebSocketFrameDecoder.OPCODE_BINARY;
+import static com.ning.http.client.providers.netty.WebSocketFrameDecoder.OPCODE_CLOSE;
+import static com.ning.http.client.providers.netty.WebSocketFrameDecoder.OPCODE_CONTINUATION;
+import static com.ning.http.client.providers.netty.WebSocketFrameDecoder.OPCODE_PING;
+import static com.ning.http.client.providers.netty.WebSocketFrameDecoder.OPCODE_PONG;
+import static com.ning.http.client.providers.netty.WebSocketFrameDecoder.OPCODE_TEXT;
+
+/**
+ * A {@link WebSocket} over a {@link Channel} whose HTTP codec has been replaced by a {@link WebSocketFrameDecoder}.
+ * Frames are encoded here: the payload must be masked, which costs a copy unless the payload has been encoded by
+ * this class, like a text message.
+ */
+final class NettyWebSocket implements WebSocket {
+
+    final static String SEC_WEBSOCKET_KEY = "Sec-WebSocket-Key";
+    final static String SEC_WEBSOCKET_ACCEPT = "Sec-WebSocket-Accept";
+    final static String SEC_WEBSOCKET_VERSION = "Sec-WebSocket-Version";
+
+    private final static String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+    private final static byte[] NORMAL_CLOSURE = new byte[]{0x03, (byte) 0xE8};
+    private final static byte[] MESSAGE_TOO_BIG = new byte[]{0x03, (byte) 0xF1};
+    private final static SecureRandom random = new SecureRandom();
+
+    private final Channel channel;
+    private final int maxMessageSize;
+    private final List<WebSocketListener> listeners = new CopyOnWriteArrayList<WebSocketListener>();
+    private final AtomicBoolean closeSent = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    // Opcode of the message being streamed, guarded by this.
+    private int streamedOpcode = -1;
+
+    // Only accessed by the I/O thread.
+    private int fragmentedOpcode = -1;
+    private long fragmentedSize;
+    private boolean discarding;
+    private CharsetDecoder fragmentDecoder;
+    private ByteBuffer undecodedBytes;
+
+    NettyWebSocket(Channel channel, int maxMessageSize) {
+        this.channel = channel;
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    static String newKey() {
+        byte[] nonce = new byte[16];
+        random.nextBytes(nonce);
+        return Base64.encode(nonce);
+    }
+
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return Base64.encode(sha1.digest((key + ACCEPT_GUID).getBytes("US-ASCII")));
+        } catch (NoSuchAlgorithmException e) {
+            throw new SecurityException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /* @Override */
+    public WebSocket sendMessage(byte[] message) {
+        return send(OPCODE_BINARY, true, message, false);
+    }
+
+    /* @Override */
+    public WebSocket stream(byte[] fragment, boolean last) {
+        return send(OPCODE_BINARY, last, fragment, false);
+    }
+
+    /* @Override */
+    public WebSocket sendTextMessage(String message) {
+        return send(OPCODE_TEXT, true, utf8(message), true);
+    }
+
+    /* @Override */
+    public WebSocket streamText(String fragment, boolean last) {
+        return send(OPCODE_TEXT, last, utf8(fragment), true);
+    }
+
+    /* @Override */
+    public WebSocket sendPing(byte[] payload) {
+        return sendControl(OPCODE_PING, payload);
+    }
+
+    /* @Override */
+    public WebSocket sendPong(byte[] payload) {
+        return sendControl(OPCODE_PONG, payload);
+    }
+
+    /* @Override */
+    public WebSocket addWebSocketListener(WebSocketListener l) {
+        listeners.add(l);
+        return this;
+    }
+
+    /* @Override */
+    public WebSocket removeWebSocketListener(WebSocketListener l) {
+        listeners.remove(l);
+        return this;
+    }
+
+    /* @Override */
+    public boolean isOpen() {
+        return channel.isOpen() && !closeSent.get();
+    }
+
+    /* @Override */
+    public void close() {
+        // The server answers with its own close frame, then closes the connection.
+        if (closeSent.compareAndSet(false, true) && channel.isOpen()) {
+            channel.write(encode(OPCODE_CLOSE, true, NORMAL_CLOSURE.clone(), true));
+        }
+    }
+
+    private synchronized WebSocket send(int opcode, boolean last, byte[] payload, boolean owned) {
+        checkOpen();
+        boolean continuation = streamedOpcode != -1;
+        if (continuation && streamedOpcode != opcode) {
+            throw new IllegalStateException("The previous message hasn't been fully streamed");
+        }
+        streamedOpcode = last ? -1 : opcode;
+        channel.write(encode(continuation ? OPCODE_CONTINUATION : opcode, last, payload, owned));
+        return this;
+    }
+
+    private WebSocket sendControl(int opcode, byte[] payload) {
+        if (payload.length > 125) {
+            throw new IllegalArgumentException("Control frame payload can't be longer than 125 bytes");
+        }
+        checkOpen();
+        channel.write(encode(opcode, true, payload, false));
+        return this;
+    }
+
+    private void checkOpen() {
+        if (!isOpen()) {
+            throw new IllegalStateException("WebSocket is closed");
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encode a masked client frame. The payload is masked in place if it is owned by this class, else it is masked
+     * while being copied after the frame header.
+     */
+    private static ChannelBuffer encode(int opcode, boolean fin, byte[] payload, boolean owned) {
+        int length = payload.length;
+        int lengthBytes = length > 0xFFFF ? 8 : length > 125 ? 2 : 0;
+        int headerLength = 2 + lengthBytes + 4;
+
+        byte[] frame = new byte[owned ? headerLength : headerLength + length];
+        frame[0] = (byte) ((fin ? 0x80 : 0) | opcode);
+        if (lengthBytes == 0) {
+            frame[1] = (byte) (0x80 | length);
+        } else {
+            frame[1] = (byte) (0x80 | (lengthBytes == 2 ? 126 : 127));
+            for (int i = 0; i < lengthBytes; i++) {
+                frame[2 + i] = (byte) (((long) length) >>> (8 * (lengthBytes - 1 - i)));
+            }
+        }
+
+        byte[] mask = new byte[4];
+        random.nextBytes(mask);
+        System.arraycopy(mask, 0, frame, headerLength - 4, 4);
+
+        if (owned) {
+            for (int i = 0; i < length; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+            return ChannelBuffers.wrappedBuffer(frame, payload);
+        }
+        for (int i = 0; i < length; i++) {
+            frame[headerLength + i] = (byte) (payload[i] ^ mask[i & 3]);
+        }
+        return ChannelBuffers.wrappedBuffer(frame);
+    }
+
+    void onFrame(WebSocketFrameDecoder.Frame frame) throws Exception {
+        if (discarding) {
+            // The connection is being closed after a message was too large.
+            return;
+        }
+        switch (frame.opcode) {
+            case OPCODE_TEXT:
+            case OPCODE_BINARY:
+                if (fragmentedOpcode != -1) {
+                    throw new ProtocolException("A new message started before the last fragment of the previous one");
+                }
+                if (frame.fin) {
+                    onMessage(frame.opcode, frame.payload);
+                } else {
+                    fragmentedOpcode = frame.opcode;
+                    fragmentedSize = frame.payload.readableBytes();
+                    onFragment(frame.payload, false);
+                }
+                break;
+            case OPCODE_CONTINUATION:
+                if (fragmentedOpcode == -1) {
+                    throw new ProtocolException("Unexpected continuation frame");
+                }
+                fragmentedSize += frame.payload.readableBytes();
+                if (fragmentedSize > maxMessageSize) {
+                    discarding = true;
+                    throw new WebSocketFrameDecoder.MessageTooBigException(fragmentedSize);
+                }
+                onFragment(frame.payload, frame.fin);
+                if (frame.fin) {
+                    fragmentedOpcode = -1;
+                }
+                break;
+            case OPCODE_PING:
+                byte[] ping = bytes(frame.payload);
+                if (!closeSent.get()) {
+                    channel.write(encode(OPCODE_PONG, true, ping, false));
+                }
+                for (WebSocketListener l : listeners) {
+                    if (l instanceof WebSocketPingListener) {
+                        ((WebSocketPingListener) l).onPing(ping);
+                    }
+                }
+                break;
+            case OPCODE_PONG:
+                byte[] pong = bytes(frame.payload);
+                for (WebSocketListener l : listeners) {
+                    if (l instanceof WebSocketPongListener) {
+                        ((WebSocketPongListener) l).onPong(pong);
+                    }
+                }
+                break;
+            case OPCODE_CLOSE:
+                if (closeSent.compareAndSet(false, true)) {
+                    // Echo the status code of the server.
+                    byte[] status = new byte[Math.min(2, frame.payload.readableBytes())];
+                    frame.payload.getBytes(frame.payload.readerIndex(), status);
+                    channel.write(encode(OPCODE_CLOSE, true, status, true)).addListener(ChannelFutureListener.CLOSE);
+                } else {
+                    channel.close();
+                }
+                break;
+            default:
+                throw new ProtocolException("Unknown WebSocket opcode " + frame.opcode);
+        }
+    }
+
+    private void onMessage(int opcode, ChannelBuffer payload) {
+        String text = null;
+        byte[] bytes = null;
+        for (WebSocketListener l : listeners) {
+            if (opcode == OPCODE_TEXT && l instanceof WebSocketTextListener) {
+                if (text == null) {
+                    text = payload.toString(payload.readerIndex(), payload.readableBytes(), UTF_8);
+                }
+                ((WebSocketTextListener) l).onMessage(text);
+            } else if (opcode == OPCODE_BINARY && l instanceof WebSocketByteListener) {
+                if (bytes == null) {
+                    bytes = bytes(payload);
+                }
+                ((WebSocketByteListener) l).onMessage(bytes);
+            }
+        }
+    }
+
+    private void onFragment(ChannelBuffer payload, boolean last) {
+        String text = null;
+        byte[] bytes = null;
+        if (fragmentedOpcode == OPCODE_TEXT) {
+            // Always decode, as a character may span two fragments.
+            text = decodeFragment(payload, last);
+        }
+        for (WebSocketListener l : listeners) {
+            if (text != null && l instanceof WebSocketTextListener) {
+                ((WebSocketTextListener) l).onFragment(text, last);
+            } else if (fragmentedOpcode == OPCODE_BINARY && l instanceof WebSocketByteListener) {
+                if (bytes == null) {
+                    bytes = bytes(payload);
+                }
+                ((WebSocketByteListener) l).onFragment(bytes, last);
+            }
+        }
+    }
+
+    private String decodeFragment(ChannelBuffer payload, boolean last) {
+        if (fragmentDecoder == null) {
+            fragmentDecoder = UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        ByteBuffer in = payload.toByteBuffer();
+        if (undecodedBytes != null) {
+            ByteBuffer joined = ByteBuffer.allocate(undecodedBytes.remaining() + in.remaining());
+            joined.put(undecodedBytes).put(in).flip();
+            in = joined;
+            undecodedBytes = null;
+        }
+
+        CharBuffer out = CharBuffer.allocate((int) (in.remaining() * fragmentDecoder.maxCharsPerByte()) + 1);
+        fragmentDecoder.decode(in, out, last);
+        if (last) {
+            fragmentDecoder.flush(out);
+            fragmentDecoder.reset();
+        } else if (in.hasRemaining()) {
+            undecodedBytes = ByteBuffer.allocate(in.remaining());
+            undecodedBytes.put(in).flip();
+        }
+        out.flip();
+        return out.toString();
+    }
+
+    private static byte[] bytes(ChannelBuffer payload) {
+        byte[] bytes = new byte[payload.readableBytes()];
+        payload.getBytes(payload.readerIndex(), bytes);
+        return bytes;
+    }
+
+    /**
+     * Close the connection after sending a close frame with the 1009 status code, without waiting for the server's.
+     */
+    void closeMessageTooBig() {
+        if (closeSent.compareAndSet(false, true) && channel.isOpen()) {
+            channel.write(encode(OPCODE_CLOSE, true, MESSAGE_TOO_BIG.clone(), true)).addListener(ChannelFutureListener.CLOSE);
+        } else {
+            channel.close();
+        }
+    }
+
+    void onError(Throwable t) {
+        for (WebSocketListener l : listeners) {
+            l.onError(t);
+        }
+    }
+
+    void onClose() {
+        if (closed.compareAndSet(false, true)) {
+            closeSent.set(true);
+            for (WebSocketListener l : listeners) {
+                l.onClose(this);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NettyWebSocket{channel=" + channel + ", open=" + isOpen() + "}";
+    }
+}
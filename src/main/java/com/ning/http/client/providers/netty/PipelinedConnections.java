@@ -0,0 +1,194 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.providers.netty;
+
+import com.ning.http.client.Request;
+import org.jboss.netty.channel.Channel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The connections HTTP/1.1 requests are pipelined on, when enabled with
+ * {@link NettyAsyncHttpProviderConfig#HTTP_PIPELINING_DEPTH}.
+ * <p/>
+ * The request being answered, the head, stays attached to the channel as usual. The idempotent requests written
+ * behind it, the followers, wait in a FIFO and get attached in turn every time the channel is released, so the
+ * responses are matched in the order the requests were written. When the channel gets closed, the followers which
+ * haven't been answered are replayed on another connection.
+ */
+final class PipelinedConnections {
+
+    private final int depth;
+    private final ConcurrentHashMap<Channel, Connection> connections = new ConcurrentHashMap<Channel, Connection>();
+    private final ConcurrentHashMap<String, Queue<Connection>> hosts = new ConcurrentHashMap<String, Queue<Connection>>();
+
+    PipelinedConnections(int depth) {
+        if (depth < 2) {
+            throw new IllegalArgumentException("The pipelining depth must be at least 2");
+        }
+        this.depth = depth;
+    }
+
+    /**
+     * Return true if the {@link Request} can be pipelined. Only idempotent requests without a body can be replayed
+     * safely when the connection is lost.
+     *
+     * @param request a {@link Request}
+     * @return true if the request can be pipelined.
+     */
+    static boolean isPipelinable(Request request) {
+        String method = request.getReqType();
+        return ("GET".equals(method) || "HEAD".equals(method)) && request.getFile() == null
+                && request.getBodyGenerator() == null && !NettyAsyncHttpProvider.isWebSocketUpgrade(request);
+    }
+
+    /**
+     * Invoked once the headers of a request have been written: a channel carrying a pipelinable request accepts
+     * followers until it is released.
+     */
+    void requestWritten(String baseUrl, Channel channel, Request request) {
+        if (!isPipelinable(request) || connections.containsKey(channel)) {
+            return;
+        }
+
+        Connection connection = new Connection(baseUrl, channel);
+        if (connections.putIfAbsent(channel, connection) == null) {
+            Queue<Connection> queue = hosts.get(baseUrl);
+            if (queue == null) {
+                hosts.putIfAbsent(baseUrl, new ConcurrentLinkedQueue<Connection>());
+                queue = hosts.get(baseUrl);
+            }
+            queue.add(connection);
+        }
+    }
+
+    /**
+     * Return a connection to the host which can take one more request, or null. The request must be added with
+     * {@link Connection#add(NettyResponseFuture)} and written while holding the lock of the connection, so the
+     * requests are written in the order of the FIFO.
+     */
+    Connection select(String baseUrl) {
+        Queue<Connection> queue = hosts.get(baseUrl);
+        if (queue != null) {
+            for (Connection connection : queue) {
+                if (connection.hasRoom()) {
+                    return connection;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Invoked when the head is done with the channel. Return the follower to attach next, or null if there is none,
+     * in which case the channel doesn't accept followers anymore.
+     */
+    NettyResponseFuture<?> next(Channel channel) {
+        Connection connection = connections.get(channel);
+        if (connection == null) {
+            return null;
+        }
+
+        NettyResponseFuture<?> next = connection.next();
+        if (next == null) {
+            remove(connection);
+        }
+        return next;
+    }
+
+    boolean isPipelined(Channel channel) {
+        return connections.containsKey(channel);
+    }
+
+    boolean isFollower(Channel channel, NettyResponseFuture<?> future) {
+        Connection connection = connections.get(channel);
+        return connection != null && connection.contains(future);
+    }
+
+    /**
+     * Invoked when the channel is closed. Return the followers which haven't been answered.
+     */
+    List<NettyResponseFuture<?>> closed(Channel channel) {
+        Connection connection = connections.get(channel);
+        if (connection == null) {
+            return Collections.emptyList();
+        }
+        remove(connection);
+        return connection.close();
+    }
+
+    private void remove(Connection connection) {
+        connections.remove(connection.channel, connection);
+        Queue<Connection> queue = hosts.get(connection.baseUrl);
+        if (queue != null) {
+            queue.remove(connection);
+        }
+    }
+
+    final class Connection {
+
+        private final String baseUrl;
+        private final Channel channel;
+        private final LinkedList<NettyResponseFuture<?>> followers = new LinkedList<NettyResponseFuture<?>>();
+        private boolean closed;
+
+        private Connection(String baseUrl, Channel channel) {
+            this.baseUrl = baseUrl;
+            this.channel = channel;
+        }
+
+        Channel channel() {
+            return channel;
+        }
+
+        synchronized boolean hasRoom() {
+            return !closed && channel.isOpen() && followers.size() < depth - 1;
+        }
+
+        synchronized boolean add(NettyResponseFuture<?> future) {
+            if (!hasRoom()) {
+                return false;
+            }
+            followers.add(future);
+            return true;
+        }
+
+        private synchronized boolean contains(NettyResponseFuture<?> future) {
+            return followers.contains(future);
+        }
+
+        private synchronized NettyResponseFuture<?> next() {
+            NettyResponseFuture<?> next = followers.poll();
+            if (next == null) {
+                closed = true;
+            }
+            return next;
+        }
+
+        private synchronized List<NettyResponseFuture<?>> close() {
+            closed = true;
+            List<NettyResponseFuture<?>> unanswered = new ArrayList<NettyResponseFuture<?>>(followers);
+            followers.clear();
+            return unanswered;
+        }
+    }
+}
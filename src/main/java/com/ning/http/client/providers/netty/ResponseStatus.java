@@ -28,10 +28,25 @@ import java.net.URI;
 public class ResponseStatus extends HttpResponseStatus {
 
     private final HttpResponse response;
+    private final NettyResponseFuture<?> future;
 
     public ResponseStatus(URI uri, HttpResponse response, AsyncHttpProvider<HttpResponse> provider) {
+        this(uri, response, provider, null);
+    }
+
+    ResponseStatus(URI uri, HttpResponse response, AsyncHttpProvider<HttpResponse> provider, NettyResponseFuture<?> future) {
         super(uri, provider);
         this.response = response;
+        this.future = future;
+    }
+
+    /**
+     * Return the {@link NettyResponseFuture} of the request, or null if unknown.
+     *
+     * @return the {@link NettyResponseFuture}, or null.
+     */
+    NettyResponseFuture<?> future() {
+        return future;
     }
 
     /**
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.providers.netty;
+
+import org.jboss.netty.channel.ChannelConfig;
+
+/**
+ * The TCP options of the connections to a host or a group of hosts, set with the
+ * {@link NettyAsyncHttpProviderConfig#SOCKET_PROFILES} property, so e.g. a bulk transfer host and a low latency RPC
+ * host can be tuned differently in the same client. The options which are not set keep the client's value.
+ * <p/>
+ * {@code
+ *      Map<String, SocketProfile> profiles = new HashMap<String, SocketProfile>();
+ *      profiles.put("storage.example.com", new SocketProfile.Builder().setReceiveBufferSize(4 * 1024 * 1024).build());
+ *      profiles.put("*.rpc.example.com", new SocketProfile.Builder().setTcpNoDelay(true).setConnectTimeoutInMs(200).build());
+ *      providerConfig.addProperty(NettyAsyncHttpProviderConfig.SOCKET_PROFILES, profiles);
+ * }
+ */
+public class SocketProfile {
+
+    private final Boolean tcpNoDelay;
+    private final Boolean keepAlive;
+    private final int sendBufferSize;
+    private final int receiveBufferSize;
+    private final int soLinger;
+    private final int connectTimeoutInMs;
+
+    private SocketProfile(Boolean tcpNoDelay, Boolean keepAlive, int sendBufferSize, int receiveBufferSize,
+                          int soLinger, int connectTimeoutInMs) {
+        this.tcpNoDelay = tcpNoDelay;
+        this.keepAlive = keepAlive;
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.soLinger = soLinger;
+        this.connectTimeoutInMs = connectTimeoutInMs;
+    }
+
+    /**
+     * Return the TCP_NODELAY option, or null if not set.
+     *
+     * @return the TCP_NODELAY option, or null if not set.
+     */
+    public Boolean getTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Return the SO_KEEPALIVE option, or null if not set.
+     *
+     * @return the SO_KEEPALIVE option, or null if not set.
+     */
+    public Boolean getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Return the SO_SNDBUF option in bytes, or -1 if not set.
+     *
+     * @return the SO_SNDBUF option in bytes, or -1 if not set.
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Return the SO_RCVBUF option in bytes, or -1 if not set.
+     *
+     * @return the SO_RCVBUF option in bytes, or -1 if not set.
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Return the SO_LINGER option in seconds, or -1 if not set.
+     *
+     * @return the SO_LINGER option in seconds, or -1 if not set.
+     */
+    public int getSoLinger() {
+        return soLinger;
+    }
+
+    /**
+     * Return the connect timeout in millisecond, or -1 to use
+     * {@link com.ning.http.client.AsyncHttpClientConfig#getConnectionTimeoutInMs()}.
+     *
+     * @return the connect timeout in millisecond, or -1 if not set.
+     */
+    public int getConnectTimeoutInMs() {
+        return connectTimeoutInMs;
+    }
+
+    /**
+     * Set the options of a channel which isn't connected yet.
+     */
+    void applyTo(ChannelConfig config) {
+        if (tcpNoDelay != null) {
+            config.setOption("tcpNoDelay", tcpNoDelay);
+        }
+        if (keepAlive != null) {
+            config.setOption("keepAlive", keepAlive);
+        }
+        if (sendBufferSize != -1) {
+            config.setOption("sendBufferSize", sendBufferSize);
+        }
+        if (receiveBufferSize != -1) {
+            config.setOption("receiveBufferSize", receiveBufferSize);
+        }
+        if (soLinger != -1) {
+            config.setOption("soLinger", soLinger);
+        }
+        if (connectTimeoutInMs != -1) {
+            config.setConnectTimeoutMillis(connectTimeoutInMs);
+        }
+    }
+
+    public static class Builder {
+        private Boolean tcpNoDelay;
+        private Boolean keepAlive;
+        private int sendBufferSize = -1;
+        private int receiveBufferSize = -1;
+        private int soLinger = -1;
+        private int connectTimeoutInMs = -1;
+
+        public Builder() {
+        }
+
+        /**
+         * Set the TCP_NODELAY option, i.e. disable Nagle's algorithm.
+         *
+         * @param tcpNoDelay true to send small writes without delay.
+         * @return a {@link Builder}
+         */
+        public Builder setTcpNoDelay(boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        /**
+         * Set the SO_KEEPALIVE option.
+         *
+         * @param keepAlive true to send TCP keep-alive probes on idle connections.
+         * @return a {@link Builder}
+         */
+        public Builder setKeepAlive(boolean keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Set the SO_SNDBUF option.
+         *
+         * @param sendBufferSize the send buffer size in bytes.
+         * @return a {@link Builder}
+         */
+        public Builder setSendBufferSize(int sendBufferSize) {
+            if (sendBufferSize <= 0) {
+                throw new IllegalArgumentException("The send buffer size must be positive");
+            }
+            this.sendBufferSize = sendBufferSize;
+            return this;
+        }
+
+        /**
+         * Set the SO_RCVBUF option. The receive window is negotiated when connecting, so it applies to new connections.
+         *
+         * @param receiveBufferSize the receive buffer size in bytes.
+         * @return a {@link Builder}
+         */
+        public Builder setReceiveBufferSize(int receiveBufferSize) {
+            if (receiveBufferSize <= 0) {
+                throw new IllegalArgumentException("The receive buffer size must be positive");
+            }
+            this.receiveBufferSize = receiveBufferSize;
+            return this;
+        }
+
+        /**
+         * Set the SO_LINGER option: how long closing a connection blocks until the pending data is sent.
+         *
+         * @param soLinger the linger timeout in seconds, 0 to reset the connection when it's closed.
+         * @return a {@link Builder}
+         */
+        public Builder setSoLinger(int soLinger) {
+            if (soLinger < 0) {
+                throw new IllegalArgumentException("The linger timeout can't be negative");
+            }
+            this.soLinger = soLinger;
+            return this;
+        }
+
+        /**
+         * Set the connect timeout.
+         *
+         * @param connectTimeoutInMs the connect timeout in millisecond.
+         * @return a {@link Builder}
+         */
+        public Builder setConnectTimeoutInMs(int connectTimeoutInMs) {
+            if (connectTimeoutInMs <= 0) {
+                throw new IllegalArgumentException("The connect timeout must be positive");
+            }
+            this.connectTimeoutInMs = connectTimeoutInMs;
+            return this;
+        }
+
+        /**
+         * Build a {@link SocketProfile}
+         *
+         * @return a {@link SocketProfile}
+         */
+        public SocketProfile build() {
+            return new SocketProfile(tcpNoDelay, keepAlive, sendBufferSize, receiveBufferSize, soLinger,
+                    connectTimeoutInMs);
+        }
+    }
+}
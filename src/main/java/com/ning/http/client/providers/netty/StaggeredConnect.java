@@ -0,0 +1,297 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.providers.netty;
+
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connect to the first reachable address of a host which resolves to several ones ("Happy Eyeballs", RFC 6555 and
+ * RFC 8305). The addresses are tried in turn: the next attempt starts when the previous one fails, or after a short
+ * delay if it is still pending, without cancelling it. The first attempt to succeed wins, and the other ones are
+ * cancelled or closed. The result is the {@link ChannelFuture} of the winning attempt, or of the last failed one.
+ * <p/>
+ * A dead address hence costs the attempt delay instead of the whole connect timeout.
+ */
+final class StaggeredConnect implements ChannelFutureListener {
+
+    private final static Logger log = LoggerFactory.getLogger(StaggeredConnect.class);
+
+    /**
+     * Open a channel to a single address.
+     */
+    interface Connector {
+        ChannelFuture connect(SocketAddress address) throws Exception;
+    }
+
+    private final List<? extends SocketAddress> addresses;
+    private final long attemptDelayInMs;
+    private final ScheduledExecutorService scheduler;
+    private final Connector connector;
+    private final ChannelFutureListener listener;
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final List<ChannelFuture> attempts = new ArrayList<ChannelFuture>();
+    private int next;
+    private int failures;
+    private ChannelFuture lastFailure;
+    private Future<?> attemptTimer;
+    private boolean done;
+    private volatile ChannelFuture result;
+
+    /**
+     * @param listener notified with the result, may be null if the result is obtained with {@link #await(long)}.
+     */
+    StaggeredConnect(List<? extends SocketAddress> addresses, long attemptDelayInMs,
+                     ScheduledExecutorService scheduler, Connector connector, ChannelFutureListener listener) {
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("No address to connect to");
+        }
+        this.addresses = addresses;
+        this.attemptDelayInMs = attemptDelayInMs;
+        this.scheduler = scheduler;
+        this.connector = connector;
+        this.listener = listener;
+    }
+
+    /**
+     * Resolve all the addresses of a host. The address families alternate, starting with the family of the first
+     * address returned by the resolver, so a broken IPv6 or IPv4 network only delays the connect by one attempt.
+     */
+    static List<InetSocketAddress> resolve(String host, int port) throws UnknownHostException {
+        InetAddress[] all = InetAddress.getAllByName(host);
+        List<InetSocketAddress> preferred = new ArrayList<InetSocketAddress>(all.length);
+        List<InetSocketAddress> other = new ArrayList<InetSocketAddress>(all.length);
+        for (InetAddress address : all) {
+            (address.getClass() == all[0].getClass() ? preferred : other).add(new InetSocketAddress(address, port));
+        }
+
+        List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>(all.length);
+        for (int i = 0; i < Math.max(preferred.size(), other.size()); i++) {
+            if (i < preferred.size()) {
+                addresses.add(preferred.get(i));
+            }
+            if (i < other.size()) {
+                addresses.add(other.get(i));
+            }
+        }
+        return addresses;
+    }
+
+    int getAddressCount() {
+        return addresses.size();
+    }
+
+    /**
+     * Start the first attempt.
+     *
+     * @throws Exception if the first attempt can't be started.
+     */
+    void start() throws Exception {
+        SocketAddress address;
+        synchronized (this) {
+            address = addresses.get(next++);
+        }
+        launch(connector.connect(address));
+    }
+
+    /**
+     * Wait for the result.
+     *
+     * @return the {@link ChannelFuture} of the winning attempt or of the last failed one, or null if the time elapsed.
+     */
+    ChannelFuture await(long timeoutInMs) {
+        boolean interrupted = false;
+        long deadline = System.currentTimeMillis() + timeoutInMs;
+        try {
+            long remaining;
+            while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    if (latch.await(remaining, TimeUnit.MILLISECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Cancel all the attempts still pending, unless one already succeeded.
+     */
+    void cancel() {
+        List<ChannelFuture> losers;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+            losers = finish(null);
+        }
+        close(losers);
+        latch.countDown();
+    }
+
+    private void launch(ChannelFuture attempt) {
+        synchronized (this) {
+            if (done) {
+                // The connect completed while this attempt was being opened.
+                if (!attempt.cancel()) {
+                    attempt.getChannel().close();
+                }
+                return;
+            }
+            attempts.add(attempt);
+            if (next < addresses.size()) {
+                try {
+                    attemptTimer = scheduler.schedule(new Runnable() {
+                        public void run() {
+                            launchNext();
+                        }
+                    }, attemptDelayInMs, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException ex) {
+                    // The client is being closed, the next address will only be tried if this attempt fails.
+                    attemptTimer = null;
+                }
+            }
+        }
+        attempt.addListener(this);
+    }
+
+    private void launchNext() {
+        SocketAddress address;
+        synchronized (this) {
+            if (done || next == addresses.size()) {
+                return;
+            }
+            if (attemptTimer != null) {
+                attemptTimer.cancel(false);
+            }
+            address = addresses.get(next++);
+        }
+
+        try {
+            launch(connector.connect(address));
+        } catch (Exception e) {
+            log.debug("Unable to connect to " + address, e);
+            failed(null);
+        }
+    }
+
+    public void operationComplete(ChannelFuture attempt) throws Exception {
+        if (!attempt.isSuccess()) {
+            failed(attempt);
+            return;
+        }
+
+        List<ChannelFuture> losers;
+        synchronized (this) {
+            if (done) {
+                losers = null;
+            } else {
+                done = true;
+                losers = finish(attempt);
+            }
+        }
+
+        if (losers == null) {
+            // Another attempt won, or the connect was given up.
+            attempt.getChannel().close();
+            return;
+        }
+        close(losers);
+        complete(attempt);
+    }
+
+    private void failed(ChannelFuture attempt) {
+        boolean last;
+        boolean tryNext;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            failures++;
+            if (attempt != null) {
+                lastFailure = attempt;
+            }
+            tryNext = next < addresses.size();
+            last = !tryNext && failures == next;
+            if (last) {
+                done = true;
+                finish(null);
+            }
+        }
+
+        if (tryNext) {
+            launchNext();
+        } else if (last) {
+            complete(lastFailure);
+        }
+    }
+
+    /**
+     * Must be invoked while holding the lock.
+     *
+     * @return the attempts other than the winner.
+     */
+    private List<ChannelFuture> finish(ChannelFuture winner) {
+        if (attemptTimer != null) {
+            attemptTimer.cancel(false);
+        }
+        List<ChannelFuture> losers = new ArrayList<ChannelFuture>(attempts);
+        losers.remove(winner);
+        return losers;
+    }
+
+    private void close(List<ChannelFuture> losers) {
+        for (ChannelFuture loser : losers) {
+            if (!loser.cancel() && loser.isSuccess()) {
+                loser.getChannel().close();
+            }
+        }
+    }
+
+    private void complete(ChannelFuture future) {
+        result = future;
+        latch.countDown();
+        if (listener != null) {
+            try {
+                listener.operationComplete(future);
+            } catch (Exception e) {
+                log.warn("Unexpected exception while completing the connect", e);
+            }
+        }
+    }
+}
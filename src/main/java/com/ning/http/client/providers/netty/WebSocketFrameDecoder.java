@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.providers.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+
+import java.net.ProtocolException;
+
+/**
+ * Decode the RFC 6455 frames sent by a server once a connection has been upgraded to a WebSocket. The payload of an
+ * unmasked frame is a slice of the received buffer, not a copy. A frame larger than the maximum message size is
+ * rejected with a {@link MessageTooBigException} as soon as its header is read, and the rest of the input is discarded.
+ */
+final class WebSocketFrameDecoder extends FrameDecoder {
+
+    final static int OPCODE_CONTINUATION = 0x0;
+    final static int OPCODE_TEXT = 0x1;
+    final static int OPCODE_BINARY = 0x2;
+    final static int OPCODE_CLOSE = 0x8;
+    final static int OPCODE_PING = 0x9;
+    final static int OPCODE_PONG = 0xA;
+
+    private final int maxMessageSize;
+    private boolean discarding;
+
+    WebSocketFrameDecoder(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+        if (discarding) {
+            buffer.skipBytes(buffer.readableBytes());
+            return null;
+        }
+        if (buffer.readableBytes() < 2) {
+            return null;
+        }
+
+        int start = buffer.readerIndex();
+        int b0 = buffer.getUnsignedByte(start);
+        int b1 = buffer.getUnsignedByte(start + 1);
+        if ((b0 & 0x70) != 0) {
+            throw new ProtocolException("No WebSocket extension was negotiated but RSV bits are set");
+        }
+
+        boolean masked = (b1 & 0x80) != 0;
+        long length = b1 & 0x7F;
+        int headerLength = 2;
+        if (length == 126) {
+            if (buffer.readableBytes() < 4) {
+                return null;
+            }
+            length = buffer.getUnsignedShort(start + 2);
+            headerLength = 4;
+        } else if (length == 127) {
+            if (buffer.readableBytes() < 10) {
+                return null;
+            }
+            length = buffer.getLong(start + 2);
+            if (length < 0 || length > Integer.MAX_VALUE) {
+                throw new ProtocolException("WebSocket frame too large: " + length);
+            }
+            headerLength = 10;
+        }
+        if (length > maxMessageSize) {
+            discarding = true;
+            buffer.skipBytes(buffer.readableBytes());
+            throw new MessageTooBigException(length);
+        }
+        if (masked) {
+            headerLength += 4;
+        }
+
+        if (buffer.readableBytes() < headerLength + length) {
+            return null;
+        }
+
+        ChannelBuffer payload;
+        if (masked) {
+            // Servers must not mask their frames, but don't fail if they do.
+            int maskIndex = start + headerLength - 4;
+            byte[] bytes = new byte[(int) length];
+            buffer.getBytes(start + headerLength, bytes);
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] ^= buffer.getByte(maskIndex + (i & 3));
+            }
+            buffer.skipBytes(headerLength + bytes.length);
+            payload = ChannelBuffers.wrappedBuffer(bytes);
+        } else {
+            buffer.skipBytes(headerLength);
+            payload = buffer.readSlice((int) length);
+        }
+        return new Frame((b0 & 0x80) != 0, b0 & 0x0F, payload);
+    }
+
+    /**
+     * Thrown when a message exceeds the maximum size: the {@link NettyWebSocket} is closed with the 1009 status code.
+     */
+    final static class MessageTooBigException extends ProtocolException {
+        MessageTooBigException(long size) {
+            super("WebSocket message too large: " + size);
+        }
+    }
+
+    final static class Frame {
+        final boolean fin;
+        final int opcode;
+        final ChannelBuffer payload;
+
+        Frame(boolean fin, int opcode, ChannelBuffer payload) {
+            this.fin = fin;
+            this.opcode = opcode;
+            this.payload = payload;
+        }
+    }
+}
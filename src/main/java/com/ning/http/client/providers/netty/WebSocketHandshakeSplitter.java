@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.providers.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+
+/**
+ * Hand only the headers of the response to a WebSocket upgrade request to the HTTP codec. A server may send its first
+ * frames in the same packet as its handshake response: they are handed to the handler which replaced the HTTP codec
+ * once the handshake response has been processed, instead of being read as a response body.
+ */
+final class WebSocketHandshakeSplitter extends SimpleChannelUpstreamHandler {
+
+    private ChannelBuffer cumulation;
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        ChannelBuffer input = (ChannelBuffer) e.getMessage();
+        if (cumulation != null) {
+            cumulation.writeBytes(input);
+            input = cumulation;
+        }
+
+        int end = endOfHeaders(input);
+        if (end < 0) {
+            if (cumulation == null) {
+                cumulation = ChannelBuffers.dynamicBuffer(input.readableBytes() * 2);
+                cumulation.writeBytes(input);
+            }
+            return;
+        }
+
+        Channels.fireMessageReceived(ctx, input.readSlice(end - input.readerIndex()), e.getRemoteAddress());
+        if (input.readable()) {
+            Channels.fireMessageReceived(ctx, input.readSlice(input.readableBytes()), e.getRemoteAddress());
+        }
+        ctx.getPipeline().remove(this);
+    }
+
+    private static int endOfHeaders(ChannelBuffer buffer) {
+        for (int i = buffer.readerIndex() + 3; i < buffer.writerIndex(); i++) {
+            if (buffer.getByte(i) == '\n' && buffer.getByte(i - 1) == '\r'
+                    && buffer.getByte(i - 2) == '\n' && buffer.getByte(i - 3) == '\r') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.providers.netty;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded ring buffer of the request and response metadata exchanged by the {@link NettyAsyncHttpProvider}: method,
+ * uri, status, content length and the {@link Channel} they went through. Only the most recent entries are kept, and
+ * the entries are formatted when {@link #dump()} is invoked, so tracing costs a few small allocations per message.
+ */
+final class WireTrace {
+
+    private final static char REQUEST = '>';
+    private final static char RESPONSE = '<';
+    private final static char FAILURE = '!';
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final AtomicLong next = new AtomicLong();
+
+    WireTrace(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("The wire trace size must be positive");
+        }
+        entries = new AtomicReferenceArray<Entry>(size);
+    }
+
+    void request(Channel channel, HttpRequest request) {
+        add(new Entry(REQUEST, channel, request.getMethod().getName(), request.getUri(), 0,
+                HttpHeaders.getContentLength(request, -1)));
+    }
+
+    void response(Channel channel, String uri, HttpResponse response) {
+        add(new Entry(RESPONSE, channel, null, uri, response.getStatus().getCode(),
+                response.isChunked() ? -1 : HttpHeaders.getContentLength(response, response.getContent().readableBytes())));
+    }
+
+    void failure(Channel channel, String uri, Throwable t) {
+        add(new Entry(FAILURE, channel, String.valueOf(t), uri, 0, -1));
+    }
+
+    private void add(Entry entry) {
+        entries.set((int) (next.getAndIncrement() % entries.length()), entry);
+    }
+
+    /**
+     * Format the entries, oldest first.
+     *
+     * @return one line per entry.
+     */
+    String dump() {
+        long end = next.get();
+        long start = Math.max(0, end - entries.length());
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+
+        StringBuilder sb = new StringBuilder();
+        for (long i = start; i < end; i++) {
+            Entry e = entries.get((int) (i % entries.length()));
+            if (e == null) {
+                continue;
+            }
+            sb.append(format.format(new Date(e.timeInMs))).append(' ')
+                    .append(e.direction).append(' ')
+                    .append("[id: ").append(e.channelId).append("] ");
+            switch (e.direction) {
+                case REQUEST:
+                    sb.append(e.text).append(' ').append(e.uri);
+                    break;
+                case RESPONSE:
+                    sb.append(e.status).append(' ').append(e.uri);
+                    break;
+                default:
+                    sb.append(e.uri).append(' ').append(e.text);
+            }
+            if (e.contentLength >= 0) {
+                sb.append(" content-length=").append(e.contentLength);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private final static class Entry {
+        final long timeInMs = System.currentTimeMillis();
+        final char direction;
+        final Integer channelId;
+        final String text;
+        final String uri;
+        final int status;
+        final long contentLength;
+
+        Entry(char direction, Channel channel, String text, String uri, int status, long contentLength) {
+            this.direction = direction;
+            this.channelId = channel == null ? null : channel.getId();
+            this.text = text;
+            this.uri = uri;
+            this.status = status;
+            this.contentLength = contentLength;
+        }
+    }
+}
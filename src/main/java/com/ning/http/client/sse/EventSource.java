@@ -0,0 +1,395 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.sse;
+
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.PerRequestConfig;
+import com.ning.http.client.Request;
+import com.ning.http.client.RequestBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Consume a <code>text/event-stream</code> as described by the Server-Sent Events specification. The events are parsed
+ * as the body parts are received, and dispatched to a {@link ServerSentEventListener}. When the stream ends or fails,
+ * the request is sent again after the reconnection delay, which the stream can change, with a
+ * <code>Last-Event-ID</code> header so the server can resume the stream.
+ * <pre>
+ * EventSource source = new EventSource.Builder(client, client.prepareGet(url).build())
+ *         .setListener(listener).build();
+ * source.open();
+ * </pre>
+ * A response which isn't a <code>200</code> with a <code>text/event-stream</code> content type closes the
+ * {@link EventSource}; a <code>204</code> is the way for a server to stop the reconnections.
+ * <p/>
+ * The requests skip the {@link com.ning.http.client.cache.ResponseCache}, the coalescing and the hedging of the
+ * {@link AsyncHttpClient}, since a stream doesn't end.
+ */
+public class EventSource {
+
+    private final static Logger logger = LoggerFactory.getLogger(EventSource.class);
+
+    public final static long DEFAULT_RECONNECT_DELAY_IN_MS = 3000;
+
+    private final AsyncHttpClient client;
+    private final Request request;
+    private final ServerSentEventListener listener;
+    private final Executor executor;
+    private final AtomicBoolean opened = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final Queue<Runnable> pendingCallbacks = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean dispatching = new AtomicBoolean(false);
+    private volatile long reconnectDelayInMs;
+    private volatile String lastEventId;
+    private volatile Future<?> future;
+
+    private EventSource(Builder b) {
+        this.client = b.client;
+        this.request = b.request;
+        this.listener = b.listener;
+        this.executor = b.executor;
+        this.reconnectDelayInMs = b.reconnectDelayInMs;
+        this.lastEventId = b.lastEventId;
+    }
+
+    /**
+     * Connect to the stream. An {@link EventSource} can only be opened once.
+     */
+    public void open() {
+        if (!opened.compareAndSet(false, true)) {
+            throw new IllegalStateException("EventSource already opened");
+        }
+        connect();
+    }
+
+    /**
+     * Disconnect from the stream and stop reconnecting.
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            Future<?> f = future;
+            if (f != null) {
+                f.cancel(true);
+            }
+            dispatch(new Runnable() {
+                public void run() {
+                    listener.onClose();
+                }
+            });
+        }
+    }
+
+    /**
+     * Return true once the {@link EventSource} has been closed.
+     *
+     * @return true once the {@link EventSource} has been closed.
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Return the id of the last event received, sent in the <code>Last-Event-ID</code> header when reconnecting.
+     *
+     * @return the id of the last event received, or an empty string.
+     */
+    public String getLastEventId() {
+        return lastEventId;
+    }
+
+    /**
+     * Return the reconnection delay, which the stream can change.
+     *
+     * @return the reconnection delay in milliseconds.
+     */
+    public long getReconnectDelayInMs() {
+        return reconnectDelayInMs;
+    }
+
+    private void connect() {
+        if (closed.get()) {
+            return;
+        }
+
+        RequestBuilder builder = new RequestBuilder(request)
+                .setHeader("Accept", "text/event-stream")
+                .setHeader("Cache-Control", "no-cache");
+        if (lastEventId.length() > 0) {
+            builder.setHeader("Last-Event-ID", lastEventId);
+        }
+        // The stream is expected to stay open.
+        PerRequestConfig perRequestConfig = request.getPerRequestConfig();
+        builder.setPerRequestConfig(new PerRequestConfig(
+                perRequestConfig != null ? perRequestConfig.getProxyServer() : null, -1));
+
+        try {
+            future = client.executeRequest(builder.build(), new Connection());
+            if (closed.get()) {
+                future.cancel(true);
+            }
+        } catch (IOException ex) {
+            connectionLost(ex);
+        }
+    }
+
+    private void connectionLost(final Throwable t) {
+        if (closed.get()) {
+            return;
+        }
+
+        if (t != null) {
+            dispatch(new Runnable() {
+                public void run() {
+                    listener.onError(t);
+                }
+            });
+        }
+
+        try {
+            client.getConfig().reaper().schedule(new Runnable() {
+                public void run() {
+                    connect();
+                }
+            }, reconnectDelayInMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // The client has been closed.
+            close();
+        }
+    }
+
+    private void fail(final Throwable t) {
+        if (closed.get()) {
+            return;
+        }
+        dispatch(new Runnable() {
+            public void run() {
+                listener.onError(t);
+            }
+        });
+        close();
+    }
+
+    /**
+     * Run the listener callbacks in order, one at a time.
+     */
+    private void dispatch(Runnable callback) {
+        if (executor == null) {
+            invoke(callback);
+            return;
+        }
+
+        pendingCallbacks.add(callback);
+        if (dispatching.compareAndSet(false, true)) {
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        drain();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                logger.debug("Unable to dispatch on the executor", ex);
+                drain();
+            }
+        }
+    }
+
+    private void drain() {
+        do {
+            Runnable callback;
+            while ((callback = pendingCallbacks.poll()) != null) {
+                invoke(callback);
+            }
+            dispatching.set(false);
+        } while (!pendingCallbacks.isEmpty() && dispatching.compareAndSet(false, true));
+    }
+
+    private static void invoke(Runnable callback) {
+        try {
+            callback.run();
+        } catch (Throwable t) {
+            logger.warn("ServerSentEventListener failure", t);
+        }
+    }
+
+    /**
+     * The {@link AsyncHandler} of a single connection to the stream.
+     */
+    private final class Connection implements AsyncHandler<Void> {
+
+        private final EventStreamParser parser = new EventStreamParser(lastEventId) {
+            protected void onEvent(final ServerSentEvent event) {
+                lastEventId = event.getId();
+                dispatch(new Runnable() {
+                    public void run() {
+                        listener.onEvent(event);
+                    }
+                });
+            }
+
+            protected void onRetry(long delayInMs) {
+                reconnectDelayInMs = delayInMs;
+            }
+        };
+
+        private boolean failed;
+
+        public STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+            int status = responseStatus.getStatusCode();
+            if (status == 204) {
+                failed = true;
+                close();
+                return STATE.ABORT;
+            } else if (status != 200) {
+                failed = true;
+                fail(new IOException("Unexpected event stream status " + status));
+                return STATE.ABORT;
+            }
+            return closed.get() ? STATE.ABORT : STATE.CONTINUE;
+        }
+
+        public STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+            String contentType = headers.getHeaders().getFirstValue("Content-Type");
+            if (contentType == null || !contentType.toLowerCase().startsWith("text/event-stream")) {
+                failed = true;
+                fail(new IOException("Unexpected event stream content type " + contentType));
+                return STATE.ABORT;
+            }
+
+            dispatch(new Runnable() {
+                public void run() {
+                    listener.onOpen();
+                }
+            });
+            return closed.get() ? STATE.ABORT : STATE.CONTINUE;
+        }
+
+        public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+            if (closed.get()) {
+                return STATE.ABORT;
+            }
+            parser.parse(bodyPart.getBodyByteBuffer());
+            return STATE.CONTINUE;
+        }
+
+        public Void onCompleted() throws Exception {
+            // An event which wasn't terminated by a blank line is discarded.
+            lastEventId = parser.getLastEventId();
+            if (!failed) {
+                connectionLost(null);
+            }
+            return null;
+        }
+
+        public void onThrowable(Throwable t) {
+            if (!failed) {
+                failed = true;
+                lastEventId = parser.getLastEventId();
+                connectionLost(t);
+            }
+        }
+    }
+
+    /**
+     * Build an {@link EventSource}
+     */
+    public final static class Builder {
+        private final AsyncHttpClient client;
+        private final Request request;
+        private ServerSentEventListener listener;
+        private Executor executor;
+        private long reconnectDelayInMs = DEFAULT_RECONNECT_DELAY_IN_MS;
+        private String lastEventId = "";
+
+        /**
+         * @param client  the {@link AsyncHttpClient} executing the requests
+         * @param request the {@link Request} of the stream
+         */
+        public Builder(AsyncHttpClient client, Request request) {
+            this.client = client;
+            this.request = request;
+        }
+
+        /**
+         * Set the {@link ServerSentEventListener}
+         *
+         * @param listener the {@link ServerSentEventListener}
+         * @return this
+         */
+        public Builder setListener(ServerSentEventListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Set the {@link Executor} the {@link ServerSentEventListener} is invoked on. By default, it is invoked by
+         * the I/O threads.
+         *
+         * @param executor the {@link Executor}
+         * @return this
+         */
+        public Builder setExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Set the reconnection delay used until the stream sets it. Default is 3 seconds.
+         *
+         * @param reconnectDelayInMs the reconnection delay in milliseconds
+         * @return this
+         */
+        public Builder setReconnectDelayInMs(long reconnectDelayInMs) {
+            this.reconnectDelayInMs = reconnectDelayInMs;
+            return this;
+        }
+
+        /**
+         * Set the id of the last event received, to resume a stream consumed by another {@link EventSource}.
+         *
+         * @param lastEventId the id of the last event received
+         * @return this
+         */
+        public Builder setLastEventId(String lastEventId) {
+            this.lastEventId = lastEventId != null ? lastEventId : "";
+            return this;
+        }
+
+        /**
+         * Build an {@link EventSource}
+         *
+         * @return an {@link EventSource}
+         */
+        public EventSource build() {
+            if (listener == null) {
+                throw new IllegalStateException("A ServerSentEventListener is required");
+            }
+            return new EventSource(this);
+        }
+    }
+}
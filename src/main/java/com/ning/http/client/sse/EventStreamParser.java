@@ -0,0 +1,189 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.sse;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * An incremental <code>text/event-stream</code> parser. Lines are decoded straight from the body parts, only the bytes
+ * of a line split across two parts are buffered.
+ */
+abstract class EventStreamParser {
+
+    private final StringBuilder data = new StringBuilder();
+    private String eventType;
+    private String lastEventIdBuffer;
+    private String lastEventId;
+    private byte[] pending = new byte[256];
+    private int pendingLength;
+    private boolean skipLineFeed;
+    private boolean firstLine = true;
+
+    EventStreamParser(String lastEventId) {
+        this.lastEventId = lastEventId;
+        this.lastEventIdBuffer = lastEventId;
+    }
+
+    /**
+     * Invoked when an event has been parsed.
+     *
+     * @param event a {@link ServerSentEvent}
+     */
+    protected abstract void onEvent(ServerSentEvent event);
+
+    /**
+     * Invoked when the stream sets the reconnection delay.
+     *
+     * @param delayInMs the delay in milliseconds
+     */
+    protected abstract void onRetry(long delayInMs);
+
+    /**
+     * Return the id of the last event dispatched.
+     *
+     * @return the id of the last event dispatched.
+     */
+    String getLastEventId() {
+        return lastEventId;
+    }
+
+    /**
+     * Parse the remaining bytes of the buffer, without changing its position.
+     *
+     * @param buffer a body part
+     */
+    void parse(ByteBuffer buffer) {
+        int lineStart = buffer.position();
+        for (int i = lineStart; i < buffer.limit(); i++) {
+            byte b = buffer.get(i);
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (b == '\n') {
+                    lineStart = i + 1;
+                    continue;
+                }
+            }
+            if (b == '\n' || b == '\r') {
+                line(buffer, lineStart, i);
+                skipLineFeed = b == '\r';
+                lineStart = i + 1;
+            }
+        }
+        append(buffer, lineStart, buffer.limit());
+    }
+
+    private void line(ByteBuffer buffer, int start, int end) {
+        String line;
+        if (pendingLength == 0 && buffer.hasArray()) {
+            line = decode(buffer.array(), buffer.arrayOffset() + start, end - start);
+        } else {
+            append(buffer, start, end);
+            line = decode(pending, 0, pendingLength);
+            pendingLength = 0;
+        }
+        processLine(line);
+    }
+
+    private void append(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (length == 0) {
+            return;
+        }
+        if (pendingLength + length > pending.length) {
+            byte[] grown = new byte[Math.max(pending.length * 2, pendingLength + length)];
+            System.arraycopy(pending, 0, grown, 0, pendingLength);
+            pending = grown;
+        }
+        for (int i = start; i < end; i++) {
+            pending[pendingLength++] = buffer.get(i);
+        }
+    }
+
+    private static String decode(byte[] bytes, int offset, int length) {
+        try {
+            return new String(bytes, offset, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void processLine(String line) {
+        if (firstLine) {
+            firstLine = false;
+            if (line.length() > 0 && line.charAt(0) == '\uFEFF') {
+                line = line.substring(1);
+            }
+        }
+
+        if (line.length() == 0) {
+            dispatch();
+            return;
+        }
+        if (line.charAt(0) == ':') {
+            // A comment, usually sent to keep the connection alive.
+            return;
+        }
+
+        String field = line;
+        String value = "";
+        int colon = line.indexOf(':');
+        if (colon >= 0) {
+            field = line.substring(0, colon);
+            value = line.substring(colon + 1);
+            if (value.length() > 0 && value.charAt(0) == ' ') {
+                value = value.substring(1);
+            }
+        }
+
+        if ("data".equals(field)) {
+            data.append(value).append('\n');
+        } else if ("event".equals(field)) {
+            eventType = value;
+        } else if ("id".equals(field)) {
+            if (value.indexOf('\u0000') < 0) {
+                lastEventIdBuffer = value;
+            }
+        } else if ("retry".equals(field)) {
+            if (value.length() > 0 && value.length() < 19 && isDigits(value)) {
+                onRetry(Long.parseLong(value));
+            }
+        }
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void dispatch() {
+        lastEventId = lastEventIdBuffer;
+        if (data.length() == 0) {
+            eventType = null;
+            return;
+        }
+
+        data.setLength(data.length() - 1);
+        ServerSentEvent event = new ServerSentEvent(lastEventId, eventType != null ? eventType : "message", data.toString());
+        data.setLength(0);
+        eventType = null;
+        onEvent(event);
+    }
+}
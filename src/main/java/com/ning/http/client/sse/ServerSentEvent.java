@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.sse;
+
+/**
+ * An event received from a <code>text/event-stream</code> by an {@link EventSource}.
+ */
+public class ServerSentEvent {
+
+    private final String id;
+    private final String event;
+    private final String data;
+
+    public ServerSentEvent(String id, String event, String data) {
+        this.id = id;
+        this.event = event;
+        this.data = data;
+    }
+
+    /**
+     * Return the last event id set by the stream when the event was dispatched, or an empty string.
+     *
+     * @return the last event id.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Return the event type, <code>message</code> unless set by the stream.
+     *
+     * @return the event type.
+     */
+    public String getEvent() {
+        return event;
+    }
+
+    /**
+     * Return the event data, the data lines being joined with a line feed.
+     *
+     * @return the event data.
+     */
+    public String getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerSentEvent{id=" + id + ", event=" + event + ", data=" + data + "}";
+    }
+}
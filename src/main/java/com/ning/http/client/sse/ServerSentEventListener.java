@@ -0,0 +1,48 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.sse;
+
+/**
+ * A listener of the events received by an {@link EventSource}. Its methods are invoked by a single thread at a time,
+ * in order, on the {@link java.util.concurrent.Executor} of the {@link EventSource}, or by the I/O threads if none is
+ * set, in which case it must not block.
+ */
+public interface ServerSentEventListener {
+
+    /**
+     * Invoked every time the stream is (re)connected.
+     */
+    void onOpen();
+
+    /**
+     * Invoked when an event has been received.
+     *
+     * @param event a {@link ServerSentEvent}
+     */
+    void onEvent(ServerSentEvent event);
+
+    /**
+     * Invoked when the stream has failed. Unless {@link #onClose()} follows, the {@link EventSource} will reconnect.
+     *
+     * @param t a {@link Throwable}
+     */
+    void onError(Throwable t);
+
+    /**
+     * Invoked once the {@link EventSource} has been closed, and won't reconnect.
+     */
+    void onClose();
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.tracing;
+
+import com.ning.http.client.FluentCaseInsensitiveStringsMap;
+import com.ning.http.client.Request;
+
+/**
+ * A tracer an application can register with {@link com.ning.http.client.AsyncHttpClientConfig.Builder#setRequestTracer}
+ * in order to propagate a distributed tracing context and time every outbound call. Unlike a
+ * {@link com.ning.http.client.filter.RequestFilter}, the tracer is invoked by the provider for every physical attempt
+ * of a logical request, including redirects, authentication challenges and replayed requests.
+ * <p/>
+ * The context returned by {@link #requestStarted} is kept with the request, and given back to every other method no
+ * matter which thread invokes it. Those methods are invoked from the I/O threads and must not block.
+ *
+ * @param <C> the type of the context, usually a span.
+ */
+public interface RequestTracer<C> {
+
+    /**
+     * Why an attempt is sent.
+     */
+    public enum Attempt {
+        /**
+         * The first attempt of the request.
+         */
+        INITIAL,
+        /**
+         * The request follows a redirect.
+         */
+        REDIRECT,
+        /**
+         * The request answers an authentication challenge.
+         */
+        AUTHENTICATION,
+        /**
+         * The request is sent again, after the connection got closed or because a filter asked to replay it.
+         */
+        RETRY
+    }
+
+    /**
+     * Invoked once, when the logical {@link Request} is executed.
+     *
+     * @param request the {@link Request}
+     * @return the context given back to the other methods.
+     */
+    public C requestStarted(Request request);
+
+    /**
+     * Invoked before an attempt is written. The headers added to the {@link FluentCaseInsensitiveStringsMap}, e.g. the
+     * trace and span ids, are sent with this attempt only.
+     *
+     * @param context the context returned by {@link #requestStarted}
+     * @param request the {@link Request} of this attempt, which differs from the logical one after a redirect.
+     * @param attempt why this attempt is sent
+     * @param headers the headers to add to this attempt
+     */
+    public void attemptStarted(C context, Request request, Attempt attempt, FluentCaseInsensitiveStringsMap headers);
+
+    /**
+     * Invoked when an attempt receives its response status, or fails.
+     *
+     * @param context    the context returned by {@link #requestStarted}
+     * @param request    the {@link Request} of this attempt
+     * @param statusCode the response status code, or -1 if the attempt failed.
+     * @param t          the cause of the failure, or null
+     */
+    public void attemptCompleted(C context, Request request, int statusCode, Throwable t);
+
+    /**
+     * Invoked once, when the logical {@link Request} is completed, failed or cancelled.
+     *
+     * @param context the context returned by {@link #requestStarted}
+     * @param t       the cause of the failure, or null
+     */
+    public void requestCompleted(C context, Throwable t);
+}
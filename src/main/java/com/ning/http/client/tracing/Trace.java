@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.tracing;
+
+import com.ning.http.client.FluentCaseInsensitiveStringsMap;
+import com.ning.http.client.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The tracing state of a single logical request, handed from thread to thread with the request by the
+ * {@link com.ning.http.client.AsyncHttpProvider}. A provider creates it with {@link #start}, which returns null when no
+ * {@link RequestTracer} is configured, so tracing costs a null check when disabled.
+ * <p/>
+ * The {@link RequestTracer} never sees an attempt completed twice, or an attempt started after the request completed,
+ * and its exceptions are logged instead of failing the request.
+ *
+ * @param <C> the type of the context returned by the {@link RequestTracer}
+ */
+public final class Trace<C> {
+
+    private final static Logger logger = LoggerFactory.getLogger(Trace.class);
+
+    private final RequestTracer<C> tracer;
+    private final C context;
+    private volatile Request attemptRequest;
+    private volatile RequestTracer.Attempt nextAttempt = RequestTracer.Attempt.INITIAL;
+    private volatile boolean completed;
+
+    private Trace(RequestTracer<C> tracer, C context) {
+        this.tracer = tracer;
+        this.context = context;
+    }
+
+    /**
+     * Start tracing a logical {@link Request}.
+     *
+     * @param tracer  the {@link RequestTracer}, or null
+     * @param request the {@link Request}
+     * @return the {@link Trace}, or null if the tracer is null.
+     */
+    public static <C> Trace<C> start(RequestTracer<C> tracer, Request request) {
+        if (tracer == null) {
+            return null;
+        }
+
+        C context = null;
+        try {
+            context = tracer.requestStarted(request);
+        } catch (Throwable t) {
+            logger.warn("RequestTracer failed", t);
+        }
+        return new Trace<C>(tracer, context);
+    }
+
+    /**
+     * Set why the next attempt will be sent. Attempts following the first one are {@link RequestTracer.Attempt#RETRY}
+     * unless told otherwise.
+     *
+     * @param attempt why the next attempt will be sent
+     */
+    public void nextAttempt(RequestTracer.Attempt attempt) {
+        nextAttempt = attempt;
+    }
+
+    /**
+     * Notify the {@link RequestTracer} that an attempt is about to be written, and return the headers it added.
+     *
+     * @param request the {@link Request} of this attempt
+     * @return the headers to add to this attempt, never null.
+     */
+    public FluentCaseInsensitiveStringsMap attemptStarted(Request request) {
+        FluentCaseInsensitiveStringsMap headers = new FluentCaseInsensitiveStringsMap();
+        if (completed) {
+            return headers;
+        }
+
+        if (attemptRequest != null) {
+            attemptCompleted(-1, null);
+        }
+        RequestTracer.Attempt attempt = nextAttempt;
+        nextAttempt = RequestTracer.Attempt.RETRY;
+        attemptRequest = request;
+        try {
+            tracer.attemptStarted(context, request, attempt, headers);
+        } catch (Throwable t) {
+            logger.warn("RequestTracer failed", t);
+        }
+        return headers;
+    }
+
+    /**
+     * Notify the {@link RequestTracer} that the current attempt received its status, or failed. Does nothing if no
+     * attempt is in progress.
+     *
+     * @param statusCode the response status code, or -1
+     * @param cause      the cause of the failure, or null
+     */
+    public void attemptCompleted(int statusCode, Throwable cause) {
+        Request request = attemptRequest;
+        if (request == null) {
+            return;
+        }
+        attemptRequest = null;
+        try {
+            tracer.attemptCompleted(context, request, statusCode, cause);
+        } catch (Throwable t) {
+            logger.warn("RequestTracer failed", t);
+        }
+    }
+
+    /**
+     * Notify the {@link RequestTracer} that the logical request is completed, completing the current attempt first if
+     * needed. Only the first invocation is reported.
+     *
+     * @param cause the cause of the failure, or null
+     */
+    public void requestCompleted(Throwable cause) {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        attemptCompleted(-1, cause);
+        try {
+            tracer.requestCompleted(context, cause);
+        } catch (Throwable t) {
+            logger.warn("RequestTracer failed", t);
+        }
+    }
+}
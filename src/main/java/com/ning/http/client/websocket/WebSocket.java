@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.websocket;
+
+/**
+ * A WebSocket opened with {@link com.ning.http.client.AsyncHttpClient#prepareWebSocket(String)} and a
+ * {@link WebSocketUpgradeHandler}. Messages are received by the {@link WebSocketListener}s added to the socket.
+ * <p/>
+ * A message can either be sent at once or streamed as a sequence of fragments, the last one being flagged. Other
+ * messages can't be sent until the last fragment of a streamed message has been sent.
+ */
+public interface WebSocket {
+
+    /**
+     * Send a binary message.
+     *
+     * @param message the message
+     * @return this
+     */
+    WebSocket sendMessage(byte[] message);
+
+    /**
+     * Send a fragment of a binary message.
+     *
+     * @param fragment the fragment
+     * @param last     true if it is the last fragment of the message
+     * @return this
+     */
+    WebSocket stream(byte[] fragment, boolean last);
+
+    /**
+     * Send a text message.
+     *
+     * @param message the message
+     * @return this
+     */
+    WebSocket sendTextMessage(String message);
+
+    /**
+     * Send a fragment of a text message. A fragment must not split a surrogate pair.
+     *
+     * @param fragment the fragment
+     * @param last     true if it is the last fragment of the message
+     * @return this
+     */
+    WebSocket streamText(String fragment, boolean last);
+
+    /**
+     * Send a ping. The payload can't be longer than 125 bytes.
+     *
+     * @param payload the ping payload
+     * @return this
+     */
+    WebSocket sendPing(byte[] payload);
+
+    /**
+     * Send an unsolicited pong. Pings received from the server are always answered. The payload can't be longer than
+     * 125 bytes.
+     *
+     * @param payload the pong payload
+     * @return this
+     */
+    WebSocket sendPong(byte[] payload);
+
+    /**
+     * Add a {@link WebSocketListener}
+     *
+     * @param l a {@link WebSocketListener}
+     * @return this
+     */
+    WebSocket addWebSocketListener(WebSocketListener l);
+
+    /**
+     * Remove a {@link WebSocketListener}
+     *
+     * @param l a {@link WebSocketListener}
+     * @return this
+     */
+    WebSocket removeWebSocketListener(WebSocketListener l);
+
+    /**
+     * Return true if messages can still be sent.
+     *
+     * @return true if messages can still be sent.
+     */
+    boolean isOpen();
+
+    /**
+     * Start the closing handshake. {@link WebSocketListener#onClose(WebSocket)} is invoked once the server has closed
+     * the connection.
+     */
+    void close();
+}
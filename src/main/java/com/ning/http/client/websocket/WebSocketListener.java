@@ -0,0 +1,46 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.websocket;
+
+/**
+ * A listener of the lifecycle of a {@link WebSocket}. Messages are received by implementing one of its
+ * sub-interfaces, e.g. {@link WebSocketTextListener} or {@link WebSocketByteListener}.
+ * <p/>
+ * The listener is invoked from the I/O threads and must not block.
+ */
+public interface WebSocketListener {
+
+    /**
+     * Invoked once the upgrade handshake has succeeded.
+     *
+     * @param websocket the {@link WebSocket}
+     */
+    void onOpen(WebSocket websocket);
+
+    /**
+     * Invoked once the connection has been closed.
+     *
+     * @param websocket the {@link WebSocket}
+     */
+    void onClose(WebSocket websocket);
+
+    /**
+     * Invoked when the upgrade handshake fails, or when an unexpected exception occurs once the socket is opened.
+     *
+     * @param t a {@link Throwable}
+     */
+    void onError(Throwable t);
+}
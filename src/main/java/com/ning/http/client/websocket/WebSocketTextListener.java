@@ -0,0 +1,37 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.websocket;
+
+/**
+ * A {@link WebSocketListener} of text messages.
+ */
+public interface WebSocketTextListener extends WebSocketListener {
+
+    /**
+     * Invoked when a text message has been received in a single frame.
+     *
+     * @param message the message
+     */
+    void onMessage(String message);
+
+    /**
+     * Invoked for every fragment of a text message received in several frames.
+     *
+     * @param fragment the fragment
+     * @param last     true if it is the last fragment of the message
+     */
+    void onFragment(String fragment, boolean last);
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.websocket;
+
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link AsyncHandler} which upgrades the connection of a request prepared with
+ * {@link com.ning.http.client.AsyncHttpClient#prepareWebSocket(String)} to a {@link WebSocket}:
+ * <pre>
+ * WebSocket websocket = client.prepareWebSocket("ws://...").execute(
+ *         new WebSocketUpgradeHandler.Builder().addWebSocketListener(listener).build()).get();
+ * </pre>
+ * The {@link java.util.concurrent.Future} fails if the server doesn't switch protocols, or if the provider doesn't
+ * support WebSockets. A message larger than {@link Builder#setMaxMessageSize(int)} closes the {@link WebSocket} with
+ * the 1009 status code.
+ */
+public class WebSocketUpgradeHandler implements AsyncHandler<WebSocket> {
+
+    public final static int DEFAULT_MAX_MESSAGE_SIZE = 1024 * 1024;
+
+    private final List<WebSocketListener> listeners;
+    private final int maxMessageSize;
+    private volatile WebSocket webSocket;
+    private volatile int status;
+
+    private WebSocketUpgradeHandler(Builder b) {
+        listeners = new ArrayList<WebSocketListener>(b.listeners);
+        maxMessageSize = b.maxMessageSize;
+    }
+
+    /**
+     * Return the maximum size of a received message, in bytes, whether it is sent in one frame or fragmented.
+     *
+     * @return the maximum size of a received message.
+     */
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void onThrowable(Throwable t) {
+        for (WebSocketListener l : listeners) {
+            l.onError(t);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+        return STATE.CONTINUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+        status = responseStatus.getStatusCode();
+        return status == 101 ? STATE.CONTINUE : STATE.ABORT;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+        return STATE.CONTINUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public WebSocket onCompleted() throws Exception {
+        if (webSocket == null) {
+            throw new IllegalStateException("WebSocket upgrade failed with status " + status);
+        }
+        return webSocket;
+    }
+
+    /**
+     * Invoked by the provider once the connection has been upgraded.
+     *
+     * @param webSocket the {@link WebSocket}
+     */
+    public void onSuccess(WebSocket webSocket) {
+        this.webSocket = webSocket;
+        for (WebSocketListener l : listeners) {
+            webSocket.addWebSocketListener(l);
+            l.onOpen(webSocket);
+        }
+    }
+
+    /**
+     * Build a {@link WebSocketUpgradeHandler}
+     */
+    public final static class Builder {
+        private final List<WebSocketListener> listeners = new ArrayList<WebSocketListener>();
+        private int maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+
+        /**
+         * Add a {@link WebSocketListener} that will be added to the {@link WebSocket}
+         *
+         * @param listener a {@link WebSocketListener}
+         * @return this
+         */
+        public Builder addWebSocketListener(WebSocketListener listener) {
+            listeners.add(listener);
+            return this;
+        }
+
+        /**
+         * Set the maximum size of a received message, in bytes, whether it is sent in one frame or fragmented.
+         * Default is 1MB.
+         *
+         * @param maxMessageSize the maximum size of a received message
+         * @return this
+         */
+        public Builder setMaxMessageSize(int maxMessageSize) {
+            this.maxMessageSize = maxMessageSize;
+            return this;
+        }
+
+        /**
+         * Build a {@link WebSocketUpgradeHandler}
+         *
+         * @return a {@link WebSocketUpgradeHandler}
+         */
+        public WebSocketUpgradeHandler build() {
+            return new WebSocketUpgradeHandler(this);
+        }
+    }
+}
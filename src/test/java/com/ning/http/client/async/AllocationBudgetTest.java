@@ -0,0 +1,180 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async;
+
+import com.ning.http.client.AsyncCompletionHandlerBase;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.Response;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Fail when the bytes allocated per request exceed the budgets checked in allocation-budgets.properties. Each
+ * measure is the lowest of a few rounds taken after a warm up, which filters out the one-time allocations (class
+ * loading, JIT, pool growth). The measured values are logged so the budgets can be adjusted when an increase is
+ * deliberate.
+ */
+public abstract class AllocationBudgetTest extends AbstractBasicTest {
+
+    private final static int WARMUP = 200;
+
+    private final static int ROUNDS = 5;
+
+    private final static int ITERATIONS = 200;
+
+    // The thread pool of the Jetty server names its threads qtp<hash>-<n>.
+    private final static String SERVER_THREAD_PREFIX = "qtp";
+
+    private final static int BODY_SIZE = 1024;
+
+    private final Properties budgets = new Properties();
+
+    private static class FixedBodyHandler extends AbstractHandler {
+        private final byte[] body = new byte[BODY_SIZE];
+
+        /* @Override */
+        public void handle(String s,
+                           Request r,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException, ServletException {
+            response.setStatus(200);
+            response.setContentType("application/octet-stream");
+            response.setContentLength(body.length);
+            OutputStream out = response.getOutputStream();
+            out.write(body);
+            out.close();
+            r.setHandled(true);
+        }
+    }
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new FixedBodyHandler();
+    }
+
+    @BeforeClass(alwaysRun = true)
+    public void loadBudgets() throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("allocation-budgets.properties");
+        assertNotNull(in, "allocation-budgets.properties not found");
+        try {
+            budgets.load(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private long budget(String key) {
+        String value = budgets.getProperty(key);
+        assertNotNull(value, "No allocation budget for " + key);
+        return Long.parseLong(value.trim());
+    }
+
+    private void assertWithinBudget(String key, long bytesPerRequest) {
+        long budget = budget(key);
+        log.info(String.format("%s allocated %d bytes per request, budget is %d", key, bytesPerRequest, budget));
+        assertTrue(bytesPerRequest <= budget,
+                String.format("%s allocated %d bytes per request, over its budget of %d", key, bytesPerRequest, budget));
+    }
+
+    private String providerKey(AsyncHttpClient c, String operation) {
+        return c.getProvider().getClass().getSimpleName() + "." + operation;
+    }
+
+    private com.ning.http.client.Request buildRequest(AsyncHttpClient c) {
+        return c.prepareGet(getTargetUrl())
+                .addHeader("Accept", "application/octet-stream")
+                .addHeader("X-Request-Id", "0123456789")
+                .addQueryParameter("q", "allocation budget")
+                .build();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void requestBuilderAllocationTest() throws Throwable {
+        if (!AllocationCounter.isSupported()) {
+            log.warn("Allocation accounting isn't supported by this JVM, skipping");
+            return;
+        }
+
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        try {
+            for (int i = 0; i < WARMUP * 10; i++) {
+                buildRequest(c);
+            }
+
+            long lowest = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long before = AllocationCounter.currentThread();
+                for (int i = 0; i < ITERATIONS * 10; i++) {
+                    buildRequest(c);
+                }
+                lowest = Math.min(lowest, (AllocationCounter.currentThread() - before) / (ITERATIONS * 10));
+            }
+            assertWithinBudget("request.build", lowest);
+        } finally {
+            c.close();
+        }
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void executeAllocationTest() throws Throwable {
+        if (!AllocationCounter.isSupported()) {
+            log.warn("Allocation accounting isn't supported by this JVM, skipping");
+            return;
+        }
+
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        try {
+            com.ning.http.client.Request request = buildRequest(c);
+            for (int i = 0; i < WARMUP; i++) {
+                execute(c, request);
+            }
+
+            long lowest = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                // The I/O threads of the client allocate as well, so all threads but the server ones are counted.
+                long before = AllocationCounter.allThreadsExcept(SERVER_THREAD_PREFIX);
+                for (int i = 0; i < ITERATIONS; i++) {
+                    execute(c, request);
+                }
+                lowest = Math.min(lowest, (AllocationCounter.allThreadsExcept(SERVER_THREAD_PREFIX) - before) / ITERATIONS);
+            }
+            assertWithinBudget(providerKey(c, "execute"), lowest);
+        } finally {
+            c.close();
+        }
+    }
+
+    private void execute(AsyncHttpClient c, com.ning.http.client.Request request) throws Throwable {
+        Response response = c.executeRequest(request, new AsyncCompletionHandlerBase()).get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(response.getResponseBody().length(), BODY_SIZE);
+    }
+}
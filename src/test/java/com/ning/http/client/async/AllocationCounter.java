@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Read the per-thread allocation counters of the JVM. They are a HotSpot extension of {@link ThreadMXBean}, so they
+ * are looked up reflectively; every method returns -1 when the running JVM doesn't support them.
+ */
+public class AllocationCounter {
+
+    private final static ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+    private final static Method threadAllocatedBytes = lookup("getThreadAllocatedBytes", long.class);
+
+    private final static Method threadsAllocatedBytes = lookup("getThreadAllocatedBytes", long[].class);
+
+    private AllocationCounter() {
+    }
+
+    private static Method lookup(String name, Class<?> parameterType) {
+        try {
+            Method method = Class.forName("com.sun.management.ThreadMXBean").getMethod(name, parameterType);
+            long id = Thread.currentThread().getId();
+            method.invoke(bean, parameterType == long.class ? (Object) id : (Object) new long[]{id});
+            return method;
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    /**
+     * Return true if the allocation counters are available.
+     *
+     * @return true if the allocation counters are available.
+     */
+    public static boolean isSupported() {
+        return threadAllocatedBytes != null && threadsAllocatedBytes != null;
+    }
+
+    /**
+     * Return the bytes allocated so far by the current thread, or -1.
+     *
+     * @return the bytes allocated so far by the current thread, or -1.
+     */
+    public static long currentThread() {
+        if (threadAllocatedBytes == null) {
+            return -1;
+        }
+        try {
+            return (Long) threadAllocatedBytes.invoke(bean, Thread.currentThread().getId());
+        } catch (Exception ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Return the bytes allocated so far by all live threads, or -1. The allocations of the threads that died in
+     * the meantime are lost, so only compare values taken while the same threads are running.
+     *
+     * @return the bytes allocated so far by all live threads, or -1.
+     */
+    public static long allThreads() {
+        return allThreadsExcept(null);
+    }
+
+    /**
+     * Return the bytes allocated so far by all live threads whose name doesn't start with the prefix, or -1. This
+     * is used to leave out the threads of an in-process server.
+     *
+     * @param excludedPrefix the name prefix of the threads to leave out, or null
+     * @return the bytes allocated so far by the other live threads, or -1.
+     */
+    public static long allThreadsExcept(String excludedPrefix) {
+        if (threadsAllocatedBytes == null) {
+            return -1;
+        }
+
+        long[] ids = bean.getAllThreadIds();
+        if (excludedPrefix != null) {
+            ThreadInfo[] infos = bean.getThreadInfo(ids);
+            int count = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (infos[i] != null && !infos[i].getThreadName().startsWith(excludedPrefix)) {
+                    ids[count++] = ids[i];
+                }
+            }
+            long[] included = new long[count];
+            System.arraycopy(ids, 0, included, 0, count);
+            ids = included;
+        }
+
+        try {
+            long[] allocated = (long[]) threadsAllocatedBytes.invoke(bean, ids);
+            long sum = 0;
+            for (long a : allocated) {
+                if (a > 0) {
+                    sum += a;
+                }
+            }
+            return sum;
+        } catch (Exception ex) {
+            return -1;
+        }
+    }
+}
@@ -1504,7 +1504,7 @@ public abstract class AsyncProvidersBasicTest extends AbstractBasicTest {
         } catch (Throwable ex) {
             System.out.println("EXPIRED: " + (System.currentTimeMillis() - t1));
             Assert.assertNotNull(ex.getCause());
-            Assert.assertEquals(ex.getCause().getMessage(), "No response received after 10000");
+            Assert.assertTrue(ex.getCause().getMessage().startsWith("No response received after 10000"), ex.getCause().getMessage());
         }
         c.close();
     }
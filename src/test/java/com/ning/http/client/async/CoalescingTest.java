@@ -0,0 +1,218 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Response;
+import com.ning.http.client.coalescing.CoalescingPolicy;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public abstract class CoalescingTest extends AbstractBasicTest {
+
+    private final static int LARGE_BODY = 8192;
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    private class SlowHandler extends AbstractHandler {
+        /* @Override */
+        public void handle(String s,
+                           Request r,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException, ServletException {
+
+            int n = count.incrementAndGet();
+            if ("true".equals(request.getHeader("X-Large"))) {
+                // Half of the body right away, the other half later.
+                response.setStatus(200);
+                response.setHeader("X-Count", String.valueOf(n));
+                response.getOutputStream().write(new byte[LARGE_BODY / 2]);
+                response.getOutputStream().flush();
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                }
+                response.getOutputStream().write(new byte[LARGE_BODY / 2]);
+                response.getOutputStream().close();
+                return;
+            }
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+            }
+            response.setStatus(200);
+            response.setHeader("X-Count", String.valueOf(n));
+            response.getOutputStream().write(("response-" + request.getHeader("Accept")).getBytes());
+            response.getOutputStream().flush();
+            response.getOutputStream().close();
+        }
+    }
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new SlowHandler();
+    }
+
+    private AsyncHttpClient coalescingClient() {
+        CoalescingPolicy policy = new CoalescingPolicy.Builder().addKeyHeader("Accept").build();
+        return getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setCoalescingPolicy(policy).build());
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void identicalRequestsShareOneCallTest() throws Throwable {
+        count.set(0);
+        AsyncHttpClient c = coalescingClient();
+
+        List<Future<Response>> futures = new ArrayList<Future<Response>>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(c.prepareGet(getTargetUrl()).setHeader("Accept", "text/plain").execute());
+        }
+
+        for (Future<Response> f : futures) {
+            Response response = f.get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getHeader("X-Count"), "1");
+            assertEquals(response.getResponseBody(), "response-text/plain");
+        }
+        assertEquals(count.get(), 1);
+        assertEquals(c.getCoalescedRequestCount(), 9);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void keyHeaderSplitsCallsTest() throws Throwable {
+        count.set(0);
+        AsyncHttpClient c = coalescingClient();
+
+        Future<Response> plain = c.prepareGet(getTargetUrl()).setHeader("Accept", "text/plain").execute();
+        Future<Response> json = c.prepareGet(getTargetUrl()).setHeader("Accept", "application/json").execute();
+
+        assertEquals(plain.get(TIMEOUT, TimeUnit.SECONDS).getResponseBody(), "response-text/plain");
+        assertEquals(json.get(TIMEOUT, TimeUnit.SECONDS).getResponseBody(), "response-application/json");
+        assertEquals(count.get(), 2);
+        assertEquals(c.getCoalescedRequestCount(), 0);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void cancelOneCallerTest() throws Throwable {
+        count.set(0);
+        AsyncHttpClient c = coalescingClient();
+
+        Future<Response> first = c.prepareGet(getTargetUrl()).execute();
+        Future<Response> second = c.prepareGet(getTargetUrl()).execute();
+        assertTrue(first.cancel(true));
+
+        Response response = second.get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(response.getStatusCode(), 200);
+        assertTrue(first.isCancelled());
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void sequentialRequestsAreNotCoalescedTest() throws Throwable {
+        count.set(0);
+        AsyncHttpClient c = coalescingClient();
+
+        assertEquals(c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS).getHeader("X-Count"), "1");
+        assertEquals(c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS).getHeader("X-Count"), "2");
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void credentialsAreNotSharedTest() throws Throwable {
+        count.set(0);
+        AsyncHttpClient c = coalescingClient();
+
+        Future<Response> alice = c.prepareGet(getTargetUrl()).setHeader("Authorization", "Basic YWxpY2U6YQ==").execute();
+        Future<Response> bob = c.prepareGet(getTargetUrl()).setHeader("Authorization", "Basic Ym9iOmI=").execute();
+        Future<Response> cookie = c.prepareGet(getTargetUrl()).setHeader("Cookie", "session=1").execute();
+
+        assertEquals(alice.get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+        assertEquals(bob.get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+        assertEquals(cookie.get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+        assertEquals(count.get(), 3);
+        assertEquals(c.getCoalescedRequestCount(), 0);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void keyedCredentialsAreCoalescedTest() throws Throwable {
+        count.set(0);
+        CoalescingPolicy policy = new CoalescingPolicy.Builder().addKeyHeader("authorization").build();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setCoalescingPolicy(policy).build());
+
+        Future<Response> first = c.prepareGet(getTargetUrl()).setHeader("Authorization", "Basic YWxpY2U6YQ==").execute();
+        Future<Response> second = c.prepareGet(getTargetUrl()).setHeader("Authorization", "Basic YWxpY2U6YQ==").execute();
+
+        assertEquals(first.get(TIMEOUT, TimeUnit.SECONDS).getHeader("X-Count"), "1");
+        assertEquals(second.get(TIMEOUT, TimeUnit.SECONDS).getHeader("X-Count"), "1");
+        assertEquals(count.get(), 1);
+        assertEquals(c.getCoalescedRequestCount(), 1);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void largeBodyIsNotRecordedTest() throws Throwable {
+        count.set(0);
+        CoalescingPolicy policy = new CoalescingPolicy.Builder().setMaxRecordedBytes(LARGE_BODY / 4).build();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setCoalescingPolicy(policy).build());
+
+        Future<Response> first = c.prepareGet(getTargetUrl()).setHeader("X-Large", "true").execute();
+        // Let the first half of the body, more than the policy records, arrive.
+        Thread.sleep(250);
+        Future<Response> second = c.prepareGet(getTargetUrl()).setHeader("X-Large", "true").execute();
+
+        Response r1 = first.get(TIMEOUT, TimeUnit.SECONDS);
+        Response r2 = second.get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(r1.getResponseBody().length(), LARGE_BODY);
+        assertEquals(r2.getResponseBody().length(), LARGE_BODY);
+        assertEquals(r1.getHeader("X-Count"), "1");
+        assertEquals(r2.getHeader("X-Count"), "2");
+        assertEquals(c.getCoalescedRequestCount(), 0);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void eventStreamIsNotCoalescedTest() throws Throwable {
+        count.set(0);
+        AsyncHttpClient c = coalescingClient();
+
+        Future<Response> first = c.prepareGet(getTargetUrl()).setHeader("Accept", "text/event-stream").execute();
+        Future<Response> second = c.prepareGet(getTargetUrl()).setHeader("Accept", "text/event-stream").execute();
+
+        assertEquals(first.get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+        assertEquals(second.get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+        assertEquals(count.get(), 2);
+        assertEquals(c.getCoalescedRequestCount(), 0);
+        c.close();
+    }
+}
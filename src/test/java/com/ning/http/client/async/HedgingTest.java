@@ -0,0 +1,175 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Response;
+import com.ning.http.client.hedging.HedgingPolicy;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+public abstract class HedgingTest extends AbstractBasicTest {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    private class SlowFirstHandler extends AbstractHandler {
+        public void handle(String s,
+                           Request r,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException, ServletException {
+
+            response.setHeader("X-Count", String.valueOf(count.incrementAndGet()));
+            if ("true".equals(request.getHeader("X-Slow-First")) && count.get() == 1) {
+                try {
+                    Thread.sleep(3000);
+                } catch (InterruptedException e) {
+                }
+            }
+            response.setStatus(200);
+            response.getOutputStream().flush();
+            response.getOutputStream().close();
+        }
+    }
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new SlowFirstHandler();
+    }
+
+    private AsyncHttpClient hedgingClient() {
+        HedgingPolicy policy = new HedgingPolicy.Builder().setHedgeDelayInMs(100).setMaxHedgeRatio(1).build();
+        return getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setHedgingPolicy(policy).build());
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void hedgedRequestWinsTest() throws Throwable {
+        count.set(0);
+        AsyncHttpClient c = hedgingClient();
+
+        long start = System.currentTimeMillis();
+        Response response = c.prepareGet(getTargetUrl()).setHeader("X-Slow-First", "true").execute().get(10, TimeUnit.SECONDS);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertNotNull(response);
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(response.getHeader("X-Count"), "2");
+        assertTrue(elapsed < 2000, "Hedged request took " + elapsed + "ms");
+        assertEquals(c.getHedgingStats().getHedgeCount(), 1);
+        assertEquals(c.getHedgingStats().getHedgeWinCount(), 1);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void fastRequestIsNotHedgedTest() throws Throwable {
+        count.set(0);
+        AsyncHttpClient c = hedgingClient();
+
+        Response response = c.prepareGet(getTargetUrl()).execute().get(10, TimeUnit.SECONDS);
+        assertEquals(response.getStatusCode(), 200);
+
+        // Give the hedge timer a chance to fire.
+        Thread.sleep(300);
+        assertEquals(c.getHedgingStats().getHedgeCount(), 0);
+        assertEquals(count.get(), 1);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void postIsNotHedgedTest() throws Throwable {
+        count.set(0);
+        AsyncHttpClient c = hedgingClient();
+
+        Response response = c.preparePost(getTargetUrl()).setHeader("X-Slow-First", "true").execute().get(10, TimeUnit.SECONDS);
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(c.getHedgingStats().getRequestCount(), 0);
+        assertEquals(count.get(), 1);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void losingAttemptIsClosedTest() throws Throwable {
+        final ServerSocket server = new ServerSocket(0);
+        final CountDownLatch loserClosed = new CountDownLatch(1);
+
+        // The first connection never gets a response, the second one is answered right away.
+        Thread acceptor = new Thread() {
+            public void run() {
+                try {
+                    Socket first = server.accept();
+                    Socket second = server.accept();
+                    readRequest(second.getInputStream());
+                    OutputStream out = second.getOutputStream();
+                    out.write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes("ISO-8859-1"));
+                    out.flush();
+
+                    InputStream in = first.getInputStream();
+                    readRequest(in);
+                    if (in.read() == -1) {
+                        loserClosed.countDown();
+                    }
+                    first.close();
+                    second.close();
+                } catch (IOException e) {
+                    log.debug(e.getMessage(), e);
+                }
+            }
+        };
+        acceptor.start();
+
+        AsyncHttpClient c = hedgingClient();
+        try {
+            Response response = c.prepareGet("http://127.0.0.1:" + server.getLocalPort() + "/")
+                    .execute().get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getStatusCode(), 200);
+            assertTrue(loserClosed.await(TIMEOUT, TimeUnit.SECONDS), "The losing attempt's connection wasn't closed");
+        } finally {
+            c.close();
+            server.close();
+        }
+    }
+
+    private static void readRequest(InputStream in) throws IOException {
+        // A GET has no body, so the request ends with the empty line after the headers.
+        int matched = 0;
+        while (matched < 4) {
+            int b = in.read();
+            if (b == -1) {
+                throw new IOException("Connection closed before the end of the request");
+            }
+            matched = b == "\r\n\r\n".charAt(matched) ? matched + 1 : (b == '\r' ? 1 : 0);
+        }
+    }
+
+    public abstract AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config);
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Response;
+import com.ning.http.client.loadbalance.Endpoint;
+import com.ning.http.client.loadbalance.HostGroup;
+import com.ning.http.client.loadbalance.HostGroupRequestFilter;
+import com.ning.http.client.loadbalance.LeastInFlightPolicy;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public abstract class HostGroupTest extends AbstractBasicTest {
+
+    private class PortHandler extends AbstractHandler {
+        /* @Override */
+        public void handle(String s,
+                           Request r,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException, ServletException {
+
+            response.setHeader("X-Port", String.valueOf(request.getLocalPort()));
+            response.setHeader("X-Path", request.getPathInfo());
+            response.setHeader("X-Query", request.getQueryString());
+            response.setStatus(200);
+            response.getOutputStream().flush();
+            response.getOutputStream().close();
+        }
+    }
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new PortHandler();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void roundRobinTest() throws Throwable {
+        HostGroup group = new HostGroup.Builder("catalog")
+                .addEndpoint("http://127.0.0.1:" + port1)
+                .addEndpoint("http://127.0.0.1:" + port2)
+                .build();
+        HostGroupRequestFilter filter = new HostGroupRequestFilter(group);
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().addRequestFilter(filter).build());
+
+        Set<String> ports = new HashSet<String>();
+        for (int i = 0; i < 4; i++) {
+            Response response = c.prepareGet("http://catalog/foo/test?a=b").execute().get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getHeader("X-Path"), "/foo/test");
+            assertEquals(response.getHeader("X-Query"), "a=b");
+            ports.add(response.getHeader("X-Port"));
+        }
+        assertEquals(ports.size(), 2);
+
+        for (Endpoint e : group.getEndpoints()) {
+            assertEquals(e.getInFlight(), 0);
+            assertTrue(e.getLatencyEwmaInMs() > 0);
+        }
+        c.close();
+        filter.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void ejectAndReinstateTest() throws Throwable {
+        int deadPort = findFreePort();
+        HostGroup group = new HostGroup.Builder("catalog")
+                .addEndpoint("http://127.0.0.1:" + deadPort)
+                .addEndpoint("http://127.0.0.1:" + port1)
+                .setLoadBalancingPolicy(new LeastInFlightPolicy())
+                .setMaxConsecutiveFailures(1)
+                .build();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        HostGroupRequestFilter filter = new HostGroupRequestFilter(scheduler, 100, group);
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().addRequestFilter(filter).build());
+
+        Endpoint dead = group.getEndpoints().get(0);
+        int failures = 0;
+        for (int i = 0; i < 4; i++) {
+            try {
+                Response response = c.prepareGet("http://catalog/foo/test").execute().get(TIMEOUT, TimeUnit.SECONDS);
+                assertEquals(response.getHeader("X-Port"), String.valueOf(port1));
+            } catch (ExecutionException ex) {
+                failures++;
+            }
+        }
+        assertTrue(failures <= 1, "Expected at most one failure, got " + failures);
+        assertFalse(dead.isHealthy());
+        assertEquals(dead.getInFlight(), 0);
+
+        // Nobody listens on the dead port, so the health checks must not reinstate it.
+        Thread.sleep(500);
+        assertFalse(dead.isHealthy());
+
+        c.close();
+        scheduler.shutdown();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void unknownHostIsNotRewrittenTest() throws Throwable {
+        HostGroup group = new HostGroup.Builder("catalog").addEndpoint("http://127.0.0.1:" + port2).build();
+        HostGroupRequestFilter filter = new HostGroupRequestFilter(group);
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().addRequestFilter(filter).build());
+
+        Response response = c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(response.getHeader("X-Port"), String.valueOf(port1));
+        c.close();
+        filter.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void rejectedRequestReleasesEndpointTest() throws Throwable {
+        HostGroup group = new HostGroup.Builder("catalog").addEndpoint("http://127.0.0.1:" + port1).build();
+        HostGroupRequestFilter filter = new HostGroupRequestFilter(group);
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .addRequestFilter(filter)
+                .setMaximumConnectionsTotal(0)
+                .build());
+
+        try {
+            c.prepareGet("http://catalog/foo/test").execute().get(TIMEOUT, TimeUnit.SECONDS);
+            fail("The connection limit should have rejected the request");
+        } catch (IOException ex) {
+            // The provider refused to execute the request.
+        } catch (ExecutionException ex) {
+            // The provider failed the request asynchronously.
+        }
+        assertEquals(group.getEndpoints().get(0).getInFlight(), 0);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void cancelledRequestReleasesEndpointTest() throws Throwable {
+        // Connections are accepted by the backlog, but never answered.
+        ServerSocket silent = new ServerSocket(0);
+        HostGroup group = new HostGroup.Builder("catalog")
+                .addEndpoint("http://127.0.0.1:" + silent.getLocalPort())
+                .build();
+        HostGroupRequestFilter filter = new HostGroupRequestFilter(group);
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().addRequestFilter(filter).build());
+
+        try {
+            Future<Response> f = c.prepareGet("http://catalog/foo/test").execute();
+            Endpoint endpoint = group.getEndpoints().get(0);
+            assertEquals(endpoint.getInFlight(), 1);
+            assertTrue(f.cancel(true));
+            assertEquals(endpoint.getInFlight(), 0);
+        } finally {
+            c.close();
+            silent.close();
+        }
+    }
+}
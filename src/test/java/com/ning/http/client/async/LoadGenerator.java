@@ -0,0 +1,240 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async;
+
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An open-loop load generator: requests are sent at a fixed arrival rate, whether or not the previous responses have
+ * been received. The latency of a request is measured from the time it was scheduled to be sent, not from the time
+ * it was actually sent, so a stall of the client or the server is charged to every request it delayed instead of
+ * being hidden (coordinated omission). The latency from the actual send time is recorded as well, for comparison.
+ */
+public class LoadGenerator {
+
+    private final AsyncHttpClient client;
+
+    public LoadGenerator(AsyncHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Send GET requests to the url at the given rate for the given duration, then wait for the outstanding responses.
+     *
+     * @param url               the url to load
+     * @param requestsPerSecond the arrival rate
+     * @param durationInMs      how long requests are sent
+     * @param drainTimeoutInMs  how long to wait for the outstanding responses
+     * @return the {@link Report}
+     * @throws InterruptedException if interrupted while waiting for the outstanding responses.
+     */
+    public Report run(String url, int requestsPerSecond, long durationInMs, long drainTimeoutInMs)
+            throws InterruptedException {
+
+        int total = (int) (requestsPerSecond * durationInMs / 1000);
+        long intervalInNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+        Recorder recorder = new Recorder(total);
+
+        long allocatedBefore = AllocationCounter.allThreads();
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            long intendedStart = start + i * intervalInNanos;
+            long wait;
+            while ((wait = intendedStart - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            RecordingHandler handler = new RecordingHandler(recorder, intendedStart);
+            try {
+                client.prepareGet(url).execute(handler);
+            } catch (IOException ex) {
+                handler.onThrowable(ex);
+            }
+        }
+
+        boolean drained = recorder.outstanding.await(drainTimeoutInMs, TimeUnit.MILLISECONDS);
+        long elapsed = System.nanoTime() - start;
+        long allocatedAfter = AllocationCounter.allThreads();
+
+        long allocatedPerRequest = allocatedBefore < 0 || allocatedAfter < 0 ? -1
+                : (allocatedAfter - allocatedBefore) / Math.max(1, total);
+        return new Report(total, recorder.completed.get(), recorder.errors.get(), drained, elapsed,
+                recorder.corrected.snapshot(), recorder.uncorrected.snapshot(), allocatedPerRequest);
+    }
+
+    private final static class Recorder {
+        final LatencyHistogram corrected = new LatencyHistogram();
+        final LatencyHistogram uncorrected = new LatencyHistogram();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final CountDownLatch outstanding;
+
+        Recorder(int total) {
+            outstanding = new CountDownLatch(total);
+        }
+    }
+
+    private final static class RecordingHandler implements AsyncHandler<Object> {
+
+        private final Recorder recorder;
+        private final long intendedStart;
+        private final long actualStart = System.nanoTime();
+        private final AtomicBoolean done = new AtomicBoolean();
+        private int statusCode;
+
+        RecordingHandler(Recorder recorder, long intendedStart) {
+            this.recorder = recorder;
+            this.intendedStart = intendedStart;
+        }
+
+        public STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+            statusCode = responseStatus.getStatusCode();
+            return STATE.CONTINUE;
+        }
+
+        public STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+            return STATE.CONTINUE;
+        }
+
+        public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+            return STATE.CONTINUE;
+        }
+
+        public Object onCompleted() throws Exception {
+            if (done.compareAndSet(false, true)) {
+                long now = System.nanoTime();
+                recorder.corrected.record(TimeUnit.NANOSECONDS.toMicros(now - intendedStart));
+                recorder.uncorrected.record(TimeUnit.NANOSECONDS.toMicros(now - actualStart));
+                if (statusCode == 200) {
+                    recorder.completed.incrementAndGet();
+                } else {
+                    recorder.errors.incrementAndGet();
+                }
+                recorder.outstanding.countDown();
+            }
+            return null;
+        }
+
+        public void onThrowable(Throwable t) {
+            if (done.compareAndSet(false, true)) {
+                recorder.errors.incrementAndGet();
+                recorder.outstanding.countDown();
+            }
+        }
+    }
+
+    /**
+     * The outcome of a {@link LoadGenerator} run.
+     */
+    public static class Report {
+
+        private final int sent;
+        private final long completed;
+        private final long errors;
+        private final boolean drained;
+        private final long elapsedInNanos;
+        private final LatencyHistogram.Snapshot corrected;
+        private final LatencyHistogram.Snapshot uncorrected;
+        private final long allocatedBytesPerRequest;
+
+        Report(int sent, long completed, long errors, boolean drained, long elapsedInNanos,
+               LatencyHistogram.Snapshot corrected, LatencyHistogram.Snapshot uncorrected,
+               long allocatedBytesPerRequest) {
+            this.sent = sent;
+            this.completed = completed;
+            this.errors = errors;
+            this.drained = drained;
+            this.elapsedInNanos = elapsedInNanos;
+            this.corrected = corrected;
+            this.uncorrected = uncorrected;
+            this.allocatedBytesPerRequest = allocatedBytesPerRequest;
+        }
+
+        public int getSent() {
+            return sent;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Return true if every response has been received before the drain timeout.
+         */
+        public boolean isDrained() {
+            return drained;
+        }
+
+        public double getThroughput() {
+            return completed * 1e9 / elapsedInNanos;
+        }
+
+        /**
+         * Return the latencies measured from the time each request was scheduled to be sent.
+         */
+        public LatencyHistogram.Snapshot getCorrectedLatency() {
+            return corrected;
+        }
+
+        /**
+         * Return the latencies measured from the time each request was actually sent.
+         */
+        public LatencyHistogram.Snapshot getUncorrectedLatency() {
+            return uncorrected;
+        }
+
+        /**
+         * Return the bytes allocated by the whole JVM per request, or -1 if not supported.
+         */
+        public long getAllocatedBytesPerRequest() {
+            return allocatedBytesPerRequest;
+        }
+
+        private static String percentiles(LatencyHistogram.Snapshot s) {
+            return String.format("p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+                    s.getValueAtPercentileInMicros(50) / 1000.0,
+                    s.getValueAtPercentileInMicros(99) / 1000.0,
+                    s.getValueAtPercentileInMicros(99.9) / 1000.0,
+                    s.getMaxInMicros() / 1000.0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("sent=%d completed=%d errors=%d drained=%s throughput=%.1f req/s%n" +
+                    "  corrected   %s%n" +
+                    "  uncorrected %s%n" +
+                    "  allocated=%d bytes/request",
+                    sent, completed, errors, drained, getThroughput(),
+                    percentiles(corrected), percentiles(uncorrected), allocatedBytesPerRequest);
+        }
+    }
+}
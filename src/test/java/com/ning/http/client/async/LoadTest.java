@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Sustained load at a fixed arrival rate, reported per provider. Only run with the load-testing profile, e.g.
+ * {@code mvn test -Pload-testing -Dload.rate=2000}. The load is configured with system properties:
+ * <pre>
+ *   load.rate          requests per second (default 500)
+ *   load.durationInSec how long the load is applied (default 10)
+ *   load.delayInMs     server side delay of every response (default 5)
+ *   load.size          response body size in bytes (default 1024)
+ * </pre>
+ */
+public abstract class LoadTest extends AbstractBasicTest {
+
+    private final int rate = Integer.getInteger("load.rate", 500);
+    private final int durationInSec = Integer.getInteger("load.durationInSec", 10);
+    private final int delayInMs = Integer.getInteger("load.delayInMs", 5);
+    private final int size = Integer.getInteger("load.size", 1024);
+
+    private class DelayHandler extends AbstractHandler {
+        private final byte[] body = new byte[size];
+
+        /* @Override */
+        public void handle(String s,
+                           Request r,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException, ServletException {
+            if (delayInMs > 0) {
+                try {
+                    Thread.sleep(delayInMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            response.setStatus(200);
+            response.setContentLength(body.length);
+            OutputStream out = response.getOutputStream();
+            out.write(body);
+            out.close();
+            r.setHandled(true);
+        }
+    }
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new DelayHandler();
+    }
+
+    @Test(groups = {"load"})
+    public void sustainedLoadTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .setMaximumConnectionsTotal(-1)
+                .setMaximumConnectionsPerHost(-1)
+                .build());
+
+        LoadGenerator generator = new LoadGenerator(c);
+        // A short run warms up the client and the server before the measured one.
+        generator.run(getTargetUrl(), rate, 2000, TIMEOUT * 1000);
+        LoadGenerator.Report report = generator.run(getTargetUrl(), rate, durationInSec * 1000L, TIMEOUT * 1000);
+
+        log.info(String.format("%s at %d req/s for %ds, delay=%dms size=%d bytes%n%s",
+                c.getProvider().getClass().getSimpleName(), rate, durationInSec, delayInMs, size, report));
+
+        assertTrue(report.isDrained(), "Outstanding responses after the drain timeout");
+        assertEquals(report.getErrors(), 0);
+        assertEquals(report.getCompleted(), report.getSent());
+        c.close();
+    }
+}
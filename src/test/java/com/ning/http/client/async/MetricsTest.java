@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Response;
+import com.ning.http.client.metrics.ClientMetrics;
+import com.ning.http.client.metrics.HostMetrics;
+import com.ning.http.client.metrics.MetricsSnapshot;
+import org.testng.annotations.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public abstract class MetricsTest extends AbstractBasicTest {
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void requestsAreRecordedTest() throws Throwable {
+        ClientMetrics metrics = new ClientMetrics();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setClientMetrics(metrics).build());
+
+        for (int i = 0; i < 3; i++) {
+            Response response = c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getStatusCode(), 200);
+        }
+
+        MetricsSnapshot snapshot = c.getMetricsSnapshot();
+        MetricsSnapshot.HostSnapshot host = snapshot.getHosts().get("http://127.0.0.1:" + port1);
+        assertNotNull(host);
+        assertEquals(host.getRequestCount(), 3);
+        assertEquals(host.getStatusClassCount(2), 3);
+        assertEquals(host.getLatency().getCount(), 3);
+        assertTrue(host.getLatency().getMaxInMicros() > 0);
+        assertTrue(snapshot.getIdleConnectionCount() >= 0);
+        assertTrue(snapshot.getActiveConnectionCount() >= 0);
+        assertEquals(snapshot.getMaxConnections(), -1);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void bytesAreRecordedTest() throws Throwable {
+        ClientMetrics metrics = new ClientMetrics();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setClientMetrics(metrics).build());
+
+        byte[] body = new byte[5000];
+        Response response = c.preparePost(getTargetUrl()).setBody(body).execute().get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(response.getResponseBody().length(), body.length);
+
+        // Headers are accounted too.
+        MetricsSnapshot.HostSnapshot host = c.getMetricsSnapshot().getHosts().get("http://127.0.0.1:" + port1);
+        assertTrue(host.getBytesSent() > body.length, String.valueOf(host.getBytesSent()));
+        assertTrue(host.getBytesReceived() > body.length, String.valueOf(host.getBytesReceived()));
+        assertEquals(metrics.getBytesReceived(), host.getBytesReceived());
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void poolUsageIsRecordedTest() throws Throwable {
+        ClientMetrics metrics = new ClientMetrics();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setClientMetrics(metrics).build());
+
+        for (int i = 0; i < 3; i++) {
+            c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS);
+        }
+        HostMetrics host = metrics.getHostMetrics("http://127.0.0.1:" + port1);
+        assertEquals(host.getPoolMissCount(), 1);
+        assertEquals(host.getPoolHitCount(), 2);
+        assertEquals(host.getPoolHitRatio(), 2.0 / 3);
+        assertEquals(host.getClosedConnectionCount(), 0);
+
+        c.close();
+        // The connection is closed asynchronously.
+        for (int i = 0; i < 50 && host.getClosedConnectionCount() == 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(host.getClosedConnectionCount(), 1);
+        assertEquals(host.getMeanRequestsPerConnection(), 3.0);
+        assertEquals(host.getConnectionAgeHistogram().snapshot().getCount(), 1);
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void failuresAreRecordedTest() throws Throwable {
+        ClientMetrics metrics = new ClientMetrics();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setClientMetrics(metrics).build());
+
+        int port = findFreePort();
+        try {
+            c.prepareGet("http://127.0.0.1:" + port + "/").execute().get(TIMEOUT, TimeUnit.SECONDS);
+            fail("Connection should have been refused");
+        } catch (ExecutionException ex) {
+        }
+
+        assertEquals(metrics.getHostMetrics("http://127.0.0.1:" + port).getFailureCount(), 1);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void mbeansAreRegisteredTest() throws Throwable {
+        ClientMetrics metrics = new ClientMetrics("metrics-test");
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setClientMetrics(metrics).build());
+        c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+        ObjectName name = new ObjectName("com.ning.http.client:type=AsyncHttpClient,name=\"metrics-test\"");
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        assertEquals(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "RequestCount"), 1L);
+
+        metrics.close();
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void metricsDisabledByDefaultTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        assertNull(c.getMetricsSnapshot());
+        c.close();
+    }
+}
@@ -106,7 +106,7 @@ public abstract class PerRequestTimeoutTest extends AbstractBasicTest {
             fail("Interrupted.", e);
         } catch (ExecutionException e) {
             assertTrue(e.getCause() instanceof TimeoutException);
-            assertEquals(e.getCause().getMessage(), "No response received after 100");
+            assertTrue(e.getCause().getMessage().startsWith("No response received after 100"), e.getCause().getMessage());
         } catch (TimeoutException e) {
             fail("Timeout.", e);
         }
@@ -128,7 +128,7 @@ public abstract class PerRequestTimeoutTest extends AbstractBasicTest {
             fail("Interrupted.", e);
         } catch (ExecutionException e) {
             assertTrue(e.getCause() instanceof TimeoutException);
-            assertEquals(e.getCause().getMessage(), "No response received after 100");
+            assertTrue(e.getCause().getMessage().startsWith("No response received after 100"), e.getCause().getMessage());
         }
         client.close();
     }
@@ -145,7 +145,7 @@ public abstract class PerRequestTimeoutTest extends AbstractBasicTest {
             fail("Interrupted.", e);
         } catch (ExecutionException e) {
             assertTrue(e.getCause() instanceof TimeoutException);
-            assertEquals(e.getCause().getMessage(), "No response received after 100");
+            assertTrue(e.getCause().getMessage().startsWith("No response received after 100"), e.getCause().getMessage());
         } catch (TimeoutException e) {
             fail("Timeout.", e);
         }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Request;
+import com.ning.http.client.Response;
+import com.ning.http.client.listener.RequestEvent;
+import com.ning.http.client.listener.RequestEventListener;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public abstract class RequestEventTest extends AbstractBasicTest {
+
+    private static class RecordingListener implements RequestEventListener {
+        private final List<RequestEvent> events = new ArrayList<RequestEvent>();
+        private final List<Long> timestamps = new ArrayList<Long>();
+
+        public synchronized void onEvent(Request request, RequestEvent event, long nanoTime) {
+            events.add(event);
+            timestamps.add(nanoTime);
+        }
+
+        synchronized List<RequestEvent> drain() {
+            for (int i = 1; i < timestamps.size(); i++) {
+                assertTrue(timestamps.get(i) >= timestamps.get(i - 1), "Timestamps out of order " + timestamps);
+            }
+            List<RequestEvent> copy = new ArrayList<RequestEvent>(events);
+            events.clear();
+            timestamps.clear();
+            return copy;
+        }
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void lifecycleEventsTest() throws Throwable {
+        RecordingListener listener = new RecordingListener();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setRequestEventListener(listener).build());
+
+        Response response = c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(response.getStatusCode(), 200);
+
+        List<RequestEvent> expected = new ArrayList<RequestEvent>();
+        expected.add(RequestEvent.POOL_MISS);
+        expected.add(RequestEvent.DNS_RESOLUTION_STARTED);
+        expected.add(RequestEvent.DNS_RESOLUTION_COMPLETED);
+        expected.add(RequestEvent.CONNECT_STARTED);
+        expected.add(RequestEvent.CONNECT_COMPLETED);
+        expected.add(RequestEvent.HEADERS_WRITTEN);
+        expected.add(RequestEvent.BODY_WRITTEN);
+        expected.add(RequestEvent.STATUS_RECEIVED);
+        expected.add(RequestEvent.LAST_CHUNK_RECEIVED);
+        assertEquals(listener.drain(), expected);
+
+        response = c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(response.getStatusCode(), 200);
+
+        expected.clear();
+        expected.add(RequestEvent.POOL_HIT);
+        expected.add(RequestEvent.HEADERS_WRITTEN);
+        expected.add(RequestEvent.BODY_WRITTEN);
+        expected.add(RequestEvent.STATUS_RECEIVED);
+        expected.add(RequestEvent.LAST_CHUNK_RECEIVED);
+        assertEquals(listener.drain(), expected);
+        c.close();
+    }
+}
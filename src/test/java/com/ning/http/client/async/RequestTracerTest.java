@@ -0,0 +1,192 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.FluentCaseInsensitiveStringsMap;
+import com.ning.http.client.Response;
+import com.ning.http.client.tracing.RequestTracer;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+public abstract class RequestTracerTest extends AbstractBasicTest {
+
+    private static class RedirectHandler extends AbstractHandler {
+
+        /* @Override */
+        public void handle(String s,
+                           Request r,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException, ServletException {
+            if (request.getRequestURI().endsWith("/redirect")) {
+                response.setStatus(302);
+                response.setHeader("Location", "/target");
+            } else {
+                response.setStatus(200);
+                response.setHeader("X-Received-Span", request.getHeader("X-Span"));
+            }
+            response.getOutputStream().close();
+            r.setHandled(true);
+        }
+    }
+
+    /**
+     * Record the calls made by the provider. The context is the list of calls of the request.
+     */
+    private static class RecordingTracer implements RequestTracer<List<String>> {
+        private final AtomicInteger spans = new AtomicInteger();
+        private volatile List<String> context;
+
+        public List<String> requestStarted(com.ning.http.client.Request request) {
+            context = new ArrayList<String>();
+            context.add("start");
+            return context;
+        }
+
+        public void attemptStarted(List<String> context, com.ning.http.client.Request request, Attempt attempt,
+                                   FluentCaseInsensitiveStringsMap headers) {
+            String span = "span-" + spans.incrementAndGet();
+            headers.add("X-Span", span);
+            synchronized (context) {
+                context.add(attempt + " " + span + " " + request.getUrl().replaceAll(".*/", "/"));
+            }
+        }
+
+        public void attemptCompleted(List<String> context, com.ning.http.client.Request request, int statusCode, Throwable t) {
+            synchronized (context) {
+                context.add(statusCode + (t == null ? "" : " " + t.getClass().getSimpleName()));
+            }
+        }
+
+        public void requestCompleted(List<String> context, Throwable t) {
+            synchronized (context) {
+                context.add("end" + (t == null ? "" : " failed"));
+            }
+        }
+
+        List<String> calls() {
+            synchronized (context) {
+                return new ArrayList<String>(context);
+            }
+        }
+    }
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new RedirectHandler();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void redirectIsTracedTest() throws Throwable {
+        RecordingTracer tracer = new RecordingTracer();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .setFollowRedirects(true)
+                .setRequestTracer(tracer)
+                .build());
+
+        Response response = c.prepareGet(String.format("http://127.0.0.1:%d/redirect", port1)).execute().get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(response.getStatusCode(), 200);
+        // The headers added by the tracer are sent with every attempt.
+        assertEquals(response.getHeader("X-Received-Span"), "span-2");
+
+        List<String> expected = new ArrayList<String>();
+        expected.add("start");
+        expected.add("INITIAL span-1 /redirect");
+        expected.add("302");
+        expected.add("REDIRECT span-2 /target");
+        expected.add("200");
+        expected.add("end");
+        assertEquals(tracer.calls(), expected);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void failureIsTracedTest() throws Throwable {
+        RecordingTracer tracer = new RecordingTracer();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setRequestTracer(tracer).build());
+
+        // A bound socket which doesn't listen refuses the connections, and keeps its port from being reused.
+        Socket closedPort = new Socket();
+        closedPort.bind(new InetSocketAddress("127.0.0.1", 0));
+        try {
+            c.prepareGet(String.format("http://127.0.0.1:%d/", closedPort.getLocalPort())).execute().get(TIMEOUT, TimeUnit.SECONDS);
+            fail("The connection should have been refused");
+        } catch (ExecutionException ex) {
+            assertNotNull(ex.getCause());
+        } finally {
+            closedPort.close();
+        }
+
+        List<String> calls = tracer.calls();
+        assertEquals(calls.get(0), "start");
+        assertEquals(calls.get(calls.size() - 1), "end failed");
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void cancelAfterCompletionIsIgnoredTest() throws Throwable {
+        RecordingTracer tracer = new RecordingTracer();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setRequestTracer(tracer).build());
+
+        Future<Response> future = c.prepareGet(getTargetUrl()).execute();
+        assertEquals(future.get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+        List<String> calls = tracer.calls();
+
+        assertFalse(future.cancel(true));
+        assertFalse(future.isCancelled());
+        assertEquals(tracer.calls(), calls);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void tracerFailureIsIgnoredTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .setRequestTracer(new RecordingTracer() {
+                    @Override
+                    public void attemptStarted(List<String> context, com.ning.http.client.Request request, Attempt attempt,
+                                               FluentCaseInsensitiveStringsMap headers) {
+                        throw new IllegalStateException("Broken tracer");
+                    }
+                })
+                .build());
+
+        Response response = c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(response.getStatusCode(), 200);
+        assertNull(response.getHeader("X-Received-Span"));
+        c.close();
+    }
+}
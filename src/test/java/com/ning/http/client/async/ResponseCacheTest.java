@@ -0,0 +1,265 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async;
+
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.Response;
+import com.ning.http.client.cache.ResponseCache;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+public abstract class ResponseCacheTest extends AbstractBasicTest {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    private class CacheHandler extends AbstractHandler {
+        /* @Override */
+        public void handle(String s,
+                           Request r,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException, ServletException {
+
+            int n = count.incrementAndGet();
+            String path = request.getPathInfo();
+            response.setHeader("ETag", "\"v1\"");
+            if (path.startsWith("/fresh")) {
+                response.setHeader("Cache-Control", "max-age=60");
+            } else if (path.startsWith("/stale")) {
+                response.setHeader("Cache-Control", "max-age=0");
+                if ("\"v1\"".equals(request.getHeader("If-None-Match"))) {
+                    response.setStatus(304);
+                    response.getOutputStream().close();
+                    return;
+                }
+            } else if (path.startsWith("/swr")) {
+                response.setHeader("Cache-Control", "max-age=0, stale-while-revalidate=60");
+            } else if (path.startsWith("/sie")) {
+                response.setHeader("Cache-Control", "max-age=0, stale-if-error=60");
+                if (request.getHeader("If-None-Match") != null) {
+                    response.sendError(500);
+                    return;
+                }
+            } else {
+                response.setHeader("Cache-Control", "no-store");
+            }
+
+            response.setStatus(200);
+            response.getOutputStream().write((path + "-" + n).getBytes());
+            response.getOutputStream().flush();
+            response.getOutputStream().close();
+        }
+    }
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new CacheHandler();
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + port1 + path;
+    }
+
+    private Response get(AsyncHttpClient c, String path) throws Exception {
+        return c.prepareGet(url(path)).execute().get(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void freshResponseIsServedFromCacheTest() throws Throwable {
+        count.set(0);
+        ResponseCache cache = new ResponseCache.Builder().build();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setResponseCache(cache).build());
+
+        assertEquals(get(c, "/fresh").getResponseBody(), "/fresh-1");
+        Response cached = get(c, "/fresh");
+        assertEquals(cached.getStatusCode(), 200);
+        assertEquals(cached.getResponseBody(), "/fresh-1");
+        assertNotNull(cached.getHeader("Age"));
+        assertEquals(count.get(), 1);
+        assertEquals(cache.getHitCount(), 1);
+        assertEquals(cache.getMissCount(), 1);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void staleResponseIsRevalidatedTest() throws Throwable {
+        count.set(0);
+        ResponseCache cache = new ResponseCache.Builder().build();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setResponseCache(cache).build());
+
+        assertEquals(get(c, "/stale").getResponseBody(), "/stale-1");
+        Response revalidated = get(c, "/stale");
+        assertEquals(revalidated.getStatusCode(), 200);
+        assertEquals(revalidated.getResponseBody(), "/stale-1");
+        assertEquals(count.get(), 2);
+        assertEquals(cache.getRevalidatedCount(), 1);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void noStoreResponseIsNotCachedTest() throws Throwable {
+        count.set(0);
+        ResponseCache cache = new ResponseCache.Builder().build();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setResponseCache(cache).build());
+
+        assertEquals(get(c, "/nostore").getResponseBody(), "/nostore-1");
+        assertEquals(get(c, "/nostore").getResponseBody(), "/nostore-2");
+        assertEquals(cache.getHitCount(), 0);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void unsafeMethodInvalidatesTest() throws Throwable {
+        count.set(0);
+        ResponseCache cache = new ResponseCache.Builder().build();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setResponseCache(cache).build());
+
+        assertEquals(get(c, "/fresh").getResponseBody(), "/fresh-1");
+        c.preparePost(url("/fresh")).execute().get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(get(c, "/fresh").getResponseBody(), "/fresh-3");
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void staleWhileRevalidateTest() throws Throwable {
+        count.set(0);
+        ResponseCache cache = new ResponseCache.Builder().build();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setResponseCache(cache).build());
+
+        assertEquals(get(c, "/swr").getResponseBody(), "/swr-1");
+        Response stale = get(c, "/swr");
+        assertEquals(stale.getStatusCode(), 200);
+        assertEquals(stale.getResponseBody(), "/swr-1");
+        assertEquals(cache.getStaleHitCount(), 1);
+
+        // The refresh happens in the background.
+        long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+        while (count.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count.get(), 2);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void staleIfErrorTest() throws Throwable {
+        count.set(0);
+        ResponseCache cache = new ResponseCache.Builder().build();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setResponseCache(cache).build());
+
+        assertEquals(get(c, "/sie").getResponseBody(), "/sie-1");
+        Response stale = get(c, "/sie");
+        assertEquals(stale.getStatusCode(), 200);
+        assertEquals(stale.getResponseBody(), "/sie-1");
+        assertEquals(count.get(), 2);
+        assertEquals(cache.getStaleHitCount(), 1);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void staleIfErrorCallbacksTest() throws Throwable {
+        count.set(0);
+        ResponseCache cache = new ResponseCache.Builder().build();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setResponseCache(cache).build());
+
+        assertEquals(get(c, "/sie").getResponseBody(), "/sie-1");
+
+        // Nothing of the error response may reach the handler, only the replayed stale response.
+        final List<String> callbacks = new ArrayList<String>();
+        final StringBuilder body = new StringBuilder();
+        c.prepareGet(url("/sie")).execute(new AsyncHandler<String>() {
+            public void onThrowable(Throwable t) {
+                callbacks.add("throwable");
+            }
+
+            public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+                if (!callbacks.get(callbacks.size() - 1).equals("body")) {
+                    callbacks.add("body");
+                }
+                body.append(new String(bodyPart.getBodyPartBytes()));
+                return STATE.CONTINUE;
+            }
+
+            public STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+                callbacks.add("status " + responseStatus.getStatusCode());
+                return STATE.CONTINUE;
+            }
+
+            public STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+                callbacks.add("headers");
+                return STATE.CONTINUE;
+            }
+
+            public String onCompleted() throws Exception {
+                callbacks.add("completed");
+                return body.toString();
+            }
+        }).get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals(callbacks, Arrays.asList("status 200", "headers", "body", "completed"));
+        assertEquals(body.toString(), "/sie-1");
+        assertEquals(count.get(), 2);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void diskTierSurvivesRestartTest() throws Throwable {
+        count.set(0);
+        File directory = new File(System.getProperty("java.io.tmpdir"), "ahc-cache-" + System.nanoTime());
+        ResponseCache cache = new ResponseCache.Builder().setDiskCache(directory, 1024 * 1024).build();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setResponseCache(cache).build());
+        assertEquals(get(c, "/fresh").getResponseBody(), "/fresh-1");
+        c.close();
+
+        // The entry is written in the background.
+        long deadline = System.currentTimeMillis() + TIMEOUT * 1000L;
+        while (directory.list().length == 0 || !directory.list()[0].endsWith(".entry")) {
+            assertTrue(System.currentTimeMillis() < deadline, "The entry hasn't been written");
+            Thread.sleep(10);
+        }
+
+        ResponseCache restarted = new ResponseCache.Builder().setDiskCache(directory, 1024 * 1024).build();
+        c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setResponseCache(restarted).build());
+        Response cached = get(c, "/fresh");
+        assertEquals(cached.getResponseBody(), "/fresh-1");
+        assertEquals(count.get(), 1);
+        assertEquals(restarted.getHitCount(), 1);
+        c.close();
+
+        restarted.clear();
+        directory.delete();
+    }
+}
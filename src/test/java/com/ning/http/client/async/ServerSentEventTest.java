@@ -0,0 +1,203 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.sse.EventSource;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.cache.ResponseCache;
+import com.ning.http.client.coalescing.CoalescingPolicy;
+import com.ning.http.client.hedging.HedgingPolicy;
+import com.ning.http.client.sse.ServerSentEvent;
+import com.ning.http.client.sse.ServerSentEventListener;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public abstract class ServerSentEventTest extends AbstractBasicTest {
+
+    private final List<String> lastEventIds = new CopyOnWriteArrayList<String>();
+
+    /**
+     * Send two events then end the stream, send a third event when resumed after the second one, and stop the
+     * reconnections once the third one has been received.
+     */
+    private class EventStreamHandler extends AbstractHandler {
+        /* @Override */
+        public void handle(String s,
+                           Request r,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException, ServletException {
+
+            String lastEventId = request.getHeader("Last-Event-ID");
+            lastEventIds.add(String.valueOf(lastEventId));
+
+            if (request.getParameter("plain") != null) {
+                response.setStatus(200);
+                response.setContentType("text/plain");
+                response.getOutputStream().print("not a stream");
+            } else if ("3".equals(lastEventId)) {
+                response.setStatus(204);
+            } else {
+                response.setStatus(200);
+                response.setContentType("text/event-stream");
+                OutputStream out = response.getOutputStream();
+                if (lastEventId == null) {
+                    out.write("retry: 100\n\nid: 1\ndata: first\n\n".getBytes("UTF-8"));
+                    out.flush();
+                    out.write("id: 2\nevent: update\ndata: second\r\ndata: line\r\n\r\n".getBytes("UTF-8"));
+                    out.flush();
+                } else {
+                    out.write("id: 3\ndata: third\n\n".getBytes("UTF-8"));
+                    out.flush();
+                }
+            }
+            response.getOutputStream().close();
+            r.setHandled(true);
+        }
+    }
+
+    private static class Listener implements ServerSentEventListener {
+        final List<ServerSentEvent> events = new CopyOnWriteArrayList<ServerSentEvent>();
+        final List<String> threads = new CopyOnWriteArrayList<String>();
+        final List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+        final CountDownLatch closed = new CountDownLatch(1);
+        volatile int opened;
+
+        public void onOpen() {
+            opened++;
+        }
+
+        public void onEvent(ServerSentEvent event) {
+            events.add(event);
+            threads.add(Thread.currentThread().getName());
+        }
+
+        public void onError(Throwable t) {
+            errors.add(t);
+        }
+
+        public void onClose() {
+            closed.countDown();
+        }
+    }
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new EventStreamHandler();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void reconnectWithLastEventIdTest() throws Throwable {
+        lastEventIds.clear();
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        Listener listener = new Listener();
+        EventSource source = new EventSource.Builder(c, c.prepareGet(getTargetUrl()).build())
+                .setListener(listener).build();
+        source.open();
+
+        assertTrue(listener.closed.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(lastEventIds.toString(), "[null, 2, 3]");
+        assertEquals(listener.opened, 2);
+        assertEquals(listener.events.size(), 3);
+        assertEquals(listener.events.get(0).getData(), "first");
+        assertEquals(listener.events.get(1).getEvent(), "update");
+        assertEquals(listener.events.get(1).getData(), "second\nline");
+        assertEquals(listener.events.get(2).getId(), "3");
+        assertEquals(source.getLastEventId(), "3");
+        assertEquals(source.getReconnectDelayInMs(), 100);
+        assertTrue(listener.errors.isEmpty(), listener.errors.toString());
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void dispatchOnExecutorTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "sse-listener");
+            }
+        });
+        Listener listener = new Listener();
+        EventSource source = new EventSource.Builder(c, c.prepareGet(getTargetUrl()).build())
+                .setListener(listener).setExecutor(executor).build();
+        source.open();
+
+        assertTrue(listener.closed.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(listener.events.size(), 3);
+        assertEquals(listener.events.get(2).getData(), "third");
+        for (String thread : listener.threads) {
+            assertEquals(thread, "sse-listener");
+        }
+        executor.shutdown();
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void wrongContentTypeClosesTest() throws Throwable {
+        lastEventIds.clear();
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        Listener listener = new Listener();
+        EventSource source = new EventSource.Builder(c, c.prepareGet(getTargetUrl() + "?plain=true").build())
+                .setListener(listener).setReconnectDelayInMs(10).build();
+        source.open();
+
+        assertTrue(listener.closed.await(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(source.isClosed());
+        assertEquals(listener.errors.size(), 1);
+        assertEquals(listener.opened, 0);
+        Thread.sleep(100);
+        assertEquals(lastEventIds.size(), 1);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void bypassCacheCoalescingAndHedgingTest() throws Throwable {
+        lastEventIds.clear();
+        ResponseCache cache = new ResponseCache.Builder().build();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .setResponseCache(cache)
+                .setCoalescingPolicy(new CoalescingPolicy.Builder().build())
+                .setHedgingPolicy(new HedgingPolicy.Builder().setHedgeDelayInMs(1).setMaxHedgeRatio(1f).build())
+                .build());
+        Listener listener = new Listener();
+        EventSource source = new EventSource.Builder(c, c.prepareGet(getTargetUrl()).build())
+                .setListener(listener).build();
+        source.open();
+
+        assertTrue(listener.closed.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(lastEventIds.toString(), "[null, 2, 3]");
+        assertEquals(listener.events.size(), 3);
+        assertEquals(cache.getMissCount(), 0);
+        c.close();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.testng.Assert.assertTrue;
+
+/**
+ * A client which sends no request must not start any thread: the executors, the timer and the I/O threads are
+ * created on first use. The time it takes is measured by StartupBenchmark, in the benchmarks module.
+ */
+public abstract class StartupTest extends AbstractBasicTest {
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void idleClientStartsNoThreadTest() throws Throwable {
+        // Load the classes first, a class initializer may legitimately start a thread once.
+        getAsyncHttpClient(null).close();
+
+        Set<Thread> before = liveThreads();
+        AsyncHttpClientConfig config = new AsyncHttpClientConfig.Builder().build();
+        AsyncHttpClient c = getAsyncHttpClient(config);
+        List<String> started = startedThreads(before);
+        c.close();
+        started.addAll(startedThreads(before));
+
+        assertTrue(started.isEmpty(), "An idle client started " + started);
+    }
+
+    private static Set<Thread> liveThreads() {
+        Thread[] threads = new Thread[Thread.activeCount() + 16];
+        int count = Thread.enumerate(threads);
+        Set<Thread> live = new HashSet<Thread>();
+        for (int i = 0; i < count; i++) {
+            live.add(threads[i]);
+        }
+        return live;
+    }
+
+    private static List<String> startedThreads(Set<Thread> before) {
+        List<String> started = new ArrayList<String>();
+        for (Thread t : liveThreads()) {
+            if (!before.contains(t)) {
+                started.add(t.getName());
+            }
+        }
+        return started;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async.netty;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import com.ning.http.client.metrics.ClientMetrics;
+import com.ning.http.client.providers.netty.NettyAsyncResponse;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class NettyByteAccountingTest extends AbstractBasicTest {
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.nettyProvider(config);
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void responseBytesTest() throws Throwable {
+        ClientMetrics metrics = new ClientMetrics();
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setClientMetrics(metrics).build());
+
+        long received = 0;
+        for (int size = 1000; size <= 3000; size += 1000) {
+            NettyAsyncResponse response = (NettyAsyncResponse) c.preparePost(getTargetUrl())
+                    .setBody(new byte[size]).execute().get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getResponseBody().length(), size);
+            assertTrue(response.getBytesSent() > size, String.valueOf(response.getBytesSent()));
+            assertTrue(response.getBytesReceived() > size, String.valueOf(response.getBytesReceived()));
+            received += response.getBytesReceived();
+        }
+
+        // Every byte read from the pooled connection belongs to one of the requests.
+        assertEquals(metrics.getHostMetrics("http://127.0.0.1:" + port1).getBytesReceived(), received);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void bytesWithoutMetricsTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        NettyAsyncResponse response = (NettyAsyncResponse) c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS);
+        assertTrue(response.getBytesSent() > 0);
+        assertTrue(response.getBytesReceived() > 10 * 1024);
+        c.close();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async.netty;
+
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import com.ning.http.client.providers.netty.NettyAsyncHttpProviderConfig;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class NettyCallbackExecutorTest extends AbstractBasicTest {
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.nettyProvider(config);
+    }
+
+    private static ExecutorService callbackExecutor() {
+        return Executors.newFixedThreadPool(4, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "callback");
+            }
+        });
+    }
+
+    private AsyncHttpClient newClient(ExecutorService executor) {
+        NettyAsyncHttpProviderConfig providerConfig = new NettyAsyncHttpProviderConfig();
+        providerConfig.addProperty(NettyAsyncHttpProviderConfig.CALLBACK_EXECUTOR, executor);
+        providerConfig.addProperty(NettyAsyncHttpProviderConfig.NIO_WORKER_COUNT, 1);
+        return getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setAsyncHttpClientProviderConfig(providerConfig).build());
+    }
+
+    /**
+     * Record the callbacks and the threads they were invoked on.
+     */
+    private static class RecordingHandler implements AsyncHandler<List<String>> {
+
+        final List<String> callbacks = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        private final long statusDelay;
+
+        RecordingHandler(long statusDelay) {
+            this.statusDelay = statusDelay;
+        }
+
+        private void record(String callback) {
+            callbacks.add(callback);
+            threads.add(Thread.currentThread().getName());
+        }
+
+        public void onThrowable(Throwable t) {
+            record("throwable");
+        }
+
+        public STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+            record("status");
+            Thread.sleep(statusDelay);
+            return STATE.CONTINUE;
+        }
+
+        public STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+            record("headers");
+            return STATE.CONTINUE;
+        }
+
+        public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+            record("body");
+            return STATE.CONTINUE;
+        }
+
+        public List<String> onCompleted() throws Exception {
+            record("completed");
+            return callbacks;
+        }
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void callbacksOnExecutorTest() throws Throwable {
+        ExecutorService executor = callbackExecutor();
+        AsyncHttpClient c = newClient(executor);
+
+        for (int i = 0; i < 5; i++) {
+            RecordingHandler handler = new RecordingHandler(0);
+            List<String> callbacks = c.prepareGet(getTargetUrl()).execute(handler).get(TIMEOUT, TimeUnit.SECONDS);
+
+            assertEquals(callbacks.get(0), "status");
+            assertEquals(callbacks.get(1), "headers");
+            assertEquals(callbacks.get(callbacks.size() - 1), "completed");
+            for (String thread : handler.threads) {
+                assertEquals(thread, "callback");
+            }
+        }
+
+        c.close();
+        executor.shutdown();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void slowHandlerDoesNotBlockIoTest() throws Throwable {
+        ExecutorService executor = callbackExecutor();
+        AsyncHttpClient c = newClient(executor);
+
+        // Both connections are served by the single I/O worker.
+        Future<List<String>> slow = c.prepareGet(getTargetUrl()).execute(new RecordingHandler(3000));
+        Thread.sleep(500);
+
+        long start = System.currentTimeMillis();
+        Response fast = c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(fast.getStatusCode(), 200);
+        assertTrue(System.currentTimeMillis() - start < 2000, "The fast request was delayed by the slow handler");
+        assertTrue(!slow.isDone());
+
+        assertEquals(slow.get(TIMEOUT, TimeUnit.SECONDS).get(0), "status");
+        c.close();
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async.netty;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import com.ning.http.client.providers.netty.NettyAsyncHttpProviderConfig;
+import com.ning.http.client.providers.netty.NettyClientRuntime;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class NettyClientRuntimeTest extends AbstractBasicTest {
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.nettyProvider(config);
+    }
+
+    private AsyncHttpClient newClient(NettyClientRuntime runtime) {
+        NettyAsyncHttpProviderConfig providerConfig = new NettyAsyncHttpProviderConfig();
+        providerConfig.addProperty(NettyAsyncHttpProviderConfig.CLIENT_RUNTIME, runtime);
+        return getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setAsyncHttpClientProviderConfig(providerConfig).build());
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void workerCountTest() throws Throwable {
+        NettyAsyncHttpProviderConfig providerConfig = new NettyAsyncHttpProviderConfig();
+        providerConfig.addProperty(NettyAsyncHttpProviderConfig.NIO_WORKER_COUNT, 1);
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setAsyncHttpClientProviderConfig(providerConfig).build());
+
+        for (int i = 0; i < 3; i++) {
+            Response response = c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getStatusCode(), 200);
+        }
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void sharedRuntimeTest() throws Throwable {
+        NettyClientRuntime runtime = new NettyClientRuntime(2);
+        AsyncHttpClient first = newClient(runtime);
+        AsyncHttpClient second = newClient(runtime);
+        assertEquals(runtime.getReferenceCount(), 2);
+
+        assertEquals(first.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+        assertEquals(second.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+
+        // Closing a client must not stop the threads the other one is using.
+        first.close();
+        assertFalse(runtime.isReleased());
+        assertEquals(second.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+
+        second.close();
+        assertTrue(runtime.isReleased());
+        assertEquals(runtime.getReferenceCount(), 0);
+
+        try {
+            newClient(runtime);
+            fail("A released runtime must not be reused");
+        } catch (IllegalStateException ex) {
+        }
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void retainedRuntimeTest() throws Throwable {
+        NettyClientRuntime runtime = new NettyClientRuntime().retain();
+
+        AsyncHttpClient c = newClient(runtime);
+        assertEquals(c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+        c.close();
+        assertFalse(runtime.isReleased());
+
+        // The application's reference keeps the runtime usable for the next client.
+        c = newClient(runtime);
+        assertEquals(c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+        c.close();
+
+        assertTrue(runtime.release());
+        assertTrue(runtime.isReleased());
+    }
+}
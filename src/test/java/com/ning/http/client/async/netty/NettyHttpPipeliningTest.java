@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async.netty;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import com.ning.http.client.providers.netty.NettyAsyncHttpProviderConfig;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+public class NettyHttpPipeliningTest extends AbstractBasicTest {
+
+    private static class SlowHandler extends AbstractHandler {
+
+        /* @Override */
+        public void handle(String s,
+                           Request r,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException, ServletException {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (request.getParameter("close") != null) {
+                response.setHeader("Connection", "close");
+            }
+            response.setStatus(200);
+            response.setHeader("X-Connection", request.getRemoteAddr() + ":" + request.getRemotePort());
+            response.getOutputStream().print(request.getParameter("id"));
+            response.getOutputStream().close();
+            r.setHandled(true);
+        }
+    }
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new SlowHandler();
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.nettyProvider(config);
+    }
+
+    private AsyncHttpClient pipeliningClient(int depth) {
+        NettyAsyncHttpProviderConfig providerConfig = new NettyAsyncHttpProviderConfig();
+        providerConfig.addProperty(NettyAsyncHttpProviderConfig.HTTP_PIPELINING_DEPTH, depth);
+        return getAsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .setAsyncHttpClientProviderConfig(providerConfig).build());
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void responsesAreMatchedInOrderTest() throws Throwable {
+        AsyncHttpClient c = pipeliningClient(4);
+        // Open the connection the next requests get pipelined on.
+        c.prepareGet(getTargetUrl()).addQueryParameter("id", "warmup").execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+        List<Future<Response>> futures = new ArrayList<Future<Response>>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(c.prepareGet(getTargetUrl()).addQueryParameter("id", String.valueOf(i)).execute());
+        }
+
+        Set<String> connections = new HashSet<String>();
+        for (int i = 0; i < 4; i++) {
+            Response response = futures.get(i).get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getResponseBody(), String.valueOf(i));
+            connections.add(response.getHeader("X-Connection"));
+        }
+        assertEquals(connections.size(), 1, connections.toString());
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void depthIsBoundedTest() throws Throwable {
+        AsyncHttpClient c = pipeliningClient(2);
+        c.prepareGet(getTargetUrl()).addQueryParameter("id", "warmup").execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+        List<Future<Response>> futures = new ArrayList<Future<Response>>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(c.prepareGet(getTargetUrl()).addQueryParameter("id", String.valueOf(i)).execute());
+        }
+
+        List<String> connections = new ArrayList<String>();
+        for (int i = 0; i < 4; i++) {
+            Response response = futures.get(i).get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getResponseBody(), String.valueOf(i));
+            connections.add(response.getHeader("X-Connection"));
+        }
+        // The pooled connection carries two requests, the others go through new connections.
+        assertEquals(connections.get(1), connections.get(0));
+        assertFalse(connections.get(2).equals(connections.get(0)), connections.toString());
+        assertFalse(connections.get(3).equals(connections.get(0)), connections.toString());
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void unansweredRequestsAreReplayedTest() throws Throwable {
+        AsyncHttpClient c = pipeliningClient(4);
+        c.prepareGet(getTargetUrl()).addQueryParameter("id", "warmup").execute().get(TIMEOUT, TimeUnit.SECONDS);
+
+        List<Future<Response>> futures = new ArrayList<Future<Response>>();
+        // The server closes the connection after the first response.
+        futures.add(c.prepareGet(getTargetUrl()).addQueryParameter("id", "0").addQueryParameter("close", "true").execute());
+        for (int i = 1; i < 4; i++) {
+            futures.add(c.prepareGet(getTargetUrl()).addQueryParameter("id", String.valueOf(i)).execute());
+        }
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(futures.get(i).get(TIMEOUT, TimeUnit.SECONDS).getResponseBody(), String.valueOf(i));
+        }
+        c.close();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async.netty;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import com.ning.http.client.providers.netty.NettyAsyncHttpProviderConfig;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.local.DefaultLocalServerChannelFactory;
+import org.jboss.netty.channel.local.LocalAddress;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.jboss.netty.channel.Channels.pipeline;
+import static org.testng.Assert.assertEquals;
+
+public class NettyLocalTransportTest extends AbstractBasicTest {
+
+    private final AtomicInteger localConnections = new AtomicInteger();
+    private ServerBootstrap localServer;
+    private Channel localServerChannel;
+
+    /**
+     * An in-VM server answering with the request line.
+     */
+    private class LocalHandler extends SimpleChannelUpstreamHandler {
+
+        @Override
+        public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+            localConnections.incrementAndGet();
+            super.channelOpen(ctx, e);
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+            HttpRequest request = (HttpRequest) e.getMessage();
+            byte[] body = ("local " + request.getMethod() + " " + request.getUri() + " "
+                    + request.getHeader(HttpHeaders.Names.HOST)).getBytes("UTF-8");
+
+            HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+            response.setHeader(HttpHeaders.Names.CONTENT_LENGTH, body.length);
+            response.setContent(ChannelBuffers.wrappedBuffer(body));
+            e.getChannel().write(response);
+        }
+    }
+
+    @BeforeClass(alwaysRun = true)
+    public void setUpLocalServer() throws Exception {
+        localServer = new ServerBootstrap(new DefaultLocalServerChannelFactory());
+        localServer.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() throws Exception {
+                return pipeline(new HttpRequestDecoder(), new HttpResponseEncoder(), new LocalHandler());
+            }
+        });
+        localServerChannel = localServer.bind(new LocalAddress("service"));
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDownLocalServer() throws Exception {
+        localServerChannel.close().awaitUninterruptibly();
+        localServer.releaseExternalResources();
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.nettyProvider(config);
+    }
+
+    private AsyncHttpClient localClient() {
+        NettyAsyncHttpProviderConfig providerConfig = new NettyAsyncHttpProviderConfig();
+        providerConfig.addProperty(NettyAsyncHttpProviderConfig.LOCAL_TRANSPORT_HOSTS, "Service, other");
+        return getAsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .setAsyncHttpClientProviderConfig(providerConfig).build());
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void localHostTest() throws Throwable {
+        localConnections.set(0);
+        AsyncHttpClient c = localClient();
+
+        for (int i = 0; i < 3; i++) {
+            Response response = c.prepareGet("http://service/foo?id=" + i).execute().get(TIMEOUT, TimeUnit.SECONDS);
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getResponseBody(), "local GET /foo?id=" + i + " service");
+        }
+        // The in-VM connection is pooled like a TCP one.
+        assertEquals(localConnections.get(), 1);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void otherHostsUseTcpTest() throws Throwable {
+        AsyncHttpClient c = localClient();
+
+        Response response = c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(response.getHeader("X-Host"), "127.0.0.1:" + port1);
+        c.close();
+    }
+}
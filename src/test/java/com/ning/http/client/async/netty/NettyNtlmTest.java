@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async.netty;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Realm;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * The Netty provider delegates NTLM to the JDK provider, which is only created by the first NTLM request.
+ */
+public class NettyNtlmTest extends AbstractBasicTest {
+
+    private static class NtlmHandler extends AbstractHandler {
+
+        /* @Override */
+        public void handle(String s,
+                           Request r,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException, ServletException {
+            String authorization = request.getHeader("Authorization");
+            if (authorization == null) {
+                response.addHeader("WWW-Authenticate", "Negotiate");
+                response.addHeader("WWW-Authenticate", "NTLM");
+                response.setStatus(401);
+            } else {
+                response.setStatus(200);
+            }
+            response.getOutputStream().flush();
+            response.getOutputStream().close();
+            r.setHandled(true);
+        }
+    }
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new NtlmHandler();
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.nettyProvider(config);
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void preemptiveNtlmTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        Realm realm = new Realm.RealmBuilder()
+                .setScheme(Realm.AuthScheme.NTLM)
+                .setPrincipal("user")
+                .setPassword("password")
+                .setDomain("DOMAIN")
+                .setUsePreemptiveAuth(true)
+                .build();
+
+        Response response = c.prepareGet(getTargetUrl()).setRealm(realm).execute().get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(response.getStatusCode(), 200);
+        c.close();
+    }
+}
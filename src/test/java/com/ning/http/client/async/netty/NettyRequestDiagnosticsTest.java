@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async.netty;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.PerRequestConfig;
+import com.ning.http.client.Response;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import com.ning.http.client.providers.netty.NettyAsyncHttpProvider;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.testng.annotations.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class NettyRequestDiagnosticsTest extends AbstractBasicTest {
+
+    private static class SlowHandler extends AbstractHandler {
+
+        /* @Override */
+        public void handle(String s,
+                           Request r,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException, ServletException {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            response.setStatus(200);
+            response.getOutputStream().print("slow");
+            response.getOutputStream().close();
+            r.setHandled(true);
+        }
+    }
+
+    @Override
+    public AbstractHandler configureHandler() throws Exception {
+        return new SlowHandler();
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.nettyProvider(config);
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void timeoutDiagnosticsTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        PerRequestConfig requestConfig = new PerRequestConfig();
+        requestConfig.setRequestTimeoutInMs(100);
+
+        try {
+            c.prepareGet(getTargetUrl()).setPerRequestConfig(requestConfig).execute().get(TIMEOUT, TimeUnit.SECONDS);
+            fail("The request should have timed out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+            String message = e.getCause().getMessage();
+            assertTrue(message.startsWith("No response received after 100"), message);
+            assertTrue(message.contains("phase=BODY_WRITTEN"), message);
+            assertTrue(message.contains("pooled=false"), message);
+            assertTrue(message.contains("channel=[id:"), message);
+        }
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void dumpInFlightRequestsTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        NettyAsyncHttpProvider provider = (NettyAsyncHttpProvider) c.getProvider();
+
+        Future<Response> f = c.prepareGet(getTargetUrl()).execute();
+        // The server holds the response for a second.
+        Thread.sleep(300);
+
+        assertEquals(provider.getInFlightRequestCount(), 1);
+        String dump = provider.dumpInFlightRequests();
+        log.info(dump);
+        assertTrue(dump.startsWith("1 request(s) in flight"), dump);
+        assertTrue(dump.contains("GET " + getTargetUrl()), dump);
+        assertTrue(dump.contains("phase=BODY_WRITTEN"), dump);
+
+        assertEquals(f.get(TIMEOUT, TimeUnit.SECONDS).getResponseBody(), "slow");
+        assertEquals(provider.getInFlightRequestCount(), 0);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void rejectedRequestNotInFlightTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder().setMaximumConnectionsTotal(1).build());
+        NettyAsyncHttpProvider provider = (NettyAsyncHttpProvider) c.getProvider();
+
+        Future<Response> f = c.prepareGet(getTargetUrl()).execute();
+        Thread.sleep(300);
+
+        try {
+            c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS);
+            fail("The second connection should have been refused");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Too many connections"), e.getMessage());
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().startsWith("Too many connections"), e.getCause().getMessage());
+        }
+        assertEquals(provider.getInFlightRequestCount(), 1);
+
+        assertEquals(f.get(TIMEOUT, TimeUnit.SECONDS).getResponseBody(), "slow");
+        assertEquals(provider.getInFlightRequestCount(), 0);
+        c.close();
+    }
+}
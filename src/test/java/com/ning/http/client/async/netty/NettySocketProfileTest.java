@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async.netty;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import com.ning.http.client.providers.netty.NettyAsyncHttpProviderConfig;
+import com.ning.http.client.providers.netty.NettyConnectionsPool;
+import com.ning.http.client.providers.netty.SocketProfile;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.socket.SocketChannelConfig;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+public class NettySocketProfileTest extends AbstractBasicTest {
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.nettyProvider(config);
+    }
+
+    private SocketChannelConfig pooledChannelConfig(NettyConnectionsPool pool, String host) {
+        Channel channel = pool.poll("http://" + host + ":" + port1);
+        assertNotNull(channel, "No pooled connection to " + host);
+        return (SocketChannelConfig) channel.getConfig();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void perHostProfileTest() throws Throwable {
+        Map<String, SocketProfile> profiles = new HashMap<String, SocketProfile>();
+        profiles.put("127.0.0.1", new SocketProfile.Builder()
+                .setKeepAlive(true)
+                .setReceiveBufferSize(256 * 1024)
+                .setSoLinger(5)
+                .setConnectTimeoutInMs(1000)
+                .build());
+
+        NettyAsyncHttpProviderConfig providerConfig = new NettyAsyncHttpProviderConfig();
+        providerConfig.addProperty(NettyAsyncHttpProviderConfig.SOCKET_PROFILES, profiles);
+        NettyConnectionsPool pool = new NettyConnectionsPool(new AsyncHttpClientConfig.Builder().build());
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .setAsyncHttpClientProviderConfig(providerConfig)
+                .setConnectionsPool(pool)
+                .build());
+
+        assertEquals(c.prepareGet("http://127.0.0.1:" + port1 + "/").execute().get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+        assertEquals(c.prepareGet("http://localhost:" + port1 + "/").execute().get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+
+        SocketChannelConfig tuned = pooledChannelConfig(pool, "127.0.0.1");
+        assertTrue(tuned.isKeepAlive());
+        assertEquals(tuned.getSoLinger(), 5);
+        // The kernel may round the buffer size up.
+        assertTrue(tuned.getReceiveBufferSize() >= 256 * 1024, "receiveBufferSize=" + tuned.getReceiveBufferSize());
+        assertEquals(tuned.getConnectTimeoutMillis(), 1000);
+
+        // The other host keeps the client's options.
+        SocketChannelConfig plain = pooledChannelConfig(pool, "localhost");
+        assertFalse(plain.isKeepAlive());
+        assertEquals(plain.getSoLinger(), -1);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void domainProfileTest() throws Throwable {
+        Map<String, SocketProfile> profiles = new HashMap<String, SocketProfile>();
+        profiles.put("*.0.0.1", new SocketProfile.Builder().setKeepAlive(true).build());
+
+        NettyAsyncHttpProviderConfig providerConfig = new NettyAsyncHttpProviderConfig();
+        providerConfig.addProperty(NettyAsyncHttpProviderConfig.SOCKET_PROFILES, profiles);
+        NettyConnectionsPool pool = new NettyConnectionsPool(new AsyncHttpClientConfig.Builder().build());
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .setAsyncHttpClientProviderConfig(providerConfig)
+                .setConnectionsPool(pool)
+                .build());
+
+        assertEquals(c.prepareGet("http://127.0.0.1:" + port1 + "/").execute().get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+        assertTrue(pooledChannelConfig(pool, "127.0.0.1").isKeepAlive());
+        c.close();
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async.netty;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import com.ning.http.client.cache.ResponseCache;
+import com.ning.http.client.coalescing.CoalescingPolicy;
+import com.ning.http.client.hedging.HedgingPolicy;
+import com.ning.http.client.loadbalance.HostGroup;
+import com.ning.http.client.loadbalance.HostGroupRequestFilter;
+import com.ning.http.client.websocket.WebSocket;
+import com.ning.http.client.websocket.WebSocketByteListener;
+import com.ning.http.client.websocket.WebSocketListener;
+import com.ning.http.client.websocket.WebSocketPongListener;
+import com.ning.http.client.websocket.WebSocketTextListener;
+import com.ning.http.client.websocket.WebSocketUpgradeHandler;
+import com.ning.http.util.Base64;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class NettyWebSocketTest extends AbstractBasicTest {
+
+    private ServerSocket webSocketServer;
+    private final BlockingQueue<Integer> closeStatuses = new LinkedBlockingQueue<Integer>();
+
+    /**
+     * A minimal RFC 6455 server echoing every frame, as the Jetty version used by the tests predates it. A client
+     * requesting the /greeting path receives a fragmented text message in the same packet as the handshake response,
+     * with a character split across the fragments.
+     */
+    private class EchoServer extends Thread {
+
+        public void run() {
+            while (!webSocketServer.isClosed()) {
+                try {
+                    final Socket socket = webSocketServer.accept();
+                    new Thread() {
+                        public void run() {
+                            try {
+                                serve(socket);
+                            } catch (Exception e) {
+                                log.debug("WebSocket connection closed", e);
+                            } finally {
+                                try {
+                                    socket.close();
+                                } catch (IOException e) {
+                                    log.debug(e.getMessage(), e);
+                                }
+                            }
+                        }
+                    }.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket socket) throws Exception {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+
+            String requestLine = readLine(in);
+            String key = null;
+            String line;
+            while ((line = readLine(in)).length() > 0) {
+                if (line.toLowerCase().startsWith("sec-websocket-key:")) {
+                    key = line.substring(line.indexOf(':') + 1).trim();
+                }
+            }
+
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            String accept = Base64.encode(sha1.digest((key + "258EAFA5-E914-47DA-95CA-C5AB0DC85B11").getBytes("US-ASCII")));
+            ByteArrayOutputStream handshake = new ByteArrayOutputStream();
+            handshake.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes("US-ASCII"));
+            if (requestLine.contains("/greeting")) {
+                byte[] greeting = "héllo".getBytes("UTF-8");
+                writeFrame(handshake, 0x1, false, greeting, 0, 2);
+                writeFrame(handshake, 0x0, true, greeting, 2, greeting.length - 2);
+            }
+            out.write(handshake.toByteArray());
+            out.flush();
+
+            while (true) {
+                int b0 = in.readUnsignedByte();
+                int b1 = in.readUnsignedByte();
+                int length = b1 & 0x7F;
+                if (length == 126) {
+                    length = in.readUnsignedShort();
+                } else if (length == 127) {
+                    length = (int) in.readLong();
+                }
+                byte[] mask = new byte[4];
+                in.readFully(mask);
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                for (int i = 0; i < length; i++) {
+                    payload[i] ^= mask[i & 3];
+                }
+
+                int opcode = b0 & 0x0F;
+                ByteArrayOutputStream frame = new ByteArrayOutputStream();
+                if (opcode == 0x9) {
+                    writeFrame(frame, 0xA, true, payload, 0, length);
+                } else {
+                    writeFrame(frame, opcode, (b0 & 0x80) != 0, payload, 0, length);
+                }
+                out.write(frame.toByteArray());
+                out.flush();
+                if (opcode == 0x8) {
+                    if (length >= 2) {
+                        closeStatuses.add(((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF));
+                    }
+                    return;
+                }
+            }
+        }
+
+        private String readLine(DataInputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c == -1) {
+                    throw new IOException("Connection closed");
+                }
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+            }
+            return line.toString();
+        }
+
+        private void writeFrame(ByteArrayOutputStream out, int opcode, boolean fin, byte[] payload, int offset, int length) {
+            out.write((fin ? 0x80 : 0) | opcode);
+            if (length <= 125) {
+                out.write(length);
+            } else if (length <= 0xFFFF) {
+                out.write(126);
+                out.write(length >>> 8);
+                out.write(length & 0xFF);
+            } else {
+                out.write(127);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    out.write((int) ((long) length >>> shift) & 0xFF);
+                }
+            }
+            out.write(payload, offset, length);
+        }
+    }
+
+    private static class Listener implements WebSocketTextListener, WebSocketByteListener, WebSocketPongListener {
+
+        final CountDownLatch open = new CountDownLatch(1);
+        final CountDownLatch message = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        final StringBuilder text = new StringBuilder();
+        final AtomicReference<byte[]> bytes = new AtomicReference<byte[]>();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+        public void onOpen(WebSocket websocket) {
+            open.countDown();
+        }
+
+        public void onClose(WebSocket websocket) {
+            closed.countDown();
+        }
+
+        public void onError(Throwable t) {
+            error.set(t);
+            message.countDown();
+        }
+
+        public void onMessage(String message) {
+            text.append(message);
+            this.message.countDown();
+        }
+
+        public void onFragment(String fragment, boolean last) {
+            text.append(fragment);
+            if (last) {
+                message.countDown();
+            }
+        }
+
+        public void onMessage(byte[] message) {
+            bytes.set(message);
+            this.message.countDown();
+        }
+
+        public void onFragment(byte[] fragment, boolean last) {
+        }
+
+        public void onPong(byte[] payload) {
+            bytes.set(payload);
+            message.countDown();
+        }
+    }
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.nettyProvider(config);
+    }
+
+    @BeforeClass(alwaysRun = true)
+    public void setUpWebSocketServer() throws Exception {
+        webSocketServer = new ServerSocket(0);
+        new EchoServer().start();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDownWebSocketServer() throws Exception {
+        webSocketServer.close();
+    }
+
+    private String getWebSocketUrl(String path) {
+        return String.format("ws://127.0.0.1:%d/%s", webSocketServer.getLocalPort(), path);
+    }
+
+    private WebSocket open(AsyncHttpClient c, String path, WebSocketListener listener) throws Exception {
+        return c.prepareWebSocket(getWebSocketUrl(path)).execute(
+                new WebSocketUpgradeHandler.Builder().addWebSocketListener(listener).build()).get(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void echoTextTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        Listener listener = new Listener();
+        WebSocket websocket = open(c, "echo", listener);
+        assertTrue(listener.open.await(TIMEOUT, TimeUnit.SECONDS));
+
+        websocket.sendTextMessage("héllo");
+        assertTrue(listener.message.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(listener.text.toString(), "héllo");
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void echoBinaryTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        Listener listener = new Listener();
+        WebSocket websocket = open(c, "echo", listener);
+
+        byte[] message = new byte[70000];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) i;
+        }
+        websocket.sendMessage(message);
+        assertTrue(listener.message.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(listener.bytes.get(), message);
+        // The message must not have been masked in place.
+        assertEquals(message[1], (byte) 1);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void streamedTextTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        Listener listener = new Listener();
+        WebSocket websocket = open(c, "echo", listener);
+
+        websocket.streamText("Hel", false).streamText("lo", true);
+        assertTrue(listener.message.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(listener.text.toString(), "Hello");
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void framesSentWithHandshakeTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        Listener listener = new Listener();
+        open(c, "greeting", listener);
+
+        assertTrue(listener.message.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(listener.text.toString(), "héllo");
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void pingTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        Listener listener = new Listener();
+        WebSocket websocket = open(c, "echo", listener);
+
+        websocket.sendPing("ping".getBytes());
+        assertTrue(listener.message.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(new String(listener.bytes.get()), "ping");
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void closeTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        Listener listener = new Listener();
+        WebSocket websocket = open(c, "echo", listener);
+
+        websocket.close();
+        assertFalse(websocket.isOpen());
+        assertTrue(listener.closed.await(TIMEOUT, TimeUnit.SECONDS));
+        c.close();
+    }
+
+    private WebSocket openWithMaxMessageSize(AsyncHttpClient c, Listener listener, int maxMessageSize) throws Exception {
+        return c.prepareWebSocket(getWebSocketUrl("echo")).execute(new WebSocketUpgradeHandler.Builder()
+                .addWebSocketListener(listener).setMaxMessageSize(maxMessageSize).build()).get(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void messageTooBigTest() throws Throwable {
+        closeStatuses.clear();
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        Listener listener = new Listener();
+        WebSocket websocket = openWithMaxMessageSize(c, listener, 100);
+
+        websocket.sendTextMessage(new String(new char[101]).replace('\0', 'a'));
+        assertTrue(listener.message.await(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(listener.error.get() instanceof ProtocolException, String.valueOf(listener.error.get()));
+        assertEquals(listener.text.length(), 0);
+        assertTrue(listener.closed.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(closeStatuses.poll(TIMEOUT, TimeUnit.SECONDS), Integer.valueOf(1009));
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void fragmentedMessageTooBigTest() throws Throwable {
+        closeStatuses.clear();
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        Listener listener = new Listener();
+        WebSocket websocket = openWithMaxMessageSize(c, listener, 100);
+
+        String fragment = new String(new char[60]).replace('\0', 'a');
+        websocket.streamText(fragment, false).streamText(fragment, true);
+        assertTrue(listener.message.await(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(listener.error.get() instanceof ProtocolException, String.valueOf(listener.error.get()));
+        assertEquals(listener.text.toString(), fragment);
+        assertTrue(listener.closed.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(closeStatuses.poll(TIMEOUT, TimeUnit.SECONDS), Integer.valueOf(1009));
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void requestLayersBypassedTest() throws Throwable {
+        HostGroupRequestFilter filter = new HostGroupRequestFilter(new HostGroup.Builder("echo")
+                .addEndpoint("http://127.0.0.1:" + webSocketServer.getLocalPort()).build());
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .setResponseCache(new ResponseCache.Builder().build())
+                .setCoalescingPolicy(new CoalescingPolicy.Builder().build())
+                .setHedgingPolicy(new HedgingPolicy.Builder().setHedgeDelayInMs(1).setMaxHedgeRatio(1).build())
+                .addRequestFilter(filter)
+                .build());
+
+        // Two handshakes to the same url must open two WebSockets.
+        Listener listener1 = new Listener();
+        Listener listener2 = new Listener();
+        WebSocketUpgradeHandler handler1 = new WebSocketUpgradeHandler.Builder().addWebSocketListener(listener1).build();
+        WebSocketUpgradeHandler handler2 = new WebSocketUpgradeHandler.Builder().addWebSocketListener(listener2).build();
+        Future<WebSocket> f1 = c.prepareWebSocket("ws://echo/echo").execute(handler1);
+        Future<WebSocket> f2 = c.prepareWebSocket("ws://echo/echo").execute(handler2);
+        WebSocket websocket1 = f1.get(TIMEOUT, TimeUnit.SECONDS);
+        WebSocket websocket2 = f2.get(TIMEOUT, TimeUnit.SECONDS);
+        assertTrue(websocket1 != websocket2);
+
+        websocket1.sendTextMessage("one");
+        websocket2.sendTextMessage("two");
+        assertTrue(listener1.message.await(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(listener2.message.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(listener1.text.toString(), "one");
+        assertEquals(listener2.text.toString(), "two");
+        assertEquals(filter.getHostGroup("echo").getEndpoints().get(0).getInFlight(), 0);
+        c.close();
+        filter.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void upgradeRefusedTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        Listener listener = new Listener();
+        try {
+            c.prepareWebSocket(getTargetUrl()).execute(
+                    new WebSocketUpgradeHandler.Builder().addWebSocketListener(listener).build()).get(TIMEOUT, TimeUnit.SECONDS);
+            fail("The upgrade should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getMessage().contains("WebSocket upgrade failed with status 200"), e.getMessage());
+        }
+        assertTrue(listener.error.get() != null);
+        c.close();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.async.netty;
+
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.async.AbstractBasicTest;
+import com.ning.http.client.async.ProviderUtil;
+import com.ning.http.client.providers.netty.NettyAsyncHttpProvider;
+import com.ning.http.client.providers.netty.NettyAsyncHttpProviderConfig;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class NettyWireTraceTest extends AbstractBasicTest {
+
+    @Override
+    public AsyncHttpClient getAsyncHttpClient(AsyncHttpClientConfig config) {
+        return ProviderUtil.nettyProvider(config);
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void wireTraceTest() throws Throwable {
+        NettyAsyncHttpProviderConfig providerConfig = new NettyAsyncHttpProviderConfig();
+        providerConfig.addProperty(NettyAsyncHttpProviderConfig.WIRE_TRACE_SIZE, 2);
+        AsyncHttpClient c = getAsyncHttpClient(new AsyncHttpClientConfig.Builder()
+                .setAsyncHttpClientProviderConfig(providerConfig).build());
+        NettyAsyncHttpProvider provider = (NettyAsyncHttpProvider) c.getProvider();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS).getStatusCode(), 200);
+        }
+
+        String dump = provider.dumpWireTrace();
+        log.info(dump);
+        String[] lines = dump.split("\n");
+        // Only the last request and its response are kept.
+        assertEquals(lines.length, 2, dump);
+        assertTrue(lines[0].contains("> [id: "), dump);
+        assertTrue(lines[0].contains("GET /foo/test"), dump);
+        assertTrue(lines[1].contains("< [id: "), dump);
+        assertTrue(lines[1].contains("200 " + getTargetUrl()), dump);
+        c.close();
+    }
+
+    @Test(groups = {"standalone", "default_provider"})
+    public void wireTraceDisabledTest() throws Throwable {
+        AsyncHttpClient c = getAsyncHttpClient(null);
+        c.prepareGet(getTargetUrl()).execute().get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(((NettyAsyncHttpProvider) c.getProvider()).dumpWireTrace(), "");
+        c.close();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.cache;
+
+import com.ning.http.client.FluentCaseInsensitiveStringsMap;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+public class DiskCacheStorageTest {
+
+    private final static String KEY = "http://127.0.0.1/entry";
+
+    private File directory;
+
+    /**
+     * Hold the writes until the test runs them.
+     */
+    private static class QueuingExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            tasks.clear();
+        }
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        directory = new File(System.getProperty("java.io.tmpdir"), "ahc-disk-" + System.nanoTime());
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static CacheEntry entry(String body) {
+        return new CacheEntry(KEY, 200, "OK", "HTTP", 1, 1, new FluentCaseInsensitiveStringsMap(),
+                new HashMap<String, String>(), ByteBuffer.wrap(body.getBytes()), 0, 0);
+    }
+
+    private static String body(CacheEntry entry) {
+        ByteBuffer body = entry.getBody();
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        return new String(bytes);
+    }
+
+    @Test
+    public void entryIsServedFromMemoryUntilWrittenTest() throws Exception {
+        QueuingExecutor writer = new QueuingExecutor();
+        DiskCacheStorage storage = new DiskCacheStorage(directory, 1024 * 1024, writer);
+        CacheEntry entry = entry("body");
+
+        storage.put(KEY, entry);
+        assertEquals(writer.tasks.size(), 1);
+        assertEquals(storage.size(), 0);
+        assertSame(storage.get(KEY), entry);
+
+        writer.runAll();
+        assertEquals(storage.size(), new File(directory, directory.list()[0]).length());
+        assertEquals(body(storage.get(KEY)), "body");
+    }
+
+    @Test
+    public void removedEntryIsNotWrittenTest() throws Exception {
+        QueuingExecutor writer = new QueuingExecutor();
+        DiskCacheStorage storage = new DiskCacheStorage(directory, 1024 * 1024, writer);
+
+        storage.put(KEY, entry("body"));
+        storage.remove(KEY);
+        assertNull(storage.get(KEY));
+
+        writer.runAll();
+        assertNull(storage.get(KEY));
+        assertEquals(storage.size(), 0);
+        assertEquals(directory.list().length, 0);
+    }
+
+    @Test
+    public void replacedEntryIsWrittenOnceTest() throws Exception {
+        QueuingExecutor writer = new QueuingExecutor();
+        DiskCacheStorage storage = new DiskCacheStorage(directory, 1024 * 1024, writer);
+
+        storage.put(KEY, entry("first"));
+        storage.put(KEY, entry("second"));
+        assertEquals(body(storage.get(KEY)), "second");
+
+        writer.runAll();
+        assertEquals(directory.list().length, 1);
+        assertEquals(body(storage.get(KEY)), "second");
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.hedging;
+
+import com.ning.http.client.AsyncCompletionHandlerBase;
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.AsyncHttpProvider;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.Request;
+import com.ning.http.client.RequestBuilder;
+import com.ning.http.client.Response;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+public class RequestHedgerTest {
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Keep the first attempt pending, and fail it while the hedge is being sent, before failing the hedge too.
+     */
+    private static class FailingHedgeProvider implements AsyncHttpProvider<Object> {
+        final ConnectException primaryFailure = new ConnectException("Connection refused");
+        private AsyncHandler<?> primary;
+
+        public synchronized <T> Future<T> execute(Request request, AsyncHandler<T> handler) throws IOException {
+            if (primary == null) {
+                primary = handler;
+                return new FutureTask<T>(new Runnable() {
+                    public void run() {
+                    }
+                }, null);
+            }
+            primary.onThrowable(primaryFailure);
+            throw new IOException("Unable to send the hedge");
+        }
+
+        public void close() {
+        }
+
+        public Response prepareResponse(HttpResponseStatus status, HttpResponseHeaders headers,
+                                        Collection<HttpResponseBodyPart> bodyParts) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void hedgeExecutionFailureCompletesTest() throws Exception {
+        RequestHedger hedger = new RequestHedger(
+                new HedgingPolicy.Builder().setHedgeDelayInMs(1).setMaxHedgeRatio(1f).build(), scheduler);
+        FailingHedgeProvider provider = new FailingHedgeProvider();
+        final AtomicInteger throwables = new AtomicInteger();
+
+        Future<Response> future = hedger.execute(provider, new RequestBuilder("GET").setUrl("http://127.0.0.1/").build(),
+                new AsyncCompletionHandlerBase() {
+                    @Override
+                    public void onThrowable(Throwable t) {
+                        throwables.incrementAndGet();
+                    }
+                });
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("The request should have failed");
+        } catch (ExecutionException ex) {
+            assertSame(ex.getCause(), provider.primaryFailure);
+        }
+        assertEquals(throwables.get(), 1);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.metrics;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsAreContiguousTest() {
+        int previous = LatencyHistogram.bucketOf(0);
+        for (long value = 1; value < 1000000; value++) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket == previous || bucket == previous + 1, "Gap at " + value);
+            assertTrue(value <= LatencyHistogram.highestValueOf(bucket));
+            assertTrue(LatencyHistogram.highestValueOf(bucket) - value <= value / 8 + 1, "Error too large at " + value);
+            previous = bucket;
+        }
+        assertEquals(LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void percentilesTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(snapshot.getCount(), 1000);
+        assertEquals(snapshot.getMaxInMicros(), 1000000);
+        assertEquals(snapshot.getMeanInMicros(), 500500.0);
+
+        long median = snapshot.getValueAtPercentileInMicros(50);
+        assertTrue(median >= 500000 && median <= 500000 * 1.125, "Median " + median);
+        assertEquals(snapshot.getValueAtPercentileInMicros(100), 1000000);
+    }
+
+    @Test
+    public void emptyHistogramTest() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(snapshot.getCount(), 0);
+        assertEquals(snapshot.getValueAtPercentileInMicros(99), 0);
+        assertEquals(snapshot.getMeanInMicros(), 0.0);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.providers.netty;
+
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.DefaultChannelFuture;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class StaggeredConnectTest {
+
+    private final static InetSocketAddress FIRST = new InetSocketAddress("127.0.0.1", 1);
+    private final static InetSocketAddress SECOND = new InetSocketAddress("127.0.0.2", 1);
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Hand out pending futures, which the tests complete, instead of connecting.
+     */
+    private static class StubConnector implements StaggeredConnect.Connector {
+        final List<SocketAddress> launched = new ArrayList<SocketAddress>();
+        final List<ChannelFuture> attempts = new ArrayList<ChannelFuture>();
+        private final List<SocketAddress> failing;
+
+        StubConnector(SocketAddress... failing) {
+            this.failing = Arrays.asList(failing);
+        }
+
+        public synchronized ChannelFuture connect(SocketAddress address) {
+            ChannelFuture attempt = new DefaultChannelFuture(null, true);
+            launched.add(address);
+            attempts.add(attempt);
+            if (failing.contains(address)) {
+                attempt.setFailure(new ConnectException("Connection refused"));
+            }
+            return attempt;
+        }
+
+        synchronized ChannelFuture attempt(int i) {
+            return attempts.get(i);
+        }
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void pendingAddressIsStaggeredTest() throws Exception {
+        StubConnector connector = new StubConnector();
+        StaggeredConnect connect = new StaggeredConnect(Arrays.asList(FIRST, SECOND), 100, scheduler, connector, null);
+        connect.start();
+        assertEquals(connector.launched, Arrays.asList((SocketAddress) FIRST));
+
+        Thread.sleep(500);
+        assertEquals(connector.launched, Arrays.asList((SocketAddress) FIRST, SECOND));
+
+        // The second address answers first, the first attempt is given up.
+        connector.attempt(1).setSuccess();
+        assertSame(connect.await(1000), connector.attempt(1));
+        assertTrue(connector.attempt(0).isCancelled());
+    }
+
+    @Test
+    public void earlierAttemptMayStillWinTest() throws Exception {
+        StubConnector connector = new StubConnector();
+        StaggeredConnect connect = new StaggeredConnect(Arrays.asList(FIRST, SECOND), 50, scheduler, connector, null);
+        connect.start();
+        Thread.sleep(300);
+
+        connector.attempt(0).setSuccess();
+        assertSame(connect.await(1000), connector.attempt(0));
+        assertTrue(connector.attempt(1).isCancelled());
+    }
+
+    @Test
+    public void failedAddressIsSkippedImmediatelyTest() throws Exception {
+        StubConnector connector = new StubConnector(FIRST);
+        StaggeredConnect connect = new StaggeredConnect(Arrays.asList(FIRST, SECOND), 60000, scheduler, connector, null);
+        connect.start();
+
+        // No need to wait for the attempt delay.
+        assertEquals(connector.launched, Arrays.asList((SocketAddress) FIRST, SECOND));
+        connector.attempt(1).setSuccess();
+        assertTrue(connect.await(1000).isSuccess());
+    }
+
+    @Test
+    public void allAddressesFailTest() throws Exception {
+        StubConnector connector = new StubConnector(FIRST, SECOND);
+        StaggeredConnect connect = new StaggeredConnect(Arrays.asList(FIRST, SECOND), 60000, scheduler, connector, null);
+        connect.start();
+
+        ChannelFuture result = connect.await(1000);
+        assertSame(result, connector.attempt(1));
+        assertFalse(result.isSuccess());
+        assertTrue(result.getCause() instanceof ConnectException);
+    }
+
+    @Test
+    public void cancelTest() throws Exception {
+        StubConnector connector = new StubConnector();
+        StaggeredConnect connect = new StaggeredConnect(Arrays.asList(FIRST, SECOND), 10, scheduler, connector, null);
+        connect.start();
+        Thread.sleep(200);
+
+        assertNull(connect.await(50));
+        connect.cancel();
+        assertTrue(connector.attempt(0).isCancelled());
+        assertTrue(connector.attempt(1).isCancelled());
+    }
+}
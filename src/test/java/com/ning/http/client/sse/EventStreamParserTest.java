@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010 Ning, Inc.
+ *
+ * Ning licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.ning.http.client.sse;
+
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+public class EventStreamParserTest {
+
+    private final static String STREAM = "\uFEFF: keep-alive\r\nretry: 250\r\nid: 7\r\nevent: update\r\n"
+            + "data: héllo\r\ndata\r\ndata:  world\r\n\r\nid\nevent: ignored\n\ndata: last\rdata:more\r\r"
+            + "data: incomplete\n";
+
+    private static class Recorder extends EventStreamParser {
+        final List<ServerSentEvent> events = new ArrayList<ServerSentEvent>();
+        long retry;
+
+        Recorder() {
+            super("");
+        }
+
+        protected void onEvent(ServerSentEvent event) {
+            events.add(event);
+        }
+
+        protected void onRetry(long delayInMs) {
+            retry = delayInMs;
+        }
+    }
+
+    private void assertParsed(Recorder recorder) {
+        assertEquals(recorder.retry, 250);
+        assertEquals(recorder.events.size(), 2);
+
+        ServerSentEvent event = recorder.events.get(0);
+        assertEquals(event.getId(), "7");
+        assertEquals(event.getEvent(), "update");
+        assertEquals(event.getData(), "héllo\n\n world");
+
+        event = recorder.events.get(1);
+        assertEquals(event.getId(), "");
+        assertEquals(event.getEvent(), "message");
+        assertEquals(event.getData(), "last\nmore");
+        assertEquals(recorder.getLastEventId(), "");
+    }
+
+    @Test
+    public void parseWholeStreamTest() throws Exception {
+        Recorder recorder = new Recorder();
+        byte[] bytes = STREAM.getBytes("UTF-8");
+        // Only parse the remaining bytes of a slice.
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 2);
+        buffer.put((byte) 'x').put(bytes).put((byte) 'x').position(1);
+        buffer.limit(bytes.length + 1);
+        recorder.parse(buffer);
+        assertParsed(recorder);
+    }
+
+    @Test
+    public void parseByteByByteTest() throws Exception {
+        Recorder recorder = new Recorder();
+        byte[] bytes = STREAM.getBytes("UTF-8");
+        // Splits line endings and multi-byte characters.
+        for (int i = 0; i < bytes.length; i++) {
+            recorder.parse(ByteBuffer.wrap(bytes, i, 1));
+        }
+        assertParsed(recorder);
+    }
+
+    @Test
+    public void parseDirectBufferTest() throws Exception {
+        Recorder recorder = new Recorder();
+        byte[] bytes = STREAM.getBytes("UTF-8");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        recorder.parse(buffer);
+        assertParsed(recorder);
+    }
+}